@@ -3,6 +3,7 @@ plugins {
     jacoco
     id("org.springframework.boot") version "4.0.0"
     id("io.spring.dependency-management") version "1.1.7"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.ai.llamacpprag"
@@ -56,11 +57,56 @@ dependencies {
     testImplementation("org.testcontainers:junit-jupiter")
 }
 
+// SIMD vector similarity (VectorSimilarity) runs on the incubating Vector API
+val vectorApi = "--add-modules=jdk.incubator.vector"
+
+tasks.withType<JavaCompile> {
+    options.compilerArgs.add(vectorApi)
+}
+
+tasks.withType<JavaExec> {
+    jvmArgs(vectorApi)
+}
+
 tasks.withType<Test> {
     useJUnitPlatform()
+    jvmArgs(vectorApi)
+}
+
+tasks.test {
+    useJUnitPlatform {
+        excludeTags("benchmark")
+    }
     finalizedBy(tasks.jacocoTestReport)
 }
 
+// Retrieval recall/latency sweeps (Testcontainers, needs Docker):
+// ./gradlew retrievalBenchmark [-Dbenchmark.corpus-size=100000 -Dbenchmark.ef-search=40,100 ...]
+val retrievalBenchmark by tasks.registering(Test::class) {
+    description = "Measures retrieval recall@k and latency against exact search."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform {
+        includeTags("benchmark")
+    }
+    maxHeapSize = "2g"
+    systemProperties(System.getProperties()
+        .filterKeys { it.toString().startsWith("benchmark.") }
+        .mapKeys { it.key.toString() })
+    testLogging.showStandardStreams = true
+    outputs.upToDateWhen { false }
+}
+
+// Micro-benchmarks under src/jmh: ./gradlew jmh
+jmh {
+    warmupIterations.set(2)
+    iterations.set(5)
+    fork.set(1)
+    profilers.add("gc")
+    jvmArgsAppend.add(vectorApi)
+}
+
 tasks.jacocoTestReport {
     dependsOn(tasks.test)
     reports {
@@ -0,0 +1,52 @@
+package com.ai.llamacpprag.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares chunking one ~200 KB document with a {@code TokenTextSplitter} built per
+ * call (what ingestion used to do) against the shared {@link TokenChunker}. Run with
+ * {@code ./gradlew jmh}; the gc profiler reports bytes allocated per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ChunkerBenchmark {
+
+    private static final List<Character> MARKS = List.of('.', '\n', '?', '!');
+
+    private final TokenChunker chunker = new TokenChunker(350, 200, 50, 10_000, true, MARKS);
+
+    private List<Document> documents;
+
+    @Setup
+    public void setUp() {
+        var text = new StringBuilder();
+        for (int i = 0; text.length() < 200_000; i++) {
+            text.append("Section ").append(i)
+                    .append(" describes how the ingestion pipeline parses, splits and embeds every page");
+            text.append(i % 9 == 8 ? ".\n\n" : ". ");
+        }
+        documents = List.of(new Document(text.toString()));
+    }
+
+    @Benchmark
+    public List<Document> tokenTextSplitter() {
+        return new TokenTextSplitter(350, 200, 50, 10_000, true, MARKS).apply(documents);
+    }
+
+    @Benchmark
+    public List<Document> tokenChunker() {
+        return chunker.apply(documents);
+    }
+}
@@ -1,14 +1,20 @@
 package com.ai.llamacpprag.config;
 
+import com.ai.llamacpprag.service.SemanticAnswerCache;
+import com.ai.llamacpprag.service.SingleFlight;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.time.Duration;
 
 /**
- * Caffeine cache configuration for chat answers.
+ * Cache configuration for chat answers: an exact-text Caffeine cache, a semantic
+ * cache matching similar questions, and the de-duplication of identical questions
+ * missing both at once.
  */
 @Configuration
 public class ChatCacheConfig {
@@ -26,4 +32,33 @@ public class ChatCacheConfig {
                 .recordStats()
                 .build();
     }
-}
\ No newline at end of file
+
+    /**
+     * Configure the semantic answer cache, which serves answers of questions whose
+     * embeddings are similar enough to a new question's.
+     *
+     * @param properties Chat cache settings
+     * @return The configured semantic answer cache
+     */
+    @Bean
+    @ConditionalOnProperty(name = "rag.chat-cache.semantic.enabled", havingValue = "true")
+    public SemanticAnswerCache semanticAnswerCache(ChatCacheProperties properties) {
+        var semantic = properties.getSemantic();
+        return new SemanticAnswerCache(semantic.getThreshold(), semantic.getMaxEntries(), semantic.getTtl());
+    }
+
+    /**
+     * Configure the in-flight de-duplication of answer generation, keyed by the
+     * exact cache key, so identical questions missing the caches together reach
+     * llama.cpp once. Coalesced requests are counted as {@code rag.chat.coalesced}.
+     *
+     * @param properties    Chat cache settings
+     * @param meterRegistry Registry for coalescing metrics
+     * @return The configured single-flight group for answers
+     */
+    @Bean
+    @ConditionalOnProperty(name = "rag.chat-cache.coalesce.enabled", havingValue = "true", matchIfMissing = true)
+    public SingleFlight<String> answerGenerations(ChatCacheProperties properties, MeterRegistry meterRegistry) {
+        return new SingleFlight<>("rag.chat", properties.getCoalesce().getTimeout(), meterRegistry);
+    }
+}
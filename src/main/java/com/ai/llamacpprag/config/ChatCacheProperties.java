@@ -0,0 +1,131 @@
+package com.ai.llamacpprag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Settings of the chat answer caches, bound from {@code rag.chat-cache.*}.
+ */
+@ConfigurationProperties(prefix = "rag.chat-cache")
+public class ChatCacheProperties {
+
+    /**
+     * Settings of the semantic answer cache.
+     */
+    private Semantic semantic = new Semantic();
+
+    /**
+     * Settings of in-flight de-duplication of cache misses.
+     */
+    private Coalesce coalesce = new Coalesce();
+
+    public Semantic getSemantic() {
+        return semantic;
+    }
+
+    public void setSemantic(Semantic semantic) {
+        this.semantic = semantic;
+    }
+
+    public Coalesce getCoalesce() {
+        return coalesce;
+    }
+
+    public void setCoalesce(Coalesce coalesce) {
+        this.coalesce = coalesce;
+    }
+
+    /**
+     * Answer cache matching questions by embedding similarity, consulted after the
+     * exact-text cache misses.
+     */
+    public static class Semantic {
+
+        /**
+         * Serve answers of similar questions. Off by default, since a similar question
+         * can still ask for a different answer.
+         */
+        private boolean enabled;
+
+        /**
+         * Minimum cosine similarity between two questions to share an answer.
+         */
+        private double threshold = 0.92;
+
+        /**
+         * Answers kept.
+         */
+        private int maxEntries = 1000;
+
+        /**
+         * Time an answer is served after it was generated.
+         */
+        private Duration ttl = Duration.ofMinutes(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getThreshold() {
+            return threshold;
+        }
+
+        public void setThreshold(double threshold) {
+            this.threshold = threshold;
+        }
+
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+
+    /**
+     * Identical questions missing the caches at the same time share one generation:
+     * the first runs retrieval and generation, the others wait for its answer.
+     */
+    public static class Coalesce {
+
+        /**
+         * Share generations between identical in-flight questions.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Time a question waits for an identical one's answer before generating its own.
+         */
+        private Duration timeout = Duration.ofMinutes(2);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Duration timeout) {
+            this.timeout = timeout;
+        }
+    }
+}
@@ -1,11 +1,21 @@
 package com.ai.llamacpprag.config;
 
+import com.ai.llamacpprag.service.GenerationScheduler;
+import com.ai.llamacpprag.service.LoadBalancedChatModel;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 /**
  * Configuration for primary chat model, prioritizing OpenAI.
  */
@@ -13,14 +23,50 @@ import org.springframework.context.annotation.Primary;
 public class ChatModelPrimaryConfig {
 
     /**
-     * Configure the primary chat model, prioritizing OpenAI.
+     * Configure the primary chat model, prioritizing OpenAI, or the pool of
+     * llama.cpp servers when {@code rag.generation.pool} is enabled. Unless
+     * disabled, a {@link GenerationScheduler} in front of it limits concurrent
+     * generations to llama.cpp's slots and queues the rest.
      *
      * @param openAiChatModel The OpenAI chat model
+     * @param pool            The pool of llama.cpp servers, if enabled
+     * @param properties      Generation admission settings
+     * @param meterRegistry   Registry for queue and slot metrics
      * @return The configured primary chat model
      */
     @Bean
     @Primary
-    public ChatModel primaryChatModel(OpenAiChatModel openAiChatModel) {
-        return openAiChatModel;
+    public ChatModel primaryChatModel(OpenAiChatModel openAiChatModel, ObjectProvider<LoadBalancedChatModel> pool,
+                                      GenerationProperties properties, MeterRegistry meterRegistry) {
+        LoadBalancedChatModel pooled = pool.getIfAvailable();
+        ChatModel generator = pooled != null ? pooled : openAiChatModel;
+        if (!properties.isEnabled())
+            return generator;
+        return new GenerationScheduler(generator, properties, meterRegistry);
+    }
+
+    /**
+     * Configure the pool of llama.cpp servers: one OpenAI chat model per URL in
+     * {@code rag.generation.pool.urls}, sharing the options of the configured one.
+     *
+     * @param openAiChatModel The OpenAI chat model the servers' models are derived from
+     * @param properties      Generation settings holding the pool
+     * @param apiKey          API key sent to every server
+     * @param meterRegistry   Registry for per-server metrics
+     * @return The configured pool
+     */
+    @Bean
+    @ConditionalOnProperty(name = "rag.generation.pool.enabled", havingValue = "true")
+    public LoadBalancedChatModel chatModelPool(OpenAiChatModel openAiChatModel, GenerationProperties properties,
+                                               @Value("${spring.ai.openai.api-key:}") String apiKey,
+                                               MeterRegistry meterRegistry) {
+        var pool = properties.getPool();
+        Map<String, ChatModel> models = new LinkedHashMap<>();
+        for (String url : pool.getUrls()) {
+            var api = OpenAiApi.builder().baseUrl(url).apiKey(apiKey).build();
+            models.put(url, openAiChatModel.mutate().openAiApi(api).build());
+        }
+        return new LoadBalancedChatModel(models, pool,
+                LoadBalancedChatModel.httpHealthProbe(pool.getHealthTimeout()), meterRegistry);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,110 @@
+package com.ai.llamacpprag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Settings of the chunk-embedding cache, bound from {@code rag.embedding-cache.*}.
+ */
+@ConfigurationProperties(prefix = "rag.embedding-cache")
+public class EmbeddingCacheProperties {
+
+    /**
+     * Put the cache in front of the embedding model.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Directory of the on-disk tier; one sub-directory per embedding model.
+     */
+    private Path directory = Path.of("./cache/embeddings");
+
+    /**
+     * Entries kept in the in-memory tier.
+     */
+    private long memoryMaxEntries = 50_000;
+
+    /**
+     * Settings of the question embedding cache.
+     */
+    private Query query = new Query();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public long getMemoryMaxEntries() {
+        return memoryMaxEntries;
+    }
+
+    public void setMemoryMaxEntries(long memoryMaxEntries) {
+        this.memoryMaxEntries = memoryMaxEntries;
+    }
+
+    public Query getQuery() {
+        return query;
+    }
+
+    public void setQuery(Query query) {
+        this.query = query;
+    }
+
+    /**
+     * In-memory cache of question embeddings, keyed by the normalized question.
+     */
+    public static class Query {
+
+        /**
+         * Put the cache in front of question embedding.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Questions kept.
+         */
+        private long maxEntries = 10_000;
+
+        /**
+         * Time a question embedding is kept after it was computed.
+         */
+        private Duration ttl = Duration.ofHours(1);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public long getMaxEntries() {
+            return maxEntries;
+        }
+
+        public void setMaxEntries(long maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        public Duration getTtl() {
+            return ttl;
+        }
+
+        public void setTtl(Duration ttl) {
+            this.ttl = ttl;
+        }
+    }
+}
@@ -1,11 +1,20 @@
 package com.ai.llamacpprag.config;
 
+import com.ai.llamacpprag.service.CachingEmbeddingModel;
+import com.ai.llamacpprag.service.EmbeddingDiskStore;
+import com.ai.llamacpprag.service.QueryEmbeddingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.ollama.OllamaEmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
+import java.io.IOException;
+
 /**
  * Configuration for embedding models, prioritizing Ollama over other models.
  */
@@ -13,14 +22,54 @@ import org.springframework.context.annotation.Primary;
 public class EmbeddingConfig {
 
     /**
-     * Configure the primary embedding model, prioritizing Ollama.
+     * Configure the primary embedding model, prioritizing Ollama. Unless disabled,
+     * the model is wrapped in a persistent embedding cache so identical chunks are
+     * only ever embedded once, and in a question embedding cache so repeated
+     * questions skip the embedding call.
      *
      * @param ollamaEmbeddingModel The Ollama embedding model
+     * @param cacheProperties      Embedding cache settings
+     * @param modelName            Name of the Ollama embedding model, part of the cache key
+     * @param meterRegistry        Registry for cache hit/miss metrics
+     * @param queryEmbeddingCache  Cache of question embeddings
      * @return The configured primary embedding model
+     * @throws IOException If the on-disk cache cannot be opened
      */
     @Bean
     @Primary
-    public EmbeddingModel embeddingModel(OllamaEmbeddingModel ollamaEmbeddingModel) {
-        return ollamaEmbeddingModel;
+    public EmbeddingModel embeddingModel(OllamaEmbeddingModel ollamaEmbeddingModel,
+                                         EmbeddingCacheProperties cacheProperties,
+                                         @Value("${spring.ai.ollama.embedding.options.model:nomic-embed-text}") String modelName,
+                                         MeterRegistry meterRegistry,
+                                         Cache<String, float[]> queryEmbeddingCache) throws IOException {
+        EmbeddingModel model = ollamaEmbeddingModel;
+        if (cacheProperties.isEnabled()) {
+            // One store per model: vectors of different models have different widths
+            var directory = cacheProperties.getDirectory().resolve(modelName.replaceAll("[^A-Za-z0-9._-]", "_"));
+            model = new CachingEmbeddingModel(ollamaEmbeddingModel, modelName, new EmbeddingDiskStore(directory),
+                    cacheProperties.getMemoryMaxEntries(), meterRegistry);
+        }
+        if (cacheProperties.getQuery().isEnabled()) {
+            // Questions bypass the persistent tier: its store is append-only
+            model = new QueryEmbeddingCache(model, ollamaEmbeddingModel, queryEmbeddingCache);
+        }
+        return model;
+    }
+
+    /**
+     * Configure the question embedding cache: normalized question → embedding, with
+     * the configured size and time-to-live.
+     *
+     * @param cacheProperties Embedding cache settings
+     * @return The configured question embedding cache
+     */
+    @Bean
+    public Cache<String, float[]> queryEmbeddingCache(EmbeddingCacheProperties cacheProperties) {
+        var query = cacheProperties.getQuery();
+        return Caffeine.newBuilder()
+                .maximumSize(query.getMaxEntries())
+                .expireAfterWrite(query.getTtl())
+                .recordStats()
+                .build();
     }
-}
\ No newline at end of file
+}
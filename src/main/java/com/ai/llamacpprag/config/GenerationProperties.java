@@ -0,0 +1,210 @@
+package com.ai.llamacpprag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Admission control of chat generation, bound from {@code rag.generation.*}:
+ * how many requests llama.cpp generates at once, and how many may wait for a slot.
+ */
+@ConfigurationProperties(prefix = "rag.generation")
+public class GenerationProperties {
+
+    /**
+     * Limit concurrent generations and queue the rest.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Generations sent to llama.cpp at once; match its slot count ({@code --parallel},
+     * {@code total_slots} in {@code GET /props}).
+     */
+    private int maxConcurrent = 4;
+
+    /**
+     * Requests waiting for a slot; further requests are rejected with 429.
+     */
+    private int maxQueue = 16;
+
+    /**
+     * Time a request waits for a slot before it is rejected with 429.
+     */
+    private Duration queueTimeout = Duration.ofSeconds(60);
+
+    /**
+     * {@code Retry-After} of rejections while no generation time has been measured.
+     */
+    private Duration retryAfter = Duration.ofSeconds(5);
+
+    /**
+     * Settings of the pool of llama.cpp servers generations are spread over.
+     */
+    private Pool pool = new Pool();
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    public int getMaxQueue() {
+        return maxQueue;
+    }
+
+    public void setMaxQueue(int maxQueue) {
+        this.maxQueue = maxQueue;
+    }
+
+    public Duration getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    public void setQueueTimeout(Duration queueTimeout) {
+        this.queueTimeout = queueTimeout;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+    public void setRetryAfter(Duration retryAfter) {
+        this.retryAfter = retryAfter;
+    }
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public void setPool(Pool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Several OpenAI-compatible llama.cpp servers behind the primary chat model.
+     * Each generation goes to the healthy server with the fewest outstanding
+     * requests, unless prompt affinity keeps it on the server that saw the same
+     * prompt prefix last.
+     */
+    public static class Pool {
+
+        /**
+         * Spread generations over {@code urls} instead of {@code spring.ai.openai.base-url}.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Base URLs of the llama.cpp servers.
+         */
+        private List<String> urls = new ArrayList<>();
+
+        /**
+         * Health endpoint probed on every server ({@code 200} when a model is loaded).
+         */
+        private String healthPath = "/health";
+
+        /**
+         * Time between health probes of each server.
+         */
+        private Duration healthInterval = Duration.ofSeconds(5);
+
+        /**
+         * Time a health probe may take before it counts as failed.
+         */
+        private Duration healthTimeout = Duration.ofSeconds(2);
+
+        /**
+         * Consecutive failed probes or requests after which a server is ejected;
+         * it is taken back after its next successful probe.
+         */
+        private int failureThreshold = 3;
+
+        /**
+         * Leading prompt characters routing a prompt to the same server, so
+         * llama.cpp reuses its cached prefix (0 = no affinity).
+         */
+        private int affinityPrefixChars = 2000;
+
+        /**
+         * Outstanding requests the affine server may have beyond the least loaded
+         * one before the prompt goes to the least loaded one instead.
+         */
+        private int maxImbalance = 2;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public List<String> getUrls() {
+            return urls;
+        }
+
+        public void setUrls(List<String> urls) {
+            this.urls = urls;
+        }
+
+        public String getHealthPath() {
+            return healthPath;
+        }
+
+        public void setHealthPath(String healthPath) {
+            this.healthPath = healthPath;
+        }
+
+        public Duration getHealthInterval() {
+            return healthInterval;
+        }
+
+        public void setHealthInterval(Duration healthInterval) {
+            this.healthInterval = healthInterval;
+        }
+
+        public Duration getHealthTimeout() {
+            return healthTimeout;
+        }
+
+        public void setHealthTimeout(Duration healthTimeout) {
+            this.healthTimeout = healthTimeout;
+        }
+
+        public int getFailureThreshold() {
+            return failureThreshold;
+        }
+
+        public void setFailureThreshold(int failureThreshold) {
+            this.failureThreshold = failureThreshold;
+        }
+
+        public int getAffinityPrefixChars() {
+            return affinityPrefixChars;
+        }
+
+        public void setAffinityPrefixChars(int affinityPrefixChars) {
+            this.affinityPrefixChars = affinityPrefixChars;
+        }
+
+        public int getMaxImbalance() {
+            return maxImbalance;
+        }
+
+        public void setMaxImbalance(int maxImbalance) {
+            this.maxImbalance = maxImbalance;
+        }
+    }
+}
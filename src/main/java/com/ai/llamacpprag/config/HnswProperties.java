@@ -0,0 +1,67 @@
+package com.ai.llamacpprag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the embedded HNSW vector store, bound from {@code rag.hnsw.*}. Used
+ * when {@code spring.ai.vectorstore.type} is {@code hnsw}.
+ */
+@ConfigurationProperties(prefix = "rag.hnsw")
+public class HnswProperties {
+
+    /**
+     * Directory of the index files; one sub-directory per embedding model.
+     */
+    private Path directory = Path.of("./index/hnsw");
+
+    /**
+     * Maximum neighbours per node (twice that on the bottom layer). Fixed when an
+     * index is created.
+     */
+    private int m = 16;
+
+    /**
+     * Size of the candidate list while inserting: higher builds a better graph, slower.
+     */
+    private int efConstruction = 200;
+
+    /**
+     * Size of the candidate list while searching (at least top-k): higher trades
+     * latency for recall.
+     */
+    private int efSearch = 64;
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(Path directory) {
+        this.directory = directory;
+    }
+
+    public int getM() {
+        return m;
+    }
+
+    public void setM(int m) {
+        this.m = m;
+    }
+
+    public int getEfConstruction() {
+        return efConstruction;
+    }
+
+    public void setEfConstruction(int efConstruction) {
+        this.efConstruction = efConstruction;
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = efSearch;
+    }
+}
@@ -0,0 +1,47 @@
+package com.ai.llamacpprag.config;
+
+import com.ai.llamacpprag.service.HnswVectorStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+
+/**
+ * Embedded HNSW vector store, used in place of pgvector when
+ * {@code spring.ai.vectorstore.type=hnsw} (which also turns off Spring AI's pgvector
+ * auto-configuration).
+ */
+@Configuration
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "hnsw")
+public class HnswVectorStoreConfig {
+
+    /**
+     * Configure the embedded vector store.
+     *
+     * @param embeddingModel      Primary embedding model
+     * @param properties          HNSW settings
+     * @param ingestionProperties Ingestion settings, checked for bulk loading
+     * @param modelName           Name of the Ollama embedding model, part of the index directory
+     * @param meterRegistry       Registry for the search timer
+     * @return The configured vector store
+     * @throws IOException If the index files cannot be opened
+     */
+    @Bean
+    public HnswVectorStore vectorStore(EmbeddingModel embeddingModel,
+                                       HnswProperties properties,
+                                       IngestionProperties ingestionProperties,
+                                       @Value("${spring.ai.ollama.embedding.options.model:nomic-embed-text}") String modelName,
+                                       MeterRegistry meterRegistry) throws IOException {
+        if (ingestionProperties.getBulkLoad().isEnabled())
+            throw new IllegalStateException("rag.ingestion.bulk-load writes to pgvector; disable it to use the HNSW vector store");
+
+        // One index per model: vectors of different models are not comparable
+        var directory = properties.getDirectory().resolve(modelName.replaceAll("[^A-Za-z0-9._-]", "_"));
+        return new HnswVectorStore(directory, embeddingModel, properties.getM(), properties.getEfConstruction(),
+                properties.getEfSearch(), meterRegistry);
+    }
+}
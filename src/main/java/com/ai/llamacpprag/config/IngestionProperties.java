@@ -0,0 +1,535 @@
+package com.ai.llamacpprag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Tunables for document ingestion, bound from {@code rag.ingestion.*}.
+ */
+@ConfigurationProperties(prefix = "rag.ingestion")
+public class IngestionProperties {
+
+    /**
+     * Folder ingested by {@code POST /api/ingest}.
+     */
+    private Path folder = Path.of("./data");
+
+    /**
+     * Settings for asynchronous ingestion jobs.
+     */
+    private Jobs jobs = new Jobs();
+
+    /**
+     * Settings for continuous ingestion of the folder.
+     */
+    private Watch watch = new Watch();
+
+    /**
+     * Settings for the staged ingestion pipeline.
+     */
+    private Pipeline pipeline = new Pipeline();
+
+    /**
+     * Settings for incremental ingestion.
+     */
+    private Manifest manifest = new Manifest();
+
+    /**
+     * Settings for the cross-file embedding batcher.
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * Settings for splitting large text files while reading them.
+     */
+    private Streaming streaming = new Streaming();
+
+    /**
+     * Settings for near-duplicate chunk elimination.
+     */
+    private Dedup dedup = new Dedup();
+
+    /**
+     * Settings for PDF text extraction.
+     */
+    private Pdf pdf = new Pdf();
+
+    /**
+     * Settings for binary COPY writes to pgvector.
+     */
+    private BulkLoad bulkLoad = new BulkLoad();
+
+    /**
+     * Settings for files uploaded to {@code POST /api/documents}.
+     */
+    private Upload upload = new Upload();
+
+    public Path getFolder() {
+        return folder;
+    }
+
+    public void setFolder(Path folder) {
+        this.folder = folder;
+    }
+
+    public Jobs getJobs() {
+        return jobs;
+    }
+
+    public void setJobs(Jobs jobs) {
+        this.jobs = jobs;
+    }
+
+    public Watch getWatch() {
+        return watch;
+    }
+
+    public void setWatch(Watch watch) {
+        this.watch = watch;
+    }
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    public Manifest getManifest() {
+        return manifest;
+    }
+
+    public void setManifest(Manifest manifest) {
+        this.manifest = manifest;
+    }
+
+    public Batch getBatch() {
+        return batch;
+    }
+
+    public void setBatch(Batch batch) {
+        this.batch = batch;
+    }
+
+    public Streaming getStreaming() {
+        return streaming;
+    }
+
+    public void setStreaming(Streaming streaming) {
+        this.streaming = streaming;
+    }
+
+    public Dedup getDedup() {
+        return dedup;
+    }
+
+    public void setDedup(Dedup dedup) {
+        this.dedup = dedup;
+    }
+
+    public Pdf getPdf() {
+        return pdf;
+    }
+
+    public void setPdf(Pdf pdf) {
+        this.pdf = pdf;
+    }
+
+    public BulkLoad getBulkLoad() {
+        return bulkLoad;
+    }
+
+    public void setBulkLoad(BulkLoad bulkLoad) {
+        this.bulkLoad = bulkLoad;
+    }
+
+    public Upload getUpload() {
+        return upload;
+    }
+
+    public void setUpload(Upload upload) {
+        this.upload = upload;
+    }
+
+    /**
+     * Asynchronous ingestion jobs.
+     */
+    public static class Jobs {
+
+        /**
+         * Jobs allowed to run at the same time; further jobs wait in QUEUED.
+         */
+        private int maxConcurrent = 1;
+
+        /**
+         * Jobs kept for status queries; the oldest finished jobs are evicted first.
+         */
+        private int historySize = 50;
+
+        public int getMaxConcurrent() {
+            return maxConcurrent;
+        }
+
+        public void setMaxConcurrent(int maxConcurrent) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        public int getHistorySize() {
+            return historySize;
+        }
+
+        public void setHistorySize(int historySize) {
+            this.historySize = historySize;
+        }
+    }
+
+    /**
+     * Continuous ingestion: watch the folder and ingest changed files only.
+     */
+    public static class Watch {
+
+        /**
+         * Watch the folder for created, modified and deleted files.
+         */
+        private boolean enabled = false;
+
+        /**
+         * Quiet period after the last event before the changed files are ingested.
+         */
+        private Duration debounce = Duration.ofSeconds(2);
+
+        /**
+         * Upper bound on how long changes wait while events keep arriving.
+         */
+        private Duration maxDelay = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public Duration getDebounce() {
+            return debounce;
+        }
+
+        public void setDebounce(Duration debounce) {
+            this.debounce = debounce;
+        }
+
+        public Duration getMaxDelay() {
+            return maxDelay;
+        }
+
+        public void setMaxDelay(Duration maxDelay) {
+            this.maxDelay = maxDelay;
+        }
+    }
+
+    /**
+     * Queue sizes and worker counts for the discover → parse → split → store pipeline.
+     * Every stage runs on virtual threads, so parallelism only bounds how much work
+     * each stage keeps in flight against PDFBox, Ollama and Postgres.
+     */
+    public static class Pipeline {
+
+        /**
+         * Capacity of the bounded queue in front of each stage (back-pressure on discovery).
+         */
+        private int queueCapacity = 64;
+
+        /**
+         * Concurrent file readers (PDF text extraction, text file reads).
+         */
+        private int parseParallelism = 4;
+
+        /**
+         * Concurrent token splitters.
+         */
+        private int splitParallelism = 2;
+
+        /**
+         * Concurrent writers to the vector store (each write embeds its chunks first).
+         */
+        private int storeParallelism = 4;
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public int getParseParallelism() {
+            return parseParallelism;
+        }
+
+        public void setParseParallelism(int parseParallelism) {
+            this.parseParallelism = parseParallelism;
+        }
+
+        public int getSplitParallelism() {
+            return splitParallelism;
+        }
+
+        public void setSplitParallelism(int splitParallelism) {
+            this.splitParallelism = splitParallelism;
+        }
+
+        public int getStoreParallelism() {
+            return storeParallelism;
+        }
+
+        public void setStoreParallelism(int storeParallelism) {
+            this.storeParallelism = storeParallelism;
+        }
+    }
+
+    /**
+     * Incremental ingestion: a persisted manifest of ingested files lets re-ingest
+     * skip unchanged files, replace the chunks of changed ones and drop removed ones.
+     */
+    public static class Manifest {
+
+        /**
+         * Whether the ingest_manifest table is consulted and maintained.
+         */
+        private boolean enabled = true;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+    }
+
+    /**
+     * Limits of the cross-file embedding batcher; a batch is flushed as soon as any
+     * one of them is reached.
+     */
+    public static class Batch {
+
+        /**
+         * Maximum chunks per embedding request.
+         */
+        private int maxChunks = 64;
+
+        /**
+         * Maximum estimated tokens per embedding request. Kept under the 8191-token
+         * batches PgVectorStore cuts on its own, so one batch stays one request.
+         */
+        private int maxTokens = 8000;
+
+        /**
+         * Maximum time a chunk waits for its batch to fill up.
+         */
+        private Duration maxWait = Duration.ofMillis(250);
+
+        public int getMaxChunks() {
+            return maxChunks;
+        }
+
+        public void setMaxChunks(int maxChunks) {
+            this.maxChunks = maxChunks;
+        }
+
+        public int getMaxTokens() {
+            return maxTokens;
+        }
+
+        public void setMaxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+
+    /**
+     * Streaming split of large text files.
+     */
+    public static class Streaming {
+
+        /**
+         * TXT/MD files of this size or larger are split while being read instead of
+         * being loaded whole.
+         */
+        private DataSize threshold = DataSize.ofMegabytes(32);
+
+        public DataSize getThreshold() {
+            return threshold;
+        }
+
+        public void setThreshold(DataSize threshold) {
+            this.threshold = threshold;
+        }
+    }
+
+    /**
+     * Near-duplicate chunk elimination between splitting and embedding.
+     */
+    public static class Dedup {
+
+        /**
+         * Drop chunks that are near-duplicates of a chunk already kept in the run.
+         */
+        private boolean enabled = false;
+
+        /**
+         * SimHash similarity (1 - hamming distance / 64) from which chunks count as
+         * duplicates. Lower values catch more but make the lookup slower.
+         */
+        private double threshold = 0.9;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getThreshold() {
+            return threshold;
+        }
+
+        public void setThreshold(double threshold) {
+            this.threshold = threshold;
+        }
+    }
+
+    /**
+     * Memory used by PDFBox while parsing. Large PDFs can be parsed with a bounded
+     * heap footprint by spilling PDFBox's scratch buffers to temp files.
+     */
+    public static class Pdf {
+
+        /**
+         * Where PDFBox keeps its scratch buffers.
+         */
+        private MemoryMode memoryMode = MemoryMode.MIXED;
+
+        /**
+         * Heap budget per document in MIXED mode; beyond it buffers spill to temp files.
+         */
+        private DataSize maxMainMemory = DataSize.ofMegabytes(64);
+
+        /**
+         * Directory for temp files (defaults to java.io.tmpdir).
+         */
+        private Path tempDir;
+
+        public MemoryMode getMemoryMode() {
+            return memoryMode;
+        }
+
+        public void setMemoryMode(MemoryMode memoryMode) {
+            this.memoryMode = memoryMode;
+        }
+
+        public DataSize getMaxMainMemory() {
+            return maxMainMemory;
+        }
+
+        public void setMaxMainMemory(DataSize maxMainMemory) {
+            this.maxMainMemory = maxMainMemory;
+        }
+
+        public Path getTempDir() {
+            return tempDir;
+        }
+
+        public void setTempDir(Path tempDir) {
+            this.tempDir = tempDir;
+        }
+    }
+
+    /**
+     * Bulk loading of embedded chunks with binary COPY instead of the vector store's
+     * batched inserts.
+     */
+    public static class BulkLoad {
+
+        /**
+         * Embed batches directly and write them with {@code COPY ... (FORMAT binary)}.
+         */
+        private boolean enabled = false;
+
+        /**
+         * COPY into an unlogged staging table, merged into the vector table when the
+         * run ends; otherwise COPY straight into the vector table.
+         */
+        private boolean staging = true;
+
+        /**
+         * Staged rows from which the HNSW index is dropped before the merge and
+         * rebuilt after it; 0 always keeps the index.
+         */
+        private int rebuildIndexMinRows = 0;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isStaging() {
+            return staging;
+        }
+
+        public void setStaging(boolean staging) {
+            this.staging = staging;
+        }
+
+        public int getRebuildIndexMinRows() {
+            return rebuildIndexMinRows;
+        }
+
+        public void setRebuildIndexMinRows(int rebuildIndexMinRows) {
+            this.rebuildIndexMinRows = rebuildIndexMinRows;
+        }
+    }
+
+    /**
+     * Files uploaded for ingestion. Uploads are read from the request stream as they
+     * arrive, so the servlet multipart limits do not apply.
+     */
+    public static class Upload {
+
+        /**
+         * Largest accepted file; larger files are rejected without failing the request.
+         */
+        private DataSize maxFileSize = DataSize.ofMegabytes(512);
+
+        public DataSize getMaxFileSize() {
+            return maxFileSize;
+        }
+
+        public void setMaxFileSize(DataSize maxFileSize) {
+            this.maxFileSize = maxFileSize;
+        }
+    }
+
+    /**
+     * PDFBox scratch buffer strategies (see {@code MemoryUsageSetting}).
+     */
+    public enum MemoryMode {
+        MAIN_MEMORY, MIXED, TEMP_FILE
+    }
+}
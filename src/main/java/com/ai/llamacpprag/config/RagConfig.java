@@ -1,11 +1,20 @@
 package com.ai.llamacpprag.config;
 
+import com.ai.llamacpprag.service.ContextBudgetPostProcessor;
+import com.ai.llamacpprag.service.HybridDocumentRetriever;
+import com.ai.llamacpprag.service.ParameterizedVectorRetriever;
+import com.ai.llamacpprag.service.PgFullTextRetriever;
+import com.ai.llamacpprag.service.PgQuantizedVectorRetriever;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.rag.advisor.RetrievalAugmentationAdvisor;
-import org.springframework.ai.rag.retrieval.search.VectorStoreDocumentRetriever;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 
 /**
  * RAG configuration.
@@ -13,28 +22,73 @@ import org.springframework.context.annotation.Configuration;
 @Configuration
 public class RagConfig {
     /**
-     * Configure the ChatClient bean with retrieval augmentation.
+     * Configure the retriever supplying chunks to the chat model: the vector search,
+     * fused with Postgres full-text search when hybrid retrieval is enabled and the
+     * pgvector store is in use. With quantization configured on the pgvector store,
+     * the vector search runs over the quantized index and re-scores its candidates at
+     * full precision, falling back to the vector store until that index exists.
+     * Top-k, threshold and metadata filter come from each request's parameters,
+     * defaulting to the configured values. Primary over the full-text and quantized
+     * retrievers, which are DocumentRetrievers too.
      *
-     * @param builder     The ChatClient builder
-     * @param vectorStore The vector store for document retrieval
+     * @param vectorStore        The vector store for document retrieval
+     * @param properties         Retrieval settings
+     * @param fullTextRetriever  Full-text search over the pgvector table, if available
+     * @param quantizedRetriever Quantized search over the pgvector table, if available
+     * @param meterRegistry      Registry for per-search latencies
+     * @return The configured DocumentRetriever bean
+     */
+    @Bean
+    @Primary
+    public DocumentRetriever documentRetriever(VectorStore vectorStore,
+                                               RetrievalProperties properties,
+                                               ObjectProvider<PgFullTextRetriever> fullTextRetriever,
+                                               ObjectProvider<PgQuantizedVectorRetriever> quantizedRetriever,
+                                               MeterRegistry meterRegistry) {
+        var hybrid = properties.getHybrid();
+        PgFullTextRetriever lexical = hybrid.isEnabled() ? fullTextRetriever.getIfAvailable() : null;
+
+        // Configures document retrieval with default similarity and count limits
+        DocumentRetriever vector = new ParameterizedVectorRetriever(vectorStore, properties.getTopK(),
+                properties.getSimilarityThreshold(), lexical != null ? hybrid.getCandidates() : 0);
+        PgQuantizedVectorRetriever quantized = properties.getQuantization().getMode()
+                != RetrievalProperties.QuantizationMode.NONE ? quantizedRetriever.getIfAvailable() : null;
+        if (quantized != null)
+            vector = quantized.orElse(vector);
+        if (lexical == null)
+            return vector;
+
+        return new HybridDocumentRetriever(vector, lexical, properties.getTopK(), hybrid.getRrfK(), meterRegistry);
+    }
+
+    /**
+     * Configure the ChatClient bean with retrieval augmentation. Unless disabled, the
+     * retrieved chunks are assembled into a token-budgeted context before they are
+     * put into the prompt.
+     *
+     * @param builder           The ChatClient builder
+     * @param documentRetriever The retriever supplying chunks to the model
+     * @param properties        Retrieval settings
+     * @param meterRegistry     Registry for context assembly metrics
      * @return The configured ChatClient bean
      */
     @Bean
     public ChatClient chatClient(ChatClient.Builder builder,
-                                 VectorStore vectorStore) {
+                                 DocumentRetriever documentRetriever,
+                                 RetrievalProperties properties,
+                                 MeterRegistry meterRegistry) {
 
-        // Configures document retrieval with similarity and count limits
-        var ragAdvisor = RetrievalAugmentationAdvisor.builder()
-                .documentRetriever(VectorStoreDocumentRetriever.builder()
-                        .vectorStore(vectorStore)
-                        .similarityThreshold(0.50)
-                        .topK(3)
-                        .build())
-                .build();
+        var ragAdvisorBuilder = RetrievalAugmentationAdvisor.builder()
+                .documentRetriever(documentRetriever);
+        if (properties.getContext().isEnabled()) {
+            ragAdvisorBuilder.documentPostProcessors(new ContextBudgetPostProcessor(properties.getContext(),
+                    new JTokkitTokenCountEstimator(), meterRegistry));
+        }
+        var ragAdvisor = ragAdvisorBuilder.build();
 
         // Return configured ChatClient bean with RAG and prompt logging advisors
         return builder
                 .defaultAdvisors(ragAdvisor, new PromptLoggingAdvisor())
                 .build();
     }
-}
\ No newline at end of file
+}
@@ -6,6 +6,8 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.util.ContentCachingRequestWrapper;
@@ -14,12 +16,15 @@ import org.springframework.web.util.ContentCachingResponseWrapper;
 import java.io.IOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.Locale;
 import java.util.Map;
 import java.util.stream.Collectors;
 
 /**
  * Filter that logs every API request and response body.
  * Wrapping requests/responses is necessary to read the stream nicely.
+ * Streamed exchanges (multipart uploads, server-sent event responses) are logged
+ * without bodies and passed through unwrapped.
  */
 @Component
 public class RequestResponseLoggingFilter extends OncePerRequestFilter {
@@ -43,6 +48,24 @@ public class RequestResponseLoggingFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
 
+        if (isMultipart(request) || isEventStream(request)) {
+            // Uploads are streamed to the endpoint and its results streamed back, and
+            // chat answers are sent as they are generated: no wrappers (they would
+            // buffer both until the end) and no parameter lookup (it parses parts)
+            logger.info("API INCOMING [{} {}] query={} {}, length={}",
+                    request.getMethod(), request.getRequestURI(), decodeQueryString(request.getQueryString()),
+                    isMultipart(request) ? "multipart" : "event stream", request.getContentLengthLong());
+            long startTime = System.currentTimeMillis();
+            try {
+                filterChain.doFilter(request, response);
+            } finally {
+                logger.info("API RESPONSE [{} {}] Status: {} Time: {} ms (streamed)",
+                        request.getMethod(), request.getRequestURI(), response.getStatus(),
+                        System.currentTimeMillis() - startTime);
+            }
+            return;
+        }
+
         // Use cached wrappers so we can read the body multiple times (for logging)
         // without consuming it for the actual endpoint.
         // Limit cache to 10MB to avoid memory issues with huge uploads (though we
@@ -83,6 +106,30 @@ public class RequestResponseLoggingFilter extends OncePerRequestFilter {
         }
     }
 
+    /**
+     * Whether the request carries a multipart body (file uploads).
+     *
+     * @param request The request to check
+     * @return True for {@code multipart/*} content types
+     */
+    private boolean isMultipart(HttpServletRequest request) {
+        String contentType = request.getContentType();
+        return contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith("multipart/");
+    }
+
+    /**
+     * Whether the response is a server-sent event stream: asked for in
+     * {@code Accept}, or a {@code /stream} endpoint (which produce nothing else).
+     *
+     * @param request The request to check
+     * @return True for event stream requests
+     */
+    private boolean isEventStream(HttpServletRequest request) {
+        String accept = request.getHeader(HttpHeaders.ACCEPT);
+        return accept != null && accept.toLowerCase(Locale.ROOT).contains(MediaType.TEXT_EVENT_STREAM_VALUE)
+                || request.getRequestURI().endsWith("/stream");
+    }
+
     /**
      * Decode a query string, handling null, and decoding with UTF-8.
      *
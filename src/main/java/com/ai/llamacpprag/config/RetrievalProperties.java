@@ -0,0 +1,272 @@
+package com.ai.llamacpprag.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Settings for retrieving chunks at chat time, bound from {@code rag.retrieval.*}.
+ */
+@ConfigurationProperties(prefix = "rag.retrieval")
+public class RetrievalProperties {
+
+    /**
+     * Chunks handed to the model per question.
+     */
+    private int topK = 3;
+
+    /**
+     * Largest top-k a chat request may ask for; larger values are capped.
+     */
+    private int maxTopK = 20;
+
+    /**
+     * Minimum cosine similarity of vector matches.
+     */
+    private double similarityThreshold = 0.50;
+
+    /**
+     * Settings for hybrid full-text + vector retrieval.
+     */
+    private Hybrid hybrid = new Hybrid();
+
+    /**
+     * Settings for assembling the retrieved chunks into the prompt.
+     */
+    private Context context = new Context();
+
+    /**
+     * Settings for searching quantized embeddings first.
+     */
+    private Quantization quantization = new Quantization();
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public void setTopK(int topK) {
+        this.topK = topK;
+    }
+
+    public int getMaxTopK() {
+        return maxTopK;
+    }
+
+    public void setMaxTopK(int maxTopK) {
+        this.maxTopK = maxTopK;
+    }
+
+    public double getSimilarityThreshold() {
+        return similarityThreshold;
+    }
+
+    public void setSimilarityThreshold(double similarityThreshold) {
+        this.similarityThreshold = similarityThreshold;
+    }
+
+    public Hybrid getHybrid() {
+        return hybrid;
+    }
+
+    public void setHybrid(Hybrid hybrid) {
+        this.hybrid = hybrid;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    public void setContext(Context context) {
+        this.context = context;
+    }
+
+    public Quantization getQuantization() {
+        return quantization;
+    }
+
+    public void setQuantization(Quantization quantization) {
+        this.quantization = quantization;
+    }
+
+    /**
+     * Hybrid retrieval: Postgres full-text search next to the vector search, merged
+     * with reciprocal rank fusion.
+     */
+    public static class Hybrid {
+
+        /**
+         * Run the full-text search too (pgvector store only).
+         */
+        private boolean enabled = true;
+
+        /**
+         * Matches fetched by each search before fusion.
+         */
+        private int candidates = 10;
+
+        /**
+         * Rank constant k of reciprocal rank fusion, 1 / (k + rank): higher values
+         * flatten the advantage of top ranks.
+         */
+        private int rrfK = 60;
+
+        /**
+         * Postgres text search configuration (stemming and stop words).
+         */
+        private String textSearchConfig = "english";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getCandidates() {
+            return candidates;
+        }
+
+        public void setCandidates(int candidates) {
+            this.candidates = candidates;
+        }
+
+        public int getRrfK() {
+            return rrfK;
+        }
+
+        public void setRrfK(int rrfK) {
+            this.rrfK = rrfK;
+        }
+
+        public String getTextSearchConfig() {
+            return textSearchConfig;
+        }
+
+        public void setTextSearchConfig(String textSearchConfig) {
+            this.textSearchConfig = textSearchConfig;
+        }
+    }
+
+    /**
+     * Context assembly: redundant chunks dropped, long chunks cut down to their most
+     * relevant sentences, and the whole kept within a token budget.
+     */
+    public static class Context {
+
+        /**
+         * Assemble the context; if false, retrieved chunks are used as they are.
+         */
+        private boolean enabled = true;
+
+        /**
+         * Token budget of all chunks in the prompt.
+         */
+        private int maxTokens = 1200;
+
+        /**
+         * Tokens of one chunk before it is cut down to its most relevant sentences.
+         */
+        private int maxChunkTokens = 250;
+
+        /**
+         * Word overlap (Jaccard, 0 to 1) with an already picked chunk from which a
+         * chunk is dropped as redundant.
+         */
+        private double redundancyThreshold = 0.6;
+
+        /**
+         * MMR weight of relevance against novelty: 1 ranks by relevance only.
+         */
+        private double mmrLambda = 0.7;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxTokens() {
+            return maxTokens;
+        }
+
+        public void setMaxTokens(int maxTokens) {
+            this.maxTokens = maxTokens;
+        }
+
+        public int getMaxChunkTokens() {
+            return maxChunkTokens;
+        }
+
+        public void setMaxChunkTokens(int maxChunkTokens) {
+            this.maxChunkTokens = maxChunkTokens;
+        }
+
+        public double getRedundancyThreshold() {
+            return redundancyThreshold;
+        }
+
+        public void setRedundancyThreshold(double redundancyThreshold) {
+            this.redundancyThreshold = redundancyThreshold;
+        }
+
+        public double getMmrLambda() {
+            return mmrLambda;
+        }
+
+        public void setMmrLambda(double mmrLambda) {
+            this.mmrLambda = mmrLambda;
+        }
+    }
+
+    /**
+     * Quantized retrieval (pgvector store only): a first pass over compact copies of
+     * the embeddings, whose candidates are re-scored with the full-precision ones.
+     */
+    public static class Quantization {
+
+        /**
+         * Embeddings searched by the first pass; NONE searches full precision only.
+         */
+        private QuantizationMode mode = QuantizationMode.NONE;
+
+        /**
+         * Candidates fetched by the first pass per chunk returned.
+         */
+        private int oversample = 4;
+
+        public QuantizationMode getMode() {
+            return mode;
+        }
+
+        public void setMode(QuantizationMode mode) {
+            this.mode = mode;
+        }
+
+        public int getOversample() {
+            return oversample;
+        }
+
+        public void setOversample(int oversample) {
+            this.oversample = oversample;
+        }
+    }
+
+    /**
+     * First-pass embeddings of quantized retrieval.
+     */
+    public enum QuantizationMode {
+        /**
+         * No first pass.
+         */
+        NONE,
+        /**
+         * Half-precision floats ({@code halfvec}): half the size, nearly no recall loss.
+         */
+        HALFVEC,
+        /**
+         * One bit per dimension ({@code bit}, Hamming distance): 1/32 of the size.
+         */
+        BINARY
+    }
+}
@@ -0,0 +1,218 @@
+package com.ai.llamacpprag.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Embedding model decorator that never embeds the same text twice.
+ * <p>
+ * Vectors are keyed by SHA-256 of (model name, text) and kept in two tiers: a
+ * Caffeine cache in memory and an {@link EmbeddingDiskStore} that survives
+ * restarts. Only texts missing from both tiers are sent to the wrapped model,
+ * de-duplicated within the request, so boilerplate repeated across hundreds of
+ * PDFs, or a re-ingest after a splitter change, costs one embedding per distinct
+ * chunk.
+ */
+public class CachingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(CachingEmbeddingModel.class);
+
+    /**
+     * Model computing the embeddings that are not cached.
+     */
+    private final EmbeddingModel delegate;
+
+    /**
+     * Name of the configured embedding model, part of every key.
+     */
+    private final String modelName;
+
+    /**
+     * In-memory tier.
+     */
+    private final Cache<ByteBuffer, float[]> memory;
+
+    /**
+     * Persistent tier.
+     */
+    private final EmbeddingDiskStore disk;
+
+    private final Counter memoryHits;
+
+    private final Counter diskHits;
+
+    private final Counter misses;
+
+    /**
+     * Constructs a CachingEmbeddingModel.
+     *
+     * @param delegate         Model computing the embeddings that are not cached
+     * @param modelName        Name of the embedding model, part of every key
+     * @param disk             Persistent tier
+     * @param memoryMaxEntries Entries kept in the in-memory tier
+     * @param meterRegistry    Registry for hit/miss counters
+     */
+    public CachingEmbeddingModel(EmbeddingModel delegate, String modelName, EmbeddingDiskStore disk,
+                                 long memoryMaxEntries, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.modelName = modelName;
+        this.disk = disk;
+        this.memory = Caffeine.newBuilder()
+                .maximumSize(memoryMaxEntries)
+                .recordStats()
+                .build();
+        this.memoryHits = lookupCounter(meterRegistry, "memory");
+        this.diskHits = lookupCounter(meterRegistry, "disk");
+        this.misses = lookupCounter(meterRegistry, "miss");
+    }
+
+    /**
+     * Embeds the request's texts, serving cached vectors and sending only the
+     * remaining distinct texts to the wrapped model.
+     *
+     * @param request Texts to embed
+     * @return One embedding per text, in request order
+     */
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        List<String> texts = request.getInstructions();
+        String model = request.getOptions() != null && request.getOptions().getModel() != null
+                ? request.getOptions().getModel() : modelName;
+
+        float[][] vectors = new float[texts.size()][];
+        // Positions of every distinct text missing from both tiers
+        Map<ByteBuffer, List<Integer>> missing = new LinkedHashMap<>();
+        for (int i = 0; i < texts.size(); i++) {
+            ByteBuffer key = key(model, texts.get(i));
+            vectors[i] = lookup(key);
+            if (vectors[i] == null) {
+                missing.computeIfAbsent(key, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            misses.increment(missing.size());
+            List<String> toEmbed = new ArrayList<>(missing.size());
+            for (List<Integer> positions : missing.values()) {
+                toEmbed.add(texts.get(positions.get(0)));
+            }
+            EmbeddingResponse response = delegate.call(new EmbeddingRequest(toEmbed, request.getOptions()));
+
+            List<byte[]> keys = new ArrayList<>(missing.size());
+            List<float[]> computed = new ArrayList<>(missing.size());
+            int j = 0;
+            for (var entry : missing.entrySet()) {
+                float[] vector = response.getResults().get(j++).getOutput();
+                memory.put(entry.getKey(), vector);
+                keys.add(entry.getKey().array());
+                computed.add(vector);
+                for (int position : entry.getValue()) {
+                    vectors[position] = vector;
+                }
+            }
+            persist(keys, computed);
+        }
+
+        List<Embedding> embeddings = new ArrayList<>(vectors.length);
+        for (int i = 0; i < vectors.length; i++) {
+            // Copies, so callers cannot alter the cached vectors
+            embeddings.add(new Embedding(vectors[i].clone(), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    /**
+     * Embeds a document's text through the cache.
+     *
+     * @param document Document to embed
+     * @return Embedding vector
+     */
+    @Override
+    public float[] embed(Document document) {
+        return embed(document.getText());
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * Closes the persistent tier.
+     *
+     * @throws IOException If the store cannot be flushed
+     */
+    @Override
+    public void close() throws IOException {
+        disk.close();
+    }
+
+    /**
+     * Cache key of a text: SHA-256 of the model name and the text.
+     *
+     * @param model Embedding model name
+     * @param text  Text to embed
+     * @return 32-byte key
+     */
+    static ByteBuffer key(String model, String text) {
+        MessageDigest digest = IngestionManifest.sha256();
+        digest.update(model.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    private float[] lookup(ByteBuffer key) {
+        float[] vector = memory.getIfPresent(key);
+        if (vector != null) {
+            memoryHits.increment();
+            return vector;
+        }
+        vector = disk.get(key.array());
+        if (vector != null) {
+            diskHits.increment();
+            memory.put(key, vector);
+        }
+        return vector;
+    }
+
+    /**
+     * Writes a request's new vectors to the persistent tier in one batch, so they
+     * cost a single sync to disk.
+     */
+    private void persist(List<byte[]> keys, List<float[]> vectors) {
+        try {
+            int rejected = disk.putAll(keys, vectors);
+            if (rejected > 0) {
+                logger.warn("{} embeddings not persisted: the cache holds another dimension", rejected);
+            }
+        } catch (IOException e) {
+            logger.warn("Failed persisting embeddings to the cache", e);
+        }
+    }
+
+    private static Counter lookupCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("rag.embedding.cache.lookups")
+                .description("Embedding cache lookups by the tier that answered (miss = embedded by the model)")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
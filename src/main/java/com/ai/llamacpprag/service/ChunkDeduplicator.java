@@ -0,0 +1,260 @@
+package com.ai.llamacpprag.service;
+
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Drops chunks that are near-duplicates of a chunk already kept in the same run.
+ * <p>
+ * Every chunk gets a 64-bit SimHash over its word 3-shingles; two chunks are
+ * duplicates when their fingerprints differ in at most {@code maxDistance} bits.
+ * Candidates are found without comparing against every kept chunk: the fingerprint
+ * is cut into {@code maxDistance + 1} bands, and by the pigeonhole principle two
+ * fingerprints within that distance agree exactly on at least one band.
+ * <p>
+ * The first chunk seen is canonical; the sources of its dropped duplicates are
+ * collected and exposed through {@link #updatedCanonicals()} so the caller can
+ * store them in the canonical chunk's {@code duplicateSources} metadata, and through
+ * {@link #duplicateSources()} so it can re-ingest them once the canonical chunk's
+ * file changes. One instance lives for one ingestion run and is shared by the
+ * split workers.
+ */
+class ChunkDeduplicator {
+
+    /**
+     * Metadata key listing the other sources of a canonical chunk.
+     */
+    static final String DUPLICATE_SOURCES = "duplicateSources";
+
+    private static final int SHINGLE_WORDS = 3;
+
+    /**
+     * Largest hamming distance between duplicate fingerprints.
+     */
+    private final int maxDistance;
+
+    /**
+     * Bit offset of every band, plus 64 at the end.
+     */
+    private final int[] bandStarts;
+
+    /**
+     * Kept chunks by band value, one map per band. Guarded by {@code this}.
+     */
+    private final List<Map<Long, List<Canonical>>> bands;
+
+    /**
+     * Kept chunks that absorbed a duplicate from another source. Guarded by {@code this}.
+     */
+    private final Map<String, Canonical> touched = new HashMap<>();
+
+    /**
+     * Creates a deduplicator.
+     *
+     * @param threshold Similarity (1 - hamming distance / 64) from which chunks are duplicates
+     */
+    ChunkDeduplicator(double threshold) {
+        this.maxDistance = Math.max(0, Math.min(63, (int) Math.floor((1 - threshold) * 64 + 1e-9)));
+        int bandCount = maxDistance + 1;
+        this.bandStarts = new int[bandCount + 1];
+        for (int i = 0; i <= bandCount; i++) {
+            bandStarts[i] = i * 64 / bandCount;
+        }
+        this.bands = new ArrayList<>(bandCount);
+        for (int i = 0; i < bandCount; i++) {
+            bands.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * Removes the chunks that duplicate a chunk kept earlier in the run (or earlier in
+     * this list) and remembers the rest as canonical.
+     *
+     * @param chunks Chunks of one file
+     * @return Chunks to embed and store
+     */
+    List<Document> filter(List<Document> chunks) {
+        return filter(chunks, true);
+    }
+
+    /**
+     * Removes the chunks that duplicate a chunk kept earlier in the run, unless they
+     * may not be dropped, and remembers the rest as canonical.
+     *
+     * @param chunks    Chunks of one file
+     * @param droppable False for files that cannot be read again (uploads): their
+     *                  chunks are all kept, since nothing could restore them if the
+     *                  canonical chunk went away
+     * @return Chunks to embed and store
+     */
+    synchronized List<Document> filter(List<Document> chunks, boolean droppable) {
+        List<Document> kept = new ArrayList<>(chunks.size());
+        for (Document chunk : chunks) {
+            long fingerprint = simHash(chunk.getText());
+            Canonical canonical = find(fingerprint);
+            if (canonical == null) {
+                register(new Canonical(chunk, fingerprint));
+                kept.add(chunk);
+                continue;
+            }
+            if (!droppable) {
+                kept.add(chunk);
+                continue;
+            }
+
+            Object source = chunk.getMetadata().get("source");
+            if (source != null && !source.equals(canonical.chunk.getMetadata().get("source"))) {
+                canonical.duplicateSources.add(source.toString());
+                touched.putIfAbsent(canonical.chunk.getId(), canonical);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Copies of the canonical chunks that absorbed duplicates from other sources, with
+     * those sources in their {@value #DUPLICATE_SOURCES} metadata.
+     *
+     * @return Chunks to upsert again (same IDs)
+     */
+    synchronized List<Document> updatedCanonicals() {
+        List<Document> updated = new ArrayList<>(touched.size());
+        for (Canonical canonical : touched.values()) {
+            Map<String, Object> metadata = new HashMap<>(canonical.chunk.getMetadata());
+            metadata.put(DUPLICATE_SOURCES, List.copyOf(canonical.duplicateSources));
+            updated.add(Document.builder()
+                    .id(canonical.chunk.getId())
+                    .text(canonical.chunk.getText())
+                    .metadata(metadata)
+                    .build());
+        }
+        return updated;
+    }
+
+    /**
+     * Sources whose chunks were dropped, by the source of the canonical chunks they
+     * duplicate.
+     *
+     * @return Duplicate sources keyed by canonical source
+     */
+    synchronized Map<String, Set<String>> duplicateSources() {
+        Map<String, Set<String>> bySource = new HashMap<>();
+        for (Canonical canonical : touched.values()) {
+            bySource.computeIfAbsent(canonical.chunk.getMetadata().get("source").toString(), k -> new TreeSet<>())
+                    .addAll(canonical.duplicateSources);
+        }
+        return bySource;
+    }
+
+    /**
+     * 64-bit SimHash of a text over lower-cased word 3-shingles (single words for
+     * texts shorter than a shingle).
+     *
+     * @param text Text to fingerprint
+     * @return Fingerprint
+     */
+    static long simHash(String text) {
+        String[] words = text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+");
+        List<String> tokens = new ArrayList<>(words.length);
+        for (String word : words) {
+            if (!word.isEmpty())
+                tokens.add(word);
+        }
+
+        int[] weights = new int[64];
+        int shingles = Math.max(1, tokens.size() - SHINGLE_WORDS + 1);
+        for (int i = 0; i < shingles && !tokens.isEmpty(); i++) {
+            long hash = 0xcbf29ce484222325L;
+            for (int j = i; j < Math.min(tokens.size(), i + SHINGLE_WORDS); j++) {
+                hash = fnv1a(hash, tokens.get(j));
+                hash = (hash ^ ' ') * 0x100000001b3L;
+            }
+            hash = mix(hash);
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((hash >>> bit) & 1) == 1 ? 1 : -1;
+            }
+        }
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0)
+                fingerprint |= 1L << bit;
+        }
+        return fingerprint;
+    }
+
+    int maxDistance() {
+        return maxDistance;
+    }
+
+    private Canonical find(long fingerprint) {
+        for (int band = 0; band < bands.size(); band++) {
+            List<Canonical> candidates = bands.get(band).get(bandValue(fingerprint, band));
+            if (candidates == null)
+                continue;
+            for (Canonical candidate : candidates) {
+                if (Long.bitCount(candidate.fingerprint ^ fingerprint) <= maxDistance)
+                    return candidate;
+            }
+        }
+        return null;
+    }
+
+    private void register(Canonical canonical) {
+        for (int band = 0; band < bands.size(); band++) {
+            bands.get(band).computeIfAbsent(bandValue(canonical.fingerprint, band), k -> new ArrayList<>(1))
+                    .add(canonical);
+        }
+    }
+
+    private long bandValue(long fingerprint, int band) {
+        int from = bandStarts[band];
+        int width = bandStarts[band + 1] - from;
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        return (fingerprint >>> from) & mask;
+    }
+
+    private static long fnv1a(long hash, String word) {
+        for (int i = 0; i < word.length(); i++) {
+            hash ^= word.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Final avalanche step (MurmurHash3 fmix64) so every shingle sets bits evenly.
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * A kept chunk and the sources of the duplicates it replaced.
+     */
+    private static final class Canonical {
+
+        private final Document chunk;
+
+        private final long fingerprint;
+
+        private final TreeSet<String> duplicateSources = new TreeSet<>();
+
+        private Canonical(Document chunk, long fingerprint) {
+            this.chunk = chunk;
+            this.fingerprint = fingerprint;
+        }
+    }
+}
@@ -0,0 +1,303 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.RetrievalProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.postretrieval.document.DocumentPostProcessor;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.text.BreakIterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Assembles the retrieved chunks into a context that fits a token budget, so
+ * llama.cpp spends less time on prompt prefill.
+ * <p>
+ * Runs after retrieval, before the chunks are pasted into the prompt:
+ * <ol>
+ *     <li>Chunks are picked in maximal marginal relevance (MMR) order: retrieval
+ *     relevance, minus similarity to the chunks already picked. Chunks whose term
+ *     overlap with a picked chunk reaches the redundancy threshold are dropped.</li>
+ *     <li>Chunks longer than the per-chunk limit are cut down to the sentences
+ *     sharing the most terms with the question, kept in their original order with
+ *     "…" marking the gaps.</li>
+ *     <li>Chunks that no longer fit the context budget are dropped.</li>
+ * </ol>
+ * Similarity is measured on word sets (Jaccard), so no embeddings are needed.
+ * Tokens saved per request are recorded as {@code rag.context.tokens.saved}, the
+ * tokens kept as {@code rag.context.tokens}, and dropped chunks as
+ * {@code rag.context.chunks.dropped} tagged with the reason.
+ */
+public class ContextBudgetPostProcessor implements DocumentPostProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContextBudgetPostProcessor.class);
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    /**
+     * Words too common to say anything about relevance or overlap.
+     */
+    private static final Set<String> STOP_WORDS = Set.of(
+            "the", "and", "for", "are", "was", "were", "with", "that", "this", "these", "those", "from", "into",
+            "what", "which", "who", "how", "why", "when", "where", "does", "did", "can", "could", "should",
+            "would", "will", "its", "their", "there", "has", "have", "had", "not", "but", "about", "you", "your");
+
+    private static final String GAP = " … ";
+
+    /**
+     * Tokens of all chunks together.
+     */
+    private final int maxTokens;
+
+    /**
+     * Tokens of one chunk before it is cut down to its most relevant sentences.
+     */
+    private final int maxChunkTokens;
+
+    /**
+     * Word-set similarity from which a chunk counts as redundant.
+     */
+    private final double redundancyThreshold;
+
+    /**
+     * Weight of relevance against novelty in MMR.
+     */
+    private final double lambda;
+
+    private final TokenCountEstimator tokenEstimator;
+
+    private final DistributionSummary savedTokens;
+
+    private final DistributionSummary contextTokens;
+
+    private final Counter redundantChunks;
+
+    private final Counter overBudgetChunks;
+
+    /**
+     * Constructs a ContextBudgetPostProcessor.
+     *
+     * @param settings       Budget, per-chunk limit, redundancy threshold and MMR weight
+     * @param tokenEstimator Token estimator for chunks and sentences
+     * @param meterRegistry  Registry for token and chunk metrics
+     */
+    public ContextBudgetPostProcessor(RetrievalProperties.Context settings, TokenCountEstimator tokenEstimator,
+                                      MeterRegistry meterRegistry) {
+        this.maxTokens = Math.max(1, settings.getMaxTokens());
+        this.maxChunkTokens = Math.max(1, Math.min(settings.getMaxChunkTokens(), maxTokens));
+        this.redundancyThreshold = settings.getRedundancyThreshold();
+        this.lambda = settings.getMmrLambda();
+        this.tokenEstimator = tokenEstimator;
+        this.savedTokens = DistributionSummary.builder("rag.context.tokens.saved")
+                .description("Estimated prompt tokens saved per request by context assembly")
+                .register(meterRegistry);
+        this.contextTokens = DistributionSummary.builder("rag.context.tokens")
+                .description("Estimated tokens of the chunks put into the prompt")
+                .register(meterRegistry);
+        this.redundantChunks = Counter.builder("rag.context.chunks.dropped")
+                .description("Retrieved chunks left out of the prompt")
+                .tag("reason", "redundant")
+                .register(meterRegistry);
+        this.overBudgetChunks = Counter.builder("rag.context.chunks.dropped")
+                .description("Retrieved chunks left out of the prompt")
+                .tag("reason", "budget")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Picks, trims and budgets the retrieved chunks.
+     *
+     * @param query     Question
+     * @param documents Retrieved chunks, best first
+     * @return Chunks to put into the prompt, in the order they were picked
+     */
+    @Override
+    public List<Document> process(Query query, List<Document> documents) {
+        if (documents.isEmpty())
+            return documents;
+
+        Set<String> questionTerms = terms(query.text());
+        List<Candidate> remaining = candidates(documents);
+        int retrievedTokens = remaining.stream().mapToInt(Candidate::tokens).sum();
+
+        List<Document> picked = new ArrayList<>();
+        List<Set<String>> pickedTerms = new ArrayList<>();
+        int usedTokens = 0;
+        while (!remaining.isEmpty()) {
+            Candidate best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            double bestRedundancy = 0;
+            for (Candidate candidate : remaining) {
+                double redundancy = 0;
+                for (Set<String> terms : pickedTerms) {
+                    redundancy = Math.max(redundancy, jaccard(candidate.terms(), terms));
+                }
+                double score = lambda * candidate.relevance() - (1 - lambda) * redundancy;
+                if (score > bestScore) {
+                    best = candidate;
+                    bestScore = score;
+                    bestRedundancy = redundancy;
+                }
+            }
+            remaining.remove(best);
+
+            if (bestRedundancy >= redundancyThreshold) {
+                redundantChunks.increment();
+                continue;
+            }
+            String text = best.tokens() > maxChunkTokens ? trim(best.document().getText(), questionTerms) : null;
+            int tokens = text != null ? tokenEstimator.estimate(text) : best.tokens();
+            if (usedTokens + tokens > maxTokens) {
+                overBudgetChunks.increment();
+                continue;
+            }
+            usedTokens += tokens;
+            pickedTerms.add(best.terms());
+            picked.add(text != null ? best.document().mutate().text(text).build() : best.document());
+        }
+
+        savedTokens.record(retrievedTokens - usedTokens);
+        contextTokens.record(usedTokens);
+        logger.debug("Context: {} of {} chunks, {} of {} tokens", picked.size(), documents.size(), usedTokens,
+                retrievedTokens);
+        return picked;
+    }
+
+    /**
+     * Scores the chunks' relevance from 0 to 1: their retrieval scores scaled to
+     * the best one, or their rank if they have no scores.
+     */
+    private List<Candidate> candidates(List<Document> documents) {
+        double maxScore = documents.stream()
+                .mapToDouble(d -> d.getScore() != null ? d.getScore() : 0)
+                .max().orElse(0);
+        List<Candidate> candidates = new ArrayList<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            double relevance = maxScore > 0 && document.getScore() != null
+                    ? document.getScore() / maxScore
+                    : 1 - (double) i / documents.size();
+            String text = document.getText() == null ? "" : document.getText();
+            candidates.add(new Candidate(document, relevance, terms(text), tokenEstimator.estimate(text)));
+        }
+        return candidates;
+    }
+
+    /**
+     * Cuts a chunk down to the sentences sharing the most terms with the question,
+     * within the per-chunk limit.
+     *
+     * @param text          Chunk text
+     * @param questionTerms Terms of the question
+     * @return Kept sentences in their original order, gaps marked
+     */
+    String trim(String text, Set<String> questionTerms) {
+        List<Sentence> sentences = sentences(text, questionTerms);
+        Integer[] byRelevance = new Integer[sentences.size()];
+        Arrays.setAll(byRelevance, i -> i);
+        // Most question terms first; earlier sentences first among equals
+        Arrays.sort(byRelevance, Comparator.<Integer>comparingInt(i -> -sentences.get(i).overlap())
+                .thenComparingInt(i -> i));
+
+        boolean[] keep = new boolean[sentences.size()];
+        int used = 0;
+        for (int i : byRelevance) {
+            int tokens = sentences.get(i).tokens();
+            if (used + tokens <= maxChunkTokens) {
+                keep[i] = true;
+                used += tokens;
+            }
+        }
+
+        var trimmed = new StringBuilder();
+        boolean gap = false;
+        for (int i = 0; i < sentences.size(); i++) {
+            if (!keep[i]) {
+                gap = true;
+                continue;
+            }
+            if (!trimmed.isEmpty() || gap)
+                trimmed.append(gap ? GAP : " ");
+            trimmed.append(sentences.get(i).text());
+            gap = false;
+        }
+        if (trimmed.isEmpty()) {
+            // One sentence longer than the limit: keep its beginning
+            String first = sentences.isEmpty() ? text : sentences.get(0).text();
+            int tokens = Math.max(1, tokenEstimator.estimate(first));
+            int end = (int) Math.min(first.length(), (long) first.length() * maxChunkTokens / tokens);
+            return first.substring(0, end).strip() + GAP.stripTrailing();
+        }
+        if (gap)
+            trimmed.append(GAP.stripTrailing());
+        return trimmed.toString().strip();
+    }
+
+    private List<Sentence> sentences(String text, Set<String> questionTerms) {
+        List<Sentence> sentences = new ArrayList<>();
+        BreakIterator iterator = BreakIterator.getSentenceInstance(Locale.ROOT);
+        iterator.setText(text);
+        for (int start = iterator.first(), end = iterator.next(); end != BreakIterator.DONE;
+             start = end, end = iterator.next()) {
+            String sentence = text.substring(start, end).strip();
+            if (sentence.isEmpty())
+                continue;
+            Set<String> terms = terms(sentence);
+            terms.retainAll(questionTerms);
+            sentences.add(new Sentence(sentence, terms.size(), tokenEstimator.estimate(sentence)));
+        }
+        return sentences;
+    }
+
+    /**
+     * Lower-cased words of at least three characters, stop words left out.
+     */
+    static Set<String> terms(String text) {
+        Set<String> terms = new HashSet<>();
+        for (String word : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (word.length() >= 3 && !STOP_WORDS.contains(word))
+                terms.add(word);
+        }
+        return terms;
+    }
+
+    /**
+     * Shared words relative to all words of two word sets.
+     */
+    static double jaccard(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty())
+            return 0;
+        Set<String> small = a.size() <= b.size() ? a : b;
+        Set<String> large = small == a ? b : a;
+        int common = 0;
+        for (String term : small) {
+            if (large.contains(term))
+                common++;
+        }
+        return (double) common / (a.size() + b.size() - common);
+    }
+
+    /**
+     * A retrieved chunk with its relevance (0–1), word set and token count.
+     */
+    private record Candidate(Document document, double relevance, Set<String> terms, int tokens) {
+    }
+
+    /**
+     * A sentence of a chunk with the number of question terms it contains.
+     */
+    private record Sentence(String text, int overlap, int tokens) {
+    }
+}
@@ -0,0 +1,11 @@
+package com.ai.llamacpprag.service;
+
+/**
+ * Published after an ingestion run stored or deleted chunks, so answers derived
+ * from the previous documents can be dropped.
+ *
+ * @param ingested Files whose chunks were (re-)stored
+ * @param removed  Files whose chunks were deleted
+ */
+public record CorpusChangedEvent(int ingested, int removed) {
+}
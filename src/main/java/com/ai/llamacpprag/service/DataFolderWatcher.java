@@ -0,0 +1,269 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.IngestionProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+/**
+ * Continuous ingestion: watches the data folder (recursively) and ingests only the
+ * files that were created, modified or deleted.
+ * <p>
+ * Events are collected into a set, so a file written in many small chunks is
+ * ingested once. The set is handed to {@link DocumentIngestionService#ingestPaths}
+ * after {@code debounce} without new events, or after {@code max-delay} if events
+ * never stop. If the watch service overflows, the whole folder is re-ingested (the
+ * manifest keeps that cheap). If ingestion fails (e.g. the database is down), the
+ * same paths are tried again after a pause that doubles up to five minutes.
+ * Enabled with {@code rag.ingestion.watch.enabled}.
+ */
+@Component
+public class DataFolderWatcher implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataFolderWatcher.class);
+
+    /**
+     * Longest pause between attempts to ingest changes that failed.
+     */
+    private static final long MAX_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    /**
+     * Service ingesting the changed files.
+     */
+    private final DocumentIngestionService ingestionService;
+
+    /**
+     * Folder being watched.
+     */
+    private final Path folder;
+
+    /**
+     * Watch settings (enabled, debounce, max delay).
+     */
+    private final IngestionProperties.Watch settings;
+
+    /**
+     * Watched directories by their watch key.
+     */
+    private final Map<WatchKey, Path> directories = new ConcurrentHashMap<>();
+
+    private volatile WatchService watchService;
+
+    private volatile Thread worker;
+
+    /**
+     * Constructs a DataFolderWatcher for the configured ingestion folder.
+     *
+     * @param ingestionService Service ingesting the changed files
+     * @param properties       Ingestion settings (folder and watch settings)
+     */
+    public DataFolderWatcher(DocumentIngestionService ingestionService, IngestionProperties properties) {
+        this.ingestionService = ingestionService;
+        this.folder = properties.getFolder();
+        this.settings = properties.getWatch();
+    }
+
+    /**
+     * Registers the folder tree and starts the watch loop, if enabled.
+     */
+    @Override
+    public void start() {
+        if (!settings.isEnabled() || worker != null)
+            return;
+        if (!Files.isDirectory(folder)) {
+            logger.warn("Not watching {}: folder not found", folder.toAbsolutePath());
+            return;
+        }
+
+        try {
+            watchService = folder.getFileSystem().newWatchService();
+            registerTree(folder);
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot watch " + folder.toAbsolutePath(), e);
+        }
+        worker = Thread.ofVirtual().name("data-folder-watcher").start(this::watchLoop);
+        logger.info("Watching {} for changes (debounce {}, max delay {})",
+                folder.toAbsolutePath(), settings.getDebounce(), settings.getMaxDelay());
+    }
+
+    /**
+     * Stops the watch loop; changes not yet ingested are picked up by the next run.
+     */
+    @Override
+    public void stop() {
+        Thread thread = worker;
+        if (thread == null)
+            return;
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Failed closing watch service", e);
+        }
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        directories.clear();
+        worker = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return worker != null;
+    }
+
+    /**
+     * Collects events until the debounce or max delay elapses, then ingests the
+     * collected paths, keeping them for another attempt if that fails; repeats
+     * until the watch service is closed.
+     */
+    private void watchLoop() {
+        long debounceNanos = settings.getDebounce().toNanos();
+        long maxDelayNanos = settings.getMaxDelay().toNanos();
+
+        Set<Path> changed = new LinkedHashSet<>();
+        boolean overflow = false;
+        long firstEventNanos = 0;
+        long lastEventNanos = 0;
+        long retryDelayNanos = 0;
+        long retryAtNanos = 0;
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key;
+                if (changed.isEmpty() && !overflow) {
+                    key = watchService.take();
+                } else {
+                    long now = System.nanoTime();
+                    long due = Math.min(lastEventNanos + debounceNanos, firstEventNanos + maxDelayNanos);
+                    if (retryDelayNanos > 0)
+                        due = Math.max(due, retryAtNanos);
+                    key = watchService.poll(Math.max(0, due - now), TimeUnit.NANOSECONDS);
+                }
+
+                if (key != null) {
+                    overflow |= collect(key, changed);
+                    lastEventNanos = System.nanoTime();
+                    if (firstEventNanos == 0)
+                        firstEventNanos = lastEventNanos;
+                    continue;
+                }
+
+                // Quiet period elapsed (or max delay reached while events keep coming)
+                if (ingest(changed, overflow)) {
+                    changed = new LinkedHashSet<>();
+                    overflow = false;
+                    firstEventNanos = 0;
+                    retryDelayNanos = 0;
+                } else {
+                    // Keep the paths (and any events arriving meanwhile) for the next attempt
+                    retryDelayNanos = retryDelayNanos == 0 ? Math.max(debounceNanos, 1)
+                            : Math.min(2 * retryDelayNanos, MAX_RETRY_DELAY_NANOS);
+                    retryAtNanos = System.nanoTime() + retryDelayNanos;
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Shutting down
+        }
+    }
+
+    /**
+     * Drains the events of a key into the changed set and registers new directories.
+     *
+     * @param key     Signalled key
+     * @param changed Changed paths collected so far
+     * @return True if events were lost (overflow)
+     */
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        boolean overflow = false;
+        Path dir = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW || dir == null) {
+                overflow = true;
+                continue;
+            }
+
+            Path child = dir.resolve((Path) event.context());
+            changed.add(child);
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(child)) {
+                try {
+                    // Files created before registration are found when the folder is walked
+                    registerTree(child);
+                } catch (IOException e) {
+                    logger.warn("Cannot watch new folder {}", child, e);
+                }
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return overflow;
+    }
+
+    /**
+     * Ingests the collected paths, or the whole folder after an overflow.
+     *
+     * @param changed  Changed paths
+     * @param overflow Whether events were lost
+     * @return False if ingestion failed and should be tried again
+     */
+    private boolean ingest(Set<Path> changed, boolean overflow) {
+        try {
+            DocumentIngestionService.IngestResult result;
+            if (overflow) {
+                logger.info("Watch events overflowed, re-ingesting {}", folder.toAbsolutePath());
+                result = ingestionService.ingestLocalFolder(folder);
+            } else {
+                List<Path> paths = new ArrayList<>(changed);
+                result = ingestionService.ingestPaths(paths);
+            }
+            logger.info("Ingested changes under {}: {} chunks, {} skipped, {} removed, {} warnings",
+                    folder.toAbsolutePath(), result.chunks(), result.skipped(), result.removed(),
+                    result.warnings().size());
+            result.warnings().forEach(w -> logger.warn("{}", w));
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // E.g. the database is down: log and keep watching, the same changes are tried again
+            logger.warn("Failed ingesting changes under {}, retrying", folder.toAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Registers a directory and all its subdirectories with the watch service.
+     *
+     * @param root Directory to register
+     * @throws IOException If the tree cannot be walked
+     */
+    private void registerTree(Path root) throws IOException {
+        try (var stream = Files.walk(root)) {
+            for (Path dir : (Iterable<Path>) stream.filter(Files::isDirectory)::iterator) {
+                WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                directories.put(key, dir);
+            }
+        }
+    }
+}
@@ -1,20 +1,42 @@
 package com.ai.llamacpprag.service;
 
-import org.apache.pdfbox.Loader;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
+import com.ai.llamacpprag.config.IngestionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
-import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Reads local files under ./data, splits into chunks, and stores embeddings in
@@ -24,33 +46,139 @@ import java.util.List;
 @Service
 public class DocumentIngestionService {
 
+    /**
+     * Chunk size in tokens, WELL below the 512-token context of the embedding model
+     */
+    private static final int CHUNK_SIZE = 350;
+
+    private static final int MIN_CHUNK_SIZE_CHARS = 200;
+
+    private static final int MIN_CHUNK_LENGTH_TO_EMBED = 50;
+
+    private static final List<Character> PUNCTUATION_MARKS = List.of('.', '\n', '?', '!');
+
+    /**
+     * Chunks of a streamed file handed to the embedding batcher at a time
+     */
+    private static final int STREAMED_CHUNK_GROUP = 64;
+
+    /**
+     * Source key prefix of uploaded files
+     */
+    static final String UPLOAD_SOURCE_PREFIX = "upload:";
+
     /**
      * Vector store for storing document embeddings
      */
     private final VectorStore vectorStore;
 
     /**
-     * Model for generating document embeddings
+     * Model for generating document embeddings (used directly when bulk loading)
      */
-    @SuppressWarnings("unused")
     private final EmbeddingModel embeddingModel;
 
     /**
-     * Constructs a DocumentIngestionService with the specified vector store and
-     * embedding model.
+     * Binary COPY writer used instead of the vector store when bulk loading is enabled;
+     * null unless pgvector is the vector store
+     */
+    private final PgVectorBulkLoader bulkLoader;
+
+    /**
+     * Record of already ingested files, used to skip unchanged files on re-ingest
+     */
+    private final IngestionManifest manifest;
+
+    /**
+     * Ingestion tunables
+     */
+    private final IngestionProperties properties;
+
+    /**
+     * Single-pass PDF page extractor
+     */
+    private final PdfPageReader pdfReader;
+
+    /**
+     * Registry for ingestion metrics (embedding batch sizes, throughput)
+     */
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Publishes a {@link CorpusChangedEvent} after runs that stored or deleted chunks.
+     */
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Chunks dropped as near-duplicates of an already kept chunk
+     */
+    private final Counter duplicateChunks;
+
+    /**
+     * Splits parsed documents into chunks; built once and shared by the split workers
+     */
+    private final TokenChunker chunker = new TokenChunker(
+            CHUNK_SIZE, // chunkSize (tokens) <-- WELL below 512
+            MIN_CHUNK_SIZE_CHARS, // minChunkSizeChars
+            MIN_CHUNK_LENGTH_TO_EMBED, // minChunkLengthToEmbed
+            10_000, // maxNumChunks (effectively unlimited)
+            true, // keepSeparator
+            PUNCTUATION_MARKS); // sane defaults
+
+    /**
+     * Splitter for text files too large to read into memory, same settings as the
+     * chunker
+     */
+    private final StreamingTextSplitter streamingSplitter = new StreamingTextSplitter(
+            CHUNK_SIZE, MIN_CHUNK_SIZE_CHARS, MIN_CHUNK_LENGTH_TO_EMBED, true, PUNCTUATION_MARKS);
+
+    /**
+     * Token estimator for sizing embedding batches
+     */
+    private final TokenCountEstimator tokenEstimator = new JTokkitTokenCountEstimator();
+
+    /**
+     * Constructs a DocumentIngestionService with the specified vector store,
+     * embedding model, manifest and ingestion settings.
      *
      * @param vectorStore    Vector store for storing document embeddings
      * @param embeddingModel Model for generating document embeddings
+     * @param manifest       Record of already ingested files
+     * @param bulkLoader     Binary COPY writer for bulk loading, present with pgvector only
+     * @param properties     Ingestion tunables (pipeline parallelism, queue sizes)
+     * @param meterRegistry  Registry for ingestion metrics
+     * @param eventPublisher Publisher of corpus change events
      */
-    public DocumentIngestionService(VectorStore vectorStore, EmbeddingModel embeddingModel) {
+    public DocumentIngestionService(VectorStore vectorStore, EmbeddingModel embeddingModel,
+                                    IngestionManifest manifest, ObjectProvider<PgVectorBulkLoader> bulkLoader,
+                                    IngestionProperties properties, MeterRegistry meterRegistry,
+                                    ApplicationEventPublisher eventPublisher) {
         this.vectorStore = vectorStore;
         this.embeddingModel = embeddingModel;
+        this.bulkLoader = bulkLoader.getIfAvailable();
+        this.manifest = manifest;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.eventPublisher = eventPublisher;
+        this.duplicateChunks = Counter.builder("rag.ingest.chunks.duplicates")
+                .description("Chunks dropped as near-duplicates before embedding")
+                .register(meterRegistry);
+        this.pdfReader = new PdfPageReader(properties.getPdf());
     }
 
     /**
      * Ingests local files under the specified folder, splitting content into chunks
      * and storing embeddings in pgvector.
      * Supported file types: .txt, .md, .pdf (PDF text extracted via PDFBox).
+     * <p>
+     * Files flow through a staged pipeline (discover → parse → split → store) running
+     * on virtual threads with bounded queues between stages, so PDF parsing, embedding
+     * calls and pgvector writes overlap instead of running one file at a time. The
+     * store stage hands chunks to an {@link EmbeddingBatcher}, which groups chunks of
+     * many files into right-sized embedding requests.
+     * <p>
+     * Ingestion is incremental: files whose size and modification time (or content
+     * hash) match the manifest are skipped, changed files have their chunks replaced,
+     * and files that disappeared from the folder have their chunks deleted.
      *
      * @param folder Path to the folder containing local files
      * @return IngestResult containing the number of documents and chunks processed,
@@ -59,116 +187,966 @@ public class DocumentIngestionService {
      *                     files
      */
     public IngestResult ingestLocalFolder(Path folder) throws IOException {
+        return ingestLocalFolder(folder, new IngestionProgress());
+    }
+
+    /**
+     * Ingests local files under the specified folder, reporting live counters to
+     * {@code progress} and stopping early once it is cancelled.
+     *
+     * @param folder   Path to the folder containing local files
+     * @param progress Live counters of this run; {@link IngestionProgress#cancel()} stops it
+     * @return IngestResult containing the number of documents and chunks processed,
+     * and any warnings
+     * @throws InterruptedIOException If the run was cancelled or interrupted
+     * @throws IOException            If an I/O error occurs while accessing the
+     *                                folder or files
+     */
+    public IngestResult ingestLocalFolder(Path folder, IngestionProgress progress) throws IOException {
         if (!Files.exists(folder)) {
             return new IngestResult(0, 0, List.of("Folder not found: " + folder.toAbsolutePath()));
         }
 
-        List<Path> files = new ArrayList<>();
-        try (var stream = Files.walk(folder)) {
-            stream.filter(Files::isRegularFile)
-                    .filter(p -> {
-                        var name = p.getFileName().toString().toLowerCase();
-                        return name.endsWith(".txt") || name.endsWith(".md") || name.endsWith(".pdf");
-                    })
-                    .forEach(files::add);
+        var run = new IngestRun(properties.getManifest().isEnabled() ? manifest.entriesUnder(folder) : Map.of(),
+                progress);
+        try {
+            runPipeline(run, folder.toAbsolutePath().toString(), parse -> {
+                discover(folder, run, parse);
+                run.progress.discoveryComplete();
+            });
+
+            removeVanished(run);
+            reingestDependents(run, new HashSet<>());
+        } finally {
+            publishIfChanged(run);
+        }
+
+        return run.result();
+    }
+
+    /**
+     * Ingests the given paths only, e.g. files reported by the folder watcher:
+     * changed or new files are (re-)ingested, deleted files and folders have their
+     * chunks removed. Nothing else is walked, so the cost is proportional to the
+     * number of changed files rather than the size of the tree.
+     *
+     * @param paths Files or folders that were created, modified or deleted
+     * @return IngestResult of the affected files
+     * @throws IOException If an I/O error occurs while accessing the files
+     */
+    public IngestResult ingestPaths(Collection<Path> paths) throws IOException {
+        return ingestPaths(paths, new HashSet<>());
+    }
+
+    /**
+     * Ingests the given paths; files whose source is in {@code reingested} are read
+     * again even if they did not change.
+     *
+     * @param paths      Files or folders to ingest
+     * @param reingested Sources re-ingested because of their duplicates in this call,
+     *                   so a cycle of duplicates is followed only once
+     * @return IngestResult of the affected files
+     * @throws IOException If an I/O error occurs while accessing the files
+     */
+    private IngestResult ingestPaths(Collection<Path> paths, Set<String> reingested) throws IOException {
+        Map<String, IngestionManifest.Entry> previous = new HashMap<>();
+        if (properties.getManifest().isEnabled()) {
+            for (Path path : paths) {
+                previous.putAll(manifest.entriesAt(path));
+            }
         }
 
-        int rawDocs = 0;
-        int chunks = 0;
-        List<String> warnings = new ArrayList<>();
+        var run = new IngestRun(previous, new IngestionProgress(), reingested);
+        try {
+            runPipeline(run, paths.size() + " changed paths", parse -> {
+                for (Path path : paths) {
+                    if (Files.isDirectory(path)) {
+                        // A folder moved or copied in arrives as a single event
+                        discover(path, run, parse);
+                    } else if (Files.isRegularFile(path) && isSupported(path)) {
+                        offer(path, run, parse);
+                    }
+                }
+                run.progress.discoveryComplete();
+            });
 
-        var splitter = new TokenTextSplitter(
-                350, // chunkSize (tokens) <-- WELL below 512
-                200, // minChunkSizeChars
-                50, // minChunkLengthToEmbed
-                10_000, // maxNumChunks (effectively unlimited)
-                true, // keepSeparator
-                List.of('.', '\n', '?', '!')); // sane defaults
+            removeVanished(run);
+            reingestDependents(run, reingested);
+        } finally {
+            publishIfChanged(run);
+        }
 
-        for (Path file : files) {
-            var name = file.getFileName().toString().toLowerCase();
+        return run.result();
+    }
 
-            try {
-                if (name.endsWith(".pdf")) {
-                    // PDF: create one Document per page (better retrieval + source tracing)
-                    List<Document> pdfDocs = readPdfAsDocuments(file, warnings);
-                    if (pdfDocs.isEmpty())
-                        continue;
+    /**
+     * Ingests files uploaded by a client, reporting each file's outcome as soon as it
+     * is known.
+     * <p>
+     * Every upload is copied to a temp file while it is received (so no file is ever
+     * held in memory) and then handed to the same parse → split → store pipeline as
+     * local files; the next upload is received while earlier ones are parsed and
+     * embedded. The copy gives the parser what it needs: a content hash before the
+     * first chunk is stored (unchanged re-uploads are skipped) and random access for
+     * PDFs. Uploads are keyed by file name ({@code upload:<name>}), so uploading a
+     * file again replaces its previous chunks.
+     *
+     * @param uploads Supplies the uploaded files in order
+     * @param results Receives the outcome of every file, possibly from pipeline threads
+     * @return IngestResult of the uploaded files
+     * @throws IOException If the uploads cannot be read or a stage failed
+     */
+    public IngestResult ingestUploads(UploadSource uploads, Consumer<FileResult> results) throws IOException {
+        var run = new IngestRun(new ConcurrentHashMap<>(), new IngestionProgress(), Set.of(), results);
+        try {
+            runPipeline(run, "uploaded files", parse -> {
+                for (Upload upload = uploads.next(); upload != null; upload = uploads.next()) {
+                    offerUpload(upload, run, parse);
+                }
+                run.progress.discoveryComplete();
+            });
+            reingestDependents(run, new HashSet<>());
+        } finally {
+            publishIfChanged(run);
+        }
+
+        return run.result();
+    }
+
+    /**
+     * Runs the parse → split → store pipeline over the files the feeder puts into
+     * the parse stage, and waits until every one of them is stored.
+     *
+     * @param run    Current run
+     * @param target What is being ingested, for error messages
+     * @param feeder Puts the files to ingest into the parse stage
+     * @throws IOException If the run was interrupted or a stage failed
+     */
+    private void runPipeline(IngestRun run, String target, Feeder feeder) throws IOException {
+        var settings = properties.getPipeline();
+
+        long streamingThreshold = properties.getStreaming().getThreshold().toBytes();
 
-                    rawDocs += pdfDocs.size();
+        var parse = new PipelineStage<SourceFile>("parse", settings.getQueueCapacity(), settings.getParseParallelism());
+        var split = new PipelineStage<FileDocuments>("split", settings.getQueueCapacity(), settings.getSplitParallelism());
+        var store = new PipelineStage<FileChunks>("store", settings.getQueueCapacity(), settings.getStoreParallelism());
+        var dedup = properties.getDedup().isEnabled()
+                ? new ChunkDeduplicator(properties.getDedup().getThreshold()) : null;
 
-                    List<Document> split = splitter.apply(pdfDocs);
-                    chunks += split.size();
+        if (bulkLoader != null) {
+            // Rows staged by a run that died before merging them belong to files already in the
+            // manifest: publish them before this run writes newer ones, with or without bulk load
+            bulkLoader.mergeLeftovers();
+        }
+        var bulkLoad = bulkLoader != null && properties.getBulkLoad().isEnabled()
+                ? bulkLoader.begin(properties.getBulkLoad()) : null;
+        var batcher = new EmbeddingBatcher(batch -> {
+            if (bulkLoad != null) {
+                bulkLoad.add(batch, embeddingModel.embed(batch.stream().map(Document::getText).toList()));
+            } else {
+                vectorStore.add(batch);
+            }
+            run.progress.chunksEmbedded(batch.size());
+        }, properties.getBatch(), tokenEstimator, meterRegistry);
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        boolean completed = false;
+        try {
+            // Start consumers first so discovery never blocks on a stage nobody drains
+            store.start(executor, chunks -> batcher.add(chunks.chunks()).whenComplete((stored, e) ->
+                            fileStored(run, chunks.file(), chunks.contentHash(), chunks.chunkCount(),
+                                    chunks.droppedIndices(), e)),
+                    (chunks, e) -> run.failed(chunks.file(), e));
+            split.start(executor, pages -> {
+                List<Document> chunks = withChunkIds(chunker.apply(pages.documents()), pages);
+                int chunkCount = chunks.size();
+                List<Integer> dropped = new ArrayList<>();
+                chunks = deduplicate(chunks, dedup, pages.file(), dropped);
+                run.chunksCreated(chunks.size());
+                store.put(new FileChunks(pages.file(), pages.contentHash(), chunks, chunkCount, dropped));
+            }, (pages, e) -> run.failed(pages.file(), e));
+            parse.start(executor, file -> {
+                try {
+                    parseFile(run, file, streamingThreshold, split, batcher, dedup);
+                } finally {
+                    if (file.temporary())
+                        Files.deleteIfExists(file.path());
+                }
+            }, (file, e) -> run.failed(file, e));
 
-                    vectorStore.add(split);
-                } else {
-                    // TXT/MD: single Document for file
-                    String content = Files.readString(file, StandardCharsets.UTF_8);
-                    if (content == null || content.isBlank())
-                        continue;
+            feeder.feed(parse);
 
-                    rawDocs++;
+            parse.finish();
+            split.finish();
+            store.finish();
+            batcher.close();
+            if (bulkLoad != null) {
+                // Merge staged rows before the canonical update below, which must win
+                bulkLoad.close();
+            }
+            if (dedup != null) {
+                // Canonical chunks stored before their duplicates showed up lack the other sources
+                List<Document> updated = dedup.updatedCanonicals();
+                if (!updated.isEmpty())
+                    vectorStore.add(updated);
+            }
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Ingestion interrupted: " + target);
+        } catch (ExecutionException e) {
+            throw new IOException("Ingestion pipeline failed: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            // On failure, interrupt workers still blocked on their queues before waiting for them
+            if (!completed) {
+                executor.shutdownNow();
+                batcher.abort();
+            }
+            executor.close();
+            if (dedup != null)
+                recordDuplicates(run, dedup);
+            if (!completed && bulkLoad != null) {
+                // Files completed before the failure are in the manifest: publish their staged rows
+                try {
+                    bulkLoad.close();
+                } catch (RuntimeException e) {
+                    run.warnings.add("Staged rows not merged (the next run merges them): " + e.getMessage());
+                }
+            }
+        }
+    }
 
-                    var doc = new Document(content);
-                    doc.getMetadata().put("source", file.toAbsolutePath().toString());
-                    doc.getMetadata().put("fileType", name.endsWith(".md") ? "md" : "txt");
+    /**
+     * Parse stage work for one file: skips it if its content did not change, streams
+     * it if it is a large text file, and otherwise reads it into pages for the split
+     * stage.
+     *
+     * @param run                Current run
+     * @param file               File to parse
+     * @param streamingThreshold Size from which text files are split while being read
+     * @param split              Split stage receiving the pages
+     * @param batcher            Embedding batcher of the run
+     * @param dedup              Near-duplicate filter, or null
+     * @throws IOException          If the file cannot be read
+     * @throws InterruptedException If interrupted while the split queue is full
+     */
+    private void parseFile(IngestRun run, SourceFile file, long streamingThreshold,
+                           PipelineStage<FileDocuments> split, EmbeddingBatcher batcher, ChunkDeduplicator dedup)
+            throws IOException, InterruptedException {
+        String contentHash = IngestionManifest.contentHash(file.path());
+        var previous = run.previous.get(file.source());
+        if (previous != null && previous.contentHash().equals(contentHash) && !run.reingested.contains(file.source())) {
+            // Touched but identical: refresh size/mtime so the next run skips without hashing
+            completeFile(run, file, contentHash, previous.chunkCount(), List.of());
+            run.skipped(file);
+            return;
+        }
 
-                    List<Document> split = splitter.apply(List.of(doc));
-                    chunks += split.size();
+        if (!isPdf(file.path()) && file.sizeBytes() >= streamingThreshold) {
+            // Too large to read whole: split while reading and store chunk groups as they come
+            streamTextFile(run, file, contentHash, batcher, dedup);
+            return;
+        }
 
-                    vectorStore.add(split);
+        List<Document> pages = readFile(file, run.warnings);
+        if (pages == null) {
+            run.unreadable(file);
+            return;
+        }
+        if (pages.isEmpty()) {
+            completeFile(run, file, contentHash, 0, List.of());
+            run.stored(file, 0);
+            return;
+        }
+
+        run.pagesRead(pages.size());
+        split.put(new FileDocuments(file, contentHash, pages));
+    }
+
+    /**
+     * Splits a large text file while reading it and hands the chunks to the batcher
+     * in groups, so neither the text nor its chunks are ever held in memory at once.
+     * The file is completed once every group is stored.
+     *
+     * @param run         Current run
+     * @param file        Text file to ingest
+     * @param contentHash Content hash of the file
+     * @param batcher     Embedding batcher of the run
+     * @param dedup       Near-duplicate filter, or null
+     * @throws IOException If the file cannot be read
+     */
+    private void streamTextFile(IngestRun run, SourceFile file, String contentHash, EmbeddingBatcher batcher,
+                                ChunkDeduplicator dedup) throws IOException {
+        Map<String, Object> metadata = Map.of(
+                "source", file.source(),
+                "fileType", fileTypeOf(file.path()),
+                "contentHash", contentHash);
+        List<CompletableFuture<Void>> stored = new ArrayList<>();
+        List<Document> group = new ArrayList<>(STREAMED_CHUNK_GROUP);
+        List<Integer> dropped = new ArrayList<>();
+        run.pagesRead(1);
+
+        int chunkCount;
+        try (Reader reader = Files.newBufferedReader(file.path(), StandardCharsets.UTF_8)) {
+            chunkCount = streamingSplitter.split(reader, text -> {
+                int index = stored.size() * STREAMED_CHUNK_GROUP + group.size();
+                Map<String, Object> chunkMetadata = new HashMap<>(metadata);
+                chunkMetadata.put("chunkIndex", index);
+                group.add(Document.builder()
+                        .id(IngestionManifest.chunkId(file.source(), index))
+                        .text(text)
+                        .metadata(chunkMetadata)
+                        .build());
+                if (group.size() == STREAMED_CHUNK_GROUP) {
+                    stored.add(storeGroup(run, file, List.copyOf(group), batcher, dedup, dropped));
+                    group.clear();
                 }
-            } catch (Exception e) {
-                warnings.add("Failed ingesting " + file + ": " + e.getMessage());
+            });
+        }
+        if (!group.isEmpty()) {
+            stored.add(storeGroup(run, file, List.copyOf(group), batcher, dedup, dropped));
+        }
+
+        CompletableFuture.allOf(stored.toArray(CompletableFuture[]::new))
+                .whenComplete((done, e) -> fileStored(run, file, contentHash, chunkCount, dropped, e));
+    }
+
+    private CompletableFuture<Void> storeGroup(IngestRun run, SourceFile file, List<Document> chunks,
+                                               EmbeddingBatcher batcher, ChunkDeduplicator dedup,
+                                               List<Integer> dropped) {
+        chunks = deduplicate(chunks, dedup, file, dropped);
+        run.chunksCreated(chunks.size());
+        return batcher.add(chunks);
+    }
+
+    /**
+     * Drops near-duplicates of chunks already kept in the run, if dedup is enabled.
+     * Uploads keep all their chunks: they cannot be read again should the canonical
+     * chunk change.
+     *
+     * @param chunks  Chunks of one file
+     * @param dedup   Near-duplicate filter, or null
+     * @param file    File the chunks belong to
+     * @param dropped Receives the chunk indices of the dropped chunks
+     * @return Chunks to store
+     */
+    private List<Document> deduplicate(List<Document> chunks, ChunkDeduplicator dedup, SourceFile file,
+                                       List<Integer> dropped) {
+        if (dedup == null)
+            return chunks;
+        List<Document> kept = dedup.filter(chunks, !file.temporary());
+        if (kept.size() < chunks.size()) {
+            Set<String> keptIds = kept.stream().map(Document::getId).collect(Collectors.toSet());
+            for (Document chunk : chunks) {
+                if (!keptIds.contains(chunk.getId()))
+                    dropped.add((Integer) chunk.getMetadata().get("chunkIndex"));
             }
         }
+        duplicateChunks.increment(chunks.size() - kept.size());
+        return kept;
+    }
 
-        return new IngestResult(rawDocs, chunks, warnings);
+    /**
+     * Records which files had chunks dropped in favour of which, so they are
+     * re-ingested when the canonical file changes. Best effort: a failure only
+     * costs the re-ingestion.
+     *
+     * @param run   Current run
+     * @param dedup Near-duplicate filter of the run
+     */
+    private void recordDuplicates(IngestRun run, ChunkDeduplicator dedup) {
+        if (!properties.getManifest().isEnabled())
+            return;
+        try {
+            dedup.duplicateSources().forEach(manifest::recordDuplicates);
+        } catch (RuntimeException e) {
+            run.warnings.add("Failed recording duplicate chunks: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Completes a file once all its chunks were written, or records its failure.
+     *
+     * @param run         Current run
+     * @param file        File whose chunks were written
+     * @param contentHash Content hash of the file
+     * @param chunkCount  Chunk indices used by the file
+     * @param dropped     Chunk indices dropped as near-duplicates
+     * @param failure     Failure of a batch carrying the file's chunks, or null
+     */
+    private void fileStored(IngestRun run, SourceFile file, String contentHash, int chunkCount,
+                            List<Integer> dropped, Throwable failure) {
+        if (failure != null) {
+            run.failed(file, failure);
+            return;
+        }
+        try {
+            completeFile(run, file, contentHash, chunkCount, dropped);
+            run.stored(file, chunkCount);
+        } catch (Exception e) {
+            run.failed(file, e);
+        }
+    }
+
+    /**
+     * Walks the folder and feeds every supported file into the parse stage, except
+     * files whose size and modification time match the manifest.
+     *
+     * @param folder Folder to walk
+     * @param run    Current run
+     * @param parse  Parse stage receiving the files
+     * @throws IOException          If the folder cannot be walked
+     * @throws InterruptedException If interrupted while the parse queue is full
+     */
+    private void discover(Path folder, IngestRun run, PipelineStage<SourceFile> parse)
+            throws IOException, InterruptedException {
+        try (var stream = Files.walk(folder)) {
+            var it = stream.filter(Files::isRegularFile)
+                    .filter(DocumentIngestionService::isSupported)
+                    .iterator();
+            while (it.hasNext()) {
+                offer(it.next(), run, parse);
+            }
+        }
+    }
+
+    /**
+     * Puts one file into the parse stage, unless its size and modification time
+     * match the manifest.
+     *
+     * @param path  Supported file
+     * @param run   Current run
+     * @param parse Parse stage receiving the file
+     * @throws IOException          If the file attributes cannot be read
+     * @throws InterruptedException If the run was cancelled or interrupted while the
+     *                              parse queue is full
+     */
+    private void offer(Path path, IngestRun run, PipelineStage<SourceFile> parse)
+            throws IOException, InterruptedException {
+        if (run.progress.isCancelled())
+            throw new InterruptedException("Ingestion cancelled");
+
+        var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        var file = new SourceFile(path, IngestionManifest.sourceOf(path),
+                attributes.size(), attributes.lastModifiedTime().toMillis(), false);
+        run.seen.add(file.source());
+        run.progress.fileDiscovered();
+
+        var previous = run.previous.get(file.source());
+        if (previous != null && previous.sizeBytes() == file.sizeBytes()
+                && previous.modifiedMillis() == file.modifiedMillis() && !run.reingested.contains(file.source())) {
+            run.skipped(file);
+            return;
+        }
+        parse.put(file);
+    }
+
+    /**
+     * Copies one upload to a temp file and puts it into the parse stage, or rejects it
+     * if its type is not supported or it is too large.
+     *
+     * @param upload Upload, whose content is read to the end
+     * @param run    Current run
+     * @param parse  Parse stage receiving the file
+     * @throws IOException          If the upload cannot be received
+     * @throws InterruptedException If interrupted while the parse queue is full
+     */
+    private void offerUpload(Upload upload, IngestRun run, PipelineStage<SourceFile> parse)
+            throws IOException, InterruptedException {
+        String name = uploadName(upload.filename());
+        String source = UPLOAD_SOURCE_PREFIX + name;
+        run.progress.fileDiscovered();
+        if (name.isEmpty() || !isSupported(Path.of(name))) {
+            reject(run, source, "Unsupported file type (expected .txt, .md or .pdf)");
+            return;
+        }
+
+        long maxBytes = properties.getUpload().getMaxFileSize().toBytes();
+        Path spooled = Files.createTempFile("upload-", "-" + name);
+        long size;
+        try (var out = Files.newOutputStream(spooled)) {
+            size = copyAtMost(upload.content(), out, maxBytes);
+        } catch (IOException e) {
+            Files.deleteIfExists(spooled);
+            throw e;
+        }
+        if (size > maxBytes) {
+            Files.deleteIfExists(spooled);
+            reject(run, source, "File larger than " + properties.getUpload().getMaxFileSize());
+            return;
+        }
+
+        if (properties.getManifest().isEnabled()) {
+            manifest.find(source).ifPresent(entry -> run.previous.put(source, entry));
+        }
+        run.seen.add(source);
+        parse.put(new SourceFile(spooled, source, size, System.currentTimeMillis(), true));
+    }
+
+    private static void reject(IngestRun run, String source, String reason) {
+        run.warnings.add("Rejected " + source + ": " + reason);
+        run.progress.fileProcessed();
+        run.results.accept(new FileResult(source, FileStatus.REJECTED, 0, reason));
+    }
+
+    /**
+     * Copies a stream, stopping one byte past {@code maxBytes}.
+     *
+     * @return Bytes copied; more than {@code maxBytes} if the stream is too long
+     */
+    private static long copyAtMost(InputStream in, OutputStream out, long maxBytes) throws IOException {
+        byte[] buffer = new byte[8192];
+        long copied = 0;
+        int read;
+        while (copied <= maxBytes && (read = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, read);
+            copied += read;
+        }
+        return copied;
+    }
+
+    /**
+     * File name of an upload without any client-side directories, reduced to
+     * characters that are safe in a temp file name.
+     *
+     * @param filename File name sent by the client, or null
+     * @return Sanitized name, empty if there is none
+     */
+    static String uploadName(String filename) {
+        if (filename == null)
+            return "";
+        String name = filename.substring(Math.max(filename.lastIndexOf('/'), filename.lastIndexOf('\\')) + 1);
+        return name.replaceAll("[^\\p{L}\\p{N}._ -]", "_").strip();
+    }
+
+    /**
+     * Whether a file has a supported extension (.txt, .md, .pdf).
+     *
+     * @param path File path
+     * @return True if the file is ingested
+     */
+    static boolean isSupported(Path path) {
+        var name = path.getFileName().toString().toLowerCase();
+        return name.endsWith(".txt") || name.endsWith(".md") || name.endsWith(".pdf");
+    }
+
+    /**
+     * Reads a supported file into raw documents: one per PDF page, or a single one
+     * for TXT/MD files.
+     *
+     * @param file     File to read
+     * @param warnings List to collect warnings during ingestion
+     * @return Raw documents, empty if the file has no usable text, or null if a PDF
+     * could not be read (a warning is recorded)
+     * @throws IOException If a text file cannot be read
+     */
+    private List<Document> readFile(SourceFile file, List<String> warnings) throws IOException {
+        if (isPdf(file.path())) {
+            // PDF: create one Document per page (better retrieval + source tracing)
+            return readPdfAsDocuments(file.path(), file.source(), warnings);
+        }
+
+        // TXT/MD: single Document for file
+        String content = Files.readString(file.path(), StandardCharsets.UTF_8);
+        if (content == null || content.isBlank())
+            return List.of();
+
+        var doc = new Document(content);
+        doc.getMetadata().put("source", file.source());
+        doc.getMetadata().put("fileType", fileTypeOf(file.path()));
+        return List.of(doc);
+    }
+
+    private static boolean isPdf(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".pdf");
+    }
+
+    /**
+     * File type metadata of a text file.
+     *
+     * @param file TXT or MD file
+     * @return "md" or "txt"
+     */
+    private static String fileTypeOf(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith(".md") ? "md" : "txt";
     }
 
     /**
      * Reads a PDF file and splits its content into multiple documents.
      *
      * @param pdfPath  Path to the PDF file
+     * @param source   Source key of the PDF, stored in the page metadata
      * @param warnings List to collect warnings during ingestion
-     * @return List of Document objects representing the split content
+     * @return List of Document objects representing the split content, or null if
+     * the PDF could not be read
      */
-    private List<Document> readPdfAsDocuments(Path pdfPath, List<String> warnings) {
+    private List<Document> readPdfAsDocuments(Path pdfPath, String source, List<String> warnings) {
         List<Document> docs = new ArrayList<>();
 
-        // Extracts text from PDF pages into documents; collects warnings
-        try (PDDocument pdf = Loader.loadPDF(pdfPath.toFile())) {
+        // Extracts text from all PDF pages in one pass; collects warnings
+        try {
+            pdfReader.read(pdfPath, source, docs::add);
 
-            int totalPages = pdf.getNumberOfPages();
-            PDFTextStripper stripper = new PDFTextStripper();
+            if (docs.isEmpty()) {
+                warnings.add("No extractable text found in PDF (may be scanned image): " + source);
+            }
+        } catch (Exception e) {
+            warnings.add("Failed reading PDF " + source + ": " + e.getMessage());
+            return null;
+        }
 
-            // Extracts text from each page into document
-            for (int page = 1; page <= totalPages; page++) {
-                stripper.setStartPage(page);
-                stripper.setEndPage(page);
+        return docs;
+    }
 
-                String text = stripper.getText(pdf);
-                if (text == null || text.isBlank()) {
-                    // Could be scanned-image PDF or empty page
-                    continue;
-                }
+    /**
+     * Gives split chunks deterministic IDs (source + chunk index) so re-ingesting a
+     * changed file overwrites its previous chunks instead of duplicating them.
+     *
+     * @param chunks Chunks produced by the splitter
+     * @param pages  Raw pages the chunks came from
+     * @return Chunks with stable IDs and provenance metadata
+     */
+    private List<Document> withChunkIds(List<Document> chunks, FileDocuments pages) {
+        List<Document> identified = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            Document chunk = chunks.get(i);
+            Map<String, Object> metadata = new HashMap<>(chunk.getMetadata());
+            metadata.put("contentHash", pages.contentHash());
+            metadata.put("chunkIndex", i);
+            identified.add(Document.builder()
+                    .id(IngestionManifest.chunkId(pages.file().source(), i))
+                    .text(chunk.getText())
+                    .metadata(metadata)
+                    .build());
+        }
+        return identified;
+    }
 
-                Document doc = new Document(text);
-                doc.getMetadata().put("source", pdfPath.toAbsolutePath().toString());
-                doc.getMetadata().put("fileType", "pdf");
-                doc.getMetadata().put("page", page);
+    /**
+     * Finishes a file once its chunks are stored: deletes chunks of the previous
+     * version that were not overwritten (a longer tail, or indices dropped as
+     * near-duplicates) and records the file in the manifest.
+     *
+     * @param run         Current run
+     * @param file        File that was ingested
+     * @param contentHash Content hash of the ingested version
+     * @param chunkCount  Chunk indices used by the file
+     * @param dropped     Chunk indices dropped as near-duplicates, so not written
+     */
+    private void completeFile(IngestRun run, SourceFile file, String contentHash, int chunkCount,
+                              List<Integer> dropped) {
+        if (!properties.getManifest().isEnabled())
+            return;
 
-                docs.add(doc);
+        var previous = run.previous.get(file.source());
+        if (previous != null) {
+            List<String> stale = new ArrayList<>(
+                    IngestionManifest.chunkIds(file.source(), chunkCount, previous.chunkCount()));
+            for (int index : dropped) {
+                if (index < previous.chunkCount())
+                    stale.add(IngestionManifest.chunkId(file.source(), index));
+            }
+            if (!stale.isEmpty())
+                vectorStore.delete(stale);
+            if (!previous.contentHash().equals(contentHash)) {
+                // Its chunks were rewritten: files deduplicated against them must be read again
+                run.changed.add(file.source());
+                manifest.removeDuplicates(file.source());
             }
+        }
+        manifest.record(new IngestionManifest.Entry(
+                file.source(), file.sizeBytes(), file.modifiedMillis(), contentHash, chunkCount));
+    }
 
-            if (docs.isEmpty()) {
-                warnings.add("No extractable text found in PDF (may be scanned image): " + pdfPath.toAbsolutePath());
+    /**
+     * Deletes the chunks and manifest entries of files that were ingested before but
+     * are no longer in the folder.
+     *
+     * @param run Current run
+     */
+    private void removeVanished(IngestRun run) {
+        for (var entry : run.previous.values()) {
+            if (run.seen.contains(entry.source()))
+                continue;
+            try {
+                if (entry.chunkCount() > 0) {
+                    vectorStore.delete(IngestionManifest.chunkIds(entry.source(), 0, entry.chunkCount()));
+                }
+                manifest.remove(entry.source());
+                manifest.removeDuplicates(entry.source());
+                run.changed.add(entry.source());
+                run.removed.incrementAndGet();
+            } catch (Exception e) {
+                run.warnings.add("Failed removing " + entry.source() + ": " + e.getMessage());
             }
-        } catch (Exception e) {
-            warnings.add("Failed reading PDF " + pdfPath.toAbsolutePath() + ": " + e.getMessage());
         }
+    }
 
-        return docs;
+    /**
+     * Re-ingests files that had chunks dropped as near-duplicates of chunks whose file
+     * changed or was deleted in this run: those chunks may be gone now, and the
+     * unchanged duplicates would otherwise be skipped for good. Their results are
+     * added to the run's.
+     *
+     * @param run        Current run
+     * @param reingested Sources already re-ingested for this reason in this call
+     * @throws IOException If the files cannot be read
+     */
+    private void reingestDependents(IngestRun run, Set<String> reingested) throws IOException {
+        if (!properties.getManifest().isEnabled() || run.changed.isEmpty())
+            return;
+
+        List<Path> paths = new ArrayList<>();
+        for (String source : manifest.dependentsOf(run.changed)) {
+            if (run.ingestedSources.contains(source) || source.startsWith(UPLOAD_SOURCE_PREFIX)
+                    || !reingested.add(source))
+                continue;
+            manifest.removeDuplicates(source);
+            paths.add(Path.of(source));
+        }
+        if (!paths.isEmpty())
+            run.add(ingestPaths(paths, reingested));
+    }
+
+    /**
+     * Tells listeners (e.g. answer caches) that the documents changed, if the run
+     * stored or deleted any chunks; a failed run may have stored some before failing.
+     *
+     * @param run Finished run
+     */
+    private void publishIfChanged(IngestRun run) {
+        if (run.ingested.get() > 0 || run.chunks.get() > 0 || run.removed.get() > 0) {
+            eventPublisher.publishEvent(new CorpusChangedEvent(run.ingested.get(), run.removed.get()));
+        }
+    }
+
+    /**
+     * Supplies uploaded files one at a time, e.g. from a streamed multipart request.
+     */
+    @FunctionalInterface
+    public interface UploadSource {
+
+        /**
+         * Returns the next upload; the previous upload's content is no longer read.
+         *
+         * @return Next upload, or null after the last one
+         * @throws IOException If the uploads cannot be read
+         */
+        Upload next() throws IOException;
+    }
+
+    /**
+     * One uploaded file.
+     *
+     * @param filename File name sent by the client
+     * @param content  File content, read once
+     */
+    public record Upload(String filename, InputStream content) {
+    }
+
+    /**
+     * Outcome of one file of a run.
+     *
+     * @param source Source key of the file
+     * @param status What happened to the file
+     * @param chunks Chunks stored for the file
+     * @param error  Why the file failed or was rejected, otherwise null
+     */
+    public record FileResult(String source, FileStatus status, int chunks, String error) {
+    }
+
+    /**
+     * What happened to a file during a run: chunks stored, left alone because its
+     * content did not change, rejected (unsupported type or too large), or failed.
+     */
+    public enum FileStatus {
+        INGESTED, UNCHANGED, REJECTED, FAILED
+    }
+
+    /**
+     * Puts the files of a run into the parse stage.
+     */
+    @FunctionalInterface
+    private interface Feeder {
+        void feed(PipelineStage<SourceFile> parse) throws IOException, InterruptedException;
+    }
+
+    /**
+     * A discovered file together with the attributes recorded in the manifest.
+     *
+     * @param path           File path
+     * @param source         Source key (absolute, normalized path, or {@code upload:<name>})
+     * @param sizeBytes      File size
+     * @param modifiedMillis Last-modified time (epoch millis)
+     * @param temporary      Spooled upload, deleted once parsed
+     */
+    private record SourceFile(Path path, String source, long sizeBytes, long modifiedMillis, boolean temporary) {
+    }
+
+    /**
+     * Documents belonging to one source file, as handed between pipeline stages.
+     *
+     * @param file        Source file
+     * @param contentHash Content hash of the file
+     * @param documents   Raw pages or split chunks of the file
+     */
+    private record FileDocuments(SourceFile file, String contentHash, List<Document> documents) {
+    }
+
+    /**
+     * Chunks of one source file, as handed to the store stage.
+     *
+     * @param file        Source file
+     * @param contentHash Content hash of the file
+     * @param chunks      Chunks to store (near-duplicates of other chunks removed)
+     * @param chunkCount     Chunk indices used by the file, dropped duplicates included
+     * @param droppedIndices Chunk indices dropped as near-duplicates
+     */
+    private record FileChunks(SourceFile file, String contentHash, List<Document> chunks, int chunkCount,
+                              List<Integer> droppedIndices) {
+    }
+
+    /**
+     * Totals and warnings of one ingestion run, shared by all pipeline workers.
+     */
+    private static final class IngestRun {
+
+        private final AtomicInteger documents = new AtomicInteger();
+
+        private final AtomicInteger chunks = new AtomicInteger();
+
+        private final AtomicInteger skipped = new AtomicInteger();
+
+        private final AtomicInteger removed = new AtomicInteger();
+
+        private final AtomicInteger ingested = new AtomicInteger();
+
+        private final List<String> warnings = Collections.synchronizedList(new ArrayList<>());
+
+        /**
+         * Manifest entries under the folder as of the start of the run.
+         */
+        private final Map<String, IngestionManifest.Entry> previous;
+
+        /**
+         * Sources found by discovery; manifest entries not in here were removed.
+         */
+        private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Live counters exposed to pollers of the run.
+         */
+        private final IngestionProgress progress;
+
+        /**
+         * Sources read again even if unchanged, because chunks they duplicated changed.
+         */
+        private final Set<String> reingested;
+
+        /**
+         * Sources whose stored chunks were rewritten or deleted in this run.
+         */
+        private final Set<String> changed = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Sources whose chunks were stored in this run.
+         */
+        private final Set<String> ingestedSources = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Receives the outcome of every file as soon as it is known.
+         */
+        private final Consumer<FileResult> results;
+
+        private IngestRun(Map<String, IngestionManifest.Entry> previous, IngestionProgress progress) {
+            this(previous, progress, Set.of());
+        }
+
+        private IngestRun(Map<String, IngestionManifest.Entry> previous, IngestionProgress progress,
+                          Set<String> reingested) {
+            this(previous, progress, reingested, result -> {
+            });
+        }
+
+        private IngestRun(Map<String, IngestionManifest.Entry> previous, IngestionProgress progress,
+                          Set<String> reingested, Consumer<FileResult> results) {
+            this.previous = previous;
+            this.progress = progress;
+            this.reingested = reingested;
+            this.results = results;
+        }
+
+        private void pagesRead(int count) {
+            documents.addAndGet(count);
+            progress.pagesRead(count);
+        }
+
+        private void chunksCreated(int count) {
+            chunks.addAndGet(count);
+            progress.chunksCreated(count);
+        }
+
+        /**
+         * Records a file left alone because it did not change.
+         *
+         * @param file Unchanged file
+         */
+        private void skipped(SourceFile file) {
+            skipped.incrementAndGet();
+            progress.fileProcessed();
+            results.accept(new FileResult(file.source(), FileStatus.UNCHANGED, 0, null));
+        }
+
+        /**
+         * Records a file whose chunks are all stored.
+         *
+         * @param file       Ingested file
+         * @param chunkCount Chunks stored for it
+         */
+        private void stored(SourceFile file, int chunkCount) {
+            ingestedSources.add(file.source());
+            ingested.incrementAndGet();
+            progress.fileProcessed();
+            results.accept(new FileResult(file.source(), FileStatus.INGESTED, chunkCount, null));
+        }
+
+        /**
+         * Records a PDF that could not be read (the reader recorded a warning).
+         *
+         * @param file Unreadable file
+         */
+        private void unreadable(SourceFile file) {
+            progress.fileProcessed();
+            results.accept(new FileResult(file.source(), FileStatus.FAILED, 0, "PDF could not be read"));
+        }
+
+        /**
+         * Records a file that could not be ingested.
+         *
+         * @param file File that failed
+         * @param e    Failure cause
+         */
+        private void failed(SourceFile file, Throwable e) {
+            warnings.add("Failed ingesting " + file.source() + ": " + e.getMessage());
+            progress.fileProcessed();
+            results.accept(new FileResult(file.source(), FileStatus.FAILED, 0, e.getMessage()));
+        }
+
+        /**
+         * Adds the result of a follow-up ingestion to this run's.
+         *
+         * @param other Result of the follow-up
+         */
+        private void add(IngestResult other) {
+            documents.addAndGet(other.documents());
+            chunks.addAndGet(other.chunks());
+            skipped.addAndGet(other.skipped());
+            removed.addAndGet(other.removed());
+            warnings.addAll(other.warnings());
+        }
+
+        private IngestResult result() {
+            return new IngestResult(documents.get(), chunks.get(), skipped.get(), removed.get(), List.copyOf(warnings));
+        }
     }
 
     /**
@@ -177,8 +1155,21 @@ public class DocumentIngestionService {
      *
      * @param documents Number of documents processed
      * @param chunks    Number of chunks created from documents
+     * @param skipped   Number of files skipped because they did not change
+     * @param removed   Number of previously ingested files whose chunks were deleted
      * @param warnings  List of warnings encountered during ingestion
      */
-    public record IngestResult(int documents, int chunks, List<String> warnings) {
+    public record IngestResult(int documents, int chunks, int skipped, int removed, List<String> warnings) {
+
+        /**
+         * Result of a run that neither skipped nor removed any file.
+         *
+         * @param documents Number of documents processed
+         * @param chunks    Number of chunks created from documents
+         * @param warnings  List of warnings encountered during ingestion
+         */
+        public IngestResult(int documents, int chunks, List<String> warnings) {
+            this(documents, chunks, 0, 0, warnings);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,371 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.IngestionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Groups chunks from many files into right-sized embedding requests.
+ * <p>
+ * Chunks are buffered until one of three limits is hit: the chunk count, the
+ * estimated token count, or the maximum time the oldest chunk may wait. The batch
+ * is then handed to the sink (the vector store, which embeds and writes it), so
+ * many small files share one Ollama round-trip and huge files are cut into several.
+ * <p>
+ * One batcher lives for one ingestion run; {@link #close()} flushes what is left.
+ */
+public class EmbeddingBatcher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingBatcher.class);
+
+    /**
+     * Receives full batches (typically {@code vectorStore::add}).
+     */
+    private final Consumer<List<Document>> sink;
+
+    /**
+     * Token estimator used for the token limit.
+     */
+    private final TokenCountEstimator tokenEstimator;
+
+    /**
+     * Flush when this many chunks are pending.
+     */
+    private final int maxChunks;
+
+    /**
+     * Flush when the pending chunks are estimated at this many tokens.
+     */
+    private final int maxTokens;
+
+    /**
+     * Flush when the oldest pending chunk has waited this long (nanos).
+     */
+    private final long maxWaitNanos;
+
+    /**
+     * Chunks waiting for a batch, in arrival order. Guarded by {@code this}.
+     */
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+
+    /**
+     * Estimated tokens of the pending chunks. Guarded by {@code this}.
+     */
+    private long pendingTokens;
+
+    /**
+     * Set by {@link #abort()}; no batch reaches the sink afterwards. Guarded by {@code this}.
+     */
+    private boolean aborted;
+
+    /**
+     * Fires the max-wait trigger.
+     */
+    private final ScheduledExecutorService ticker;
+
+    private final DistributionSummary batchChunks;
+
+    private final DistributionSummary batchTokens;
+
+    private final Timer batchTimer;
+
+    private final Counter embeddedChunks;
+
+    private final MeterRegistry meterRegistry;
+
+    private final LongAdder runChunks = new LongAdder();
+
+    private final LongAdder runBatches = new LongAdder();
+
+    private final long startedNanos = System.nanoTime();
+
+    /**
+     * Creates a batcher and starts its max-wait ticker.
+     *
+     * @param sink           Receives full batches
+     * @param settings       Batch limits
+     * @param tokenEstimator Token estimator used for the token limit
+     * @param meterRegistry  Registry for batch-size and throughput metrics
+     */
+    public EmbeddingBatcher(Consumer<List<Document>> sink, IngestionProperties.Batch settings,
+                            TokenCountEstimator tokenEstimator, MeterRegistry meterRegistry) {
+        this.sink = sink;
+        this.tokenEstimator = tokenEstimator;
+        this.maxChunks = Math.max(1, settings.getMaxChunks());
+        this.maxTokens = Math.max(1, settings.getMaxTokens());
+        this.maxWaitNanos = settings.getMaxWait().toNanos();
+        this.meterRegistry = meterRegistry;
+
+        this.batchChunks = DistributionSummary.builder("rag.ingest.embedding.batch.chunks")
+                .description("Chunks per embedding batch")
+                .register(meterRegistry);
+        this.batchTokens = DistributionSummary.builder("rag.ingest.embedding.batch.tokens")
+                .description("Estimated tokens per embedding batch")
+                .register(meterRegistry);
+        this.batchTimer = Timer.builder("rag.ingest.embedding.batch.duration")
+                .description("Time to embed and store one batch")
+                .register(meterRegistry);
+        this.embeddedChunks = Counter.builder("rag.ingest.embedding.chunks")
+                .description("Chunks embedded and stored")
+                .register(meterRegistry);
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("embedding-batcher").factory());
+        long tick = Math.max(1, TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) / 2);
+        this.ticker.scheduleWithFixedDelay(this::flushStale, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues the chunks of one file. If a limit is reached, full batches are written
+     * on the calling thread, so the caller's parallelism bounds concurrent requests.
+     *
+     * @param chunks Chunks of one file
+     * @return Future completing once every given chunk is stored, or exceptionally
+     * with the failure of the batch that carried any of them
+     */
+    public CompletableFuture<Void> add(List<Document> chunks) {
+        if (chunks.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        var group = new Group(chunks.size());
+        long now = System.nanoTime();
+        synchronized (this) {
+            if (aborted) {
+                return CompletableFuture.failedFuture(new CancellationException("Ingestion cancelled"));
+            }
+            for (Document chunk : chunks) {
+                int tokens = tokenEstimator.estimate(chunk.getText());
+                pending.add(new Pending(chunk, tokens, now, group));
+                pendingTokens += tokens;
+            }
+        }
+
+        Batch batch;
+        while ((batch = takeBatch(false)) != null) {
+            write(batch);
+        }
+        return group.future;
+    }
+
+    /**
+     * Writes everything still pending, regardless of the limits.
+     */
+    public void flush() {
+        Batch batch;
+        while ((batch = takeBatch(true)) != null) {
+            write(batch);
+        }
+    }
+
+    /**
+     * Stops the max-wait ticker and flushes the remaining chunks.
+     */
+    @Override
+    public void close() {
+        ticker.shutdown();
+        try {
+            // Let an in-progress timed flush finish so its callbacks run before we return
+            ticker.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+
+        double seconds = (System.nanoTime() - startedNanos) / 1e9;
+        long chunks = runChunks.sum();
+        if (chunks > 0) {
+            logger.info("Embedded {} chunks in {} batches ({} chunks/s)",
+                    chunks, runBatches.sum(), String.format("%.1f", chunks / Math.max(seconds, 1e-3)));
+        }
+    }
+
+    /**
+     * Stops the ticker and drops the pending chunks without writing them; their
+     * files' futures fail with a {@link CancellationException}. Used when a run is
+     * cancelled. Waits for a timed flush already in the sink, so none reaches it
+     * after this returns.
+     */
+    public void abort() {
+        List<Pending> dropped;
+        synchronized (this) {
+            aborted = true;
+            dropped = new ArrayList<>(pending);
+            pending.clear();
+            pendingTokens = 0;
+        }
+        ticker.shutdownNow();
+        // The caller is usually being interrupted: wait anyway, the sink may be about to close
+        boolean interrupted = Thread.interrupted();
+        try {
+            if (!ticker.awaitTermination(1, TimeUnit.MINUTES))
+                logger.warn("Timed embedding batch flush still running after abort");
+        } catch (InterruptedException e) {
+            interrupted = true;
+        } finally {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+
+        var cancelled = new CancellationException("Ingestion cancelled");
+        for (Pending p : dropped) {
+            p.group().future.completeExceptionally(cancelled);
+        }
+    }
+
+    /**
+     * Ticker callback: writes pending chunks once the oldest has waited too long.
+     */
+    private void flushStale() {
+        try {
+            Batch batch;
+            while ((batch = takeBatch(false)) != null) {
+                write(batch);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Timed embedding batch flush failed", e);
+        }
+    }
+
+    /**
+     * Removes the next batch from the queue if a limit is reached (or {@code force}).
+     *
+     * @param force Take a batch even if no limit is reached
+     * @return Next batch, or null if none is due
+     */
+    private synchronized Batch takeBatch(boolean force) {
+        if (pending.isEmpty())
+            return null;
+
+        String trigger;
+        if (pending.size() >= maxChunks)
+            trigger = "size";
+        else if (pendingTokens >= maxTokens)
+            trigger = "tokens";
+        else if (System.nanoTime() - pending.peekFirst().enqueuedNanos() >= maxWaitNanos)
+            trigger = "wait";
+        else if (force)
+            trigger = "flush";
+        else
+            return null;
+        return drainBatch(trigger);
+    }
+
+    /**
+     * Removes up to {@code maxChunks} chunks / {@code maxTokens} tokens from the head
+     * of the queue. A single chunk over the token limit still forms a batch of one.
+     *
+     * @param trigger Limit that caused the flush
+     * @return The batch
+     */
+    private Batch drainBatch(String trigger) {
+        List<Pending> batch = new ArrayList<>(Math.min(pending.size(), maxChunks));
+        long tokens = 0;
+        while (!pending.isEmpty() && batch.size() < maxChunks) {
+            Pending next = pending.peekFirst();
+            if (!batch.isEmpty() && tokens + next.tokens() > maxTokens)
+                break;
+            pending.pollFirst();
+            tokens += next.tokens();
+            batch.add(next);
+        }
+        pendingTokens -= tokens;
+        return new Batch(batch, tokens, trigger);
+    }
+
+    /**
+     * Hands a batch to the sink and completes the futures of the files it carried.
+     *
+     * @param batch Batch to write
+     */
+    private void write(Batch batch) {
+        List<Document> documents = new ArrayList<>(batch.chunks().size());
+        for (Pending p : batch.chunks()) {
+            documents.add(p.chunk());
+        }
+
+        synchronized (this) {
+            if (aborted) {
+                var cancelled = new CancellationException("Ingestion cancelled");
+                for (Pending p : batch.chunks()) {
+                    p.group().future.completeExceptionally(cancelled);
+                }
+                return;
+            }
+        }
+
+        try {
+            batchTimer.record(() -> sink.accept(documents));
+        } catch (RuntimeException e) {
+            for (Pending p : batch.chunks()) {
+                p.group().future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        batchChunks.record(documents.size());
+        batchTokens.record(batch.tokens());
+        embeddedChunks.increment(documents.size());
+        meterRegistry.counter("rag.ingest.embedding.batches", "trigger", batch.trigger()).increment();
+        runChunks.add(documents.size());
+        runBatches.increment();
+
+        for (Pending p : batch.chunks()) {
+            if (p.group().remaining.decrementAndGet() == 0) {
+                p.group().future.complete(null);
+            }
+        }
+    }
+
+    /**
+     * A buffered chunk.
+     *
+     * @param chunk         Chunk to embed
+     * @param tokens        Estimated tokens of the chunk
+     * @param enqueuedNanos When the chunk was queued
+     * @param group         Chunks added together (one file)
+     */
+    private record Pending(Document chunk, int tokens, long enqueuedNanos, Group group) {
+    }
+
+    /**
+     * Chunks taken from the queue to be written together.
+     *
+     * @param chunks  Chunks in arrival order
+     * @param tokens  Estimated tokens of the batch
+     * @param trigger Limit that caused the flush: size, tokens, wait or flush
+     */
+    private record Batch(List<Pending> chunks, long tokens, String trigger) {
+    }
+
+    /**
+     * Tracks the chunks added in one {@link #add(List)} call.
+     */
+    private static final class Group {
+
+        private final AtomicInteger remaining;
+
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+        private Group(int size) {
+            this.remaining = new AtomicInteger(size);
+        }
+    }
+}
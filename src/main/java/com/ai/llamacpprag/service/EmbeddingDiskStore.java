@@ -0,0 +1,295 @@
+package com.ai.llamacpprag.service;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * On-disk tier of the embedding cache: a memory-mapped file of fixed-width float
+ * vectors plus an append-only index of their keys.
+ * <p>
+ * {@code index.bin} holds a header (magic, version, dimensions) followed by one
+ * 32-byte key per vector; the n-th key belongs to the n-th record of
+ * {@code vectors.f32}. Vectors are forced to disk before their keys are written,
+ * once per {@link #putAll batch}, so neither a process crash nor a power loss can
+ * leave a key pointing at a vector that never reached the disk; at worst the last
+ * entries are lost. The index is
+ * loaded into a hash map on open; lookups then read the vector straight from the
+ * mapped file.
+ */
+public class EmbeddingDiskStore implements AutoCloseable {
+
+    /**
+     * Length of a key (a SHA-256 digest).
+     */
+    public static final int KEY_BYTES = 32;
+
+    private static final int MAGIC = 0x454D4243; // "EMBC"
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+
+    /**
+     * Vector records per mapped segment of the vector file.
+     */
+    private final int recordsPerSegment;
+
+    private final FileChannel indexChannel;
+
+    private final FileChannel vectorChannel;
+
+    /**
+     * Record number of every stored key.
+     */
+    private final Map<ByteBuffer, Integer> slots = new ConcurrentHashMap<>();
+
+    /**
+     * Mapped segments of the vector file, grown on demand.
+     */
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+
+    /**
+     * Floats per vector; 0 until the first vector is stored in a new store.
+     */
+    private volatile int dimensions;
+
+    /**
+     * Number of records written. Guarded by {@code this}.
+     */
+    private int count;
+
+    /**
+     * Opens (or creates) the store in the given directory.
+     *
+     * @param directory Directory holding {@code index.bin} and {@code vectors.f32}
+     * @throws IOException If the files cannot be opened or are not a cache index
+     */
+    public EmbeddingDiskStore(Path directory) throws IOException {
+        this(directory, 16_384);
+    }
+
+    EmbeddingDiskStore(Path directory, int recordsPerSegment) throws IOException {
+        this.recordsPerSegment = recordsPerSegment;
+        Files.createDirectories(directory);
+        this.indexChannel = FileChannel.open(directory.resolve("index.bin"), CREATE, READ, WRITE);
+        this.vectorChannel = FileChannel.open(directory.resolve("vectors.f32"), CREATE, READ, WRITE);
+        try {
+            load();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Looks up a vector.
+     *
+     * @param key 32-byte key
+     * @return Copy of the stored vector, or null if the key is unknown
+     */
+    public float[] get(byte[] key) {
+        Integer slot = slots.get(ByteBuffer.wrap(key));
+        if (slot == null)
+            return null;
+
+        int dims = dimensions;
+        int recordBytes = dims * Float.BYTES;
+        MappedByteBuffer segment = segments.get(slot / recordsPerSegment);
+        float[] vector = new float[dims];
+        segment.slice((slot % recordsPerSegment) * recordBytes, recordBytes).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * Stores a vector unless its key is already present.
+     *
+     * @param key    32-byte key
+     * @param vector Vector to store
+     * @return False if the vector does not have the store's dimensions
+     * @throws IOException If the files cannot be written
+     */
+    public boolean put(byte[] key, float[] vector) throws IOException {
+        return putAll(List.of(key), List.of(vector)) == 0;
+    }
+
+    /**
+     * Stores a batch of vectors, skipping keys already present: writes the vectors,
+     * forces them to disk with one sync, then appends their keys.
+     *
+     * @param keys    32-byte keys
+     * @param vectors Vector of each key, in the same order
+     * @return Number of vectors rejected because they do not have the store's dimensions
+     * @throws IOException If the files cannot be written
+     */
+    public synchronized int putAll(List<byte[]> keys, List<float[]> vectors) throws IOException {
+        if (keys.size() != vectors.size())
+            throw new IllegalArgumentException(keys.size() + " keys but " + vectors.size() + " vectors");
+
+        int first = count;
+        int rejected = 0;
+        Map<ByteBuffer, Integer> added = new LinkedHashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            float[] vector = vectors.get(i);
+            if (key.length != KEY_BYTES)
+                throw new IllegalArgumentException("Key must be " + KEY_BYTES + " bytes");
+            var wrapped = ByteBuffer.wrap(key.clone());
+            if (slots.containsKey(wrapped) || added.containsKey(wrapped))
+                continue;
+            if (dimensions == 0) {
+                writeHeader(vector.length);
+            } else if (vector.length != dimensions) {
+                rejected++;
+                continue;
+            }
+
+            int slot = first + added.size();
+            int recordBytes = dimensions * Float.BYTES;
+            segment(slot / recordsPerSegment).slice((slot % recordsPerSegment) * recordBytes, recordBytes)
+                    .asFloatBuffer().put(vector);
+            added.put(wrapped, slot);
+        }
+        if (added.isEmpty())
+            return rejected;
+
+        // The OS may write the keys' page back before the vectors': make the vectors durable first
+        int end = first + added.size();
+        int recordBytes = dimensions * Float.BYTES;
+        for (int slot = first; slot < end; ) {
+            int segmentEnd = Math.min(end, (slot / recordsPerSegment + 1) * recordsPerSegment);
+            segments.get(slot / recordsPerSegment)
+                    .force((slot % recordsPerSegment) * recordBytes, (segmentEnd - slot) * recordBytes);
+            slot = segmentEnd;
+        }
+
+        ByteBuffer entries = ByteBuffer.allocate(added.size() * KEY_BYTES);
+        for (ByteBuffer key : added.keySet()) {
+            entries.put(key.duplicate());
+        }
+        entries.flip();
+        long position = HEADER_BYTES + (long) first * KEY_BYTES;
+        while (entries.hasRemaining()) {
+            position += indexChannel.write(entries, position);
+        }
+
+        count = end;
+        slots.putAll(added);
+        return rejected;
+    }
+
+    /**
+     * Number of stored vectors.
+     *
+     * @return Entry count
+     */
+    public int size() {
+        return slots.size();
+    }
+
+    /**
+     * Flushes the mapped vectors and closes the files.
+     *
+     * @throws IOException If the files cannot be closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+        try (indexChannel; vectorChannel) {
+            if (indexChannel.isOpen())
+                indexChannel.force(false);
+        }
+    }
+
+    /**
+     * Reads the index into {@link #slots}, dropping a partially written last key.
+     *
+     * @throws IOException If the index is not a cache index
+     */
+    private void load() throws IOException {
+        long size = indexChannel.size();
+        if (size < HEADER_BYTES) {
+            indexChannel.truncate(0);
+            return;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        readFully(header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION)
+            throw new IOException("Not an embedding cache index: " + indexChannel);
+        dimensions = header.getInt();
+
+        int entries = Math.toIntExact((size - HEADER_BYTES) / KEY_BYTES);
+        indexChannel.truncate(HEADER_BYTES + (long) entries * KEY_BYTES);
+
+        ByteBuffer keys = ByteBuffer.allocate(KEY_BYTES * 1024);
+        long position = HEADER_BYTES;
+        int slot = 0;
+        while (slot < entries) {
+            keys.clear();
+            keys.limit(Math.min(keys.capacity(), (entries - slot) * KEY_BYTES));
+            readFully(keys, position);
+            position += keys.limit();
+            keys.flip();
+            while (keys.hasRemaining()) {
+                byte[] key = new byte[KEY_BYTES];
+                keys.get(key);
+                slots.put(ByteBuffer.wrap(key), slot++);
+            }
+        }
+        count = entries;
+        for (int i = 0; i * (long) recordsPerSegment < count; i++) {
+            segment(i);
+        }
+    }
+
+    private void writeHeader(int dims) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putInt(dims);
+        header.flip();
+        long position = 0;
+        while (header.hasRemaining()) {
+            position += indexChannel.write(header, position);
+        }
+        dimensions = dims;
+    }
+
+    /**
+     * Returns a mapped segment of the vector file, mapping it (and growing the file)
+     * if needed.
+     *
+     * @param index Segment number
+     * @return Mapped segment
+     * @throws IOException If the file cannot be mapped
+     */
+    private MappedByteBuffer segment(int index) throws IOException {
+        long segmentBytes = (long) recordsPerSegment * dimensions * Float.BYTES;
+        while (segments.size() <= index) {
+            segments.add(vectorChannel.map(FileChannel.MapMode.READ_WRITE, segments.size() * segmentBytes, segmentBytes));
+        }
+        return segments.get(index);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = indexChannel.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of embedding cache index");
+            position += read;
+        }
+    }
+}
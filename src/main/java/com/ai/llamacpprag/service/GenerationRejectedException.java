@@ -0,0 +1,30 @@
+package com.ai.llamacpprag.service;
+
+import java.time.Duration;
+
+/**
+ * Thrown when the {@link GenerationScheduler} turns a generation away: its wait
+ * queue is full, or no slot freed up in time. Answered with 429 Too Many Requests.
+ */
+public class GenerationRejectedException extends RuntimeException {
+
+    /**
+     * Estimated time until a slot is free.
+     */
+    private final Duration retryAfter;
+
+    /**
+     * Constructs a GenerationRejectedException.
+     *
+     * @param message    Reason of the rejection
+     * @param retryAfter Estimated time until a slot is free
+     */
+    public GenerationRejectedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
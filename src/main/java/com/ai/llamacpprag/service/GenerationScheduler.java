@@ -0,0 +1,206 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.GenerationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control in front of the llama.cpp chat model: at most
+ * {@code maxConcurrent} generations run at once, matching the server's slots, so
+ * requests wait here, visibly, instead of queueing inside llama.cpp.
+ * <p>
+ * Requests finding every slot busy wait in first-come, first-served order (a fair
+ * semaphore). At most {@code maxQueue} wait; the next one is rejected at once, and
+ * one still waiting after {@code queueTimeout} gives up, both with a
+ * {@link GenerationRejectedException} (429 with {@code Retry-After}). The
+ * {@code Retry-After} estimate is the mean generation time times the rounds of
+ * slots the queue ahead needs.
+ * <p>
+ * Streamed generations take their slot when subscribed and return it when the
+ * stream completes, fails or is cancelled.
+ * <p>
+ * Meters: {@code rag.generation.queue.depth} (requests waiting),
+ * {@code rag.generation.active} (slots in use), {@code rag.generation.wait} (time
+ * to get a slot), {@code rag.generation.duration} (time holding it) and
+ * {@code rag.generation.rejected} (tag {@code reason}: {@code queue-full} or
+ * {@code timeout}).
+ */
+public class GenerationScheduler implements ChatModel {
+
+    private static final Logger logger = LoggerFactory.getLogger(GenerationScheduler.class);
+
+    private final ChatModel delegate;
+
+    /**
+     * Free slots; fair, so waiting requests are admitted in arrival order.
+     */
+    private final Semaphore slots;
+
+    private final int maxConcurrent;
+
+    private final int maxQueue;
+
+    private final Duration queueTimeout;
+
+    /**
+     * Retry-After while no generation has been timed.
+     */
+    private final Duration defaultRetryAfter;
+
+    /**
+     * Requests waiting for a slot.
+     */
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Timer waitTime;
+
+    private final Timer generationTime;
+
+    private final Counter rejectedQueueFull;
+
+    private final Counter rejectedTimeout;
+
+    /**
+     * Constructs a GenerationScheduler.
+     *
+     * @param delegate      Chat model generating the answers
+     * @param properties    Concurrency limit, queue bound and timeouts
+     * @param meterRegistry Registry for queue and slot metrics
+     */
+    public GenerationScheduler(ChatModel delegate, GenerationProperties properties, MeterRegistry meterRegistry) {
+        if (properties.getMaxConcurrent() < 1 || properties.getMaxQueue() < 0)
+            throw new IllegalArgumentException("rag.generation needs max-concurrent >= 1 and max-queue >= 0");
+        this.delegate = delegate;
+        this.maxConcurrent = properties.getMaxConcurrent();
+        this.maxQueue = properties.getMaxQueue();
+        this.queueTimeout = properties.getQueueTimeout();
+        this.defaultRetryAfter = properties.getRetryAfter();
+        this.slots = new Semaphore(maxConcurrent, true);
+
+        Gauge.builder("rag.generation.queue.depth", queued, AtomicInteger::get)
+                .description("Chat requests waiting for a generation slot")
+                .register(meterRegistry);
+        Gauge.builder("rag.generation.active", slots, s -> maxConcurrent - s.availablePermits())
+                .description("Generation slots in use")
+                .register(meterRegistry);
+        this.waitTime = Timer.builder("rag.generation.wait")
+                .description("Time chat requests waited for a generation slot")
+                .register(meterRegistry);
+        this.generationTime = Timer.builder("rag.generation.duration")
+                .description("Time generations held their slot")
+                .register(meterRegistry);
+        this.rejectedQueueFull = rejectedCounter(meterRegistry, "queue-full");
+        this.rejectedTimeout = rejectedCounter(meterRegistry, "timeout");
+    }
+
+    /**
+     * Generates once a slot is free.
+     *
+     * @throws GenerationRejectedException If the queue is full or no slot freed up in time
+     */
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        long admitted = acquire();
+        try {
+            return delegate.call(prompt);
+        } finally {
+            release(admitted);
+        }
+    }
+
+    /**
+     * Streams the generation once a slot is free; the subscribing thread waits for it.
+     * The stream fails with a {@link GenerationRejectedException} if the queue is
+     * full or no slot freed up in time.
+     */
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.using(this::acquire, admitted -> delegate.stream(prompt), this::release);
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return delegate.getDefaultOptions();
+    }
+
+    /**
+     * Number of requests waiting for a slot.
+     */
+    public int queued() {
+        return queued.get();
+    }
+
+    /**
+     * Takes a slot, waiting in line if none is free.
+     *
+     * @return Time the slot was taken, in {@link System#nanoTime()} units
+     */
+    private long acquire() {
+        long arrived = System.nanoTime();
+        try {
+            // A zero-timeout tryAcquire respects fairness: it fails while others wait
+            if (!slots.tryAcquire(0, TimeUnit.NANOSECONDS)) {
+                if (queued.incrementAndGet() > maxQueue) {
+                    int waiting = queued.decrementAndGet();
+                    rejectedQueueFull.increment();
+                    throw new GenerationRejectedException("All " + maxConcurrent + " generation slots busy and "
+                            + waiting + " requests waiting", retryAfter(waiting));
+                }
+                try {
+                    if (!slots.tryAcquire(queueTimeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                        rejectedTimeout.increment();
+                        logger.warn("No generation slot free within {}", queueTimeout);
+                        throw new GenerationRejectedException("No generation slot free within " + queueTimeout,
+                                retryAfter(queued.get()));
+                    }
+                } finally {
+                    queued.decrementAndGet();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a generation slot", e);
+        }
+        long admitted = System.nanoTime();
+        waitTime.record(admitted - arrived, TimeUnit.NANOSECONDS);
+        return admitted;
+    }
+
+    private void release(long admitted) {
+        slots.release();
+        generationTime.record(System.nanoTime() - admitted, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Estimated time until a request arriving behind {@code waiting} others gets a
+     * slot: one mean generation per round of slots, rounded up to whole seconds.
+     */
+    Duration retryAfter(int waiting) {
+        if (generationTime.count() == 0)
+            return defaultRetryAfter;
+        double rounds = Math.ceil((waiting + 1) / (double) maxConcurrent);
+        double seconds = generationTime.mean(TimeUnit.SECONDS) * rounds;
+        return Duration.ofSeconds(Math.max(1, (long) Math.ceil(seconds)));
+    }
+
+    private static Counter rejectedCounter(MeterRegistry meterRegistry, String reason) {
+        return Counter.builder("rag.generation.rejected")
+                .description("Chat requests turned away without a generation slot")
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
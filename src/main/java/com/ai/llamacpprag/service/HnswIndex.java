@@ -0,0 +1,655 @@
+package com.ai.llamacpprag.service;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntPredicate;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Hierarchical navigable small world (HNSW) graph over cosine similarity, stored in
+ * memory-mapped files.
+ * <p>
+ * Vectors are normalized on insert and kept in {@code vectors.f32}; every node has a
+ * fixed-size record in {@code links.bin} (level, flags, payload and its layer-0
+ * neighbours), and the few nodes above layer 0 have their upper-layer neighbour
+ * lists appended to {@code upper.bin}. {@code meta.bin} holds the counters and the
+ * entry point and is written after each change, so opening an index only maps the
+ * files: nothing is loaded onto the heap, and the index can be larger than it.
+ * Neighbours at or beyond the node count are ignored, so a crash can at worst lose
+ * the last insert.
+ * <p>
+ * Deleted nodes are only flagged: they still route searches but are never
+ * returned. Each node carries a {@code long} payload, e.g. the offset of the data
+ * its vector belongs to.
+ * <p>
+ * Not thread-safe for writes: callers must not run {@link #add} or {@link #delete}
+ * concurrently with anything else. Searches may run concurrently with each other.
+ */
+public class HnswIndex implements AutoCloseable {
+
+    private static final int MAGIC = 0x484E5357; // "HNSW"
+
+    private static final int VERSION = 1;
+
+    private static final int META_BYTES = 64;
+
+    /**
+     * Levels are capped; with M = 16 a level above 6 is a one-in-ten-million event.
+     */
+    private static final int MAX_LEVEL = 16;
+
+    // Node record in links.bin, in ints: level, flags, payload (long), first upper record, layer-0 list
+    private static final int LEVEL = 0;
+
+    private static final int FLAGS = 1;
+
+    private static final int PAYLOAD = 2;
+
+    private static final int UPPER = 4;
+
+    private static final int LAYER0 = 5;
+
+    private static final int DELETED = 1;
+
+    private static final Comparator<Candidate> BEST_FIRST =
+            Comparator.comparingDouble(Candidate::similarity).reversed();
+
+    private static final Comparator<Candidate> WORST_FIRST = Comparator.comparingDouble(Candidate::similarity);
+
+    /**
+     * Maximum neighbours per node on the upper layers.
+     */
+    private final int m;
+
+    /**
+     * Maximum neighbours per node on layer 0.
+     */
+    private final int m0;
+
+    /**
+     * Size of the candidate list while inserting.
+     */
+    private final int efConstruction;
+
+    private final double levelFactor;
+
+    /**
+     * Nodes (and upper-layer records) per mapped segment.
+     */
+    private final int nodesPerSegment;
+
+    private final int nodeBytes;
+
+    private final int upperBytes;
+
+    private final FileChannel metaChannel;
+
+    private final FileChannel vectorChannel;
+
+    private final FileChannel linkChannel;
+
+    private final FileChannel upperChannel;
+
+    private final MappedByteBuffer meta;
+
+    private final List<MappedByteBuffer> vectorSegments = new ArrayList<>();
+
+    /**
+     * The vector segments as memory segments, for {@link VectorSimilarity}.
+     */
+    private final List<MemorySegment> vectorMemory = new ArrayList<>();
+
+    private final List<MappedByteBuffer> linkSegments = new ArrayList<>();
+
+    private final List<MappedByteBuffer> upperSegments = new ArrayList<>();
+
+    private final Random random = new Random(42);
+
+    /**
+     * Visited sets reused across searches; pooled rather than thread-local because
+     * callers run on short-lived virtual threads.
+     */
+    private final ConcurrentLinkedQueue<Visited> visitedPool = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Floats per vector; 0 until the first vector is added to a new index.
+     */
+    private int dimensions;
+
+    private int count;
+
+    private int deleted;
+
+    private int upperRecords;
+
+    private int entryPoint = -1;
+
+    private int maxLevel = -1;
+
+    /**
+     * Opens (or creates) an index in the given directory.
+     *
+     * @param directory      Directory holding the index files
+     * @param m              Maximum neighbours per node (twice that on layer 0); an
+     *                       existing index keeps the value it was built with
+     * @param efConstruction Size of the candidate list while inserting
+     * @throws IOException If the files cannot be opened or are not an HNSW index
+     */
+    public HnswIndex(Path directory, int m, int efConstruction) throws IOException {
+        this(directory, m, efConstruction, 16_384);
+    }
+
+    HnswIndex(Path directory, int m, int efConstruction, int nodesPerSegment) throws IOException {
+        Files.createDirectories(directory);
+        this.metaChannel = FileChannel.open(directory.resolve("meta.bin"), CREATE, READ, WRITE);
+        boolean existing = metaChannel.size() >= META_BYTES;
+        this.meta = metaChannel.map(FileChannel.MapMode.READ_WRITE, 0, META_BYTES);
+        meta.order(ByteOrder.LITTLE_ENDIAN);
+        if (existing) {
+            if (meta.getInt(0) != MAGIC || meta.getInt(4) != VERSION) {
+                metaChannel.close();
+                throw new IOException("Not an HNSW index: " + directory);
+            }
+            m = meta.getInt(12);
+        }
+
+        this.m = m;
+        this.m0 = 2 * m;
+        this.efConstruction = efConstruction;
+        this.levelFactor = 1 / Math.log(m);
+        this.nodesPerSegment = nodesPerSegment;
+        this.nodeBytes = (LAYER0 + 1 + m0) * Integer.BYTES;
+        this.upperBytes = (1 + m) * Integer.BYTES;
+        this.vectorChannel = FileChannel.open(directory.resolve("vectors.f32"), CREATE, READ, WRITE);
+        this.linkChannel = FileChannel.open(directory.resolve("links.bin"), CREATE, READ, WRITE);
+        this.upperChannel = FileChannel.open(directory.resolve("upper.bin"), CREATE, READ, WRITE);
+        try {
+            if (existing) {
+                load();
+            } else {
+                writeMeta();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Adds a vector as a new node.
+     *
+     * @param vector  Vector to add; any length but zero, the same for every node
+     * @param payload Value returned by {@link #payload(int)} for the node
+     * @return Node number of the vector
+     * @throws IOException If the files cannot be grown
+     */
+    public int add(float[] vector, long payload) throws IOException {
+        if (dimensions == 0) {
+            dimensions = vector.length;
+        } else if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + vector.length);
+        }
+        float[] normalized = normalize(vector);
+        int node = count;
+        int level = randomLevel();
+
+        ByteBuffer vectors = vectorSegment(node / nodesPerSegment);
+        int vectorBase = (node % nodesPerSegment) * dimensions * Float.BYTES;
+        for (int i = 0; i < dimensions; i++) {
+            vectors.putFloat(vectorBase + i * Float.BYTES, normalized[i]);
+        }
+
+        ByteBuffer links = segment(linkChannel, linkSegments, node / nodesPerSegment, (long) nodesPerSegment * nodeBytes);
+        int base = (node % nodesPerSegment) * nodeBytes;
+        links.putInt(base + LEVEL * Integer.BYTES, level);
+        links.putInt(base + FLAGS * Integer.BYTES, 0);
+        links.putLong(base + PAYLOAD * Integer.BYTES, payload);
+        links.putInt(base + UPPER * Integer.BYTES, level > 0 ? upperRecords : -1);
+        links.putInt(base + LAYER0 * Integer.BYTES, 0);
+        for (int layer = 1; layer <= level; layer++) {
+            int record = upperRecords++;
+            segment(upperChannel, upperSegments, record / nodesPerSegment, (long) nodesPerSegment * upperBytes)
+                    .putInt((record % nodesPerSegment) * upperBytes, 0);
+        }
+        count++;
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            writeMeta();
+            return node;
+        }
+
+        List<Candidate> entries = List.of(new Candidate(entryPoint, similarity(normalized, entryPoint)));
+        for (int layer = maxLevel; layer > level; layer--) {
+            entries = searchLayer(normalized, entries, 1, layer);
+        }
+        for (int layer = Math.min(level, maxLevel); layer >= 0; layer--) {
+            List<Candidate> found = searchLayer(normalized, entries, efConstruction, layer);
+            List<Candidate> neighbours = selectNeighbours(found, m);
+            Links list = links(node, layer);
+            for (int i = 0; i < neighbours.size(); i++) {
+                list.set(i, neighbours.get(i).node());
+            }
+            list.setCount(neighbours.size());
+            for (Candidate neighbour : neighbours) {
+                connect(neighbour.node(), node, layer);
+            }
+            entries = found;
+        }
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+        writeMeta();
+        return node;
+    }
+
+    /**
+     * Flags a node as deleted; it keeps routing searches but is no longer returned.
+     *
+     * @param node Node number
+     */
+    public void delete(int node) {
+        int flags = linkBase(node) + FLAGS * Integer.BYTES;
+        ByteBuffer links = linkSegment(node);
+        if ((links.getInt(flags) & DELETED) != 0)
+            return;
+        links.putInt(flags, links.getInt(flags) | DELETED);
+        deleted++;
+        writeMeta();
+    }
+
+    /**
+     * Finds the nodes most similar to a query.
+     * <p>
+     * The candidate list is widened until {@code k} nodes pass the filter or the
+     * whole graph was searched, so selective filters still fill the result.
+     *
+     * @param query  Query vector
+     * @param k      Maximum number of matches
+     * @param ef     Size of the candidate list; at least {@code k} is used
+     * @param accept Filter on node numbers; deleted nodes are never passed to it
+     * @return Matches, most similar first
+     */
+    public List<Match> search(float[] query, int k, int ef, IntPredicate accept) {
+        if (entryPoint < 0 || k <= 0)
+            return List.of();
+        if (query.length != dimensions)
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions, got " + query.length);
+        float[] normalized = normalize(query);
+
+        List<Candidate> entries = List.of(new Candidate(entryPoint, similarity(normalized, entryPoint)));
+        for (int layer = maxLevel; layer > 0; layer--) {
+            entries = searchLayer(normalized, entries, 1, layer);
+        }
+
+        int width = Math.max(ef, k);
+        while (true) {
+            List<Match> matches = new ArrayList<>(k);
+            for (Candidate candidate : searchLayer(normalized, entries, width, 0)) {
+                if (matches.size() == k)
+                    break;
+                if (!isDeleted(candidate.node()) && accept.test(candidate.node()))
+                    matches.add(new Match(candidate.node(), candidate.similarity()));
+            }
+            if (matches.size() == k || width >= count)
+                return matches;
+            width = (int) Math.min(count, width * 4L);
+        }
+    }
+
+    /**
+     * Payload given when the node was added.
+     *
+     * @param node Node number
+     * @return The payload
+     */
+    public long payload(int node) {
+        return linkSegment(node).getLong(linkBase(node) + PAYLOAD * Integer.BYTES);
+    }
+
+    /**
+     * Whether a node was deleted.
+     *
+     * @param node Node number
+     * @return True if deleted
+     */
+    public boolean isDeleted(int node) {
+        return (linkSegment(node).getInt(linkBase(node) + FLAGS * Integer.BYTES) & DELETED) != 0;
+    }
+
+    /**
+     * Number of nodes, deleted ones included; node numbers are below it.
+     *
+     * @return Node count
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Number of nodes that are not deleted.
+     *
+     * @return Live node count
+     */
+    public int liveSize() {
+        return count - deleted;
+    }
+
+    /**
+     * Flushes the mapped files and closes them.
+     *
+     * @throws IOException If the files cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        for (List<MappedByteBuffer> segments : List.of(vectorSegments, linkSegments, upperSegments)) {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+        }
+        if (metaChannel.isOpen())
+            meta.force();
+        try (metaChannel; vectorChannel; linkChannel; upperChannel) {
+            // Closed by try-with-resources
+        }
+    }
+
+    /**
+     * Reads the counters from {@code meta.bin} and maps the segments in use.
+     */
+    private void load() throws IOException {
+        dimensions = meta.getInt(8);
+        count = meta.getInt(16);
+        deleted = meta.getInt(20);
+        upperRecords = meta.getInt(24);
+        entryPoint = meta.getInt(28);
+        maxLevel = meta.getInt(32);
+        for (int i = 0; i * (long) nodesPerSegment < count; i++) {
+            vectorSegment(i);
+            segment(linkChannel, linkSegments, i, (long) nodesPerSegment * nodeBytes);
+        }
+        for (int i = 0; i * (long) nodesPerSegment < upperRecords; i++) {
+            segment(upperChannel, upperSegments, i, (long) nodesPerSegment * upperBytes);
+        }
+    }
+
+    private void writeMeta() {
+        meta.putInt(0, MAGIC)
+                .putInt(4, VERSION)
+                .putInt(8, dimensions)
+                .putInt(12, m)
+                .putInt(16, count)
+                .putInt(20, deleted)
+                .putInt(24, upperRecords)
+                .putInt(28, entryPoint)
+                .putInt(32, maxLevel);
+    }
+
+    /**
+     * Greedy best-first search of one layer.
+     *
+     * @param query   Normalized query
+     * @param entries Nodes to start from
+     * @param ef      Number of nodes to keep
+     * @param layer   Layer to search
+     * @return Up to {@code ef} nodes closest to the query, most similar first
+     */
+    private List<Candidate> searchLayer(float[] query, List<Candidate> entries, int ef, int layer) {
+        Visited visited = visitedPool.poll();
+        if (visited == null)
+            visited = new Visited();
+        visited.reset(count);
+        try {
+            var candidates = new PriorityQueue<>(BEST_FIRST);
+            var results = new PriorityQueue<>(WORST_FIRST);
+            for (Candidate entry : entries) {
+                visited.add(entry.node());
+                candidates.add(entry);
+                results.add(entry);
+                if (results.size() > ef)
+                    results.poll();
+            }
+
+            while (!candidates.isEmpty()) {
+                Candidate current = candidates.poll();
+                if (results.size() >= ef && current.similarity() < results.peek().similarity())
+                    break;
+                Links list = links(current.node(), layer);
+                for (int i = 0, n = list.count(); i < n; i++) {
+                    int neighbour = list.get(i);
+                    if (neighbour >= count || !visited.add(neighbour))
+                        continue;
+                    float similarity = similarity(query, neighbour);
+                    if (results.size() < ef || similarity > results.peek().similarity()) {
+                        var candidate = new Candidate(neighbour, similarity);
+                        candidates.add(candidate);
+                        results.add(candidate);
+                        if (results.size() > ef)
+                            results.poll();
+                    }
+                }
+            }
+
+            List<Candidate> sorted = new ArrayList<>(results);
+            sorted.sort(BEST_FIRST);
+            return sorted;
+        } finally {
+            visitedPool.add(visited);
+        }
+    }
+
+    /**
+     * Picks neighbours that are closer to the base node than to any neighbour picked
+     * before them, so links point in different directions; the remaining slots are
+     * filled with the closest skipped candidates.
+     *
+     * @param candidates Candidates with their similarity to the base node, most similar first
+     * @param max        Number of neighbours to pick
+     * @return Picked neighbours
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> candidates, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        List<float[]> selectedVectors = new ArrayList<>(max);
+        List<Candidate> skipped = new ArrayList<>();
+        for (Candidate candidate : candidates) {
+            if (selected.size() == max)
+                break;
+            float[] vector = vector(candidate.node());
+            boolean diverse = true;
+            for (float[] other : selectedVectors) {
+                if (VectorSimilarity.dot(vector, other) > candidate.similarity()) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+                selectedVectors.add(vector);
+            } else {
+                skipped.add(candidate);
+            }
+        }
+        for (int i = 0; i < skipped.size() && selected.size() < max; i++) {
+            selected.add(skipped.get(i));
+        }
+        return selected;
+    }
+
+    /**
+     * Adds a link from {@code node} to {@code target}, re-selecting the neighbours of
+     * {@code node} if its list is full.
+     */
+    private void connect(int node, int target, int layer) {
+        Links list = links(node, layer);
+        int max = layer == 0 ? m0 : m;
+        int size = list.count();
+        if (size < max) {
+            list.set(size, target);
+            list.setCount(size + 1);
+            return;
+        }
+
+        float[] vector = vector(node);
+        List<Candidate> candidates = new ArrayList<>(size + 1);
+        candidates.add(new Candidate(target, similarity(vector, target)));
+        for (int i = 0; i < size; i++) {
+            candidates.add(new Candidate(list.get(i), similarity(vector, list.get(i))));
+        }
+        candidates.sort(BEST_FIRST);
+        List<Candidate> kept = selectNeighbours(candidates, max);
+        for (int i = 0; i < kept.size(); i++) {
+            list.set(i, kept.get(i).node());
+        }
+        list.setCount(kept.size());
+    }
+
+    private int randomLevel() {
+        int level = (int) (-Math.log(1 - random.nextDouble()) * levelFactor);
+        return Math.min(level, MAX_LEVEL);
+    }
+
+    private Links links(int node, int layer) {
+        if (layer == 0)
+            return new Links(linkSegment(node), linkBase(node) + LAYER0 * Integer.BYTES);
+        int record = linkSegment(node).getInt(linkBase(node) + UPPER * Integer.BYTES) + layer - 1;
+        return new Links(upperSegments.get(record / nodesPerSegment), (record % nodesPerSegment) * upperBytes);
+    }
+
+    private ByteBuffer linkSegment(int node) {
+        return linkSegments.get(node / nodesPerSegment);
+    }
+
+    private int linkBase(int node) {
+        return (node % nodesPerSegment) * nodeBytes;
+    }
+
+    private float similarity(float[] query, int node) {
+        long base = (long) (node % nodesPerSegment) * dimensions * Float.BYTES;
+        return VectorSimilarity.dot(query, vectorMemory.get(node / nodesPerSegment), base);
+    }
+
+    private float[] vector(int node) {
+        ByteBuffer vectors = vectorSegments.get(node / nodesPerSegment);
+        int base = (node % nodesPerSegment) * dimensions * Float.BYTES;
+        float[] vector = new float[dimensions];
+        for (int i = 0; i < dimensions; i++) {
+            vector[i] = vectors.getFloat(base + i * Float.BYTES);
+        }
+        return vector;
+    }
+
+    private static float[] normalize(float[] vector) {
+        double norm = Math.sqrt(VectorSimilarity.dot(vector, vector));
+        float[] normalized = new float[vector.length];
+        if (norm == 0)
+            return normalized;
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = (float) (vector[i] / norm);
+        }
+        return normalized;
+    }
+
+    /**
+     * Returns a mapped segment of the vector file, mapping it if needed.
+     */
+    private ByteBuffer vectorSegment(int index) throws IOException {
+        ByteBuffer segment = segment(vectorChannel, vectorSegments, index,
+                (long) nodesPerSegment * dimensions * Float.BYTES);
+        while (vectorMemory.size() < vectorSegments.size()) {
+            vectorMemory.add(MemorySegment.ofBuffer(vectorSegments.get(vectorMemory.size())));
+        }
+        return segment;
+    }
+
+    /**
+     * Returns a mapped segment of a file, mapping it (and growing the file) if needed.
+     */
+    private static MappedByteBuffer segment(FileChannel channel, List<MappedByteBuffer> segments, int index,
+                                            long segmentBytes) throws IOException {
+        while (segments.size() <= index) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, segments.size() * segmentBytes,
+                    segmentBytes);
+            segment.order(ByteOrder.LITTLE_ENDIAN);
+            segments.add(segment);
+        }
+        return segments.get(index);
+    }
+
+    /**
+     * A node found by a search.
+     *
+     * @param node       Node number
+     * @param similarity Cosine similarity to the query
+     */
+    public record Match(int node, float similarity) {
+    }
+
+    private record Candidate(int node, float similarity) {
+    }
+
+    /**
+     * A neighbour list: a count followed by node numbers.
+     */
+    private record Links(ByteBuffer buffer, int base) {
+
+        int count() {
+            return buffer.getInt(base);
+        }
+
+        void setCount(int count) {
+            buffer.putInt(base, count);
+        }
+
+        int get(int index) {
+            return buffer.getInt(base + (index + 1) * Integer.BYTES);
+        }
+
+        void set(int index, int node) {
+            buffer.putInt(base + (index + 1) * Integer.BYTES, node);
+        }
+    }
+
+    /**
+     * Set of visited node numbers, cleared in constant time by bumping an epoch.
+     */
+    private static final class Visited {
+
+        private int[] marks = new int[0];
+
+        private int epoch;
+
+        void reset(int size) {
+            if (marks.length < size)
+                marks = Arrays.copyOf(marks, Math.max(size, marks.length * 2));
+            if (++epoch == 0) {
+                Arrays.fill(marks, 0);
+                epoch = 1;
+            }
+        }
+
+        boolean add(int node) {
+            if (marks[node] == epoch)
+                return false;
+            marks[node] = epoch;
+            return true;
+        }
+    }
+}
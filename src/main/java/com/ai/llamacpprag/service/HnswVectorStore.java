@@ -0,0 +1,337 @@
+package com.ai.llamacpprag.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.converter.SimpleVectorStoreFilterExpressionConverter;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Embedded {@link VectorStore}: an {@link HnswIndex} over the chunk embeddings plus
+ * an append-only {@code documents.bin} with each chunk's id, text and metadata.
+ * <p>
+ * Searches run in-process against memory-mapped files, with no network round-trip
+ * or query planning, and read only the documents they return. Any number of
+ * searches run concurrently; writes are serialized and take the write lock one
+ * document at a time, so a large ingest batch never stalls chat requests for
+ * longer than a single insert. Embedding happens before any lock is taken.
+ * <p>
+ * Replacing or deleting a document only flags its node; the old document stays in
+ * the files. Filter expressions use the same SpEL evaluation as Spring AI's
+ * {@code SimpleVectorStore}.
+ */
+public class HnswVectorStore implements VectorStore, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HnswVectorStore.class);
+
+    /**
+     * Graph over the normalized embeddings; node payloads are offsets into {@link #documentFile}.
+     */
+    private final HnswIndex index;
+
+    /**
+     * Records of {@code int length, int idLength, id, int textLength, text, int metadataLength, metadata JSON}.
+     */
+    private final FileChannel documentFile;
+
+    /**
+     * Model embedding added documents and queries.
+     */
+    private final EmbeddingModel embeddingModel;
+
+    /**
+     * Size of the candidate list while searching.
+     */
+    private final int efSearch;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final SimpleVectorStoreFilterExpressionConverter filterConverter =
+            new SimpleVectorStoreFilterExpressionConverter();
+
+    private final SpelExpressionParser expressionParser = new SpelExpressionParser();
+
+    private final Timer searchTimer;
+
+    /**
+     * Node of every live document id; loaded on the first write. Guarded by the write lock.
+     */
+    private Map<String, Integer> nodesById;
+
+    /**
+     * End of the last complete record in {@link #documentFile}. Guarded by the write lock.
+     */
+    private long documentsEnd;
+
+    /**
+     * Opens (or creates) the store in the given directory.
+     *
+     * @param directory      Directory holding the index and document files
+     * @param embeddingModel Model embedding added documents and queries
+     * @param m              Maximum neighbours per graph node, for a new index
+     * @param efConstruction Size of the candidate list while inserting
+     * @param efSearch       Size of the candidate list while searching
+     * @param meterRegistry  Registry for the search timer
+     * @throws IOException If the files cannot be opened
+     */
+    public HnswVectorStore(Path directory, EmbeddingModel embeddingModel, int m, int efConstruction, int efSearch,
+                           MeterRegistry meterRegistry) throws IOException {
+        this.embeddingModel = embeddingModel;
+        this.efSearch = efSearch;
+        this.index = new HnswIndex(directory, m, efConstruction);
+        this.documentFile = FileChannel.open(directory.resolve("documents.bin"), CREATE, READ, WRITE);
+        this.searchTimer = Timer.builder("rag.hnsw.search")
+                .description("In-process HNSW similarity searches")
+                .register(meterRegistry);
+        try {
+            // Drop records appended after the last node the index knows about
+            int last = index.size() - 1;
+            documentsEnd = last < 0 ? 0 : index.payload(last) + Integer.BYTES + readInt(index.payload(last));
+            documentFile.truncate(documentsEnd);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        logger.info("HNSW vector store at {}: {} documents", directory.toAbsolutePath(), index.liveSize());
+    }
+
+    /**
+     * Embeds the documents and adds them, replacing documents with the same id.
+     *
+     * @param documents Documents to add
+     */
+    @Override
+    public void add(List<Document> documents) {
+        if (documents.isEmpty())
+            return;
+        List<float[]> embeddings = embeddingModel.embed(documents.stream().map(Document::getText).toList());
+        if (embeddings.size() != documents.size())
+            throw new IllegalStateException("Got " + embeddings.size() + " embeddings for " + documents.size() + " documents");
+
+        for (int i = 0; i < documents.size(); i++) {
+            Document document = documents.get(i);
+            lock.writeLock().lock();
+            try {
+                long offset = append(document);
+                int node = index.add(embeddings.get(i), offset);
+                Integer previous = nodesById().put(document.getId(), node);
+                if (previous != null)
+                    index.delete(previous);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot add document " + document.getId(), e);
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Deletes documents by id; unknown ids are ignored.
+     *
+     * @param idList Ids of the documents to delete
+     */
+    @Override
+    public void delete(List<String> idList) {
+        lock.writeLock().lock();
+        try {
+            for (String id : idList) {
+                Integer node = nodesById().remove(id);
+                if (node != null)
+                    index.delete(node);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Deletes every document whose metadata matches a filter.
+     *
+     * @param filterExpression Filter on document metadata
+     */
+    @Override
+    public void delete(Filter.Expression filterExpression) {
+        Expression filter = expressionParser.parseExpression(filterConverter.convertExpression(filterExpression));
+        lock.writeLock().lock();
+        try {
+            Map<String, Integer> nodes = nodesById();
+            for (int node = 0; node < index.size(); node++) {
+                if (index.isDeleted(node))
+                    continue;
+                Document document = read(node);
+                if (matches(filter, document.getMetadata())) {
+                    index.delete(node);
+                    nodes.remove(document.getId());
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the documents most similar to the request query.
+     *
+     * @param request Query, top-k, similarity threshold and optional filter
+     * @return Matching documents, most similar first, with their score and distance
+     */
+    @Override
+    public List<Document> similaritySearch(SearchRequest request) {
+        float[] query = embeddingModel.embed(request.getQuery());
+        Expression filter = request.hasFilterExpression()
+                ? expressionParser.parseExpression(filterConverter.convertExpression(request.getFilterExpression()))
+                : null;
+
+        return searchTimer.record(() -> {
+            lock.readLock().lock();
+            try {
+                IntPredicate accept = filter == null ? node -> true : node -> matches(filter, read(node).getMetadata());
+                List<Document> results = new ArrayList<>(request.getTopK());
+                for (HnswIndex.Match match : index.search(query, request.getTopK(), efSearch, accept)) {
+                    if (match.similarity() < request.getSimilarityThreshold())
+                        break;
+                    Document document = read(match.node());
+                    Map<String, Object> metadata = new HashMap<>(document.getMetadata());
+                    metadata.put("distance", 1 - match.similarity());
+                    results.add(document.mutate().metadata(metadata).score((double) match.similarity()).build());
+                }
+                return results;
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    /**
+     * Flushes and closes the index and document files.
+     *
+     * @throws IOException If the files cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try (documentFile) {
+            index.close();
+            if (documentFile.isOpen())
+                documentFile.force(false);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Node of every live document id, read from the document file on first use so
+     * opening the store stays instant.
+     */
+    private Map<String, Integer> nodesById() {
+        if (nodesById == null) {
+            var nodes = new HashMap<String, Integer>(Math.max(16, index.liveSize() * 2));
+            for (int node = 0; node < index.size(); node++) {
+                if (!index.isDeleted(node))
+                    nodes.put(readId(index.payload(node)), node);
+            }
+            nodesById = nodes;
+        }
+        return nodesById;
+    }
+
+    private boolean matches(Expression filter, Map<String, Object> metadata) {
+        var context = new StandardEvaluationContext();
+        context.setVariable("metadata", metadata);
+        return Boolean.TRUE.equals(filter.getValue(context, Boolean.class));
+    }
+
+    private long append(Document document) throws IOException {
+        byte[] id = document.getId().getBytes(StandardCharsets.UTF_8);
+        byte[] text = Objects.requireNonNullElse(document.getText(), "").getBytes(StandardCharsets.UTF_8);
+        byte[] metadata = ModelOptionsUtils.toJsonString(document.getMetadata()).getBytes(StandardCharsets.UTF_8);
+        int length = 3 * Integer.BYTES + id.length + text.length + metadata.length;
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + length)
+                .putInt(length)
+                .putInt(id.length).put(id)
+                .putInt(text.length).put(text)
+                .putInt(metadata.length).put(metadata)
+                .flip();
+
+        long offset = documentsEnd;
+        long position = offset;
+        while (record.hasRemaining()) {
+            position += documentFile.write(record, position);
+        }
+        documentsEnd = position;
+        return offset;
+    }
+
+    private Document read(int node) {
+        long offset = index.payload(node);
+        try {
+            ByteBuffer record = ByteBuffer.allocate(readInt(offset));
+            readFully(record, offset + Integer.BYTES);
+            record.flip();
+            String id = readString(record);
+            String text = readString(record);
+            Map<String, Object> metadata = ModelOptionsUtils.jsonToMap(readString(record));
+            return Document.builder().id(id).text(text).metadata(metadata).build();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read document of node " + node, e);
+        }
+    }
+
+    private String readId(long offset) {
+        try {
+            ByteBuffer record = ByteBuffer.allocate(readInt(offset + Integer.BYTES));
+            readFully(record, offset + 2 * Integer.BYTES);
+            return new String(record.array(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read document id at " + offset, e);
+        }
+    }
+
+    private int readInt(long position) throws IOException {
+        ByteBuffer value = ByteBuffer.allocate(Integer.BYTES);
+        readFully(value, position);
+        return value.getInt(0);
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = documentFile.read(buffer, position);
+            if (read < 0)
+                throw new IOException("Unexpected end of HNSW document file");
+            position += read;
+        }
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
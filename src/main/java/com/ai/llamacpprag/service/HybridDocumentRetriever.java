@@ -0,0 +1,139 @@
+package com.ai.llamacpprag.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Document retriever running a vector search and a lexical search in parallel and
+ * merging them with reciprocal rank fusion (RRF).
+ * <p>
+ * Each document scores {@code sum(1 / (k + rank))} over the rankings it appears in,
+ * so a chunk ranked well by both searches beats one ranked first by only one, and
+ * the two searches' incomparable scores never need normalizing. The lexical search
+ * is best-effort: if it fails, the vector matches are returned alone. Each search
+ * is timed as {@code rag.retrieval.search} with a {@code leg} tag.
+ */
+public class HybridDocumentRetriever implements DocumentRetriever, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(HybridDocumentRetriever.class);
+
+    private final DocumentRetriever vectorRetriever;
+
+    private final DocumentRetriever lexicalRetriever;
+
+    /**
+     * Documents returned after fusion, unless the request's {@link RetrievalParams} say otherwise.
+     */
+    private final int topK;
+
+    /**
+     * Rank constant of the fusion.
+     */
+    private final int rrfK;
+
+    private final Timer vectorTimer;
+
+    private final Timer lexicalTimer;
+
+    /**
+     * Runs the lexical search next to the caller's vector search.
+     */
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Constructs a HybridDocumentRetriever.
+     *
+     * @param vectorRetriever  Similarity search over the embeddings
+     * @param lexicalRetriever Full-text search
+     * @param topK             Documents returned after fusion
+     * @param rrfK             Rank constant k of the fusion
+     * @param meterRegistry    Registry for the per-search timers
+     */
+    public HybridDocumentRetriever(DocumentRetriever vectorRetriever, DocumentRetriever lexicalRetriever,
+                                   int topK, int rrfK, MeterRegistry meterRegistry) {
+        this.vectorRetriever = vectorRetriever;
+        this.lexicalRetriever = lexicalRetriever;
+        this.topK = topK;
+        this.rrfK = rrfK;
+        this.vectorTimer = Timer.builder("rag.retrieval.search")
+                .description("Latency of one retrieval search")
+                .tag("leg", "vector")
+                .register(meterRegistry);
+        this.lexicalTimer = Timer.builder("rag.retrieval.search")
+                .description("Latency of one retrieval search")
+                .tag("leg", "lexical")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs both searches and fuses their rankings.
+     *
+     * @param query Question, with the request's parameters in its context
+     * @return Up to top-k documents, best first, scored with their fused score
+     */
+    @Override
+    public List<Document> retrieve(Query query) {
+        int k = RetrievalParams.of(query).topK(topK);
+        CompletableFuture<List<Document>> lexical = CompletableFuture.supplyAsync(
+                () -> lexicalTimer.record(() -> lexicalRetriever.retrieve(query)), executor);
+        List<Document> vector = vectorTimer.record(() -> vectorRetriever.retrieve(query));
+
+        List<Document> lexicalMatches;
+        try {
+            lexicalMatches = lexical.join();
+        } catch (CompletionException e) {
+            logger.warn("Lexical retrieval failed, using vector matches only: {}", e.getCause().getMessage());
+            lexicalMatches = List.of();
+        }
+        logger.debug("Retrieved {} vector and {} lexical matches", vector.size(), lexicalMatches.size());
+        return fuse(List.of(vector, lexicalMatches), rrfK, k);
+    }
+
+    /**
+     * Stops the lexical search threads.
+     */
+    @Override
+    public void close() {
+        executor.close();
+    }
+
+    /**
+     * Merges rankings with reciprocal rank fusion. Ties keep the order in which the
+     * documents first appear, earlier rankings first.
+     *
+     * @param rankings Rankings, each best first
+     * @param rrfK     Rank constant k
+     * @param topK     Documents returned
+     * @return Fused ranking, scored with the fused score
+     */
+    static List<Document> fuse(List<List<Document>> rankings, int rrfK, int topK) {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        Map<String, Document> documents = new HashMap<>();
+        for (List<Document> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                Document document = ranking.get(rank);
+                scores.merge(document.getId(), 1.0 / (rrfK + rank + 1), Double::sum);
+                documents.putIfAbsent(document.getId(), document);
+            }
+        }
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(topK)
+                .map(entry -> documents.get(entry.getKey()).mutate().score(entry.getValue()).build())
+                .toList();
+    }
+}
@@ -0,0 +1,283 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.IngestionProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs folder ingestions as background jobs that can be polled and cancelled.
+ * <p>
+ * Every job gets its own virtual thread; a fair semaphore lets at most
+ * {@code rag.ingestion.jobs.max-concurrent} of them ingest at once, the others
+ * wait in {@link JobStatus#QUEUED} in submission order. The last
+ * {@code rag.ingestion.jobs.history-size} jobs are kept for status queries.
+ */
+@Service
+public class IngestionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobService.class);
+
+    /**
+     * Service doing the actual ingestion.
+     */
+    private final DocumentIngestionService ingestionService;
+
+    /**
+     * Permits for running jobs.
+     */
+    private final Semaphore permits;
+
+    /**
+     * Maximum number of jobs kept in {@link #jobs}.
+     */
+    private final int historySize;
+
+    /**
+     * Known jobs in submission order. Guarded by itself.
+     */
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+
+    /**
+     * Runs each job on its own virtual thread.
+     */
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Constructs an IngestionJobService.
+     *
+     * @param ingestionService Service doing the actual ingestion
+     * @param properties       Ingestion settings (job concurrency and history size)
+     */
+    public IngestionJobService(DocumentIngestionService ingestionService, IngestionProperties properties) {
+        this.ingestionService = ingestionService;
+        this.permits = new Semaphore(Math.max(1, properties.getJobs().getMaxConcurrent()), true);
+        this.historySize = Math.max(1, properties.getJobs().getHistorySize());
+    }
+
+    /**
+     * Submits the ingestion of a folder and returns immediately.
+     *
+     * @param folder Folder to ingest
+     * @return Snapshot of the new job (usually QUEUED)
+     */
+    public JobSnapshot submit(Path folder) {
+        var job = new Job(UUID.randomUUID().toString(), folder);
+        synchronized (jobs) {
+            jobs.put(job.id, job);
+            evictFinished();
+        }
+        job.future = executor.submit(() -> run(job));
+        return job.snapshot();
+    }
+
+    /**
+     * Looks up a job.
+     *
+     * @param id Job ID
+     * @return Current snapshot, or empty if the job is unknown or was evicted
+     */
+    public Optional<JobSnapshot> find(String id) {
+        synchronized (jobs) {
+            return Optional.ofNullable(jobs.get(id)).map(Job::snapshot);
+        }
+    }
+
+    /**
+     * Cancels a job. A queued job is cancelled at once; a running job stops
+     * discovering files, drops its pending embedding batches and ends in
+     * CANCELLED shortly after. Finished jobs are left as they are.
+     *
+     * @param id Job ID
+     * @return Snapshot after the cancellation request, or empty if the job is unknown
+     */
+    public Optional<JobSnapshot> cancel(String id) {
+        Job job;
+        synchronized (jobs) {
+            job = jobs.get(id);
+        }
+        if (job == null) {
+            return Optional.empty();
+        }
+
+        job.progress.cancel();
+        job.cancelIfQueued();
+        Future<?> future = job.future;
+        if (future != null) {
+            future.cancel(true);
+        }
+        return Optional.of(job.snapshot());
+    }
+
+    /**
+     * Interrupts running jobs on shutdown.
+     */
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Job body: waits for a permit, then ingests the folder.
+     *
+     * @param job Job to run
+     */
+    private void run(Job job) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            job.finish(JobStatus.CANCELLED, null, null);
+            return;
+        }
+
+        try {
+            if (job.progress.isCancelled() || !job.start()) {
+                job.finish(JobStatus.CANCELLED, null, null);
+                return;
+            }
+            var result = ingestionService.ingestLocalFolder(job.folder, job.progress);
+            job.finish(JobStatus.SUCCEEDED, result, null);
+        } catch (Exception e) {
+            if (job.progress.isCancelled()) {
+                job.finish(JobStatus.CANCELLED, null, null);
+            } else {
+                logger.warn("Ingestion job {} failed", job.id, e);
+                job.finish(JobStatus.FAILED, null, e.getMessage());
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Drops the oldest finished jobs while the history is over its size. Queued and
+     * running jobs are never evicted. Caller holds the {@link #jobs} lock.
+     */
+    private void evictFinished() {
+        Iterator<Job> it = jobs.values().iterator();
+        while (jobs.size() > historySize && it.hasNext()) {
+            if (it.next().isFinished()) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Lifecycle of a job.
+     */
+    public enum JobStatus {
+        QUEUED, RUNNING, SUCCEEDED, FAILED, CANCELLED
+    }
+
+    /**
+     * Point-in-time view of a job, as returned by the ingestion API.
+     *
+     * @param id                  Job ID
+     * @param status              Current status
+     * @param folder              Folder being ingested
+     * @param submittedAt         When the job was submitted
+     * @param startedAt           When the job started ingesting (null while queued)
+     * @param finishedAt          When the job ended (null until then)
+     * @param filesDiscovered     Supported files found so far
+     * @param filesProcessed      Files ingested, skipped or failed so far
+     * @param pages               Pages (documents) read so far
+     * @param chunks              Chunks created so far
+     * @param embeddings          Chunks embedded and stored so far
+     * @param embeddingsPerSecond Embedding throughput since the job started
+     * @param etaSeconds          Estimated seconds left (null while unknown)
+     * @param result              Final result (SUCCEEDED only)
+     * @param error               Failure message (FAILED only)
+     */
+    public record JobSnapshot(String id, JobStatus status, String folder, Instant submittedAt, Instant startedAt,
+                              Instant finishedAt, long filesDiscovered, long filesProcessed, long pages, long chunks,
+                              long embeddings, double embeddingsPerSecond, Long etaSeconds,
+                              DocumentIngestionService.IngestResult result, String error) {
+    }
+
+    /**
+     * Mutable state of one job.
+     */
+    private static final class Job {
+
+        private final String id;
+
+        private final Path folder;
+
+        private final IngestionProgress progress = new IngestionProgress();
+
+        private final Instant submittedAt = Instant.now();
+
+        private volatile Future<?> future;
+
+        private JobStatus status = JobStatus.QUEUED;
+
+        private Instant startedAt;
+
+        private Instant finishedAt;
+
+        private DocumentIngestionService.IngestResult result;
+
+        private String error;
+
+        private Job(String id, Path folder) {
+            this.id = id;
+            this.folder = folder;
+        }
+
+        /**
+         * Moves the job from QUEUED to RUNNING.
+         *
+         * @return False if the job was no longer queued (cancelled meanwhile)
+         */
+        private synchronized boolean start() {
+            if (status != JobStatus.QUEUED)
+                return false;
+            status = JobStatus.RUNNING;
+            startedAt = Instant.now();
+            progress.markStarted();
+            return true;
+        }
+
+        private synchronized void cancelIfQueued() {
+            if (status == JobStatus.QUEUED)
+                finish(JobStatus.CANCELLED, null, null);
+        }
+
+        /**
+         * Moves the job to a final status; the first final status wins.
+         */
+        private synchronized void finish(JobStatus status, DocumentIngestionService.IngestResult result, String error) {
+            if (isFinished())
+                return;
+            this.status = status;
+            this.result = result;
+            this.error = error;
+            this.finishedAt = Instant.now();
+        }
+
+        private synchronized boolean isFinished() {
+            return finishedAt != null;
+        }
+
+        private synchronized JobSnapshot snapshot() {
+            boolean running = status == JobStatus.RUNNING;
+            return new JobSnapshot(id, status, folder.toString(), submittedAt, startedAt, finishedAt,
+                    progress.filesDiscovered(), progress.filesProcessed(), progress.pages(), progress.chunks(),
+                    progress.embeddings(), startedAt == null ? 0 : progress.embeddingsPerSecond(),
+                    running ? progress.etaSeconds() : null, result, error);
+        }
+    }
+}
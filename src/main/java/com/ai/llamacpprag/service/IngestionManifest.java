@@ -0,0 +1,243 @@
+package com.ai.llamacpprag.service;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Persisted record of what has been ingested: one row per source file with its
+ * size, modification time, content hash and number of chunks written.
+ * <p>
+ * Chunk IDs are derived from the source and the chunk index, so the manifest only
+ * needs the chunk count to find (and replace or delete) every chunk of a file.
+ */
+@Repository
+public class IngestionManifest {
+
+    /**
+     * JDBC access to the {@code ingest_manifest} table (see schema.sql).
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Constructs an IngestionManifest backed by the given JdbcTemplate.
+     *
+     * @param jdbcTemplate JdbcTemplate for the application database
+     */
+    public IngestionManifest(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Loads every manifest entry whose source lives under the given folder.
+     *
+     * @param folder Folder being ingested
+     * @return Entries keyed by source
+     */
+    public Map<String, Entry> entriesUnder(Path folder) {
+        String prefix = sourceOf(folder) + folder.getFileSystem().getSeparator();
+        Map<String, Entry> entries = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT source, size_bytes, modified_at, content_hash, chunk_count "
+                        + "FROM ingest_manifest WHERE starts_with(source, ?)",
+                rs -> {
+                    var entry = new Entry(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getString(4), rs.getInt(5));
+                    entries.put(entry.source(), entry);
+                },
+                prefix);
+        return entries;
+    }
+
+    /**
+     * Loads the manifest entry of a file, or of every file under a folder. Works for
+     * paths that no longer exist, so the caller can remove their chunks.
+     *
+     * @param path File or folder
+     * @return Entries keyed by source
+     */
+    public Map<String, Entry> entriesAt(Path path) {
+        String source = sourceOf(path);
+        Map<String, Entry> entries = new HashMap<>();
+        jdbcTemplate.query(
+                "SELECT source, size_bytes, modified_at, content_hash, chunk_count "
+                        + "FROM ingest_manifest WHERE source = ? OR starts_with(source, ?)",
+                rs -> {
+                    var entry = new Entry(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getString(4), rs.getInt(5));
+                    entries.put(entry.source(), entry);
+                },
+                source, source + path.getFileSystem().getSeparator());
+        return entries;
+    }
+
+    /**
+     * Loads the manifest entry of one source key.
+     *
+     * @param source Source key
+     * @return The entry, or empty if the source was never ingested
+     */
+    public Optional<Entry> find(String source) {
+        return jdbcTemplate.query(
+                "SELECT source, size_bytes, modified_at, content_hash, chunk_count "
+                        + "FROM ingest_manifest WHERE source = ?",
+                (rs, n) -> new Entry(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getString(4), rs.getInt(5)),
+                source).stream().findFirst();
+    }
+
+    /**
+     * Inserts or replaces the entry of a source after its chunks were written.
+     *
+     * @param entry Entry to store
+     */
+    public void record(Entry entry) {
+        jdbcTemplate.update(
+                "INSERT INTO ingest_manifest (source, size_bytes, modified_at, content_hash, chunk_count) "
+                        + "VALUES (?, ?, ?, ?, ?) "
+                        + "ON CONFLICT (source) DO UPDATE SET size_bytes = EXCLUDED.size_bytes, "
+                        + "modified_at = EXCLUDED.modified_at, content_hash = EXCLUDED.content_hash, "
+                        + "chunk_count = EXCLUDED.chunk_count, ingested_at = now()",
+                entry.source(), entry.sizeBytes(), entry.modifiedMillis(), entry.contentHash(), entry.chunkCount());
+    }
+
+    /**
+     * Removes the entry of a source whose file no longer exists.
+     *
+     * @param source Source key
+     */
+    public void remove(String source) {
+        jdbcTemplate.update("DELETE FROM ingest_manifest WHERE source = ?", source);
+    }
+
+    /**
+     * Records that chunks of the duplicate sources were dropped in favour of chunks
+     * of the canonical source.
+     *
+     * @param canonicalSource  Source whose chunks were kept
+     * @param duplicateSources Sources whose near-duplicate chunks were dropped
+     */
+    public void recordDuplicates(String canonicalSource, Collection<String> duplicateSources) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO ingest_duplicate (source, canonical_source) VALUES (?, ?) ON CONFLICT DO NOTHING",
+                duplicateSources.stream().map(source -> new Object[]{source, canonicalSource}).toList());
+    }
+
+    /**
+     * Sources that had chunks dropped in favour of chunks of the given sources.
+     *
+     * @param canonicalSources Sources whose chunks changed or were deleted
+     * @return Dependent sources
+     */
+    public Set<String> dependentsOf(Collection<String> canonicalSources) {
+        Set<String> dependents = new HashSet<>();
+        for (String canonicalSource : canonicalSources) {
+            dependents.addAll(jdbcTemplate.queryForList(
+                    "SELECT source FROM ingest_duplicate WHERE canonical_source = ?", String.class, canonicalSource));
+        }
+        return dependents;
+    }
+
+    /**
+     * Forgets which chunks of a source were dropped as duplicates, before it is
+     * ingested again or once it is deleted.
+     *
+     * @param source Source key
+     */
+    public void removeDuplicates(String source) {
+        jdbcTemplate.update("DELETE FROM ingest_duplicate WHERE source = ?", source);
+    }
+
+    /**
+     * Canonical source key of a file: its absolute, normalized path.
+     *
+     * @param file File path
+     * @return Source key, also stored as the {@code source} metadata of its chunks
+     */
+    public static String sourceOf(Path file) {
+        return file.toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * SHA-256 of a file's content, streamed so large files are never held in memory.
+     *
+     * @param file File to hash
+     * @return Hex-encoded digest
+     * @throws IOException If the file cannot be read
+     */
+    public static String contentHash(Path file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Creates a SHA-256 digest.
+     *
+     * @return A fresh MessageDigest
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Deterministic ID of a chunk, so re-ingesting a file overwrites its previous chunks.
+     *
+     * @param source Source key
+     * @param index  Position of the chunk within the file
+     * @return UUID string usable as a vector store document ID
+     */
+    public static String chunkId(String source, int index) {
+        return UUID.nameUUIDFromBytes((source + "#" + index).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * IDs of the chunks {@code [from, to)} of a source.
+     *
+     * @param source Source key
+     * @param from   First chunk index (inclusive)
+     * @param to     Last chunk index (exclusive)
+     * @return Chunk IDs, empty if {@code from >= to}
+     */
+    public static List<String> chunkIds(String source, int from, int to) {
+        List<String> ids = new ArrayList<>(Math.max(0, to - from));
+        for (int i = from; i < to; i++) {
+            ids.add(chunkId(source, i));
+        }
+        return ids;
+    }
+
+    /**
+     * One ingested source file.
+     *
+     * @param source         Source key (absolute, normalized path)
+     * @param sizeBytes      File size when ingested
+     * @param modifiedMillis Last-modified time when ingested (epoch millis)
+     * @param contentHash    SHA-256 of the file content (hex)
+     * @param chunkCount     Number of chunks written for the file
+     */
+    public record Entry(String source, long sizeBytes, long modifiedMillis, String contentHash, int chunkCount) {
+    }
+}
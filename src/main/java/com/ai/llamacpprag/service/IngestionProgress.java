@@ -0,0 +1,127 @@
+package com.ai.llamacpprag.service;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of one ingestion run, updated by the pipeline workers and read by
+ * whoever polls the run (see {@link IngestionJobService}).
+ */
+public class IngestionProgress {
+
+    private final LongAdder filesDiscovered = new LongAdder();
+
+    private final LongAdder filesProcessed = new LongAdder();
+
+    private final LongAdder pages = new LongAdder();
+
+    private final LongAdder chunks = new LongAdder();
+
+    private final LongAdder embeddings = new LongAdder();
+
+    /**
+     * Set once the folder walk is over, i.e. {@code filesDiscovered} is final.
+     */
+    private volatile boolean discoveryComplete;
+
+    /**
+     * Set when the run should stop as soon as possible.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * Start of the run; rates and ETA are computed from it.
+     */
+    private volatile long startedNanos = System.nanoTime();
+
+    /**
+     * Resets the clock, for runs that were created before they could start.
+     */
+    void markStarted() {
+        startedNanos = System.nanoTime();
+    }
+
+    void fileDiscovered() {
+        filesDiscovered.increment();
+    }
+
+    void discoveryComplete() {
+        discoveryComplete = true;
+    }
+
+    void fileProcessed() {
+        filesProcessed.increment();
+    }
+
+    void pagesRead(int count) {
+        pages.add(count);
+    }
+
+    void chunksCreated(int count) {
+        chunks.add(count);
+    }
+
+    void chunksEmbedded(int count) {
+        embeddings.add(count);
+    }
+
+    /**
+     * Requests cancellation; the pipeline stops discovering and drops pending work.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long filesDiscovered() {
+        return filesDiscovered.sum();
+    }
+
+    public long filesProcessed() {
+        return filesProcessed.sum();
+    }
+
+    public long pages() {
+        return pages.sum();
+    }
+
+    public long chunks() {
+        return chunks.sum();
+    }
+
+    public long embeddings() {
+        return embeddings.sum();
+    }
+
+    public boolean isDiscoveryComplete() {
+        return discoveryComplete;
+    }
+
+    /**
+     * Chunks embedded and stored per second since the run started.
+     *
+     * @return Embedding throughput
+     */
+    public double embeddingsPerSecond() {
+        double seconds = (System.nanoTime() - startedNanos) / 1e9;
+        return seconds <= 0 ? 0 : embeddings.sum() / seconds;
+    }
+
+    /**
+     * Estimated seconds until every discovered file is processed, extrapolated from
+     * the file rate so far.
+     *
+     * @return ETA in seconds, or null while the total is unknown (discovery still
+     * running) or no file has finished yet
+     */
+    public Long etaSeconds() {
+        long done = filesProcessed.sum();
+        if (!discoveryComplete || done == 0)
+            return null;
+        long remaining = Math.max(0, filesDiscovered.sum() - done);
+        double elapsed = (System.nanoTime() - startedNanos) / 1e9;
+        return Math.round(remaining * elapsed / done);
+    }
+}
@@ -0,0 +1,345 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.GenerationProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.ChatOptions;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Spreads generations over several OpenAI-compatible llama.cpp servers.
+ * <p>
+ * Each request goes to the healthy server with the fewest outstanding requests.
+ * With prompt affinity, a prompt is first offered to the server its leading
+ * characters hash to (rendezvous hashing over the healthy servers), so prompts
+ * sharing a system prompt and context land where llama.cpp still has that prefix
+ * cached. It only goes to the least loaded server when the affine one has more
+ * than {@code maxImbalance} requests beyond it.
+ * <p>
+ * Every server's health endpoint is probed each {@code healthInterval}. A server
+ * failing {@code failureThreshold} probes or requests in a row is ejected until a
+ * probe succeeds again. When every server is ejected, requests still go to the
+ * least loaded one rather than failing here.
+ * <p>
+ * Meters, tagged {@code backend} (the base URL): {@code rag.chat.backend.requests}
+ * (timer, tag {@code outcome=success|error}), {@code rag.chat.backend.outstanding},
+ * {@code rag.chat.backend.healthy} (1 or 0) and {@code rag.chat.backend.ejections};
+ * {@code rag.chat.backend.affinity} (tag {@code result=kept|moved}) counts
+ * affine prompts.
+ */
+public class LoadBalancedChatModel implements ChatModel, AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoadBalancedChatModel.class);
+
+    private final List<Backend> backends = new ArrayList<>();
+
+    private final int failureThreshold;
+
+    private final int affinityPrefixChars;
+
+    private final int maxImbalance;
+
+    /**
+     * Tells whether a health endpoint answers as healthy.
+     */
+    private final Predicate<URI> healthProbe;
+
+    /**
+     * Runs the periodic health probes.
+     */
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * Rotates the first candidate, so servers with equal load take turns.
+     */
+    private final AtomicInteger nextStart = new AtomicInteger();
+
+    private final Counter affinityKept;
+
+    private final Counter affinityMoved;
+
+    /**
+     * Constructs a LoadBalancedChatModel and starts probing its servers.
+     *
+     * @param models        Chat model of each server, by base URL
+     * @param settings      Health check and affinity settings
+     * @param healthProbe   Tells whether a health endpoint answers as healthy
+     * @param meterRegistry Registry for per-server metrics
+     */
+    public LoadBalancedChatModel(Map<String, ChatModel> models, GenerationProperties.Pool settings,
+                                 Predicate<URI> healthProbe, MeterRegistry meterRegistry) {
+        if (models.isEmpty())
+            throw new IllegalArgumentException("rag.generation.pool.urls lists no llama.cpp server");
+        this.failureThreshold = Math.max(1, settings.getFailureThreshold());
+        this.affinityPrefixChars = settings.getAffinityPrefixChars();
+        this.maxImbalance = Math.max(0, settings.getMaxImbalance());
+        this.healthProbe = healthProbe;
+        models.forEach((url, model) -> backends.add(
+                new Backend(url, model, healthUri(url, settings.getHealthPath()), meterRegistry)));
+
+        this.affinityKept = affinityCounter(meterRegistry, "kept");
+        this.affinityMoved = affinityCounter(meterRegistry, "moved");
+
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofVirtual().name("chat-backend-health").factory());
+        long interval = Math.max(1, settings.getHealthInterval().toMillis());
+        this.healthChecker.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+        logger.info("Spreading generations over {} llama.cpp servers", backends.size());
+    }
+
+    @Override
+    public ChatResponse call(Prompt prompt) {
+        Lease lease = lease(prompt);
+        try {
+            ChatResponse response = lease.backend().model().call(prompt);
+            succeeded(lease);
+            return response;
+        } catch (RuntimeException e) {
+            failed(lease);
+            throw e;
+        } finally {
+            lease.backend().outstanding().decrementAndGet();
+        }
+    }
+
+    /**
+     * Streams from the server chosen at subscription; it counts as outstanding until
+     * the stream completes, fails or is cancelled.
+     */
+    @Override
+    public Flux<ChatResponse> stream(Prompt prompt) {
+        return Flux.using(() -> lease(prompt),
+                lease -> lease.backend().model().stream(prompt)
+                        .doOnComplete(() -> succeeded(lease))
+                        .doOnError(e -> failed(lease)),
+                lease -> lease.backend().outstanding().decrementAndGet());
+    }
+
+    @Override
+    public ChatOptions getDefaultOptions() {
+        return backends.getFirst().model().getDefaultOptions();
+    }
+
+    /**
+     * Stops the health probes.
+     */
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+    }
+
+    /**
+     * Probes every server once, ejecting or taking back servers as needed.
+     */
+    void checkHealth() {
+        for (Backend backend : backends) {
+            boolean healthy;
+            try {
+                healthy = healthProbe.test(backend.health());
+            } catch (RuntimeException e) {
+                healthy = false;
+            }
+            if (healthy) {
+                recovered(backend);
+            } else {
+                failure(backend);
+            }
+        }
+    }
+
+    /**
+     * Picks the server for a prompt and counts the request as outstanding on it.
+     */
+    private Lease lease(Prompt prompt) {
+        Backend backend = choose(prompt);
+        backend.outstanding().incrementAndGet();
+        return new Lease(backend, System.nanoTime());
+    }
+
+    private Backend choose(Prompt prompt) {
+        List<Backend> candidates = backends.stream().filter(b -> b.healthy().get()).toList();
+        if (candidates.isEmpty())
+            candidates = backends;
+
+        int start = Math.floorMod(nextStart.getAndIncrement(), candidates.size());
+        Backend least = candidates.get(start);
+        for (int i = 1; i < candidates.size(); i++) {
+            Backend backend = candidates.get((start + i) % candidates.size());
+            if (backend.outstanding().get() < least.outstanding().get())
+                least = backend;
+        }
+        if (affinityPrefixChars <= 0 || candidates.size() == 1)
+            return least;
+
+        Backend affine = affine(prompt, candidates);
+        if (affine.outstanding().get() - least.outstanding().get() <= maxImbalance) {
+            affinityKept.increment();
+            return affine;
+        }
+        affinityMoved.increment();
+        return least;
+    }
+
+    /**
+     * Server the prompt's leading characters hash to. Rendezvous hashing: the
+     * server scoring highest for the prefix wins, so ejecting one server only
+     * moves the prefixes it had.
+     */
+    private Backend affine(Prompt prompt, List<Backend> candidates) {
+        String text = prompt.getContents();
+        long prefixHash = text.substring(0, Math.min(text.length(), affinityPrefixChars)).hashCode();
+        Backend best = null;
+        long bestScore = 0;
+        for (Backend backend : candidates) {
+            long score = mix((prefixHash << 32) ^ (backend.name().hashCode() & 0xffffffffL));
+            if (best == null || score > bestScore) {
+                best = backend;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    private void succeeded(Lease lease) {
+        lease.backend().succeeded().record(System.nanoTime() - lease.started(), TimeUnit.NANOSECONDS);
+        recovered(lease.backend());
+    }
+
+    private void failed(Lease lease) {
+        lease.backend().failed().record(System.nanoTime() - lease.started(), TimeUnit.NANOSECONDS);
+        failure(lease.backend());
+    }
+
+    private void recovered(Backend backend) {
+        backend.failures().set(0);
+        if (backend.healthy().compareAndSet(false, true))
+            logger.info("llama.cpp server {} is healthy again", backend.name());
+    }
+
+    private void failure(Backend backend) {
+        if (backend.failures().incrementAndGet() >= failureThreshold && backend.healthy().compareAndSet(true, false)) {
+            backend.ejections().increment();
+            logger.warn("Ejected llama.cpp server {} after {} failures in a row", backend.name(), failureThreshold);
+        }
+    }
+
+    /**
+     * Health probe sending {@code GET} to the endpoint; healthy on {@code 200}.
+     *
+     * @param timeout Time to connect and to answer
+     * @return The probe
+     */
+    public static Predicate<URI> httpHealthProbe(Duration timeout) {
+        HttpClient client = HttpClient.newBuilder().connectTimeout(timeout).build();
+        return uri -> {
+            try {
+                HttpRequest request = HttpRequest.newBuilder(uri).timeout(timeout).GET().build();
+                return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200;
+            } catch (IOException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        };
+    }
+
+    private static URI healthUri(String url, String healthPath) {
+        String base = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        return URI.create(base + (healthPath.startsWith("/") ? healthPath : "/" + healthPath));
+    }
+
+    /**
+     * Final mixing step of MurmurHash3 (fmix64).
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static Counter affinityCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("rag.chat.backend.affinity")
+                .description("Affine prompts kept on their server or moved to the least loaded one")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    /**
+     * One llama.cpp server and its load and health.
+     *
+     * @param name        Base URL
+     * @param model       Chat model calling it
+     * @param health      Health endpoint
+     * @param outstanding Requests sent and not yet answered
+     * @param failures    Failed probes and requests in a row
+     * @param healthy     False while ejected
+     * @param succeeded   Latency of successful requests
+     * @param failed      Latency of failed requests
+     * @param ejections   Times the server was ejected
+     */
+    private record Backend(String name, ChatModel model, URI health, AtomicInteger outstanding,
+                           AtomicInteger failures, AtomicBoolean healthy, Timer succeeded, Timer failed,
+                           Counter ejections) {
+
+        Backend(String name, ChatModel model, URI health, MeterRegistry meterRegistry) {
+            this(name, model, health, new AtomicInteger(), new AtomicInteger(), new AtomicBoolean(true),
+                    requestTimer(meterRegistry, name, "success"), requestTimer(meterRegistry, name, "error"),
+                    Counter.builder("rag.chat.backend.ejections")
+                            .description("Times a llama.cpp server was ejected as unhealthy")
+                            .tag("backend", name)
+                            .register(meterRegistry));
+            Gauge.builder("rag.chat.backend.outstanding", outstanding, AtomicInteger::get)
+                    .description("Generations sent to a llama.cpp server and not yet answered")
+                    .tag("backend", name)
+                    .register(meterRegistry);
+            Gauge.builder("rag.chat.backend.healthy", healthy, h -> h.get() ? 1 : 0)
+                    .description("1 while a llama.cpp server takes requests, 0 while ejected")
+                    .tag("backend", name)
+                    .register(meterRegistry);
+        }
+
+        private static Timer requestTimer(MeterRegistry meterRegistry, String name, String outcome) {
+            return Timer.builder("rag.chat.backend.requests")
+                    .description("Generations by llama.cpp server and outcome")
+                    .tag("backend", name)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * A request counted on its server.
+     *
+     * @param backend Server handling the request
+     * @param started Time it was sent, in {@link System#nanoTime()} units
+     */
+    private record Lease(Backend backend, long started) {
+    }
+}
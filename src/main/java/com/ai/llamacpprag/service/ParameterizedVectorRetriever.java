@@ -0,0 +1,68 @@
+package com.ai.llamacpprag.service;
+
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.List;
+
+/**
+ * Vector search honouring the {@link RetrievalParams} of each request: top-k and
+ * similarity threshold fall back to the configured values, and a metadata filter
+ * is handed to the vector store, which applies it inside the similarity search.
+ */
+public class ParameterizedVectorRetriever implements DocumentRetriever {
+
+    private final VectorStore vectorStore;
+
+    /**
+     * Chunks returned when the request does not say.
+     */
+    private final int topK;
+
+    /**
+     * Minimum similarity when the request does not say.
+     */
+    private final double similarityThreshold;
+
+    /**
+     * Matches fetched at least, e.g. as candidates for fusion; 0 to fetch top-k.
+     */
+    private final int candidates;
+
+    /**
+     * Constructs a ParameterizedVectorRetriever.
+     *
+     * @param vectorStore         Store to search
+     * @param topK                Default number of chunks
+     * @param similarityThreshold Default minimum cosine similarity
+     * @param candidates          Matches fetched at least, or 0 to fetch exactly top-k
+     */
+    public ParameterizedVectorRetriever(VectorStore vectorStore, int topK, double similarityThreshold,
+                                        int candidates) {
+        this.vectorStore = vectorStore;
+        this.topK = topK;
+        this.similarityThreshold = similarityThreshold;
+        this.candidates = candidates;
+    }
+
+    /**
+     * Runs the similarity search with the request's parameters.
+     *
+     * @param query Question, with the request's parameters in its context
+     * @return Matching chunks, most similar first
+     */
+    @Override
+    public List<Document> retrieve(Query query) {
+        var params = RetrievalParams.of(query);
+        var request = SearchRequest.builder()
+                .query(query.text())
+                .topK(Math.max(candidates, params.topK(topK)))
+                .similarityThreshold(params.similarityThreshold(similarityThreshold))
+                .filterExpression(params.filterExpression())
+                .build();
+        return vectorStore.similaritySearch(request);
+    }
+}
@@ -0,0 +1,123 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.IngestionProperties;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.io.RandomAccessStreamCache.StreamCacheCreateFunction;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.springframework.ai.document.Document;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Extracts the text of every PDF page in a single pass over the document.
+ * <p>
+ * Running {@link PDFTextStripper#getText(PDDocument)} once per page with
+ * start/end page set walks the page tree again for every page, which is quadratic
+ * on long manuals. This reader runs the stripper once and cuts its output at the
+ * page hooks, emitting one {@link Document} per non-blank page as it goes.
+ */
+public class PdfPageReader {
+
+    /**
+     * PDF memory settings (main memory, mixed, temp-file backed).
+     */
+    private final IngestionProperties.Pdf settings;
+
+    /**
+     * Constructs a PdfPageReader with the given memory settings.
+     *
+     * @param settings PDF memory settings
+     */
+    public PdfPageReader(IngestionProperties.Pdf settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Reads a PDF and emits one document per page that has extractable text.
+     *
+     * @param pdfPath Path to the PDF file
+     * @param source  Value of the {@code source} metadata of the emitted pages
+     * @param pages   Receives the pages in order, while the document is being read
+     * @return Number of pages emitted (0 for scanned-image or empty PDFs)
+     * @throws IOException If the PDF cannot be loaded or parsed
+     */
+    public int read(Path pdfPath, String source, Consumer<Document> pages) throws IOException {
+        try (PDDocument pdf = Loader.loadPDF(pdfPath.toFile(), streamCache())) {
+            var stripper = new PageEmittingStripper(source, pages);
+            stripper.writeText(pdf, stripper.pageText);
+            return stripper.emitted;
+        }
+    }
+
+    /**
+     * Builds the scratch-buffer factory PDFBox uses while parsing, per the
+     * configured memory mode.
+     *
+     * @return Stream cache factory
+     */
+    StreamCacheCreateFunction streamCache() {
+        MemoryUsageSetting memory = switch (settings.getMemoryMode()) {
+            case MAIN_MEMORY -> MemoryUsageSetting.setupMainMemoryOnly();
+            case MIXED -> MemoryUsageSetting.setupMixed(settings.getMaxMainMemory().toBytes());
+            case TEMP_FILE -> MemoryUsageSetting.setupTempFileOnly();
+        };
+        if (settings.getTempDir() != null) {
+            memory.setTempDir(settings.getTempDir().toFile());
+        }
+        return memory.streamCache;
+    }
+
+    /**
+     * Text stripper that writes into a per-page buffer and emits the buffer as a
+     * document at the end of every page.
+     */
+    private static final class PageEmittingStripper extends PDFTextStripper {
+
+        /**
+         * Text of the page being processed.
+         */
+        private final StringWriter pageText = new StringWriter();
+
+        private final String source;
+
+        private final Consumer<Document> pages;
+
+        private int emitted;
+
+        private PageEmittingStripper(String source, Consumer<Document> pages) {
+            this.source = source;
+            this.pages = pages;
+        }
+
+        /**
+         * Called after the page's text has been written: emits it and resets the buffer.
+         *
+         * @param page The page that ended
+         * @throws IOException If the underlying writer fails
+         */
+        @Override
+        protected void endPage(PDPage page) throws IOException {
+            super.endPage(page);
+
+            String text = pageText.toString();
+            pageText.getBuffer().setLength(0);
+            if (text.isBlank()) {
+                // Could be scanned-image PDF or empty page
+                return;
+            }
+
+            Document doc = new Document(text);
+            doc.getMetadata().put("source", source);
+            doc.getMetadata().put("fileType", "pdf");
+            doc.getMetadata().put("page", getCurrentPageNo());
+            pages.accept(doc);
+            emitted++;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.RetrievalProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.pgvector.PgVectorFilterExpressionConverter;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lexical leg of hybrid retrieval: Postgres full-text search over the pgvector
+ * table's chunk text.
+ * <p>
+ * Catches what embeddings blur: error codes, part numbers, identifiers and rare
+ * terms. The question is turned into an OR of its stemmed terms, so a chunk
+ * matches as soon as it contains one of them, and matches are ranked with
+ * {@code ts_rank_cd} (term frequency and proximity). A GIN index on the
+ * {@code to_tsvector} expression is created at startup, once the vector store has
+ * created its table. A request's metadata filter is converted to the same JSON path
+ * the pgvector store matches, and bound as a parameter.
+ */
+@Repository
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "pgvector", matchIfMissing = true)
+public class PgFullTextRetriever implements DocumentRetriever, SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(PgFullTextRetriever.class);
+
+    /**
+     * JDBC access to the vector table.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Statement creating the full-text index.
+     */
+    private final String createIndexSql;
+
+    /**
+     * Query taking the question text and the maximum number of matches.
+     */
+    private final String searchSql;
+
+    /**
+     * Query taking the question text, a JSON path filter on the metadata and the
+     * maximum number of matches.
+     */
+    private final String filteredSearchSql;
+
+    private final PgVectorFilterExpressionConverter filterConverter = new PgVectorFilterExpressionConverter();
+
+    /**
+     * Matches returned per question.
+     */
+    private final int candidates;
+
+    /**
+     * Constructs a PgFullTextRetriever for the pgvector store's table.
+     *
+     * @param jdbcTemplate JdbcTemplate for the application database
+     * @param schema       Schema of the vector table
+     * @param tableName    Name of the vector table
+     * @param properties   Retrieval settings
+     */
+    public PgFullTextRetriever(JdbcTemplate jdbcTemplate,
+                               @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schema,
+                               @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+                               RetrievalProperties properties) {
+        String config = properties.getHybrid().getTextSearchConfig();
+        if (!config.matches("[A-Za-z_][A-Za-z0-9_]*"))
+            throw new IllegalArgumentException("Invalid text search configuration: " + config);
+
+        this.jdbcTemplate = jdbcTemplate;
+        this.candidates = properties.getHybrid().getCandidates();
+        // The index is only used if queries repeat its expression exactly
+        String document = "to_tsvector('" + config + "', content)";
+        this.createIndexSql = "CREATE INDEX IF NOT EXISTS " + tableName + "_content_fts ON " + schema + "." + tableName
+                + " USING gin (" + document + ")";
+        String search = """
+                SELECT id, content, metadata::text AS metadata, ts_rank_cd(%1$s, query) AS rank
+                FROM %2$s.%3$s, replace(plainto_tsquery('%4$s', ?)::text, '&', '|')::tsquery query
+                WHERE %1$s @@ query%5$s
+                ORDER BY rank DESC
+                LIMIT ?""";
+        this.searchSql = search.formatted(document, schema, tableName, config, "");
+        this.filteredSearchSql = search.formatted(document, schema, tableName, config,
+                " AND metadata::jsonb @@ ?::jsonpath");
+    }
+
+    /**
+     * Creates the full-text index if missing. Failure is not fatal: searches then
+     * scan the table.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            jdbcTemplate.execute(createIndexSql);
+        } catch (DataAccessException e) {
+            logger.warn("Full-text index not created, lexical retrieval will scan the table: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Finds the chunks sharing the most terms with the question, within the
+     * request's metadata filter.
+     *
+     * @param query Question, with the request's parameters in its context
+     * @return Matching chunks, best first, scored with their text rank
+     */
+    @Override
+    public List<Document> retrieve(Query query) {
+        var params = RetrievalParams.of(query);
+        int limit = Math.max(candidates, params.topK(0));
+        var filter = params.filterExpression();
+        if (filter == null)
+            return jdbcTemplate.query(searchSql, PgFullTextRetriever::mapRow, query.text(), limit);
+        return jdbcTemplate.query(filteredSearchSql, PgFullTextRetriever::mapRow,
+                query.text(), filterConverter.convertExpression(filter), limit);
+    }
+
+    private static Document mapRow(ResultSet rs, int rowNum) throws SQLException {
+        String metadata = rs.getString("metadata");
+        return Document.builder()
+                .id(rs.getString("id"))
+                .text(rs.getString("content"))
+                .metadata(metadata == null ? Map.of() : ModelOptionsUtils.jsonToMap(metadata))
+                .score(rs.getDouble("rank"))
+                .build();
+    }
+}
@@ -0,0 +1,341 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.RetrievalProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.pgvector.PgVectorFilterExpressionConverter;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Quantized vector search over the pgvector table: a first pass over compact
+ * copies of the embeddings, re-scored with the full-precision embeddings.
+ * <p>
+ * The compact copies only exist in an HNSW index on an expression of the
+ * {@code embedding} column, created at startup: {@code halfvec} (16-bit floats,
+ * half the size) or {@code bit} via {@code binary_quantize} (one bit per
+ * dimension, 1/32 of the size, searched by Hamming distance). The smaller index
+ * stays in shared buffers where the full-precision one no longer fits. The first
+ * pass fetches {@code oversample} times the chunks asked for; their exact cosine
+ * distance is then computed from the table rows and the best are returned, so
+ * scores and the similarity threshold mean the same as in a full-precision search.
+ * <p>
+ * The full-precision HNSW index of the vector store is not needed in this mode
+ * and can be dropped to free its memory. The size of every HNSW index on the
+ * table is exposed as {@code rag.retrieval.index.size} (tag {@code index}).
+ */
+@Repository
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "pgvector", matchIfMissing = true)
+public class PgQuantizedVectorRetriever implements DocumentRetriever, SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(PgQuantizedVectorRetriever.class);
+
+    /**
+     * pgvector's default and largest {@code hnsw.ef_search}.
+     */
+    private static final int MIN_EF_SEARCH = 40;
+
+    private static final int MAX_EF_SEARCH = 1000;
+
+    /**
+     * JDBC access to the vector table.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Embeds the question.
+     */
+    private final EmbeddingModel embeddingModel;
+
+    private final MeterRegistry meterRegistry;
+
+    private final String schema;
+
+    private final String tableName;
+
+    private final RetrievalProperties.QuantizationMode mode;
+
+    /**
+     * Chunks returned when the request does not say.
+     */
+    private final int topK;
+
+    /**
+     * Minimum similarity when the request does not say.
+     */
+    private final double similarityThreshold;
+
+    /**
+     * Chunks fetched at least, e.g. as candidates for fusion; 0 to fetch top-k.
+     */
+    private final int candidates;
+
+    /**
+     * First-pass candidates per chunk returned.
+     */
+    private final int oversample;
+
+    private final PgVectorFilterExpressionConverter filterConverter = new PgVectorFilterExpressionConverter();
+
+    /**
+     * Query taking the question vector, the number of candidates, the question
+     * vector again, the maximum distance and the number of chunks; null until the
+     * quantized index exists.
+     */
+    private volatile String searchSql;
+
+    /**
+     * Like {@link #searchSql}, with a JSON path filter on the metadata after the
+     * first question vector.
+     */
+    private volatile String filteredSearchSql;
+
+    /**
+     * Constructs a PgQuantizedVectorRetriever for the pgvector store's table.
+     *
+     * @param jdbcTemplate   JdbcTemplate for the application database
+     * @param schema         Schema of the vector table
+     * @param tableName      Name of the vector table
+     * @param embeddingModel Model embedding the questions
+     * @param properties     Retrieval settings
+     * @param meterRegistry  Registry for index size gauges
+     */
+    public PgQuantizedVectorRetriever(JdbcTemplate jdbcTemplate,
+                                      @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schema,
+                                      @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+                                      EmbeddingModel embeddingModel,
+                                      RetrievalProperties properties,
+                                      MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schema = schema;
+        this.tableName = tableName;
+        this.embeddingModel = embeddingModel;
+        this.meterRegistry = meterRegistry;
+        this.mode = properties.getQuantization().getMode();
+        this.oversample = Math.max(1, properties.getQuantization().getOversample());
+        this.topK = properties.getTopK();
+        this.similarityThreshold = properties.getSimilarityThreshold();
+        this.candidates = properties.getHybrid().isEnabled() ? properties.getHybrid().getCandidates() : 0;
+    }
+
+    /**
+     * Whether quantized retrieval is configured and its index exists.
+     */
+    public boolean isReady() {
+        return searchSql != null;
+    }
+
+    /**
+     * Returns this retriever while it is ready, else the given one.
+     *
+     * @param fallback Retriever for when quantized retrieval is off or failed to start
+     * @return Retriever choosing between the two on each question
+     */
+    public DocumentRetriever orElse(DocumentRetriever fallback) {
+        return query -> isReady() ? retrieve(query) : fallback.retrieve(query);
+    }
+
+    /**
+     * Creates the quantized index if missing and registers the index size gauges.
+     * Failure is not fatal: retrieval then stays at full precision.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (mode == RetrievalProperties.QuantizationMode.NONE)
+            return;
+        try {
+            Integer dimensions = jdbcTemplate.queryForObject(
+                    "SELECT atttypmod FROM pg_attribute WHERE attrelid = ?::regclass AND attname = 'embedding'",
+                    Integer.class, schema + "." + tableName);
+            if (dimensions == null || dimensions <= 0) {
+                logger.warn("Embedding column of {}.{} has no fixed dimensions, quantized retrieval disabled",
+                        schema, tableName);
+                return;
+            }
+            String index = tableName + "_embedding_" + mode.name().toLowerCase() + "_idx";
+            long started = System.nanoTime();
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS " + index + " ON " + schema + "." + tableName
+                    + " USING hnsw ((" + firstPassExpression(mode, dimensions, "embedding") + ") "
+                    + operatorClass(mode) + ")");
+            logger.info("Quantized ({}) index {} ready in {} ms", mode, index, (System.nanoTime() - started) / 1_000_000);
+
+            String search = """
+                    SELECT id, content, metadata::text AS metadata, distance FROM (
+                        SELECT id, content, metadata, embedding <=> ?::vector AS distance
+                        FROM %1$s.%2$s%3$s
+                        ORDER BY %4$s %5$s %6$s
+                        LIMIT ?
+                    ) candidates
+                    WHERE distance <= ?
+                    ORDER BY distance
+                    LIMIT ?""";
+            String column = firstPassExpression(mode, dimensions, "embedding");
+            String question = firstPassExpression(mode, dimensions, "?::vector");
+            String operator = mode == RetrievalProperties.QuantizationMode.BINARY ? "<~>" : "<=>";
+            this.filteredSearchSql = search.formatted(schema, tableName, "\n    WHERE metadata::jsonb @@ ?::jsonpath",
+                    column, operator, question);
+            this.searchSql = search.formatted(schema, tableName, "", column, operator, question);
+            registerIndexSizes();
+        } catch (DataAccessException e) {
+            logger.warn("Quantized index not created, retrieval stays at full precision: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Finds the chunks most similar to the question: the best of the first pass's
+     * candidates by full-precision cosine distance, within the request's top-k,
+     * threshold and metadata filter.
+     *
+     * @param query Question, with the request's parameters in its context
+     * @return Matching chunks, most similar first, scored with their cosine similarity
+     */
+    @Override
+    public List<Document> retrieve(Query query) {
+        String sql = searchSql;
+        if (sql == null)
+            throw new IllegalStateException("Quantized retrieval is not ready");
+        var params = RetrievalParams.of(query);
+        int limit = Math.max(candidates, params.topK(topK));
+        int firstPass = limit * oversample;
+        double maxDistance = 1 - params.similarityThreshold(similarityThreshold);
+        var filter = params.filterExpression();
+        String vector = toVectorLiteral(embeddingModel.embed(query.text()));
+
+        List<Object> args = new ArrayList<>();
+        args.add(vector);
+        if (filter != null) {
+            sql = filteredSearchSql;
+            args.add(filterConverter.convertExpression(filter));
+        }
+        args.addAll(List.of(vector, firstPass, maxDistance, limit));
+        String finalSql = sql;
+        return jdbcTemplate.execute((ConnectionCallback<List<Document>>) connection ->
+                search(connection, finalSql, args, firstPass));
+    }
+
+    /**
+     * Runs the search in a transaction whose {@code hnsw.ef_search} is at least the
+     * number of first-pass candidates, as the index returns no more than that.
+     */
+    private static List<Document> search(Connection connection, String sql, List<Object> args, int firstPass)
+            throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        try {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET LOCAL hnsw.ef_search = "
+                        + Math.min(MAX_EF_SEARCH, Math.max(MIN_EF_SEARCH, firstPass)));
+            }
+            List<Document> documents = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < args.size(); i++) {
+                    statement.setObject(i + 1, args.get(i));
+                }
+                try (ResultSet rs = statement.executeQuery()) {
+                    while (rs.next()) {
+                        documents.add(mapRow(rs));
+                    }
+                }
+            }
+            connection.commit();
+            return documents;
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     * Exposes the on-disk size of every HNSW index on the table, read from the
+     * catalog on each scrape.
+     */
+    private void registerIndexSizes() {
+        List<String> indexes = jdbcTemplate.queryForList(
+                "SELECT indexname FROM pg_indexes WHERE schemaname = ? AND tablename = ? "
+                        + "AND indexdef ILIKE '%USING hnsw%'",
+                String.class, schema, tableName);
+        for (String index : indexes) {
+            Gauge.builder("rag.retrieval.index.size", () -> indexSize(index))
+                    .description("Size of an HNSW index on the vector table")
+                    .baseUnit("bytes")
+                    .tag("index", index)
+                    .register(meterRegistry);
+            logger.info("HNSW index {}: {} MB", index, Math.round(indexSize(index) / 1e6));
+        }
+    }
+
+    private double indexSize(String index) {
+        try {
+            Long bytes = jdbcTemplate.queryForObject("SELECT pg_relation_size(to_regclass(?))", Long.class,
+                    schema + "." + index);
+            return bytes == null ? Double.NaN : bytes;
+        } catch (DataAccessException e) {
+            return Double.NaN;
+        }
+    }
+
+    /**
+     * The first pass's form of a vector expression.
+     */
+    static String firstPassExpression(RetrievalProperties.QuantizationMode mode, int dimensions, String vector) {
+        return switch (mode) {
+            case HALFVEC -> "(" + vector + ")::halfvec(" + dimensions + ")";
+            case BINARY -> "binary_quantize(" + vector + ")::bit(" + dimensions + ")";
+            case NONE -> vector;
+        };
+    }
+
+    private static String operatorClass(RetrievalProperties.QuantizationMode mode) {
+        return mode == RetrievalProperties.QuantizationMode.BINARY ? "bit_hamming_ops" : "halfvec_cosine_ops";
+    }
+
+    /**
+     * Text form of a vector, e.g. {@code [0.1,-0.2]}.
+     */
+    static String toVectorLiteral(float[] vector) {
+        var literal = new StringBuilder(vector.length * 10).append('[');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0)
+                literal.append(',');
+            literal.append(vector[i]);
+        }
+        return literal.append(']').toString();
+    }
+
+    private static Document mapRow(ResultSet rs) throws SQLException {
+        String json = rs.getString("metadata");
+        double distance = rs.getDouble("distance");
+        Map<String, Object> metadata = new HashMap<>(json == null ? Map.of() : ModelOptionsUtils.jsonToMap(json));
+        metadata.put("distance", distance);
+        return Document.builder()
+                .id(rs.getString("id"))
+                .text(rs.getString("content"))
+                .metadata(metadata)
+                .score(1 - distance)
+                .build();
+    }
+}
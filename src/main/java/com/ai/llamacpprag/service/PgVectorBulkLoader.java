@@ -0,0 +1,392 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.IngestionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes embedded chunks to the pgvector table with {@code COPY ... FROM STDIN
+ * (FORMAT binary)} instead of the vector store's batched {@code INSERT}s.
+ * <p>
+ * Vectors travel as binary floats, so Postgres no longer parses a text literal of
+ * several hundred numbers per row. Rows either go straight into the table (the
+ * chunks' previous rows are deleted first, in the same transaction) or into an
+ * unlogged staging table that is merged into the table with a single
+ * {@code INSERT ... ON CONFLICT} when the run ends. With staging, the HNSW index
+ * can also be dropped before the merge and rebuilt once afterwards, which is far
+ * cheaper than maintaining it row by row on a large load.
+ * <p>
+ * Staged rows left behind by a run that never merged them (e.g. a crash) belong to
+ * files already recorded in the manifest; {@link #mergeLeftovers()} merges them
+ * before the next run writes anything, whatever its settings.
+ * <p>
+ * Only present when pgvector is the vector store.
+ */
+@Repository
+@ConditionalOnProperty(name = "spring.ai.vectorstore.type", havingValue = "pgvector", matchIfMissing = true)
+public class PgVectorBulkLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(PgVectorBulkLoader.class);
+
+    /**
+     * Signature, flags and header extension length of the binary COPY format.
+     */
+    private static final byte[] COPY_HEADER = {
+            'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0,
+            0, 0, 0, 0,
+            0, 0, 0, 0};
+
+    private static final int COPY_BUFFER_BYTES = 1 << 16;
+
+    /**
+     * JDBC access to the vector table.
+     */
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Schema-qualified vector table (the pgvector store's table).
+     */
+    private final String table;
+
+    /**
+     * Schema-qualified staging table.
+     */
+    private final String stagingTable;
+
+    /**
+     * Schema of both tables.
+     */
+    private final String schema;
+
+    /**
+     * Unqualified name of the vector table.
+     */
+    private final String tableName;
+
+    /**
+     * Serializes index rebuilds of concurrent runs.
+     */
+    private final ReentrantLock indexLock = new ReentrantLock();
+
+    /**
+     * Whether the staging table was created by this instance.
+     */
+    private volatile boolean stagingReady;
+
+    /**
+     * Whether the staging table is known to hold no rows of a finished run: set once
+     * leftovers were merged, cleared when a run's merge fails.
+     */
+    private volatile boolean leftoversMerged;
+
+    private final Counter rowsCopied;
+
+    private final Timer copyTimer;
+
+    private final Timer mergeTimer;
+
+    /**
+     * Constructs a PgVectorBulkLoader for the pgvector store's table.
+     *
+     * @param jdbcTemplate  JdbcTemplate for the application database
+     * @param schema        Schema of the vector table
+     * @param tableName     Name of the vector table
+     * @param meterRegistry Registry for row and timing metrics
+     */
+    public PgVectorBulkLoader(JdbcTemplate jdbcTemplate,
+                              @Value("${spring.ai.vectorstore.pgvector.schema-name:public}") String schema,
+                              @Value("${spring.ai.vectorstore.pgvector.table-name:vector_store}") String tableName,
+                              MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schema = schema;
+        this.tableName = tableName;
+        this.table = schema + "." + tableName;
+        this.stagingTable = schema + "." + tableName + "_staging";
+        this.rowsCopied = Counter.builder("rag.ingest.bulk.rows")
+                .description("Chunk rows written with binary COPY (rate = rows per second)")
+                .register(meterRegistry);
+        this.copyTimer = Timer.builder("rag.ingest.bulk.copy")
+                .description("Time spent in one binary COPY of an embedded batch")
+                .register(meterRegistry);
+        this.mergeTimer = Timer.builder("rag.ingest.bulk.merge")
+                .description("Time spent merging staged rows into the vector table")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Starts a bulk load for one ingestion run.
+     *
+     * @param settings Bulk load settings
+     * @return Session receiving the run's embedded batches; close it when the run ends
+     */
+    public Session begin(IngestionProperties.BulkLoad settings) {
+        if (settings.isStaging())
+            ensureStagingTable();
+        return new Session(settings);
+    }
+
+    /**
+     * Merges the rows a previous run left in the staging table. Call before a run
+     * writes any row, so that these older rows cannot overwrite newer ones later.
+     * Only the first call, and the first after a failed merge, queries the database.
+     *
+     * @return Rows merged
+     */
+    public long mergeLeftovers() {
+        if (leftoversMerged)
+            return 0;
+        if (!stagingReady) {
+            Boolean exists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class,
+                    stagingTable);
+            if (!Boolean.TRUE.equals(exists)) {
+                leftoversMerged = true;
+                return 0;
+            }
+        }
+        long merged = merge(0);
+        leftoversMerged = true;
+        if (merged > 0)
+            logger.info("Merged {} rows left staged by an earlier run into {}", merged, table);
+        return merged;
+    }
+
+    /**
+     * Writes rows in the binary COPY format: the file header, one tuple per chunk
+     * (id uuid, content text, metadata json, embedding vector) and the trailer.
+     *
+     * @param out        Destination, typically a COPY stream
+     * @param chunks     Chunks to write
+     * @param embeddings Embedding of each chunk, in the same order
+     * @throws IOException If the destination cannot be written
+     */
+    static void writeCopyData(DataOutputStream out, List<Document> chunks, List<float[]> embeddings)
+            throws IOException {
+        if (chunks.size() != embeddings.size())
+            throw new IllegalArgumentException(chunks.size() + " chunks but " + embeddings.size() + " embeddings");
+
+        out.write(COPY_HEADER);
+        for (int i = 0; i < chunks.size(); i++) {
+            Document chunk = chunks.get(i);
+            float[] embedding = embeddings.get(i);
+            out.writeShort(4);
+
+            UUID id = UUID.fromString(chunk.getId());
+            out.writeInt(16);
+            out.writeLong(id.getMostSignificantBits());
+            out.writeLong(id.getLeastSignificantBits());
+
+            writeText(out, chunk.getText());
+            writeText(out, ModelOptionsUtils.toJsonString(chunk.getMetadata()));
+
+            // pgvector's binary form: dimensions, an unused int16, then the floats
+            out.writeInt(2 * Short.BYTES + embedding.length * Float.BYTES);
+            out.writeShort(embedding.length);
+            out.writeShort(0);
+            for (float value : embedding) {
+                out.writeFloat(value);
+            }
+        }
+        out.writeShort(-1);
+    }
+
+    private static void writeText(DataOutputStream out, String text) throws IOException {
+        if (text == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void ensureStagingTable() {
+        if (stagingReady)
+            return;
+        jdbcTemplate.execute("CREATE UNLOGGED TABLE IF NOT EXISTS " + stagingTable + " ("
+                + "seq BIGSERIAL, id UUID NOT NULL, content TEXT, metadata JSON, embedding VECTOR)");
+        stagingReady = true;
+    }
+
+    /**
+     * Copies rows into the given table on one connection. Writing straight to the
+     * vector table first deletes the chunks' existing rows in the same transaction,
+     * as COPY cannot update them.
+     *
+     * @return Rows copied
+     */
+    private long copy(String target, boolean replace, List<Document> chunks, List<float[]> embeddings) {
+        String sql = "COPY " + target + " (id, content, metadata, embedding) FROM STDIN (FORMAT binary)";
+        long started = System.nanoTime();
+        Long rows = jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                if (replace)
+                    deleteExisting(connection, chunks);
+                long copied;
+                var copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql);
+                try (var stream = new PGCopyOutputStream(copyIn, COPY_BUFFER_BYTES);
+                     var out = new DataOutputStream(stream)) {
+                    writeCopyData(out, chunks, embeddings);
+                    out.flush();
+                    copied = stream.endCopy();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("COPY into " + target + " failed", e);
+                }
+                connection.commit();
+                return copied;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        });
+        copyTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        long copied = rows == null ? 0 : rows;
+        rowsCopied.increment(copied);
+        return copied;
+    }
+
+    private void deleteExisting(Connection connection, List<Document> chunks) throws SQLException {
+        Object[] ids = chunks.stream().map(chunk -> UUID.fromString(chunk.getId())).toArray();
+        try (PreparedStatement delete = connection.prepareStatement("DELETE FROM " + table + " WHERE id = ANY (?)")) {
+            Array array = connection.createArrayOf("uuid", ids);
+            delete.setArray(1, array);
+            delete.executeUpdate();
+            array.free();
+        }
+    }
+
+    /**
+     * Moves every staged row into the vector table, keeping the latest row of each
+     * chunk ID, optionally around an index rebuild.
+     *
+     * @param rebuildIndexMinRows Staged rows from which the HNSW index is rebuilt; 0 never rebuilds
+     * @return Rows merged
+     */
+    private long merge(int rebuildIndexMinRows) {
+        String mergeSql = "WITH moved AS (DELETE FROM " + stagingTable + " RETURNING seq, id, content, metadata, embedding) "
+                + "INSERT INTO " + table + " (id, content, metadata, embedding) "
+                + "SELECT DISTINCT ON (id) id, content, metadata, embedding FROM moved ORDER BY id, seq DESC "
+                + "ON CONFLICT (id) DO UPDATE SET content = EXCLUDED.content, metadata = EXCLUDED.metadata, "
+                + "embedding = EXCLUDED.embedding";
+
+        Long staged = jdbcTemplate.queryForObject("SELECT count(*) FROM " + stagingTable, Long.class);
+        if (staged == null || staged == 0)
+            return 0;
+        if (rebuildIndexMinRows <= 0 || staged < rebuildIndexMinRows)
+            return mergeTimer.record(() -> (long) jdbcTemplate.update(mergeSql));
+
+        indexLock.lock();
+        try {
+            // pg_indexes holds the full CREATE INDEX statement of each index to restore
+            List<String[]> indexes = jdbcTemplate.query(
+                    "SELECT indexname, indexdef FROM pg_indexes WHERE schemaname = ? AND tablename = ? "
+                            + "AND indexdef ILIKE '%USING hnsw%'",
+                    (rs, n) -> new String[]{rs.getString(1), rs.getString(2)},
+                    schema, tableName);
+            for (String[] index : indexes) {
+                jdbcTemplate.execute("DROP INDEX IF EXISTS " + schema + "." + index[0]);
+            }
+            try {
+                return mergeTimer.record(() -> (long) jdbcTemplate.update(mergeSql));
+            } finally {
+                long started = System.nanoTime();
+                for (String[] index : indexes) {
+                    jdbcTemplate.execute(index[1]);
+                }
+                if (!indexes.isEmpty())
+                    logger.info("Rebuilt {} HNSW index(es) on {} in {} ms", indexes.size(), table,
+                            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+            }
+        } finally {
+            indexLock.unlock();
+        }
+    }
+
+    /**
+     * Bulk load of one ingestion run. Thread-safe: the store workers add batches
+     * concurrently, each on its own connection.
+     */
+    public final class Session implements AutoCloseable {
+
+        private final IngestionProperties.BulkLoad settings;
+
+        private final AtomicLong rows = new AtomicLong();
+
+        private final long startedNanos = System.nanoTime();
+
+        private boolean closed;
+
+        private Session(IngestionProperties.BulkLoad settings) {
+            this.settings = settings;
+        }
+
+        /**
+         * Copies a batch of embedded chunks.
+         *
+         * @param chunks     Chunks with their IDs and metadata
+         * @param embeddings Embedding of each chunk, in the same order
+         */
+        public void add(List<Document> chunks, List<float[]> embeddings) {
+            if (chunks.isEmpty())
+                return;
+            rows.addAndGet(settings.isStaging()
+                    ? copy(stagingTable, false, chunks, embeddings)
+                    : copy(table, true, chunks, embeddings));
+        }
+
+        /**
+         * Ends the load: merges the staged rows (rebuilding the index if enough were
+         * staged) and logs the throughput.
+         */
+        @Override
+        public synchronized void close() {
+            if (closed)
+                return;
+            closed = true;
+            long merged;
+            try {
+                merged = settings.isStaging() ? merge(settings.getRebuildIndexMinRows()) : 0;
+            } catch (RuntimeException e) {
+                // The rows stay staged: the next run merges them before writing
+                leftoversMerged = false;
+                throw e;
+            }
+            long loaded = rows.get();
+            if (loaded == 0 && merged == 0)
+                return;
+            double seconds = Math.max(1e-3, (System.nanoTime() - startedNanos) / 1e9);
+            logger.info("Bulk-loaded {} rows into {} in {} s ({} rows/s){}", loaded, table,
+                    String.format("%.1f", seconds), Math.round(loaded / seconds),
+                    settings.isStaging() ? ", merged " + merged + " staged rows" : "");
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.ai.llamacpprag.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * One stage of the ingestion pipeline: a bounded input queue drained by a fixed
+ * number of workers. A full queue blocks the upstream stage, which keeps memory
+ * bounded no matter how far ahead discovery runs. Should a worker die anyway (out
+ * of memory), {@link #put} and {@link #finish} fail instead of waiting forever
+ * for queue space.
+ *
+ * @param <T> Type of the items flowing into this stage
+ */
+final class PipelineStage<T> {
+
+    /**
+     * End-of-stream marker; one is queued per worker when the stage is finished.
+     */
+    private static final Object END = new Object();
+
+    /**
+     * Stage name, used for worker thread names.
+     */
+    private final String name;
+
+    /**
+     * Number of workers draining the queue.
+     */
+    private final int parallelism;
+
+    /**
+     * Bounded queue feeding the workers.
+     */
+    private final BlockingQueue<Object> queue;
+
+    /**
+     * Futures of the started workers.
+     */
+    private final List<Future<?>> workers = new ArrayList<>();
+
+    /**
+     * What killed a worker, or null while all run.
+     */
+    private volatile Throwable failure;
+
+    /**
+     * Creates a stage.
+     *
+     * @param name        Stage name
+     * @param capacity    Capacity of the input queue
+     * @param parallelism Number of workers
+     */
+    PipelineStage(String name, int capacity, int parallelism) {
+        this.name = name;
+        this.parallelism = Math.max(1, parallelism);
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, capacity));
+    }
+
+    /**
+     * Starts the workers. Item failures, including errors such as a stack overflow
+     * on a malformed PDF, are handed to {@code onError} so a bad file never takes a
+     * worker down with it.
+     *
+     * @param executor Executor running the workers (virtual threads)
+     * @param worker   Processing applied to every item
+     * @param onError  Callback for items whose processing threw
+     */
+    void start(ExecutorService executor, Worker<T> worker, BiConsumer<T, Throwable> onError) {
+        for (int i = 0; i < parallelism; i++) {
+            String threadName = "ingest-" + name + "-" + i;
+            workers.add(executor.submit(() -> {
+                Thread.currentThread().setName(threadName);
+                try {
+                    drain(worker, onError);
+                } catch (Throwable e) {
+                    failure = e;
+                    throw e;
+                }
+                return null;
+            }));
+        }
+    }
+
+    /**
+     * Hands an item to this stage, blocking while the queue is full.
+     *
+     * @param item Item to process
+     * @throws InterruptedException  If interrupted while waiting for queue space
+     * @throws IllegalStateException If a worker of this stage died
+     */
+    void put(T item) throws InterruptedException {
+        if (!enqueue(item))
+            throw new IllegalStateException("Ingestion stage " + name + " stopped: " + failure, failure);
+    }
+
+    /**
+     * Signals that no more items will arrive and waits until every queued item
+     * has been processed.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     * @throws ExecutionException   If a worker terminated abnormally
+     */
+    void finish() throws InterruptedException, ExecutionException {
+        for (int i = 0; i < parallelism; i++) {
+            if (!enqueue(END))
+                throw new ExecutionException(failure);
+        }
+        for (Future<?> f : workers) {
+            f.get();
+        }
+    }
+
+    /**
+     * Queues an item, waiting for space as long as no worker has died.
+     *
+     * @param item Item or end marker
+     * @return False if a worker died, leaving the item unqueued
+     * @throws InterruptedException If interrupted while waiting
+     */
+    private boolean enqueue(Object item) throws InterruptedException {
+        while (!queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            if (failure != null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Worker loop: processes items until the end marker arrives.
+     *
+     * @param worker  Processing applied to every item
+     * @param onError Callback for items whose processing threw
+     * @throws InterruptedException If the worker is interrupted (pipeline cancelled)
+     */
+    @SuppressWarnings("unchecked")
+    private void drain(Worker<T> worker, BiConsumer<T, Throwable> onError) throws InterruptedException {
+        while (true) {
+            Object next = queue.take();
+            if (next == END) {
+                return;
+            }
+            T item = (T) next;
+            try {
+                worker.process(item);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (StackOverflowError e) {
+                onError.accept(item, e);
+            } catch (VirtualMachineError e) {
+                // Out of memory or a broken JVM: nothing sensible left to do in this worker
+                throw e;
+            } catch (Exception | Error e) {
+                onError.accept(item, e);
+            }
+        }
+    }
+
+    /**
+     * Processing applied by the stage workers.
+     *
+     * @param <T> Type of the items
+     */
+    @FunctionalInterface
+    interface Worker<T> {
+        void process(T item) throws Exception;
+    }
+}
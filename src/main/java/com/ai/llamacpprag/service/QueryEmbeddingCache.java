@@ -0,0 +1,103 @@
+package com.ai.llamacpprag.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Embedding model decorator caching question embeddings.
+ * <p>
+ * Vector stores embed the question of every search with {@link #embed(String)};
+ * only that path is cached here, keyed by the question with case and whitespace
+ * normalized, so "What is X?" and " what is  x? " share one embedding call. A miss
+ * embeds the question as asked, with the question model: the same vector as with
+ * the cache off, and never written to the persistent chunk cache, whose store
+ * only grows. Batch requests (chunk embeddings during ingestion) pass straight
+ * through to the wrapped model, which has its own persistent cache.
+ */
+public class QueryEmbeddingCache implements EmbeddingModel, AutoCloseable {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    /**
+     * Model computing the embeddings of everything but questions.
+     */
+    private final EmbeddingModel delegate;
+
+    /**
+     * Model embedding questions missing from the cache.
+     */
+    private final EmbeddingModel questionModel;
+
+    /**
+     * Normalized question → embedding.
+     */
+    private final Cache<String, float[]> cache;
+
+    /**
+     * Constructs a QueryEmbeddingCache.
+     *
+     * @param delegate      Model computing the embeddings of everything but questions
+     * @param questionModel Model embedding questions, without a persistent cache
+     * @param cache         Bounded cache of normalized question → embedding
+     */
+    public QueryEmbeddingCache(EmbeddingModel delegate, EmbeddingModel questionModel, Cache<String, float[]> cache) {
+        this.delegate = delegate;
+        this.questionModel = questionModel;
+        this.cache = cache;
+    }
+
+    /**
+     * Embeds a question, serving repeated questions from the cache.
+     *
+     * @param text Question
+     * @return Embedding vector
+     */
+    @Override
+    public float[] embed(String text) {
+        // Copies, so callers cannot alter the cached vector
+        return cache.get(normalize(text), key -> questionModel.embed(text)).clone();
+    }
+
+    @Override
+    public float[] embed(Document document) {
+        return delegate.embed(document);
+    }
+
+    @Override
+    public EmbeddingResponse call(EmbeddingRequest request) {
+        return delegate.call(request);
+    }
+
+    @Override
+    public int dimensions() {
+        return delegate.dimensions();
+    }
+
+    /**
+     * Closes the wrapped model if it holds resources.
+     *
+     * @throws Exception If the wrapped model cannot be closed
+     */
+    @Override
+    public void close() throws Exception {
+        if (delegate instanceof AutoCloseable closeable)
+            closeable.close();
+    }
+
+    /**
+     * Cache key of a question: trimmed, lower-cased, with whitespace runs collapsed
+     * to one space.
+     *
+     * @param text Question
+     * @return Normalized question
+     */
+    static String normalize(String text) {
+        return WHITESPACE.matcher(text.strip()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+}
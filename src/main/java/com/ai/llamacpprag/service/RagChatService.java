@@ -1,13 +1,32 @@
 package com.ai.llamacpprag.service;
 
+import com.ai.llamacpprag.config.RetrievalProperties;
 import com.github.benmanes.caffeine.cache.Cache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Service for interacting with the RAG (Retrieval-Augmented Generation) system.
+ * <p>
+ * Answers are cached in two tiers: an exact cache keyed by the normalized question
+ * text, then a semantic cache matching questions by embedding similarity. Both are
+ * scoped by the request's retrieval parameters, so an answer is only reused for the
+ * same top-k, threshold and filter, and both are cleared when an ingestion run
+ * changes the documents. Streamed answers use the same caches: hits are replayed
+ * whole, and a generated answer is cached once it has streamed to the end.
+ * <p>
+ * Identical questions missing both caches at the same time are coalesced: the
+ * first runs retrieval and generation, the others wait for and share its answer.
  */
 @Service
 public class RagChatService {
@@ -28,63 +47,251 @@ public class RagChatService {
     private final Cache<String, String> chatAnswerCache;
 
     /**
-     * Constructs a RagChatService with the specified chat client and cache.
+     * Model embedding questions for the semantic cache.
+     */
+    private final EmbeddingModel embeddingModel;
+
+    /**
+     * Answers of similar questions, or null if disabled.
+     */
+    private final SemanticAnswerCache semanticCache;
+
+    /**
+     * Default top-k and threshold of requests that do not set them.
+     */
+    private final RetrievalProperties retrievalProperties;
+
+    /**
+     * Generations in flight by cache key, or null if coalescing is disabled.
+     */
+    private final SingleFlight<String> generations;
+
+    /**
+     * Bumped on every corpus change; answers generated before a change are not cached.
+     */
+    private final AtomicLong corpusVersion = new AtomicLong();
+
+    /**
+     * Constructs a RagChatService with the specified chat client and caches.
      *
-     * @param chatClient      Chat client for interacting with the RAG system
-     * @param chatAnswerCache Cache for storing and retrieving chat answers
+     * @param chatClient          Chat client for interacting with the RAG system
+     * @param chatAnswerCache     Cache for storing and retrieving chat answers
+     * @param embeddingModel      Model embedding questions for the semantic cache
+     * @param semanticCache       Semantic answer cache, if enabled
+     * @param retrievalProperties Default retrieval parameters
+     * @param generations         De-duplication of in-flight generations, if enabled
      */
-    public RagChatService(ChatClient chatClient, Cache<String, String> chatAnswerCache) {
+    public RagChatService(ChatClient chatClient, Cache<String, String> chatAnswerCache,
+                          EmbeddingModel embeddingModel, ObjectProvider<SemanticAnswerCache> semanticCache,
+                          RetrievalProperties retrievalProperties, ObjectProvider<SingleFlight<String>> generations) {
         this.chatClient = chatClient;
         this.chatAnswerCache = chatAnswerCache;
+        this.embeddingModel = embeddingModel;
+        this.semanticCache = semanticCache.getIfAvailable();
+        this.retrievalProperties = retrievalProperties;
+        this.generations = generations.getIfAvailable();
     }
 
     /**
-     * Asks the RAG system a question and retrieves the answer, caching non-empty
-     * responses.
+     * Asks the RAG system a question with the default retrieval parameters.
      *
      * @param question The question to ask
      * @return The answer to the question
      */
     public String ask(String question) {
+        return ask(question, RetrievalParams.DEFAULTS);
+    }
+
+    /**
+     * Asks the RAG system a question and retrieves the answer, caching non-empty
+     * responses. A question missing the exact cache is embedded and looked up in the
+     * semantic cache; the embedding is cached, so retrieval reuses it on a miss. A
+     * question missing both joins the generation of an identical question in flight,
+     * if any. The parameters reach the retrievers through the advisor context.
+     *
+     * @param question The question to ask
+     * @param params   Top-k, threshold and metadata filter; unset values use the defaults
+     * @return The answer to the question
+     */
+    public String ask(String question, RetrievalParams params) {
         logger.info("QUESTION: {}", question);
-        String key = cacheKey(question);
+        var resolved = params.resolve(retrievalProperties);
+        var lookup = lookup(question, resolved.scope());
+        if (lookup.answer() != null)
+            return lookup.answer();
+        if (generations == null)
+            return generate(question, resolved, lookup);
 
-        String cached = chatAnswerCache.getIfPresent(key);
-        if (cached != null) {
-            logger.info("CACHE HIT for question='{}'", question);
-            return cached;
-        }
-        logger.info("CACHE MISS");
+        return generations.run(lookup.key(), () -> {
+            // The previous run for this key may have cached its answer since the lookup
+            String cached = chatAnswerCache.getIfPresent(lookup.key());
+            return cached != null ? cached : generate(question, resolved, lookup);
+        });
+    }
 
+    /**
+     * Retrieves chunks, generates the answer and caches it.
+     *
+     * @param question The question
+     * @param resolved Retrieval parameters with defaults filled in
+     * @param lookup   The missed cache lookup of the question
+     * @return The generated answer
+     */
+    private String generate(String question, RetrievalParams resolved, Lookup lookup) {
+        long version = corpusVersion.get();
         logger.info("AI REQUEST: {}", question);
         String answer = chatClient.prompt()
                 .user(question)
+                .advisors(a -> a.param(RetrievalParams.CONTEXT_KEY, resolved))
                 .call()
                 .content();
         logger.info("AI RESPONSE: {}", answer);
 
+        store(lookup, answer, version);
+        return answer;
+    }
+
+    /**
+     * Asks the RAG system a question and streams the answer as the model generates
+     * it. A cached answer is emitted whole, at once. A generated answer is cached
+     * when the stream completes; an answer cut short by an error or by the client
+     * cancelling is not.
+     *
+     * @param question The question to ask
+     * @param params   Top-k, threshold and metadata filter; unset values use the defaults
+     * @return The answer's text, in the pieces the model generates
+     */
+    public Flux<String> askStream(String question, RetrievalParams params) {
+        logger.info("QUESTION (stream): {}", question);
+        var resolved = params.resolve(retrievalProperties);
+        var lookup = lookup(question, resolved.scope());
+        if (lookup.answer() != null)
+            return Flux.just(lookup.answer());
+
+        return Flux.defer(() -> {
+            long version = corpusVersion.get();
+            var answer = new StringBuilder();
+            logger.info("AI REQUEST (stream): {}", question);
+            return chatClient.prompt()
+                    .user(question)
+                    .advisors(a -> a.param(RetrievalParams.CONTEXT_KEY, resolved))
+                    .stream()
+                    .content()
+                    .doOnNext(answer::append)
+                    .doOnComplete(() -> {
+                        logger.info("AI RESPONSE (stream): {}", answer);
+                        store(lookup, answer.toString(), version);
+                    });
+        });
+    }
+
+    /**
+     * Drops all cached answers once ingestion changed the documents they were
+     * generated from.
+     *
+     * @param event Corpus change
+     */
+    @EventListener
+    public void onCorpusChanged(CorpusChangedEvent event) {
+        corpusVersion.incrementAndGet();
+        chatAnswerCache.invalidateAll();
+        if (semanticCache != null) {
+            semanticCache.clear();
+        }
+        logger.info("Corpus changed ({} files ingested, {} removed), answer caches cleared",
+                event.ingested(), event.removed());
+    }
+
+    /**
+     * Looks a question up in the exact cache, then in the semantic cache. The
+     * question's embedding is kept for storing the answer after a miss.
+     *
+     * @param question The question
+     * @param scope    Canonical retrieval parameters, see {@link RetrievalParams#scope()}
+     * @return The cache keys, and the cached answer or null on a miss
+     */
+    private Lookup lookup(String question, String scope) {
+        String key = cacheKey(question, scope);
+        String cached = chatAnswerCache.getIfPresent(key);
+        if (cached != null) {
+            logger.info("CACHE HIT for question='{}'", question);
+            return new Lookup(key, scope, null, cached);
+        }
+        logger.info("CACHE MISS");
+
+        float[] embedding = embed(question);
+        if (embedding != null) {
+            String similar = semanticCache.get(embedding, scope);
+            if (similar != null) {
+                logger.info("SEMANTIC CACHE HIT for question='{}'", question);
+                return new Lookup(key, scope, embedding, similar);
+            }
+            logger.info("SEMANTIC CACHE MISS");
+        }
+        return new Lookup(key, scope, embedding, null);
+    }
+
+    /**
+     * Caches a generated answer in both tiers.
+     *
+     * @param lookup  The missed lookup of the question
+     * @param answer  The generated answer
+     * @param version Corpus version the answer was generated from
+     */
+    private void store(Lookup lookup, String answer, long version) {
         // Cache only non-empty answers (avoid caching "I don't know" during
-        // instability)
-        if (answer != null && !answer.isBlank() && !answer.trim().equalsIgnoreCase("I don't know")) {
-            chatAnswerCache.put(key, answer);
+        // instability), and none generated from documents that changed meanwhile
+        if (answer != null && !answer.isBlank() && !answer.trim().equalsIgnoreCase("I don't know")
+                && version == corpusVersion.get()) {
+            chatAnswerCache.put(lookup.key(), answer);
+            if (lookup.embedding() != null) {
+                semanticCache.put(lookup.embedding(), lookup.scope(), answer);
+            }
             logger.info("Inserting answer to cache");
         }
+    }
 
-        return answer;
+    /**
+     * Embeds a question for the semantic cache.
+     *
+     * @param question The question
+     * @return Its embedding, or null if the semantic cache is disabled or embedding failed
+     */
+    private float[] embed(String question) {
+        if (semanticCache == null)
+            return null;
+        try {
+            return embeddingModel.embed(question);
+        } catch (RuntimeException e) {
+            logger.warn("Embedding question for the semantic cache failed: {}", e.getMessage());
+            return null;
+        }
     }
 
     /**
-     * Generates a cache key based on the question, including model, topK/threshold,
-     * and doc filter scope.
+     * Generates a cache key from the normalized question and the retrieval
+     * parameters: 128 bits of their SHA-256, so keys stay small whatever the
+     * question's length.
      *
      * @param question The question to generate a cache key for
+     * @param scope    Canonical retrieval parameters, see {@link RetrievalParams#scope()}
      * @return The generated cache key
      */
-    private String cacheKey(String question) {
-        // You can expand this to include:
-        // - active model name
-        // - topK/threshold
-        // - doc filter scope
-        return "q:" + question.trim().toLowerCase();
+    static String cacheKey(String question, String scope) {
+        byte[] digest = IngestionManifest.sha256().digest(
+                (QueryEmbeddingCache.normalize(question) + '\n' + scope).getBytes(StandardCharsets.UTF_8));
+        return "q:" + HexFormat.of().formatHex(digest, 0, 16);
     }
+
+    /**
+     * Result of looking a question up in the answer caches.
+     *
+     * @param key       Exact cache key
+     * @param scope     Canonical retrieval parameters
+     * @param embedding Question embedding for the semantic cache, or null
+     * @param answer    Cached answer, or null on a miss
+     */
+    private record Lookup(String key, String scope, float[] embedding, String answer) {
+    }
+
 }
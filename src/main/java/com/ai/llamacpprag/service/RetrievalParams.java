@@ -0,0 +1,139 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.RetrievalProperties;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.vectorstore.filter.Filter;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+/**
+ * Retrieval settings of one chat request: how many chunks, how similar, and which
+ * documents they may come from. Null fields fall back to the configured defaults
+ * (top-k, threshold) or do not filter (source, file type, pages).
+ * <p>
+ * The chat service passes them to the retrievers through the advisor context under
+ * {@link #CONTEXT_KEY}, where they arrive in {@link Query#context()}.
+ *
+ * @param topK                Chunks handed to the model
+ * @param similarityThreshold Minimum cosine similarity of vector matches
+ * @param source              Only chunks of this source (file path or {@code upload:<name>})
+ * @param fileType            Only chunks of this file type (pdf, txt, md)
+ * @param pageFrom            Only PDF pages from this page on
+ * @param pageTo              Only PDF pages up to this page
+ */
+public record RetrievalParams(Integer topK, Double similarityThreshold, String source, String fileType,
+                              Integer pageFrom, Integer pageTo) {
+
+    /**
+     * Key of the parameters in the advisor and query context.
+     */
+    public static final String CONTEXT_KEY = "rag.retrieval.params";
+
+    /**
+     * Configured defaults, no filter.
+     */
+    public static final RetrievalParams DEFAULTS = new RetrievalParams(null, null, null, null, null, null);
+
+    /**
+     * Validates the parameters.
+     *
+     * @throws IllegalArgumentException If a parameter is out of range
+     */
+    public RetrievalParams {
+        if (topK != null && topK < 1)
+            throw new IllegalArgumentException("topK must be at least 1: " + topK);
+        if (similarityThreshold != null && (similarityThreshold < 0 || similarityThreshold > 1))
+            throw new IllegalArgumentException("threshold must be between 0 and 1: " + similarityThreshold);
+        if (pageFrom != null && pageFrom < 1 || pageTo != null && pageTo < 1)
+            throw new IllegalArgumentException("Pages are numbered from 1");
+        if (pageFrom != null && pageTo != null && pageFrom > pageTo)
+            throw new IllegalArgumentException("pageFrom " + pageFrom + " is after pageTo " + pageTo);
+        source = blankToNull(source);
+        fileType = blankToNull(fileType);
+    }
+
+    /**
+     * Returns the parameters of a query, or the defaults if it carries none.
+     *
+     * @param query Query built by the retrieval advisor
+     * @return Parameters of the request
+     */
+    public static RetrievalParams of(Query query) {
+        return query.context().get(CONTEXT_KEY) instanceof RetrievalParams params ? params : DEFAULTS;
+    }
+
+    /**
+     * Fills in the configured top-k and threshold, capping top-k at the configured
+     * maximum, so requests spelling out the defaults equal requests omitting them.
+     *
+     * @param properties Retrieval settings
+     * @return Parameters with top-k and threshold set
+     */
+    public RetrievalParams resolve(RetrievalProperties properties) {
+        int k = Math.min(topK != null ? topK : properties.getTopK(), properties.getMaxTopK());
+        double threshold = similarityThreshold != null ? similarityThreshold : properties.getSimilarityThreshold();
+        return new RetrievalParams(k, threshold, source, fileType, pageFrom, pageTo);
+    }
+
+    /**
+     * Returns top-k, or the given default if unset.
+     *
+     * @param defaultTopK Configured top-k
+     * @return Chunks to retrieve
+     */
+    public int topK(int defaultTopK) {
+        return topK != null ? topK : defaultTopK;
+    }
+
+    /**
+     * Returns the similarity threshold, or the given default if unset.
+     *
+     * @param defaultThreshold Configured threshold
+     * @return Minimum cosine similarity
+     */
+    public double similarityThreshold(double defaultThreshold) {
+        return similarityThreshold != null ? similarityThreshold : defaultThreshold;
+    }
+
+    /**
+     * Builds the metadata filter: all given conditions must hold.
+     *
+     * @return Filter expression, or null if no filter was given
+     */
+    public Filter.Expression filterExpression() {
+        var b = new FilterExpressionBuilder();
+        FilterExpressionBuilder.Op filter = null;
+        if (source != null)
+            filter = and(b, filter, b.eq("source", source));
+        if (fileType != null)
+            filter = and(b, filter, b.eq("fileType", fileType));
+        if (pageFrom != null)
+            filter = and(b, filter, b.gte("page", pageFrom));
+        if (pageTo != null)
+            filter = and(b, filter, b.lte("page", pageTo));
+        return filter == null ? null : filter.build();
+    }
+
+    /**
+     * Canonical text of the parameters, equal for equal parameters; part of answer
+     * cache keys.
+     *
+     * @return Text naming every parameter
+     */
+    public String scope() {
+        return "k=" + orEmpty(topK) + "|t=" + orEmpty(similarityThreshold) + "|source=" + orEmpty(source)
+                + "|type=" + orEmpty(fileType) + "|pages=" + orEmpty(pageFrom) + "-" + orEmpty(pageTo);
+    }
+
+    private static FilterExpressionBuilder.Op and(FilterExpressionBuilder b, FilterExpressionBuilder.Op left,
+                                                  FilterExpressionBuilder.Op right) {
+        return left == null ? right : b.and(left, right);
+    }
+
+    private static String orEmpty(Object value) {
+        return value == null ? "" : value.toString();
+    }
+
+    private static String blankToNull(String value) {
+        return value == null || value.isBlank() ? null : value.strip();
+    }
+}
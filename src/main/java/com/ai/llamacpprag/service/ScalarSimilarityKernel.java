@@ -0,0 +1,114 @@
+package com.ai.llamacpprag.service;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+
+/**
+ * Plain-Java {@link SimilarityKernel}, used when the Vector API is not available.
+ * Float loops keep four independent sums, which breaks the dependency between
+ * consecutive additions so the loop pipelines.
+ */
+final class ScalarSimilarityKernel implements SimilarityKernel {
+
+    /**
+     * Float as stored in memory-mapped index files.
+     */
+    static final ValueLayout.OfFloat FLOAT = ValueLayout.JAVA_FLOAT_UNALIGNED.withOrder(ByteOrder.LITTLE_ENDIAN);
+
+    @Override
+    public float dot(float[] a, float[] b, int offset) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int n = a.length - 3; i < n; i += 4) {
+            s0 += a[i] * b[offset + i];
+            s1 += a[i + 1] * b[offset + i + 1];
+            s2 += a[i + 2] * b[offset + i + 2];
+            s3 += a[i + 3] * b[offset + i + 3];
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b[offset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float dot(float[] a, MemorySegment b, long offset) {
+        float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+        int i = 0;
+        for (int n = a.length - 3; i < n; i += 4) {
+            long at = offset + (long) i * Float.BYTES;
+            s0 += a[i] * b.get(FLOAT, at);
+            s1 += a[i + 1] * b.get(FLOAT, at + Float.BYTES);
+            s2 += a[i + 2] * b.get(FLOAT, at + 2 * Float.BYTES);
+            s3 += a[i + 3] * b.get(FLOAT, at + 3 * Float.BYTES);
+        }
+        for (; i < a.length; i++) {
+            s0 += a[i] * b.get(FLOAT, offset + (long) i * Float.BYTES);
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        float dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return cosine(dot, normA, normB);
+    }
+
+    @Override
+    public float squareDistance(float[] a, float[] b) {
+        float s0 = 0, s1 = 0;
+        int i = 0;
+        for (int n = a.length - 1; i < n; i += 2) {
+            float d0 = a[i] - b[i];
+            float d1 = a[i + 1] - b[i + 1];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+        }
+        for (; i < a.length; i++) {
+            float d = a[i] - b[i];
+            s0 += d * d;
+        }
+        return s0 + s1;
+    }
+
+    @Override
+    public int dot(byte[] a, byte[] b, int offset) {
+        int sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[offset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float cosine(byte[] a, byte[] b) {
+        int dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return cosine(dot, normA, normB);
+    }
+
+    @Override
+    public long squareDistance(byte[] a, byte[] b) {
+        long sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            int d = a[i] - b[i];
+            sum += d * d;
+        }
+        return sum;
+    }
+
+    static float cosine(float dot, float normA, float normB) {
+        double norms = Math.sqrt((double) normA * normB);
+        return norms == 0 ? 0 : (float) (dot / norms);
+    }
+}
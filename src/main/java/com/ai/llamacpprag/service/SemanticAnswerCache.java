@@ -0,0 +1,253 @@
+package com.ai.llamacpprag.service;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Answer cache keyed by question meaning rather than question text.
+ * <p>
+ * Every cached answer is stored next to the embedding of the question it answers.
+ * A new question is served from the cache when its embedding has a cosine
+ * similarity of at least the threshold with a stored question, so "how do I reset
+ * my password" finds the answer generated for "how to reset password?". Only
+ * entries stored under the same scope (the request's retrieval parameters) match,
+ * since an answer drawn from other chunks may not fit.
+ * <p>
+ * The entries are few (hundreds to a few thousand), so lookup is an exact
+ * brute-force scan rather than an approximate index: embeddings are normalized to
+ * unit length when stored and kept in one contiguous row-major matrix, so each
+ * comparison is a single {@link VectorSimilarity} dot product over sequential
+ * memory. Entries live in a
+ * ring: once full, the oldest entry is replaced, and entries older than the
+ * time-to-live are ignored.
+ */
+public class SemanticAnswerCache {
+
+    /**
+     * Minimum cosine similarity for a hit.
+     */
+    private final double threshold;
+
+    /**
+     * Maximum number of entries.
+     */
+    private final int capacity;
+
+    /**
+     * Time an entry is served after it was stored, in nanoseconds.
+     */
+    private final long ttlNanos;
+
+    /**
+     * Current time in nanoseconds.
+     */
+    private final LongSupplier clock;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Unit-length question embeddings, one row of {@code dimensions} floats per slot;
+     * allocated by the first put, when the width is known.
+     */
+    private float[] vectors;
+
+    private int dimensions;
+
+    /**
+     * Answer per slot.
+     */
+    private final String[] answers;
+
+    /**
+     * Scope per slot.
+     */
+    private final String[] scopes;
+
+    /**
+     * Time each slot was stored.
+     */
+    private final long[] storedAt;
+
+    /**
+     * Slots in use.
+     */
+    private int size;
+
+    /**
+     * Slot the next put writes to.
+     */
+    private int next;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * Constructs a SemanticAnswerCache.
+     *
+     * @param threshold Minimum cosine similarity between questions for a hit
+     * @param capacity  Maximum number of entries
+     * @param ttl       Time an entry is served after it was stored
+     */
+    public SemanticAnswerCache(double threshold, int capacity, Duration ttl) {
+        this(threshold, capacity, ttl, System::nanoTime);
+    }
+
+    SemanticAnswerCache(double threshold, int capacity, Duration ttl, LongSupplier clock) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.threshold = threshold;
+        this.capacity = capacity;
+        this.ttlNanos = ttl.toNanos();
+        this.clock = clock;
+        this.answers = new String[capacity];
+        this.scopes = new String[capacity];
+        this.storedAt = new long[capacity];
+    }
+
+    /**
+     * Finds the answer of the most similar stored question.
+     *
+     * @param embedding Embedding of the new question
+     * @param scope     Scope of the new question
+     * @return Answer of the most similar question in the scope if it passes the
+     * threshold, else null
+     */
+    public String get(float[] embedding, String scope) {
+        float[] query = normalized(embedding);
+        long now = clock.getAsLong();
+        lock.readLock().lock();
+        try {
+            if (query != null && query.length == dimensions) {
+                int best = -1;
+                float bestSimilarity = Float.NEGATIVE_INFINITY;
+                for (int slot = 0; slot < size; slot++) {
+                    if (answers[slot] == null || now - storedAt[slot] > ttlNanos || !scope.equals(scopes[slot]))
+                        continue;
+                    float similarity = VectorSimilarity.dot(query, vectors, slot * dimensions);
+                    if (similarity > bestSimilarity) {
+                        bestSimilarity = similarity;
+                        best = slot;
+                    }
+                }
+                if (best >= 0 && bestSimilarity >= threshold) {
+                    hits.increment();
+                    return answers[best];
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores an answer under the embedding of its question, replacing the oldest
+     * entry once the cache is full.
+     *
+     * @param embedding Embedding of the question
+     * @param scope     Scope the answer applies to
+     * @param answer    Answer to serve for similar questions
+     */
+    public void put(float[] embedding, String scope, String answer) {
+        float[] row = normalized(embedding);
+        if (row == null)
+            return;
+        long now = clock.getAsLong();
+        lock.writeLock().lock();
+        try {
+            if (row.length != dimensions) {
+                // First entry, or the embedding model changed: older rows cannot be compared
+                vectors = new float[capacity * row.length];
+                dimensions = row.length;
+                Arrays.fill(answers, null);
+                size = 0;
+                next = 0;
+            }
+            System.arraycopy(row, 0, vectors, next * dimensions, dimensions);
+            answers[next] = answer;
+            scopes[next] = scope;
+            storedAt[next] = now;
+            next = (next + 1) % capacity;
+            size = Math.max(size, next == 0 ? capacity : next);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops every entry, e.g. because the documents the answers came from changed.
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            Arrays.fill(answers, null);
+            size = 0;
+            next = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        invalidations.increment();
+    }
+
+    /**
+     * Returns hit and miss counts since startup and the current number of entries.
+     *
+     * @return Cache statistics
+     */
+    public Stats stats() {
+        int entries;
+        lock.readLock().lock();
+        try {
+            entries = size;
+        } finally {
+            lock.readLock().unlock();
+        }
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long requests = hitCount + missCount;
+        return new Stats(hitCount, missCount, requests == 0 ? 1.0 : (double) hitCount / requests,
+                invalidations.sum(), entries);
+    }
+
+    /**
+     * Scales a vector to unit length, so dot products are cosine similarities.
+     *
+     * @param vector Vector to normalize
+     * @return Normalized copy, or null for an empty or zero vector
+     */
+    private static float[] normalized(float[] vector) {
+        if (vector == null || vector.length == 0)
+            return null;
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm == 0)
+            return null;
+        float scale = (float) (1 / Math.sqrt(norm));
+        float[] unit = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            unit[i] = vector[i] * scale;
+        }
+        return unit;
+    }
+
+    /**
+     * Statistics of the semantic cache.
+     *
+     * @param hitCount          Questions answered from the cache
+     * @param missCount         Questions with no similar enough stored question
+     * @param hitRate           Hits per lookup (1.0 before the first lookup)
+     * @param invalidationCount Times the cache was cleared
+     * @param size              Entries currently stored
+     */
+    public record Stats(long hitCount, long missCount, double hitRate, long invalidationCount, int size) {
+    }
+}
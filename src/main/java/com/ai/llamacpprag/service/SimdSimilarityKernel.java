@@ -0,0 +1,198 @@
+package com.ai.llamacpprag.service;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+/**
+ * {@link SimilarityKernel} on the Java Vector API ({@code jdk.incubator.vector}),
+ * using the widest vectors the CPU supports.
+ * <p>
+ * Float loops keep two vector sums so consecutive additions do not wait for each
+ * other. Bytes are widened to ints before multiplying, as many bytes per step as
+ * the CPU has int lanes; on CPUs with fewer than eight int lanes (128-bit vectors)
+ * the byte loops fall back to {@link ScalarSimilarityKernel}.
+ */
+final class SimdSimilarityKernel implements SimilarityKernel {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    /**
+     * Bytes loaded per step: one per int lane, or null when that is less than the
+     * smallest vector shape (64 bits).
+     */
+    private static final VectorSpecies<Byte> BYTES = INTS.length() >= 8
+            ? VectorSpecies.of(byte.class, VectorShape.forBitSize(INTS.length() * Byte.SIZE))
+            : null;
+
+    private static final ScalarSimilarityKernel SCALAR = new ScalarSimilarityKernel();
+
+    /**
+     * Bytes per block of a squared distance whose int lanes are added up before they
+     * are moved to a long: 32,768 × 255² stays below 2³¹.
+     */
+    private static final int DISTANCE_BLOCK = 32_768;
+
+    /**
+     * Width of the vectors used, in bits.
+     */
+    static int bitSize() {
+        return FLOATS.vectorBitSize();
+    }
+
+    @Override
+    public float dot(float[] a, float[] b, int offset) {
+        var s0 = FloatVector.zero(FLOATS);
+        var s1 = FloatVector.zero(FLOATS);
+        int step = FLOATS.length();
+        int i = 0;
+        for (int bound = a.length - 2 * step; i <= bound; i += 2 * step) {
+            s0 = FloatVector.fromArray(FLOATS, a, i).mul(FloatVector.fromArray(FLOATS, b, offset + i)).add(s0);
+            s1 = FloatVector.fromArray(FLOATS, a, i + step)
+                    .mul(FloatVector.fromArray(FLOATS, b, offset + i + step)).add(s1);
+        }
+        for (int bound = FLOATS.loopBound(a.length); i < bound; i += step) {
+            s0 = FloatVector.fromArray(FLOATS, a, i).mul(FloatVector.fromArray(FLOATS, b, offset + i)).add(s0);
+        }
+        float sum = s0.add(s1).reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            sum += a[i] * b[offset + i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float dot(float[] a, MemorySegment b, long offset) {
+        var sum = FloatVector.zero(FLOATS);
+        int step = FLOATS.length();
+        int i = 0;
+        for (int bound = FLOATS.loopBound(a.length); i < bound; i += step) {
+            var vb = FloatVector.fromMemorySegment(FLOATS, b, offset + (long) i * Float.BYTES,
+                    ByteOrder.LITTLE_ENDIAN);
+            sum = FloatVector.fromArray(FLOATS, a, i).mul(vb).add(sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            result += a[i] * b.get(ScalarSimilarityKernel.FLOAT, offset + (long) i * Float.BYTES);
+        }
+        return result;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b) {
+        var dot = FloatVector.zero(FLOATS);
+        var normA = FloatVector.zero(FLOATS);
+        var normB = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(a.length); i < bound; i += FLOATS.length()) {
+            var va = FloatVector.fromArray(FLOATS, a, i);
+            var vb = FloatVector.fromArray(FLOATS, b, i);
+            dot = va.mul(vb).add(dot);
+            normA = va.mul(va).add(normA);
+            normB = vb.mul(vb).add(normB);
+        }
+        float d = dot.reduceLanes(VectorOperators.ADD);
+        float na = normA.reduceLanes(VectorOperators.ADD);
+        float nb = normB.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            d += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return ScalarSimilarityKernel.cosine(d, na, nb);
+    }
+
+    @Override
+    public float squareDistance(float[] a, float[] b) {
+        var sum = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(a.length); i < bound; i += FLOATS.length()) {
+            var diff = FloatVector.fromArray(FLOATS, a, i).sub(FloatVector.fromArray(FLOATS, b, i));
+            sum = diff.mul(diff).add(sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            float d = a[i] - b[i];
+            result += d * d;
+        }
+        return result;
+    }
+
+    @Override
+    public int dot(byte[] a, byte[] b, int offset) {
+        if (BYTES == null)
+            return SCALAR.dot(a, b, offset);
+        var sum = IntVector.zero(INTS);
+        int i = 0;
+        for (int bound = BYTES.loopBound(a.length); i < bound; i += BYTES.length()) {
+            sum = widen(a, i).mul(widen(b, offset + i)).add(sum);
+        }
+        int result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            result += a[i] * b[offset + i];
+        }
+        return result;
+    }
+
+    @Override
+    public float cosine(byte[] a, byte[] b) {
+        if (BYTES == null)
+            return SCALAR.cosine(a, b);
+        var dot = IntVector.zero(INTS);
+        var normA = IntVector.zero(INTS);
+        var normB = IntVector.zero(INTS);
+        int i = 0;
+        for (int bound = BYTES.loopBound(a.length); i < bound; i += BYTES.length()) {
+            var va = widen(a, i);
+            var vb = widen(b, i);
+            dot = va.mul(vb).add(dot);
+            normA = va.mul(va).add(normA);
+            normB = vb.mul(vb).add(normB);
+        }
+        int d = dot.reduceLanes(VectorOperators.ADD);
+        int na = normA.reduceLanes(VectorOperators.ADD);
+        int nb = normB.reduceLanes(VectorOperators.ADD);
+        for (; i < a.length; i++) {
+            d += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return ScalarSimilarityKernel.cosine(d, na, nb);
+    }
+
+    @Override
+    public long squareDistance(byte[] a, byte[] b) {
+        if (BYTES == null)
+            return SCALAR.squareDistance(a, b);
+        long result = 0;
+        int i = 0;
+        for (int bound = BYTES.loopBound(a.length); i < bound; ) {
+            var sum = IntVector.zero(INTS);
+            for (int blockEnd = Math.min(bound, i + DISTANCE_BLOCK); i < blockEnd; i += BYTES.length()) {
+                var diff = widen(a, i).sub(widen(b, i));
+                sum = diff.mul(diff).add(sum);
+            }
+            result += sum.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < a.length; i++) {
+            int d = a[i] - b[i];
+            result += d * d;
+        }
+        return result;
+    }
+
+    /**
+     * Loads {@code BYTES.length()} bytes as ints.
+     */
+    private static IntVector widen(byte[] array, int offset) {
+        return (IntVector) ByteVector.fromArray(BYTES, array, offset).castShape(INTS, 0);
+    }
+}
@@ -0,0 +1,47 @@
+package com.ai.llamacpprag.service;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Inner loops of {@link VectorSimilarity}. Arguments are checked by the caller:
+ * every range read lies within its array or segment.
+ */
+interface SimilarityKernel {
+
+    /**
+     * Dot product of {@code a} with {@code a.length} floats of {@code b} from {@code offset}.
+     */
+    float dot(float[] a, float[] b, int offset);
+
+    /**
+     * Dot product of {@code a} with {@code a.length} little-endian floats of {@code b}
+     * from byte {@code offset}.
+     */
+    float dot(float[] a, MemorySegment b, long offset);
+
+    /**
+     * Cosine similarity of two vectors of the same length, or 0 if either is zero.
+     */
+    float cosine(float[] a, float[] b);
+
+    /**
+     * Squared Euclidean distance of two vectors of the same length.
+     */
+    float squareDistance(float[] a, float[] b);
+
+    /**
+     * Dot product of {@code a} with {@code a.length} bytes of {@code b} from {@code offset}.
+     */
+    int dot(byte[] a, byte[] b, int offset);
+
+    /**
+     * Cosine similarity of two vectors of the same length, or 0 if either is zero.
+     */
+    float cosine(byte[] a, byte[] b);
+
+    /**
+     * Squared Euclidean distance of two vectors of the same length, as a long: at up
+     * to 255² per dimension an int would overflow from about 33,000 dimensions.
+     */
+    long squareDistance(byte[] a, byte[] b);
+}
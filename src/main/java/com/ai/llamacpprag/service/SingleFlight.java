@@ -0,0 +1,127 @@
+package com.ai.llamacpprag.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs identical work once while it is in flight: the first caller for a key runs
+ * it, and callers arriving with the same key before it finishes wait for that
+ * run and receive its result, or its exception.
+ * <p>
+ * A waiting caller gives up after the timeout and runs the work itself, so a stuck
+ * run holds up the callers that joined it for no longer than that. Nothing is kept
+ * once a run finishes; caching results is up to the caller.
+ * <p>
+ * Meters: {@code <name>.coalesced} counts the callers that joined a run (tag
+ * {@code result}: {@code shared}, or {@code timeout} if they gave up waiting), and
+ * {@code <name>.in-flight} the runs in progress.
+ *
+ * @param <V> Result type
+ */
+public class SingleFlight<V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+
+    /**
+     * Runs in progress by key.
+     */
+    private final Map<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Time a caller waits for another caller's run.
+     */
+    private final Duration timeout;
+
+    private final Counter shared;
+
+    private final Counter timedOut;
+
+    /**
+     * Constructs a SingleFlight.
+     *
+     * @param name          Prefix of the meter names, e.g. {@code rag.chat}
+     * @param timeout       Time a caller waits for another caller's run
+     * @param meterRegistry Registry for the coalescing meters
+     */
+    public SingleFlight(String name, Duration timeout, MeterRegistry meterRegistry) {
+        this.timeout = timeout;
+        this.shared = coalescedCounter(meterRegistry, name, "shared");
+        this.timedOut = coalescedCounter(meterRegistry, name, "timeout");
+        Gauge.builder(name + ".in-flight", inFlight, Map::size)
+                .description("Runs in progress that identical requests can join")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Runs the work, or joins the run already in flight for the key.
+     *
+     * @param key  Identity of the work, e.g. a cache key
+     * @param work Work to run if no run is in flight
+     * @return The result of this caller's or the joined run
+     */
+    public V run(String key, Supplier<V> work) {
+        var flight = new CompletableFuture<V>();
+        var running = inFlight.putIfAbsent(key, flight);
+        if (running == null)
+            return lead(key, flight, work);
+
+        try {
+            V value = running.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            shared.increment();
+            return value;
+        } catch (ExecutionException e) {
+            shared.increment();
+            if (e.getCause() instanceof RuntimeException runtime)
+                throw runtime;
+            if (e.getCause() instanceof Error error)
+                throw error;
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            timedOut.increment();
+            logger.warn("Run of {} still in flight after {}, running it again", key, timeout);
+            return work.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for the run of " + key, e);
+        }
+    }
+
+    /**
+     * Number of runs in progress.
+     */
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    private V lead(String key, CompletableFuture<V> flight, Supplier<V> work) {
+        try {
+            V value = work.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    private static Counter coalescedCounter(MeterRegistry meterRegistry, String name, String result) {
+        return Counter.builder(name + ".coalesced")
+                .description("Requests that joined an identical request's run instead of starting their own")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,145 @@
+package com.ai.llamacpprag.service;
+
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.IntArrayList;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Token splitter for text too large to hold in memory.
+ * <p>
+ * Follows the rules of Spring AI's {@code TokenTextSplitter} (cl100k encoding,
+ * chunks of {@code chunkSize} tokens cut back to the last punctuation mark past
+ * {@code minChunkSizeChars}, chunks of {@code minChunkLengthToEmbed} characters or
+ * less dropped), but reads the text incrementally and only ever tokenizes a window
+ * a little larger than one chunk. Memory stays flat regardless of the text size.
+ * <p>
+ * A chunk is cut from the first {@code chunkSize} tokens of the window; the window
+ * always holds a few tokens more than that, so the tokens used match those of
+ * tokenizing the whole text. There is no cap on the number of chunks.
+ */
+class StreamingTextSplitter {
+
+    /**
+     * Extra tokens the window must hold beyond one chunk, so the chunk's tokens are
+     * not affected by where the window ends.
+     */
+    private static final int WINDOW_MARGIN_TOKENS = 16;
+
+    private static final int READ_BUFFER_CHARS = 2048;
+
+    private final Encoding encoding = TokenChunker.ENCODING;
+
+    /**
+     * Applies the punctuation cut, with the same settings.
+     */
+    private final TokenChunker chunker;
+
+    private final int chunkSize;
+
+    private final int minChunkLengthToEmbed;
+
+    private final boolean keepSeparator;
+
+    /**
+     * Creates a splitter with the same settings as a {@code TokenTextSplitter}.
+     *
+     * @param chunkSize             Tokens per chunk
+     * @param minChunkSizeChars     A chunk is only cut back to punctuation past this many characters
+     * @param minChunkLengthToEmbed Chunks this long or shorter are dropped
+     * @param keepSeparator         Keep line separators inside chunks
+     * @param punctuationMarks      Characters a chunk may end on
+     */
+    StreamingTextSplitter(int chunkSize, int minChunkSizeChars, int minChunkLengthToEmbed, boolean keepSeparator,
+                          List<Character> punctuationMarks) {
+        this.chunker = new TokenChunker(chunkSize, minChunkSizeChars, minChunkLengthToEmbed, Integer.MAX_VALUE,
+                keepSeparator, punctuationMarks);
+        this.chunkSize = chunkSize;
+        this.minChunkLengthToEmbed = minChunkLengthToEmbed;
+        this.keepSeparator = keepSeparator;
+    }
+
+    /**
+     * Splits the text read from {@code reader} and emits the chunks in order as they
+     * are cut.
+     *
+     * @param reader Text source; not closed
+     * @param chunks Receives every chunk
+     * @return Number of chunks emitted
+     * @throws IOException If reading fails
+     */
+    int split(Reader reader, Consumer<String> chunks) throws IOException {
+        StringBuilder pending = new StringBuilder();
+        char[] buffer = new char[READ_BUFFER_CHARS];
+        // Start at ~6 characters per token, enough for prose; grows for token-dense text
+        int windowChars = Math.max(READ_BUFFER_CHARS, chunkSize * 6);
+        boolean eof = false;
+        int emitted = 0;
+
+        while (true) {
+            while (!eof && pending.length() < windowChars) {
+                int read = reader.read(buffer);
+                if (read < 0)
+                    eof = true;
+                else
+                    pending.append(buffer, 0, read);
+            }
+            if (pending.isEmpty())
+                return emitted;
+
+            IntArrayList tokens = encoding.encode(pending.toString());
+            if (!eof && tokens.size() < chunkSize + WINDOW_MARGIN_TOKENS) {
+                windowChars *= 2;
+                continue;
+            }
+
+            int consumed = chunkText(pending, tokens);
+            String chunkText = pending.substring(0, consumed);
+            pending.delete(0, consumed);
+            if (chunkText.isBlank())
+                continue;
+
+            String text = keepSeparator ? chunkText.trim() : chunkText.replace(System.lineSeparator(), " ").trim();
+            if (text.length() > minChunkLengthToEmbed) {
+                chunks.accept(text);
+                emitted++;
+            }
+        }
+    }
+
+    /**
+     * Length of the next chunk: the text of its first {@code chunkSize} tokens, cut
+     * back to the last punctuation mark if that lies past {@code minChunkSizeChars}.
+     *
+     * @param pending Text not consumed yet
+     * @param tokens  Tokens of {@code pending}
+     * @return Characters of {@code pending} forming the chunk (at least 1)
+     */
+    private int chunkText(CharSequence pending, IntArrayList tokens) {
+        int length;
+        if (tokens.size() <= chunkSize) {
+            length = pending.length();
+        } else {
+            IntArrayList head = new IntArrayList(chunkSize);
+            for (int i = 0; i < chunkSize; i++) {
+                head.add(tokens.get(i));
+            }
+            // A chunk ending inside a multi-token character decodes to a replacement
+            // character; the common prefix maps it back onto the original text
+            length = Math.max(1, commonPrefix(encoding.decode(head), pending));
+        }
+        return chunker.cutAtPunctuation(pending, 0, length);
+    }
+
+    private static int commonPrefix(CharSequence a, CharSequence b) {
+        int n = Math.min(a.length(), b.length());
+        int i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+}
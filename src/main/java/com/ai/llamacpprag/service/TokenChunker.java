@@ -0,0 +1,279 @@
+package com.ai.llamacpprag.service;
+
+import com.knuddels.jtokkit.Encodings;
+import com.knuddels.jtokkit.api.Encoding;
+import com.knuddels.jtokkit.api.EncodingType;
+import com.knuddels.jtokkit.api.IntArrayList;
+import org.springframework.ai.document.Document;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Token chunker producing the same chunks as Spring AI's {@code TokenTextSplitter}
+ * with the same settings, at a fraction of the allocations.
+ * <p>
+ * {@code TokenTextSplitter} boxes every token into a {@code List<Integer>}, decodes
+ * each chunk to a new string, and encodes the cut chunk a second time just to count
+ * how many tokens to drop. This chunker encodes the text once, works on character
+ * offsets into it, and counts consumed tokens from a cached table of token byte
+ * lengths; the only strings it creates are the chunks it returns. The cl100k
+ * encoding is loaded once per JVM and shared by all instances.
+ * <p>
+ * Two corner cases fall back to the splitter's own behaviour instead: a cut that
+ * lands inside a token re-encodes the chunk to count its tokens, and a chunk that
+ * would end inside a multi-token character is extended to the end of that
+ * character (where {@code TokenTextSplitter} would emit a replacement character).
+ */
+class TokenChunker {
+
+    /**
+     * Shared cl100k encoding (what {@code TokenTextSplitter} uses).
+     */
+    static final Encoding ENCODING = Encodings.newLazyEncodingRegistry().getEncoding(EncodingType.CL100K_BASE);
+
+    /**
+     * UTF-8 length of every token ID seen so far; 0 until first needed. Racy writes
+     * are harmless as every thread computes the same value.
+     */
+    private static final int[] TOKEN_BYTES = new int[1 << 17];
+
+    private final int chunkSize;
+
+    private final int minChunkSizeChars;
+
+    private final int minChunkLengthToEmbed;
+
+    private final int maxNumChunks;
+
+    private final boolean keepSeparator;
+
+    private final char[] punctuationMarks;
+
+    /**
+     * Creates a chunker with the settings of a {@code TokenTextSplitter}.
+     *
+     * @param chunkSize             Tokens per chunk
+     * @param minChunkSizeChars     A chunk is only cut back to punctuation past this many characters
+     * @param minChunkLengthToEmbed Chunks this long or shorter are dropped
+     * @param maxNumChunks          Chunks cut before the rest of the text becomes one last chunk
+     * @param keepSeparator         Keep line separators inside chunks
+     * @param punctuationMarks      Characters a chunk may end on
+     */
+    TokenChunker(int chunkSize, int minChunkSizeChars, int minChunkLengthToEmbed, int maxNumChunks,
+                 boolean keepSeparator, List<Character> punctuationMarks) {
+        this.chunkSize = chunkSize;
+        this.minChunkSizeChars = minChunkSizeChars;
+        this.minChunkLengthToEmbed = minChunkLengthToEmbed;
+        this.maxNumChunks = maxNumChunks;
+        this.keepSeparator = keepSeparator;
+        this.punctuationMarks = new char[punctuationMarks.size()];
+        for (int i = 0; i < punctuationMarks.size(); i++) {
+            this.punctuationMarks[i] = punctuationMarks.get(i);
+        }
+    }
+
+    /**
+     * Splits documents into chunk documents carrying a copy of their document's
+     * metadata, like {@code TokenTextSplitter.apply}.
+     *
+     * @param documents Documents to split
+     * @return Chunks of all documents, in order
+     */
+    List<Document> apply(List<Document> documents) {
+        List<Document> chunks = new ArrayList<>();
+        for (Document document : documents) {
+            for (String text : split(document.getText())) {
+                var chunk = new Document(text);
+                chunk.getMetadata().putAll(document.getMetadata());
+                chunks.add(chunk);
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Splits a text into chunks.
+     *
+     * @param text Text to split
+     * @return Chunk texts, in order
+     */
+    List<String> split(String text) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null || text.isBlank())
+            return chunks;
+
+        IntArrayList tokens = ENCODING.encode(text);
+        int tokenCount = tokens.size();
+        int token = 0;
+        int offset = 0;
+        int cut = 0;
+
+        while (token < tokenCount && cut < maxNumChunks) {
+            // Characters covered by the next chunkSize tokens, extended to whole characters
+            int n = Math.min(chunkSize, tokenCount - token);
+            long bytes = tokenBytes(tokens, token, token + n);
+            int end = charsForBytes(text, offset, bytes);
+            while (end < 0) {
+                bytes += tokenBytes(tokens, token + n, token + n + 1);
+                n++;
+                end = charsForBytes(text, offset, bytes);
+            }
+
+            if (isBlank(text, offset, end)) {
+                token += n;
+                offset = end;
+                continue;
+            }
+
+            int cutEnd = cutAtPunctuation(text, offset, end);
+            emit(text, offset, cutEnd, chunks);
+
+            if (cutEnd == end) {
+                token += n;
+                offset = end;
+            } else {
+                // Continue right after the dropped tokens, as the splitter does
+                int dropped = tokensCovering(tokens, token, text, offset, cutEnd);
+                int next = charsForBytes(text, offset, tokenBytes(tokens, token, token + dropped));
+                token += dropped;
+                offset = next < 0 ? cutEnd : next;
+            }
+            cut++;
+        }
+
+        if (token < tokenCount) {
+            // Chunk limit reached: the rest becomes one last chunk
+            String remaining = text.substring(offset).replace(System.lineSeparator(), " ").trim();
+            if (remaining.length() > minChunkLengthToEmbed)
+                chunks.add(remaining);
+        }
+        return chunks;
+    }
+
+    /**
+     * End of a chunk spanning {@code [start, end)}: just after the last punctuation
+     * mark if that lies more than {@code minChunkSizeChars} into the chunk,
+     * otherwise {@code end}.
+     *
+     * @param text  Text being split
+     * @param start Chunk start offset
+     * @param end   Chunk end offset (exclusive)
+     * @return Offset the chunk ends at
+     */
+    int cutAtPunctuation(CharSequence text, int start, int end) {
+        for (int i = end - 1; i > start + minChunkSizeChars; i--) {
+            char c = text.charAt(i);
+            for (char mark : punctuationMarks) {
+                if (c == mark)
+                    return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Adds the trimmed text of {@code [start, end)} as a chunk unless it is too short.
+     */
+    private void emit(String text, int start, int end, List<String> chunks) {
+        if (keepSeparator) {
+            while (start < end && text.charAt(start) <= ' ')
+                start++;
+            while (end > start && text.charAt(end - 1) <= ' ')
+                end--;
+            if (end - start > minChunkLengthToEmbed)
+                chunks.add(text.substring(start, end));
+            return;
+        }
+        String chunk = text.substring(start, end).replace(System.lineSeparator(), " ").trim();
+        if (chunk.length() > minChunkLengthToEmbed)
+            chunks.add(chunk);
+    }
+
+    /**
+     * Number of tokens the splitter drops after a chunk cut back to punctuation: the
+     * tokens covering {@code [start, cutEnd)} if the cut is on a token boundary,
+     * otherwise the token count of the re-encoded chunk.
+     */
+    private static int tokensCovering(IntArrayList tokens, int from, String text, int start, int cutEnd) {
+        long target = utf8Length(text, start, cutEnd);
+        long bytes = 0;
+        int i = from;
+        while (bytes < target) {
+            bytes += tokenBytes(tokens.get(i++));
+        }
+        return bytes == target ? i - from : ENCODING.countTokens(text.substring(start, cutEnd));
+    }
+
+    /**
+     * Offset reached after consuming {@code bytes} UTF-8 bytes from {@code start}.
+     *
+     * @return Offset, or -1 if the bytes end inside a character
+     */
+    private static int charsForBytes(String text, int start, long bytes) {
+        int i = start;
+        long consumed = 0;
+        while (consumed < bytes && i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < text.length() && Character.isLowSurrogate(text.charAt(i + 1))) {
+                consumed += 4;
+                i += 2;
+            } else {
+                consumed += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+                i++;
+            }
+        }
+        return consumed == bytes ? i : (consumed > bytes ? -1 : i);
+    }
+
+    private static long utf8Length(String text, int start, int end) {
+        long length = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            }
+        }
+        return length;
+    }
+
+    private static long tokenBytes(IntArrayList tokens, int from, int to) {
+        long bytes = 0;
+        for (int i = from; i < to; i++) {
+            bytes += tokenBytes(tokens.get(i));
+        }
+        return bytes;
+    }
+
+    private static int tokenBytes(int token) {
+        if (token < 0 || token >= TOKEN_BYTES.length) {
+            return decodedLength(token);
+        }
+        int length = TOKEN_BYTES[token];
+        if (length == 0) {
+            length = decodedLength(token);
+            TOKEN_BYTES[token] = length;
+        }
+        return length;
+    }
+
+    private static int decodedLength(int token) {
+        var single = new IntArrayList(1);
+        single.add(token);
+        return ENCODING.decodeBytes(single).length;
+    }
+
+    /**
+     * Whether {@code [start, end)} is empty after {@link String#trim()}.
+     */
+    private static boolean isBlank(String text, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) > ' ')
+                return false;
+        }
+        return true;
+    }
+}
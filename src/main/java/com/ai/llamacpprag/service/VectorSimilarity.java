@@ -0,0 +1,207 @@
+package com.ai.llamacpprag.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Dot product, cosine similarity and Euclidean (L2) distance of float and int8
+ * vectors, on SIMD instructions where possible.
+ * <p>
+ * The loops run on the Java Vector API when the JVM is started with
+ * {@code --add-modules jdk.incubator.vector} (as Gradle's run, test and jmh tasks
+ * do), and on plain Java loops otherwise or with
+ * {@code -Drag.similarity.simd=false}. Which one is in use is logged once.
+ * <p>
+ * Int8 dot products and norms are summed in an {@code int}, which holds vectors of
+ * up to 131,000 dimensions (at most 128² per dimension); squared L2 distances, at
+ * up to 255² per dimension, are summed in a {@code long}.
+ */
+public final class VectorSimilarity {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorSimilarity.class);
+
+    private static final SimilarityKernel KERNEL = kernel();
+
+    private VectorSimilarity() {
+    }
+
+    /**
+     * Whether the SIMD kernel is in use.
+     */
+    public static boolean isVectorized() {
+        return !(KERNEL instanceof ScalarSimilarityKernel);
+    }
+
+    /**
+     * Dot product of two float vectors.
+     *
+     * @param a First vector
+     * @param b Second vector, as long as the first
+     * @return Dot product; the cosine similarity if both have unit length
+     */
+    public static float dot(float[] a, float[] b) {
+        checkLength(a.length, b.length);
+        return KERNEL.dot(a, b, 0);
+    }
+
+    /**
+     * Dot product of a float vector with one row of a row-major matrix.
+     *
+     * @param a      Vector
+     * @param matrix Rows of {@code a.length} floats, one after the other
+     * @param offset Index of the row's first float
+     * @return Dot product
+     */
+    public static float dot(float[] a, float[] matrix, int offset) {
+        checkRange(offset, a.length, matrix.length);
+        return KERNEL.dot(a, matrix, offset);
+    }
+
+    /**
+     * Dot product of a float vector with little-endian floats in memory, such as a
+     * memory-mapped file.
+     *
+     * @param a      Vector
+     * @param memory Memory holding the other vector
+     * @param offset Byte offset of the other vector's first float
+     * @return Dot product
+     */
+    public static float dot(float[] a, MemorySegment memory, long offset) {
+        if (offset < 0 || offset + (long) a.length * Float.BYTES > memory.byteSize())
+            throw new IndexOutOfBoundsException("Vector at byte " + offset + " exceeds " + memory.byteSize()
+                    + " bytes");
+        return KERNEL.dot(a, memory, offset);
+    }
+
+    /**
+     * Scores one float vector against many: the dot product with each row of a
+     * row-major matrix, written into a preallocated array.
+     *
+     * @param query  Vector
+     * @param matrix Rows of {@code query.length} floats, one after the other
+     * @param rows   Number of rows to score
+     * @param scores Receives the score of row {@code i} at index {@code i}
+     */
+    public static void dot(float[] query, float[] matrix, int rows, float[] scores) {
+        checkBatch(query.length, matrix.length, rows, scores.length);
+        for (int row = 0, offset = 0; row < rows; row++, offset += query.length) {
+            scores[row] = KERNEL.dot(query, matrix, offset);
+        }
+    }
+
+    /**
+     * Cosine similarity of two float vectors.
+     *
+     * @param a First vector
+     * @param b Second vector, as long as the first
+     * @return Similarity from -1 to 1, or 0 if either vector is zero
+     */
+    public static float cosine(float[] a, float[] b) {
+        checkLength(a.length, b.length);
+        return KERNEL.cosine(a, b);
+    }
+
+    /**
+     * Euclidean distance of two float vectors.
+     *
+     * @param a First vector
+     * @param b Second vector, as long as the first
+     * @return Distance
+     */
+    public static float l2(float[] a, float[] b) {
+        checkLength(a.length, b.length);
+        return (float) Math.sqrt(KERNEL.squareDistance(a, b));
+    }
+
+    /**
+     * Dot product of two int8 vectors.
+     *
+     * @param a First vector
+     * @param b Second vector, as long as the first
+     * @return Dot product
+     */
+    public static int dot(byte[] a, byte[] b) {
+        checkLength(a.length, b.length);
+        return KERNEL.dot(a, b, 0);
+    }
+
+    /**
+     * Scores one int8 vector against many: the dot product with each row of a
+     * row-major matrix, written into a preallocated array.
+     *
+     * @param query  Vector
+     * @param matrix Rows of {@code query.length} bytes, one after the other
+     * @param rows   Number of rows to score
+     * @param scores Receives the score of row {@code i} at index {@code i}
+     */
+    public static void dot(byte[] query, byte[] matrix, int rows, int[] scores) {
+        checkBatch(query.length, matrix.length, rows, scores.length);
+        for (int row = 0, offset = 0; row < rows; row++, offset += query.length) {
+            scores[row] = KERNEL.dot(query, matrix, offset);
+        }
+    }
+
+    /**
+     * Cosine similarity of two int8 vectors.
+     *
+     * @param a First vector
+     * @param b Second vector, as long as the first
+     * @return Similarity from -1 to 1, or 0 if either vector is zero
+     */
+    public static float cosine(byte[] a, byte[] b) {
+        checkLength(a.length, b.length);
+        return KERNEL.cosine(a, b);
+    }
+
+    /**
+     * Euclidean distance of two int8 vectors.
+     *
+     * @param a First vector
+     * @param b Second vector, as long as the first
+     * @return Distance
+     */
+    public static float l2(byte[] a, byte[] b) {
+        checkLength(a.length, b.length);
+        return (float) Math.sqrt(KERNEL.squareDistance(a, b));
+    }
+
+    private static void checkLength(int a, int b) {
+        if (a != b)
+            throw new IllegalArgumentException("Vectors differ in length: " + a + " and " + b);
+    }
+
+    private static void checkRange(int offset, int length, int matrixLength) {
+        if (offset < 0 || offset > matrixLength - length)
+            throw new IndexOutOfBoundsException("Row at " + offset + " exceeds " + matrixLength + " values");
+    }
+
+    private static void checkBatch(int dimensions, int matrixLength, int rows, int scores) {
+        if (rows < 0 || rows > scores)
+            throw new IllegalArgumentException(rows + " rows but room for " + scores + " scores");
+        if ((long) rows * dimensions > matrixLength)
+            throw new IllegalArgumentException(rows + " rows of " + dimensions + " exceed " + matrixLength + " values");
+    }
+
+    /**
+     * The SIMD kernel if the Vector API module is present and not switched off,
+     * else the scalar one. The SIMD kernel is loaded by name so this class also
+     * loads without the module.
+     */
+    private static SimilarityKernel kernel() {
+        if (Boolean.parseBoolean(System.getProperty("rag.similarity.simd", "true"))
+                && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                var simd = (SimilarityKernel) Class.forName(VectorSimilarity.class.getPackageName()
+                        + ".SimdSimilarityKernel").getDeclaredConstructor().newInstance();
+                logger.info("Vector similarity on SIMD instructions ({}-bit vectors)", SimdSimilarityKernel.bitSize());
+                return simd;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                logger.warn("Vector API unavailable, using scalar vector similarity: {}", e.toString());
+            }
+        }
+        logger.info("Vector similarity on scalar loops (start with --add-modules jdk.incubator.vector for SIMD)");
+        return new ScalarSimilarityKernel();
+    }
+}
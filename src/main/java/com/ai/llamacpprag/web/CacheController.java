@@ -1,13 +1,16 @@
 package com.ai.llamacpprag.web;
 
+import com.ai.llamacpprag.service.SemanticAnswerCache;
 import com.github.benmanes.caffeine.cache.Cache;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Map;
 
 /**
- * Controller for managing and monitoring the chat answer cache.
+ * Controller for managing and monitoring the chat answer (exact and semantic) and
+ * question embedding caches.
  */
 @RestController
 public class CacheController {
@@ -18,12 +21,27 @@ public class CacheController {
     private final Cache<String, String> chatAnswerCache;
 
     /**
-     * Constructs a CacheController with the specified chat answer cache.
+     * Cache of question embeddings.
+     */
+    private final Cache<String, float[]> queryEmbeddingCache;
+
+    /**
+     * Answers of similar questions, or null if disabled.
+     */
+    private final SemanticAnswerCache semanticAnswerCache;
+
+    /**
+     * Constructs a CacheController with the specified caches.
      *
-     * @param chatAnswerCache Cache for storing and retrieving chat answers
+     * @param chatAnswerCache     Cache for storing and retrieving chat answers
+     * @param queryEmbeddingCache Cache of question embeddings
+     * @param semanticAnswerCache Semantic answer cache, if enabled
      */
-    public CacheController(Cache<String, String> chatAnswerCache) {
+    public CacheController(Cache<String, String> chatAnswerCache, Cache<String, float[]> queryEmbeddingCache,
+                           ObjectProvider<SemanticAnswerCache> semanticAnswerCache) {
         this.chatAnswerCache = chatAnswerCache;
+        this.queryEmbeddingCache = queryEmbeddingCache;
+        this.semanticAnswerCache = semanticAnswerCache.getIfAvailable();
     }
 
     /**
@@ -33,13 +51,48 @@ public class CacheController {
      */
     @GetMapping("/api/cache/stats")
     public Map<String, Object> stats() {
-        var s = chatAnswerCache.stats();
+        return stats(chatAnswerCache);
+    }
+
+    /**
+     * Get question embedding cache statistics.
+     *
+     * @return Map containing cache statistics
+     */
+    @GetMapping("/api/cache/query-embeddings/stats")
+    public Map<String, Object> queryEmbeddingStats() {
+        return stats(queryEmbeddingCache);
+    }
+
+    /**
+     * Get semantic answer cache statistics; its hits are questions that missed the
+     * exact cache but matched a similar question.
+     *
+     * @return Map containing cache statistics
+     */
+    @GetMapping("/api/cache/semantic/stats")
+    public Map<String, Object> semanticStats() {
+        if (semanticAnswerCache == null)
+            return Map.of("enabled", false);
+        var s = semanticAnswerCache.stats();
+        return Map.of(
+                "enabled", true,
+                "hitCount", s.hitCount(),
+                "missCount", s.missCount(),
+                "hitRate", s.hitRate(),
+                "invalidationCount", s.invalidationCount(),
+                "estimatedSize", (long) s.size()
+        );
+    }
+
+    private static Map<String, Object> stats(Cache<?, ?> cache) {
+        var s = cache.stats();
         return Map.of(
                 "hitCount", s.hitCount(),
                 "missCount", s.missCount(),
                 "hitRate", s.hitRate(),
                 "evictionCount", s.evictionCount(),
-                "estimatedSize", chatAnswerCache.estimatedSize()
+                "estimatedSize", cache.estimatedSize()
         );
     }
 }
\ No newline at end of file
@@ -0,0 +1,39 @@
+package com.ai.llamacpprag.web;
+
+import com.ai.llamacpprag.service.GenerationRejectedException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * Answers chat requests turned away by the generation scheduler with
+ * 429 Too Many Requests and a {@code Retry-After} estimate.
+ */
+@RestControllerAdvice
+public class GenerationRejectedHandler {
+
+    /**
+     * Maps a rejected generation to 429.
+     *
+     * @param e The rejection
+     * @return 429 with {@code Retry-After} in seconds and the reason in the body
+     */
+    @ExceptionHandler(GenerationRejectedException.class)
+    public ResponseEntity<Map<String, Object>> generationRejected(GenerationRejectedException e) {
+        long seconds = retryAfterSeconds(e);
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(seconds))
+                .body(Map.of("error", e.getMessage(), "retryAfterSeconds", seconds));
+    }
+
+    /**
+     * Retry-After of a rejection in whole seconds, at least 1.
+     */
+    static long retryAfterSeconds(GenerationRejectedException e) {
+        return Math.max(1, e.getRetryAfter().toSeconds());
+    }
+}
@@ -0,0 +1,285 @@
+package com.ai.llamacpprag.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Reads a {@code multipart/form-data} body part by part, straight from the request
+ * stream.
+ * <p>
+ * The servlet container's multipart support stores every part (in memory or in a
+ * temp file) before the handler runs. This reader instead hands out each part's
+ * content as an {@link InputStream} that ends at the next boundary, so a file can
+ * be consumed while it is still being uploaded and memory use is one buffer,
+ * whatever the file sizes. Parts must be consumed in order; unread content is
+ * skipped by {@link #next()}.
+ */
+class MultipartStreamReader {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private static final int MAX_HEADER_BYTES = 16 * 1024;
+
+    private final InputStream in;
+
+    /**
+     * {@code CRLF--boundary}: the delimiter ending each part's content.
+     */
+    private final byte[] delimiter;
+
+    private final byte[] buffer;
+
+    private int position;
+
+    private int limit;
+
+    private boolean eof;
+
+    /**
+     * Content stream of the current part, or null before the first part.
+     */
+    private PartStream current;
+
+    private boolean finished;
+
+    /**
+     * Creates a reader over a multipart body.
+     *
+     * @param in       Request body; not closed
+     * @param boundary Boundary from the {@code Content-Type} header
+     */
+    MultipartStreamReader(InputStream in, String boundary) {
+        this.in = in;
+        this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+        this.buffer = new byte[Math.max(BUFFER_BYTES, delimiter.length * 2)];
+    }
+
+    /**
+     * Boundary parameter of a multipart content type.
+     *
+     * @param contentType Value of the {@code Content-Type} header
+     * @return The boundary, or null if the content type is not multipart or has none
+     */
+    static String boundaryOf(String contentType) {
+        if (contentType == null || !contentType.toLowerCase(Locale.ROOT).startsWith("multipart/"))
+            return null;
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.toLowerCase(Locale.ROOT).startsWith("boundary=")) {
+                String boundary = unquote(trimmed.substring("boundary=".length()));
+                return boundary.isEmpty() ? null : boundary;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Advances to the next part, skipping whatever is left of the current one.
+     *
+     * @return The next part, or null after the last one
+     * @throws IOException If the body cannot be read or is not valid multipart
+     */
+    Part next() throws IOException {
+        if (finished)
+            return null;
+        if (current == null) {
+            // The first boundary is not preceded by CRLF
+            skipPreamble();
+        } else {
+            current.skipRemaining();
+        }
+
+        // After a boundary: "--" ends the body, CRLF starts a part
+        if (!fill(2))
+            throw new IOException("Multipart body ends without a closing boundary");
+        if (buffer[position] == '-' && buffer[position + 1] == '-') {
+            finished = true;
+            return null;
+        }
+        skipLine();
+
+        String name = null;
+        String filename = null;
+        String contentType = null;
+        int headerBytes = 0;
+        for (String line = readLine(); !line.isEmpty(); line = readLine()) {
+            headerBytes += line.length();
+            if (headerBytes > MAX_HEADER_BYTES)
+                throw new IOException("Multipart part headers too large");
+            int colon = line.indexOf(':');
+            if (colon < 0)
+                continue;
+            String header = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            if (header.equals("content-disposition")) {
+                name = parameter(value, "name");
+                filename = parameter(value, "filename");
+            } else if (header.equals("content-type")) {
+                contentType = value;
+            }
+        }
+
+        current = new PartStream();
+        return new Part(name, filename, contentType, current);
+    }
+
+    private void skipPreamble() throws IOException {
+        // Treat the body as if it started with CRLF so the first boundary matches the delimiter
+        byte[] dashBoundary = Arrays.copyOfRange(delimiter, 2, delimiter.length);
+        if (fill(dashBoundary.length) && startsWith(dashBoundary)) {
+            position += dashBoundary.length;
+            return;
+        }
+        var preamble = new PartStream();
+        preamble.skipRemaining();
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        for (int i = 0; i < prefix.length; i++) {
+            if (buffer[position + i] != prefix[i])
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Makes at least {@code count} bytes available from {@link #position}, unless the
+     * body ends first.
+     *
+     * @return Whether that many bytes are available
+     */
+    private boolean fill(int count) throws IOException {
+        if (limit - position >= count)
+            return true;
+        if (position > 0) {
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+        }
+        while (limit < count && !eof) {
+            int read = in.read(buffer, limit, buffer.length - limit);
+            if (read < 0)
+                eof = true;
+            else
+                limit += read;
+        }
+        return limit - position >= count;
+    }
+
+    private String readLine() throws IOException {
+        var line = new StringBuilder();
+        while (true) {
+            if (!fill(1))
+                throw new IOException("Multipart body ends inside part headers");
+            byte b = buffer[position++];
+            if (b == '\n')
+                break;
+            if (line.length() > MAX_HEADER_BYTES)
+                throw new IOException("Multipart header line too long");
+            line.append((char) (b & 0xFF));
+        }
+        int length = line.length();
+        if (length > 0 && line.charAt(length - 1) == '\r')
+            line.setLength(length - 1);
+        // Header values (e.g. file names) are UTF-8 in practice
+        return new String(line.toString().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+    }
+
+    private void skipLine() throws IOException {
+        readLine();
+    }
+
+    private static String parameter(String headerValue, String name) {
+        for (String parameter : headerValue.split(";")) {
+            String trimmed = parameter.trim();
+            int equals = trimmed.indexOf('=');
+            if (equals > 0 && trimmed.substring(0, equals).trim().equalsIgnoreCase(name))
+                return unquote(trimmed.substring(equals + 1).trim());
+        }
+        return null;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\""))
+            return value.substring(1, value.length() - 1);
+        return value;
+    }
+
+    /**
+     * One part of the body.
+     *
+     * @param name        Form field name
+     * @param filename    Client file name, or null for a plain form field
+     * @param contentType Declared content type, or null
+     * @param content     Part content, valid until {@link #next()} is called again
+     */
+    record Part(String name, String filename, String contentType, InputStream content) {
+    }
+
+    /**
+     * Content of the current part: the bytes up to the next delimiter.
+     */
+    private final class PartStream extends InputStream {
+
+        private boolean done;
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            if (done)
+                return -1;
+            if (length == 0)
+                return 0;
+            fill(delimiter.length);
+
+            int available = limit - position;
+            int match = indexOfDelimiter();
+            int safe;
+            if (match >= 0) {
+                safe = match - position;
+            } else if (eof) {
+                throw new IOException("Multipart body ends inside a part");
+            } else {
+                // The tail might be the start of a delimiter split across reads
+                safe = available - (delimiter.length - 1);
+            }
+
+            if (safe == 0 && match >= 0) {
+                position += delimiter.length;
+                done = true;
+                return -1;
+            }
+            int count = Math.min(length, safe);
+            System.arraycopy(buffer, position, target, offset, count);
+            position += count;
+            return count;
+        }
+
+        private int indexOfDelimiter() {
+            outer:
+            for (int i = position; i <= limit - delimiter.length; i++) {
+                for (int j = 0; j < delimiter.length; j++) {
+                    if (buffer[i + j] != delimiter[j])
+                        continue outer;
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        private void skipRemaining() throws IOException {
+            byte[] discard = new byte[8192];
+            while (read(discard, 0, discard.length) >= 0) {
+                // Discard up to the delimiter
+            }
+        }
+    }
+}
@@ -1,11 +1,26 @@
 package com.ai.llamacpprag.web;
 
+import com.ai.llamacpprag.config.IngestionProperties;
 import com.ai.llamacpprag.service.DocumentIngestionService;
+import com.ai.llamacpprag.service.GenerationRejectedException;
+import com.ai.llamacpprag.service.IngestionJobService;
 import com.ai.llamacpprag.service.RagChatService;
+import com.ai.llamacpprag.service.RetrievalParams;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.nio.file.Path;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 
 /**
  * Controller for managing and interacting with the RAG (Retrieval-Augmented Generation) system.
@@ -15,7 +30,17 @@ import java.nio.file.Path;
 public class RagController {
 
     /**
-     * Services for document ingestion and chat interactions with the RAG system.
+     * Service running document ingestion as background jobs.
+     */
+    private final IngestionJobService ingestionJobs;
+
+    /**
+     * Ingestion settings (folder to ingest).
+     */
+    private final IngestionProperties ingestionProperties;
+
+    /**
+     * Service ingesting uploaded files.
      */
     private final DocumentIngestionService ingestionService;
 
@@ -25,40 +50,197 @@ public class RagController {
     private final RagChatService chatService;
 
     /**
-     * Constructs a RagController with the specified ingestion service and chat service.
+     * Constructs a RagController with the specified ingestion services and chat service.
      *
-     * @param ingestionService Service for document ingestion
-     * @param chatService      Service for chat interactions with the RAG system
+     * @param ingestionJobs       Service running document ingestion as background jobs
+     * @param ingestionProperties Ingestion settings (folder to ingest)
+     * @param ingestionService    Service ingesting uploaded files
+     * @param chatService         Service for chat interactions with the RAG system
      */
-    public RagController(DocumentIngestionService ingestionService, RagChatService chatService) {
+    public RagController(IngestionJobService ingestionJobs, IngestionProperties ingestionProperties,
+                         DocumentIngestionService ingestionService, RagChatService chatService) {
+        this.ingestionJobs = ingestionJobs;
+        this.ingestionProperties = ingestionProperties;
         this.ingestionService = ingestionService;
         this.chatService = chatService;
     }
 
     /**
-     * Initiates document ingestion from a local folder and returns the result.
+     * Starts document ingestion from the local folder as a background job.
      *
-     * @return ResponseEntity containing the ingestion result
-     * @throws Exception If an error occurs during ingestion
+     * @return 202 Accepted with the job snapshot and its status URL in {@code Location}
      */
     @PostMapping("/ingest")
-    public ResponseEntity<?> ingest() throws Exception {
-        var result = ingestionService.ingestLocalFolder(Path.of("./data"));
-        return ResponseEntity.ok(result);
+    public ResponseEntity<?> ingest() {
+        var job = ingestionJobs.submit(ingestionProperties.getFolder());
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/ingest/" + job.id()))
+                .body(job);
+    }
+
+    /**
+     * Reports the progress of an ingestion job: files, pages, chunks, embedding
+     * throughput and ETA, and the result once finished.
+     *
+     * @param id Job ID
+     * @return ResponseEntity containing the job snapshot, or 404 if unknown
+     */
+    @GetMapping("/ingest/{id}")
+    public ResponseEntity<?> ingestStatus(@PathVariable("id") String id) {
+        return ResponseEntity.of(ingestionJobs.find(id));
+    }
+
+    /**
+     * Cancels an ingestion job.
+     *
+     * @param id Job ID
+     * @return ResponseEntity containing the job snapshot, or 404 if unknown
+     */
+    @DeleteMapping("/ingest/{id}")
+    public ResponseEntity<?> cancelIngest(@PathVariable("id") String id) {
+        return ResponseEntity.of(ingestionJobs.cancel(id));
+    }
+
+    /**
+     * Ingests the files of a {@code multipart/form-data} upload (any field name).
+     * <p>
+     * The body is parsed while it arrives and each file is streamed into the
+     * ingestion pipeline, so uploads of any size use constant memory. The response is
+     * newline-delimited JSON: one line per file as soon as it is ingested, skipped,
+     * rejected or failed, then one line with the totals of the upload.
+     *
+     * @param request Multipart request, read by the response body
+     * @return 200 with the NDJSON stream, or 400 if the request is not multipart
+     */
+    @PostMapping(path = "/documents", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<StreamingResponseBody> uploadDocuments(HttpServletRequest request) {
+        String boundary = MultipartStreamReader.boundaryOf(request.getContentType());
+        if (boundary == null)
+            return ResponseEntity.badRequest().build();
+
+        StreamingResponseBody body = out -> {
+            var lines = new JsonLines(out);
+            var reader = new MultipartStreamReader(request.getInputStream(), boundary);
+            try {
+                lines.write(ingestionService.ingestUploads(() -> nextFile(reader), lines::write));
+            } catch (IOException e) {
+                lines.write(Map.of("error", String.valueOf(e.getMessage())));
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    /**
+     * Next file part of an upload, skipping plain form fields.
+     */
+    private static DocumentIngestionService.Upload nextFile(MultipartStreamReader reader) throws IOException {
+        for (var part = reader.next(); part != null; part = reader.next()) {
+            if (part.filename() != null)
+                return new DocumentIngestionService.Upload(part.filename(), part.content());
+        }
+        return null;
     }
 
     /**
      * Initiates a chat interaction with the RAG system and returns the answer.
+     * Omitted retrieval parameters use the configured defaults; the filter
+     * parameters restrict retrieval to matching chunks.
      *
-     * @param q The question to ask
-     * @return ResponseEntity containing the chat response
+     * @param q         The question to ask
+     * @param topK      Chunks handed to the model (capped at {@code rag.retrieval.max-top-k})
+     * @param threshold Minimum cosine similarity of vector matches, 0 to 1
+     * @param source    Only chunks of this source
+     * @param fileType  Only chunks of this file type (pdf, txt, md)
+     * @param pageFrom  Only PDF pages from this page on
+     * @param pageTo    Only PDF pages up to this page
+     * @return ResponseEntity containing the chat response, or 400 if a parameter is
+     * out of range
      */
     @GetMapping("/chat")
-    public ResponseEntity<?> chat(@RequestParam("q") String q) {
-        var answer = chatService.ask(q);
+    public ResponseEntity<?> chat(@RequestParam("q") String q,
+                                  @RequestParam(name = "topK", required = false) Integer topK,
+                                  @RequestParam(name = "threshold", required = false) Double threshold,
+                                  @RequestParam(name = "source", required = false) String source,
+                                  @RequestParam(name = "fileType", required = false) String fileType,
+                                  @RequestParam(name = "pageFrom", required = false) Integer pageFrom,
+                                  @RequestParam(name = "pageTo", required = false) Integer pageTo) {
+        RetrievalParams params;
+        try {
+            params = new RetrievalParams(topK, threshold, source, fileType, pageFrom, pageTo);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+        var answer = chatService.ask(q, params);
         return ResponseEntity.ok(new ChatResponse(q, answer));
     }
 
+    /**
+     * Streams the answer to a question as server-sent events while the model
+     * generates it: a {@code token} event per piece of text ({@link ChatToken}),
+     * then a {@code done} event with the whole answer ({@link ChatResponse}), or an
+     * {@code error} event if generation fails. Cached answers arrive as a single
+     * {@code token} event. Parameters as for {@code GET /api/chat}.
+     * <p>
+     * When no generation slot is free the stream has already started, so instead of
+     * 429 the {@code error} event carries {@code retryAfterSeconds}.
+     *
+     * @param q         The question to ask
+     * @param topK      Chunks handed to the model (capped at {@code rag.retrieval.max-top-k})
+     * @param threshold Minimum cosine similarity of vector matches, 0 to 1
+     * @param source    Only chunks of this source
+     * @param fileType  Only chunks of this file type (pdf, txt, md)
+     * @param pageFrom  Only PDF pages from this page on
+     * @param pageTo    Only PDF pages up to this page
+     * @return ResponseEntity containing the event stream, or 400 with a single
+     * {@code error} event if a parameter is out of range
+     */
+    @GetMapping(path = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<Flux<ServerSentEvent<Object>>> chatStream(
+            @RequestParam("q") String q,
+            @RequestParam(name = "topK", required = false) Integer topK,
+            @RequestParam(name = "threshold", required = false) Double threshold,
+            @RequestParam(name = "source", required = false) String source,
+            @RequestParam(name = "fileType", required = false) String fileType,
+            @RequestParam(name = "pageFrom", required = false) Integer pageFrom,
+            @RequestParam(name = "pageTo", required = false) Integer pageTo) {
+        RetrievalParams params;
+        try {
+            params = new RetrievalParams(topK, threshold, source, fileType, pageFrom, pageTo);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Flux.just(event("error", Map.of("error", e.getMessage()))));
+        }
+
+        // Tokens go out as JSON: SSE clients strip the leading space of plain data lines
+        var answer = new StringBuilder();
+        Flux<ServerSentEvent<Object>> events = chatService.askStream(q, params)
+                .map(token -> {
+                    answer.append(token);
+                    return event("token", new ChatToken(token));
+                })
+                .concatWith(Mono.fromSupplier(() -> event("done", new ChatResponse(q, answer.toString()))))
+                .onErrorResume(e -> Mono.just(errorEvent(e)));
+        return ResponseEntity.ok(events);
+    }
+
+    private static ServerSentEvent<Object> event(String name, Object data) {
+        return ServerSentEvent.builder(data).event(name).build();
+    }
+
+    private static ServerSentEvent<Object> errorEvent(Throwable e) {
+        if (e instanceof GenerationRejectedException rejected)
+            return event("error", Map.of("error", rejected.getMessage(),
+                    "retryAfterSeconds", GenerationRejectedHandler.retryAfterSeconds(rejected)));
+        return event("error", Map.of("error", String.valueOf(e.getMessage())));
+    }
+
+    /**
+     * One piece of a streamed answer.
+     *
+     * @param text Text generated since the previous piece
+     */
+    public record ChatToken(String text) {
+    }
+
     /**
      * Represents the response to a chat interaction with the RAG system.
      *
@@ -67,4 +249,30 @@ public class RagController {
      */
     public record ChatResponse(String question, String answer) {
     }
+
+    /**
+     * Writes one JSON document per line, flushing each, from any thread. Once the
+     * client is gone further lines are dropped; ingestion itself carries on.
+     */
+    private static final class JsonLines {
+
+        private final OutputStream out;
+
+        private boolean broken;
+
+        private JsonLines(OutputStream out) {
+            this.out = out;
+        }
+
+        private synchronized void write(Object value) {
+            if (broken)
+                return;
+            try {
+                out.write((ModelOptionsUtils.toJsonString(value) + "\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                broken = true;
+            }
+        }
+    }
 }
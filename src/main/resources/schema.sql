@@ -1,2 +1,23 @@
 -- pgvector extension (pgvector image already contains it, but ensure enabled)
 CREATE EXTENSION IF NOT EXISTS vector;
+
+-- Incremental ingestion manifest: one row per ingested source file.
+-- Chunk IDs are derived from (source, chunk index), so chunk_count is enough to
+-- replace or delete every chunk of a file in vector_store.
+CREATE TABLE IF NOT EXISTS ingest_manifest (
+    source       TEXT PRIMARY KEY,
+    size_bytes   BIGINT      NOT NULL,
+    modified_at  BIGINT      NOT NULL,
+    content_hash TEXT        NOT NULL,
+    chunk_count  INT         NOT NULL,
+    ingested_at  TIMESTAMPTZ NOT NULL DEFAULT now()
+);
+
+-- Near-duplicate chunks dropped during ingestion (rag.ingestion.dedup): the file
+-- "source" relies on chunks stored for "canonical_source". When the canonical file
+-- changes or is deleted, the dependent files are ingested again.
+CREATE TABLE IF NOT EXISTS ingest_duplicate (
+    source           TEXT NOT NULL,
+    canonical_source TEXT NOT NULL,
+    PRIMARY KEY (source, canonical_source)
+);
@@ -0,0 +1,135 @@
+package com.ai.llamacpprag.benchmark;
+
+import org.springframework.ai.model.ModelOptionsUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * Measures search configurations against the exact neighbours and writes the
+ * results as JSON, one configuration per line, so reports of two releases can be
+ * diffed.
+ * <p>
+ * Every configuration runs all queries once to warm up and once timed, one query
+ * at a time, so QPS is that of a single client. Reports go to
+ * {@code build/reports/retrieval-benchmark} unless {@code benchmark.report-dir}
+ * says otherwise.
+ */
+final class BenchmarkReport {
+
+    private final String name;
+
+    private final SyntheticCorpus corpus;
+
+    private final List<Map<String, Object>> results = new ArrayList<>();
+
+    /**
+     * Constructs an empty report.
+     *
+     * @param name   Report name, also the file name
+     * @param corpus Corpus the configurations search
+     */
+    BenchmarkReport(String name, SyntheticCorpus corpus) {
+        this.name = name;
+        this.corpus = corpus;
+    }
+
+    /**
+     * Runs all queries through a search and records its recall and latency.
+     *
+     * @param configuration Settings identifying the configuration, in report order
+     * @param k             Number of results the search asks for
+     * @param threshold     Similarity threshold of the search
+     * @param truth         Exact neighbours of every query
+     * @param search        Search returning the chunk numbers found for a query number
+     */
+    void measure(Map<String, Object> configuration, int k, double threshold, ExactSearch.Neighbours[] truth,
+                 IntFunction<Collection<Integer>> search) {
+        int queries = truth.length;
+        for (int q = 0; q < queries; q++) {
+            search.apply(q);
+        }
+
+        long[] nanos = new long[queries];
+        double recall = 0;
+        long started = System.nanoTime();
+        for (int q = 0; q < queries; q++) {
+            long start = System.nanoTime();
+            Collection<Integer> found = search.apply(q);
+            nanos[q] = System.nanoTime() - start;
+            recall += truth[q].recall(found, k, threshold);
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        Arrays.sort(nanos);
+
+        Map<String, Object> result = new LinkedHashMap<>(configuration);
+        result.put("topK", k);
+        result.put("threshold", threshold);
+        result.put("recall", round(recall / queries, 4));
+        result.put("p50Ms", round(percentile(nanos, 0.50) / 1e6, 3));
+        result.put("p99Ms", round(percentile(nanos, 0.99) / 1e6, 3));
+        result.put("qps", round(queries / seconds, 1));
+        results.add(result);
+        System.out.println(name + " " + result);
+    }
+
+    /**
+     * Writes the report.
+     *
+     * @return Path of the written file
+     * @throws IOException If the file cannot be written
+     */
+    Path write() throws IOException {
+        Path directory = Path.of(System.getProperty("benchmark.report-dir", "build/reports/retrieval-benchmark"));
+        Files.createDirectories(directory);
+        var json = new StringBuilder()
+                .append("{\"benchmark\":").append(ModelOptionsUtils.toJsonString(name))
+                .append(",\"corpus\":").append(ModelOptionsUtils.toJsonString(corpus.describe()))
+                .append(",\"results\":[\n");
+        for (int i = 0; i < results.size(); i++) {
+            json.append(ModelOptionsUtils.toJsonString(results.get(i)))
+                    .append(i < results.size() - 1 ? ",\n" : "\n");
+        }
+        json.append("]}\n");
+        Path file = directory.resolve(name + ".json");
+        Files.writeString(file, json);
+        System.out.println(name + " report: " + file.toAbsolutePath());
+        return file;
+    }
+
+    /**
+     * Values to sweep, from a comma-separated system property such as
+     * {@code -Dbenchmark.ef-search=40,100}.
+     *
+     * @param property System property
+     * @param defaults Values when the property is not set
+     * @return Values to sweep
+     */
+    static int[] sweep(String property, int... defaults) {
+        String values = System.getProperty(property);
+        return values == null || values.isBlank()
+                ? defaults
+                : Arrays.stream(values.split(",")).map(String::strip).mapToInt(Integer::parseInt).toArray();
+    }
+
+    /**
+     * Nearest-rank percentile of sorted values.
+     */
+    static long percentile(long[] sorted, double fraction) {
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double round(double value, int decimals) {
+        double scale = Math.pow(10, decimals);
+        return Math.round(value * scale) / scale;
+    }
+}
@@ -0,0 +1,95 @@
+package com.ai.llamacpprag.benchmark;
+
+import java.util.Collection;
+import java.util.PriorityQueue;
+import java.util.function.IntPredicate;
+
+/**
+ * Brute-force nearest neighbours: the ground truth approximate searches are
+ * measured against.
+ */
+final class ExactSearch {
+
+    private ExactSearch() {
+    }
+
+    /**
+     * The {@code k} corpus vectors most similar to each query, by comparing every
+     * query with every vector.
+     *
+     * @param corpus Corpus with unit-length vectors and queries
+     * @param k      Neighbours per query
+     * @param accept Filter on chunk numbers, like a metadata filter of the search
+     * @return Per query, chunk numbers with their similarities, most similar first
+     */
+    static Neighbours[] topK(SyntheticCorpus corpus, int k, IntPredicate accept) {
+        Neighbours[] truth = new Neighbours[corpus.queries().length];
+        for (int q = 0; q < truth.length; q++) {
+            truth[q] = topK(corpus.vectors(), corpus.queries()[q], k, accept);
+        }
+        return truth;
+    }
+
+    private static Neighbours topK(float[][] vectors, float[] query, int k, IntPredicate accept) {
+        float[] similarities = new float[vectors.length];
+        for (int i = 0; i < vectors.length; i++) {
+            similarities[i] = dot(vectors[i], query);
+        }
+        // Min-heap of the best k so far
+        var heap = new PriorityQueue<Integer>(k + 1, (a, b) -> Float.compare(similarities[a], similarities[b]));
+        for (int i = 0; i < vectors.length; i++) {
+            if (!accept.test(i))
+                continue;
+            if (heap.size() < k) {
+                heap.add(i);
+            } else if (similarities[i] > similarities[heap.peek()]) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        int[] chunks = new int[heap.size()];
+        float[] scores = new float[heap.size()];
+        for (int i = chunks.length - 1; i >= 0; i--) {
+            chunks[i] = heap.poll();
+            scores[i] = similarities[chunks[i]];
+        }
+        return new Neighbours(chunks, scores);
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Exact neighbours of one query.
+     *
+     * @param chunks       Chunk numbers, most similar first
+     * @param similarities Cosine similarity of each chunk
+     */
+    record Neighbours(int[] chunks, float[] similarities) {
+
+        /**
+         * Share of the true top {@code k} above {@code threshold} that a search found.
+         * A search that correctly found nothing has full recall.
+         *
+         * @param found     Chunk numbers returned by the search
+         * @param k         Number of results asked for
+         * @param threshold Similarity threshold of the search
+         * @return Recall from 0 to 1
+         */
+        double recall(Collection<Integer> found, int k, double threshold) {
+            int expected = 0;
+            int hits = 0;
+            for (int i = 0; i < Math.min(k, chunks.length) && similarities[i] >= threshold; i++) {
+                expected++;
+                if (found.contains(chunks[i]))
+                    hits++;
+            }
+            return expected == 0 ? 1 : (double) hits / expected;
+        }
+    }
+}
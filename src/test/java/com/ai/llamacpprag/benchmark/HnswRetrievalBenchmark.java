@@ -0,0 +1,95 @@
+package com.ai.llamacpprag.benchmark;
+
+import com.ai.llamacpprag.service.HnswIndex;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Recall and latency of the embedded {@link HnswIndex} (the {@code hnsw} vector
+ * store) over a sweep of {@code m}, {@code ef-construction} and {@code ef-search},
+ * for a few top-k, threshold and filter settings.
+ * <p>
+ * Not part of {@code ./gradlew test}; run with {@code ./gradlew retrievalBenchmark}.
+ * Writes {@code hnsw.json}, see {@link BenchmarkReport}.
+ */
+@Tag("benchmark")
+class HnswRetrievalBenchmark {
+
+    private static final int[] TOP_K = {3, 10};
+
+    private static final double[] THRESHOLDS = {0.0, 0.5};
+
+    private static final String FILTERED_SOURCE = SyntheticCorpus.source(7);
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void sweep() throws IOException {
+        var corpus = SyntheticCorpus.fromSystemProperties();
+        int maxK = TOP_K[TOP_K.length - 1];
+        IntPredicate inSource = chunk -> SyntheticCorpus.source(chunk).equals(FILTERED_SOURCE);
+        var truth = ExactSearch.topK(corpus, maxK, chunk -> true);
+        var filteredTruth = ExactSearch.topK(corpus, maxK, inSource);
+        var report = new BenchmarkReport("hnsw", corpus);
+
+        for (int m : BenchmarkReport.sweep("benchmark.m", 16, 32)) {
+            for (int efConstruction : BenchmarkReport.sweep("benchmark.ef-construction", 100, 200)) {
+                long started = System.nanoTime();
+                try (var index = new HnswIndex(directory.resolve(m + "-" + efConstruction), m, efConstruction)) {
+                    for (int i = 0; i < corpus.size(); i++) {
+                        index.add(corpus.vectors()[i], i);
+                    }
+                    double buildSeconds = Math.round((System.nanoTime() - started) / 1e7) / 100.0;
+                    IntPredicate acceptSource = node -> inSource.test((int) index.payload(node));
+
+                    for (int efSearch : BenchmarkReport.sweep("benchmark.ef-search", 16, 32, 64, 128, 256)) {
+                        for (int k : TOP_K) {
+                            for (double threshold : THRESHOLDS) {
+                                Map<String, Object> configuration = new LinkedHashMap<>();
+                                configuration.put("m", m);
+                                configuration.put("efConstruction", efConstruction);
+                                configuration.put("buildSeconds", buildSeconds);
+                                configuration.put("efSearch", efSearch);
+
+                                configuration.put("filter", "none");
+                                report.measure(new LinkedHashMap<>(configuration), k, threshold, truth,
+                                        q -> search(index, corpus.queries()[q], k, efSearch, threshold, node -> true));
+                                configuration.put("filter", "source");
+                                report.measure(configuration, k, threshold, filteredTruth,
+                                        q -> search(index, corpus.queries()[q], k, efSearch, threshold, acceptSource));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        assertTrue(report.write().toFile().length() > 0);
+    }
+
+    /**
+     * Searches like the {@code hnsw} vector store does: filter inside the graph
+     * search, threshold on the matches.
+     */
+    private static List<Integer> search(HnswIndex index, float[] query, int k, int efSearch, double threshold,
+                                        IntPredicate accept) {
+        List<Integer> chunks = new ArrayList<>(k);
+        for (HnswIndex.Match match : index.search(query, k, efSearch, accept)) {
+            if (match.similarity() >= threshold)
+                chunks.add((int) index.payload(match.node()));
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,288 @@
+package com.ai.llamacpprag.benchmark;
+
+import com.ai.llamacpprag.config.IngestionProperties;
+import com.ai.llamacpprag.config.RetrievalProperties;
+import com.ai.llamacpprag.service.ParameterizedVectorRetriever;
+import com.ai.llamacpprag.service.PgQuantizedVectorRetriever;
+import com.ai.llamacpprag.service.PgVectorBulkLoader;
+import com.ai.llamacpprag.service.RetrievalParams;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.ai.vectorstore.pgvector.PgVectorStore;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import org.testcontainers.utility.DockerImageName;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Recall and latency of retrieval from pgvector, through the application's
+ * {@link ParameterizedVectorRetriever} and {@link PgVectorStore}, against exact
+ * brute-force neighbours.
+ * <p>
+ * The corpus is bulk-loaded into a {@code pgvector/pgvector:pg16} container (the
+ * image of {@code docker-compose.yml}). The sweep first searches without an index
+ * (pgvector's exact scan, the latency baseline), then over HNSW indexes built with
+ * each {@code m} and {@code ef_construction}, each searched with every
+ * {@code hnsw.ef_search}, top-k, threshold and filter setting. Last come the
+ * quantized indexes of {@link PgQuantizedVectorRetriever} ({@code halfvec} and
+ * {@code bit}), searched with each oversampling factor; with the index sizes in
+ * {@code indexBytes}, their rows show the memory saved and the recall lost
+ * against the full-precision HNSW rows.
+ * <p>
+ * Not part of {@code ./gradlew test}; run with {@code ./gradlew retrievalBenchmark}
+ * (skipped without Docker). Writes {@code pgvector.json}, see {@link BenchmarkReport}.
+ */
+@Tag("benchmark")
+@Testcontainers(disabledWithoutDocker = true)
+class PgVectorRetrievalBenchmark {
+
+    private static final int[] TOP_K = {3, 10};
+
+    private static final double[] THRESHOLDS = {0.0, 0.5};
+
+    private static final String FILTERED_SOURCE = SyntheticCorpus.source(7);
+
+    private static final int LOAD_BATCH = 1_000;
+
+    @Container
+    private static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>(
+            DockerImageName.parse("pgvector/pgvector:pg16").asCompatibleSubstituteFor("postgres"));
+
+    @Test
+    void sweep() throws IOException {
+        var corpus = SyntheticCorpus.fromSystemProperties();
+        int maxK = TOP_K[TOP_K.length - 1];
+        var truth = ExactSearch.topK(corpus, maxK, chunk -> true);
+        var filteredTruth = ExactSearch.topK(corpus, maxK,
+                chunk -> SyntheticCorpus.source(chunk).equals(FILTERED_SOURCE));
+        var report = new BenchmarkReport("pgvector", corpus);
+
+        // One connection, so SET hnsw.ef_search applies to every search
+        var dataSource = new SingleConnectionDataSource(postgres.getJdbcUrl(), postgres.getUsername(),
+                postgres.getPassword(), true);
+        try {
+            var jdbcTemplate = new JdbcTemplate(dataSource);
+            load(jdbcTemplate, corpus);
+
+            Map<String, Integer> chunks = new HashMap<>();
+            for (int i = 0; i < corpus.size(); i++) {
+                chunks.put(SyntheticCorpus.id(i), i);
+            }
+            var queryVectors = new QueryVectors(corpus);
+            VectorStore vectorStore = PgVectorStore.builder(jdbcTemplate, queryVectors)
+                    .dimensions(corpus.dimensions())
+                    .distanceType(PgVectorStore.PgDistanceType.COSINE_DISTANCE)
+                    .indexType(PgVectorStore.PgIndexType.NONE)
+                    .initializeSchema(false)
+                    .build();
+
+            BiFunction<Integer, Double, DocumentRetriever> vectorRetrievers =
+                    (k, threshold) -> new ParameterizedVectorRetriever(vectorStore, k, threshold, 0);
+
+            Map<String, Object> exact = new LinkedHashMap<>();
+            exact.put("index", "none");
+            sweepRetriever(report, exact, vectorRetrievers, chunks, truth, filteredTruth);
+
+            for (int m : BenchmarkReport.sweep("benchmark.m", 16, 32)) {
+                for (int efConstruction : BenchmarkReport.sweep("benchmark.ef-construction", 64, 200)) {
+                    jdbcTemplate.execute("DROP INDEX IF EXISTS vector_store_benchmark_idx");
+                    long started = System.nanoTime();
+                    jdbcTemplate.execute("CREATE INDEX vector_store_benchmark_idx ON vector_store "
+                            + "USING hnsw (embedding vector_cosine_ops) "
+                            + "WITH (m = " + m + ", ef_construction = " + efConstruction + ")");
+                    double buildSeconds = Math.round((System.nanoTime() - started) / 1e7) / 100.0;
+                    long indexBytes = indexBytes(jdbcTemplate, "vector_store_benchmark_idx");
+
+                    for (int efSearch : BenchmarkReport.sweep("benchmark.ef-search", 20, 40, 100, 200)) {
+                        jdbcTemplate.execute("SET hnsw.ef_search = " + efSearch);
+                        Map<String, Object> configuration = new LinkedHashMap<>();
+                        configuration.put("index", "hnsw");
+                        configuration.put("m", m);
+                        configuration.put("efConstruction", efConstruction);
+                        configuration.put("buildSeconds", buildSeconds);
+                        configuration.put("indexBytes", indexBytes);
+                        configuration.put("efSearch", efSearch);
+                        sweepRetriever(report, configuration, vectorRetrievers, chunks, truth, filteredTruth);
+                    }
+                }
+            }
+            jdbcTemplate.execute("DROP INDEX IF EXISTS vector_store_benchmark_idx");
+
+            for (var mode : List.of(RetrievalProperties.QuantizationMode.HALFVEC,
+                    RetrievalProperties.QuantizationMode.BINARY)) {
+                String index = "vector_store_embedding_" + mode.name().toLowerCase() + "_idx";
+                long started = System.nanoTime();
+                quantizedRetriever(jdbcTemplate, queryVectors, mode, 1, 1, 0.0);
+                double buildSeconds = Math.round((System.nanoTime() - started) / 1e7) / 100.0;
+                long indexBytes = indexBytes(jdbcTemplate, index);
+
+                for (int oversample : BenchmarkReport.sweep("benchmark.oversample", 1, 4, 10)) {
+                    Map<String, Object> configuration = new LinkedHashMap<>();
+                    configuration.put("index", mode.name().toLowerCase());
+                    configuration.put("buildSeconds", buildSeconds);
+                    configuration.put("indexBytes", indexBytes);
+                    configuration.put("oversample", oversample);
+                    sweepRetriever(report, configuration,
+                            (k, threshold) -> quantizedRetriever(jdbcTemplate, queryVectors, mode, oversample, k,
+                                    threshold),
+                            chunks, truth, filteredTruth);
+                }
+                jdbcTemplate.execute("DROP INDEX " + index);
+            }
+        } finally {
+            dataSource.destroy();
+        }
+
+        assertTrue(report.write().toFile().length() > 0);
+    }
+
+    /**
+     * Creates the table the pgvector store expects and bulk-loads the corpus the way
+     * ingestion does.
+     */
+    private static void load(JdbcTemplate jdbcTemplate, SyntheticCorpus corpus) {
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS vector");
+        jdbcTemplate.execute("CREATE TABLE vector_store (id uuid PRIMARY KEY, content text, metadata json, "
+                + "embedding vector(" + corpus.dimensions() + "))");
+        jdbcTemplate.execute("SET maintenance_work_mem = '1GB'");
+
+        var loader = new PgVectorBulkLoader(jdbcTemplate, "public", "vector_store", new SimpleMeterRegistry());
+        var settings = new IngestionProperties.BulkLoad();
+        settings.setStaging(false);
+        List<Document> documents = corpus.documents();
+        List<float[]> vectors = Arrays.asList(corpus.vectors());
+        try (var session = loader.begin(settings)) {
+            for (int from = 0; from < documents.size(); from += LOAD_BATCH) {
+                int to = Math.min(from + LOAD_BATCH, documents.size());
+                session.add(documents.subList(from, to), vectors.subList(from, to));
+            }
+        }
+        jdbcTemplate.execute("ANALYZE vector_store");
+    }
+
+    /**
+     * Quantized retrieval as the application configures it, creating its index on
+     * first use.
+     */
+    private static PgQuantizedVectorRetriever quantizedRetriever(JdbcTemplate jdbcTemplate,
+                                                                 EmbeddingModel embeddingModel,
+                                                                 RetrievalProperties.QuantizationMode mode,
+                                                                 int oversample, int topK, double threshold) {
+        var properties = new RetrievalProperties();
+        properties.setTopK(topK);
+        properties.setSimilarityThreshold(threshold);
+        properties.getHybrid().setEnabled(false);
+        properties.getQuantization().setMode(mode);
+        properties.getQuantization().setOversample(oversample);
+        var retriever = new PgQuantizedVectorRetriever(jdbcTemplate, "public", "vector_store", embeddingModel,
+                properties, new SimpleMeterRegistry());
+        retriever.afterSingletonsInstantiated();
+        if (!retriever.isReady())
+            throw new IllegalStateException("Quantized (" + mode + ") index not created, see the log");
+        return retriever;
+    }
+
+    private static long indexBytes(JdbcTemplate jdbcTemplate, String index) {
+        Long bytes = jdbcTemplate.queryForObject("SELECT pg_relation_size(?::regclass)", Long.class, index);
+        return bytes == null ? 0 : bytes;
+    }
+
+    /**
+     * Measures every top-k, threshold and filter setting on the current index.
+     */
+    private static void sweepRetriever(BenchmarkReport report, Map<String, Object> index,
+                                       BiFunction<Integer, Double, DocumentRetriever> retrievers,
+                                       Map<String, Integer> chunks, ExactSearch.Neighbours[] truth,
+                                       ExactSearch.Neighbours[] filteredTruth) {
+        var sourceFilter = new RetrievalParams(null, null, FILTERED_SOURCE, null, null, null);
+        for (int k : TOP_K) {
+            for (double threshold : THRESHOLDS) {
+                var retriever = retrievers.apply(k, threshold);
+
+                Map<String, Object> configuration = new LinkedHashMap<>(index);
+                configuration.put("filter", "none");
+                report.measure(new LinkedHashMap<>(configuration), k, threshold, truth,
+                        q -> chunkNumbers(retriever.retrieve(new Query(QueryVectors.text(q))), chunks));
+                configuration.put("filter", "source");
+                report.measure(configuration, k, threshold, filteredTruth,
+                        q -> chunkNumbers(retriever.retrieve(Query.builder()
+                                .text(QueryVectors.text(q))
+                                .context(Map.of(RetrievalParams.CONTEXT_KEY, sourceFilter))
+                                .build()), chunks));
+            }
+        }
+    }
+
+    private static List<Integer> chunkNumbers(List<Document> documents, Map<String, Integer> chunks) {
+        List<Integer> numbers = new ArrayList<>(documents.size());
+        for (Document document : documents) {
+            numbers.add(chunks.get(document.getId()));
+        }
+        return numbers;
+    }
+
+    /**
+     * Embedding model answering the benchmark's query texts with the corpus' query
+     * vectors, so searches run through the real store without an embedding server.
+     */
+    private static final class QueryVectors implements EmbeddingModel {
+
+        private static final String PREFIX = "benchmark query ";
+
+        private final SyntheticCorpus corpus;
+
+        private QueryVectors(SyntheticCorpus corpus) {
+            this.corpus = corpus;
+        }
+
+        static String text(int query) {
+            return PREFIX + query;
+        }
+
+        @Override
+        public float[] embed(String text) {
+            return corpus.queries()[Integer.parseInt(text.substring(PREFIX.length()))];
+        }
+
+        @Override
+        public float[] embed(Document document) {
+            return embed(document.getText());
+        }
+
+        @Override
+        public EmbeddingResponse call(EmbeddingRequest request) {
+            List<Embedding> embeddings = new ArrayList<>();
+            for (String text : request.getInstructions()) {
+                embeddings.add(new Embedding(embed(text), embeddings.size()));
+            }
+            return new EmbeddingResponse(embeddings);
+        }
+
+        @Override
+        public int dimensions() {
+            return corpus.dimensions();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.ai.llamacpprag.benchmark;
+
+import org.springframework.ai.document.Document;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Seeded corpus of unit vectors for the retrieval benchmarks.
+ * <p>
+ * Real embeddings are not spread evenly over the sphere: chunks of one document or
+ * topic sit close together. The corpus imitates that with vectors scattered around
+ * a number of cluster centres, and its queries are corpus vectors with some noise
+ * added, like a question phrased close to one chunk. The same settings always give
+ * the same vectors, so reports of different releases are comparable.
+ * <p>
+ * Sizes are read from system properties, e.g.
+ * {@code ./gradlew retrievalBenchmark -Dbenchmark.corpus-size=100000}.
+ *
+ * @param vectors  Corpus vectors, unit length; chunk {@code i} is {@code vectors[i]}
+ * @param queries  Query vectors, unit length
+ * @param clusters Number of cluster centres
+ * @param seed     Random seed
+ */
+record SyntheticCorpus(float[][] vectors, float[][] queries, int clusters, long seed) {
+
+    /**
+     * Distance of corpus vectors from their cluster centre, relative to its length.
+     */
+    private static final double SPREAD = 1.5;
+
+    /**
+     * Distance of queries from their corpus vector, relative to its length.
+     */
+    private static final double QUERY_NOISE = 1.0;
+
+    /**
+     * Number of source files the chunks are spread over.
+     */
+    static final int SOURCES = 50;
+
+    /**
+     * Generates a corpus.
+     *
+     * @param size       Number of chunks
+     * @param queries    Number of queries
+     * @param dimensions Vector width
+     * @param clusters   Number of cluster centres
+     * @param seed       Random seed
+     * @return The corpus
+     */
+    static SyntheticCorpus generate(int size, int queries, int dimensions, int clusters, long seed) {
+        var random = new Random(seed);
+        float[][] centres = new float[clusters][];
+        for (int c = 0; c < clusters; c++) {
+            centres[c] = around(new float[dimensions], 1, random);
+        }
+        float[][] vectors = new float[size][];
+        for (int i = 0; i < size; i++) {
+            vectors[i] = around(centres[random.nextInt(clusters)], SPREAD, random);
+        }
+        float[][] queryVectors = new float[queries][];
+        for (int q = 0; q < queries; q++) {
+            queryVectors[q] = around(vectors[random.nextInt(size)], QUERY_NOISE, random);
+        }
+        return new SyntheticCorpus(vectors, queryVectors, clusters, seed);
+    }
+
+    /**
+     * Generates a corpus sized by the {@code benchmark.*} system properties.
+     */
+    static SyntheticCorpus fromSystemProperties() {
+        return generate(Integer.getInteger("benchmark.corpus-size", 20_000),
+                Integer.getInteger("benchmark.queries", 200),
+                Integer.getInteger("benchmark.dimensions", 768),
+                Integer.getInteger("benchmark.clusters", 100),
+                Long.getLong("benchmark.seed", 42));
+    }
+
+    int size() {
+        return vectors.length;
+    }
+
+    int dimensions() {
+        return vectors[0].length;
+    }
+
+    /**
+     * Stable chunk ID of a corpus vector.
+     */
+    static String id(int chunk) {
+        return UUID.nameUUIDFromBytes(("benchmark-chunk-" + chunk).getBytes(StandardCharsets.UTF_8)).toString();
+    }
+
+    /**
+     * Source file metadata of a chunk.
+     */
+    static String source(int chunk) {
+        return "synthetic-" + chunk % SOURCES + ".pdf";
+    }
+
+    /**
+     * Corpus vectors as chunks, with the metadata ingestion writes.
+     */
+    List<Document> documents() {
+        List<Document> documents = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            documents.add(Document.builder()
+                    .id(id(i))
+                    .text("Synthetic chunk " + i)
+                    .metadata(Map.of("source", source(i), "fileType", "pdf", "page", i % 300 + 1))
+                    .build());
+        }
+        return documents;
+    }
+
+    /**
+     * Corpus settings for the report.
+     */
+    Map<String, Object> describe() {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("size", size());
+        description.put("queries", queries.length);
+        description.put("dimensions", dimensions());
+        description.put("clusters", clusters);
+        description.put("seed", seed);
+        return description;
+    }
+
+    /**
+     * A unit vector at a random offset from {@code centre}.
+     */
+    private static float[] around(float[] centre, double spread, Random random) {
+        double scale = spread / Math.sqrt(centre.length);
+        float[] vector = new float[centre.length];
+        double norm = 0;
+        for (int d = 0; d < vector.length; d++) {
+            vector[d] = (float) (centre[d] + random.nextGaussian() * scale);
+            norm += vector[d] * vector[d];
+        }
+        float inverse = (float) (1 / Math.sqrt(norm));
+        for (int d = 0; d < vector.length; d++) {
+            vector[d] *= inverse;
+        }
+        return vector;
+    }
+}
@@ -1,6 +1,9 @@
 package com.ai.llamacpprag.config;
 
+import com.ai.llamacpprag.service.SemanticAnswerCache;
+import com.ai.llamacpprag.service.SingleFlight;
 import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -66,4 +69,40 @@ class ChatCacheConfigTest {
         // Assert
         assertEquals("testValue", retrieved);
     }
+
+    @Test
+    void semanticAnswerCache_UsesConfiguredThreshold() {
+        // Arrange
+        var properties = new ChatCacheProperties();
+        properties.getSemantic().setThreshold(0.99);
+        SemanticAnswerCache cache = config.semanticAnswerCache(properties);
+        cache.put(new float[]{1f, 0f}, "k=3", "answer");
+
+        // Act & Assert - cosine 0.995 passes, 0.98 does not
+        assertEquals("answer", cache.get(new float[]{1f, 0.1f}, "k=3"));
+        assertNull(cache.get(new float[]{1f, 0.2f}, "k=3"));
+    }
+
+    @Test
+    void semanticAnswerCache_DisabledByDefault() {
+        // Act
+        var semantic = new ChatCacheProperties().getSemantic();
+
+        // Assert - similar questions only share answers once a threshold was chosen
+        assertFalse(semantic.isEnabled());
+    }
+
+    @Test
+    void answerGenerations_RegistersCoalescingMeters() {
+        // Arrange
+        var meterRegistry = new SimpleMeterRegistry();
+
+        // Act
+        SingleFlight<String> generations = config.answerGenerations(new ChatCacheProperties(), meterRegistry);
+
+        // Assert
+        assertEquals("answer", generations.run("q:1", () -> "answer"));
+        assertEquals(0.0, meterRegistry.get("rag.chat.coalesced").tag("result", "shared").counter().count());
+        assertEquals(0.0, meterRegistry.get("rag.chat.in-flight").gauge().value());
+    }
 }
@@ -1,13 +1,18 @@
 package com.ai.llamacpprag.config;
 
+import com.ai.llamacpprag.service.GenerationScheduler;
+import com.ai.llamacpprag.service.LoadBalancedChatModel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.beans.factory.ObjectProvider;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.when;
 
 /**
  * Unit tests for {@link ChatModelPrimaryConfig}.
@@ -20,23 +25,48 @@ class ChatModelPrimaryConfigTest {
     @Mock
     private OpenAiChatModel mockOpenAiChatModel;
 
+    @Mock
+    private ObjectProvider<LoadBalancedChatModel> mockPoolProvider;
+
+    @Mock
+    private LoadBalancedChatModel mockPool;
+
     @Test
-    void primaryChatModel_ReturnsOpenAiChatModel() {
+    void primaryChatModel_SchedulesOpenAiChatModel() {
         // Act
-        ChatModel result = config.primaryChatModel(mockOpenAiChatModel);
+        ChatModel result = config.primaryChatModel(mockOpenAiChatModel, mockPoolProvider, new GenerationProperties(),
+                new SimpleMeterRegistry());
+
+        // Assert
+        assertInstanceOf(GenerationScheduler.class, result);
+    }
+
+    @Test
+    void primaryChatModel_SchedulingDisabled_ReturnsOpenAiChatModel() {
+        // Arrange
+        var properties = new GenerationProperties();
+        properties.setEnabled(false);
+
+        // Act
+        ChatModel result = config.primaryChatModel(mockOpenAiChatModel, mockPoolProvider, properties,
+                new SimpleMeterRegistry());
 
         // Assert
-        assertNotNull(result);
         assertSame(mockOpenAiChatModel, result);
     }
 
     @Test
-    void primaryChatModel_ReturnsSameInstance() {
+    void primaryChatModel_PoolEnabled_UsesPool() {
+        // Arrange
+        var properties = new GenerationProperties();
+        properties.setEnabled(false);
+        when(mockPoolProvider.getIfAvailable()).thenReturn(mockPool);
+
         // Act
-        ChatModel result1 = config.primaryChatModel(mockOpenAiChatModel);
-        ChatModel result2 = config.primaryChatModel(mockOpenAiChatModel);
+        ChatModel result = config.primaryChatModel(mockOpenAiChatModel, mockPoolProvider, properties,
+                new SimpleMeterRegistry());
 
-        // Assert - both should be the same mocked instance
-        assertSame(result1, result2);
+        // Assert
+        assertSame(mockPool, result);
     }
 }
@@ -1,13 +1,22 @@
 package com.ai.llamacpprag.config;
 
+import com.ai.llamacpprag.service.CachingEmbeddingModel;
+import com.ai.llamacpprag.service.QueryEmbeddingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.ollama.OllamaEmbeddingModel;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
 
 /**
  * Unit tests for {@link EmbeddingConfig}.
@@ -21,9 +30,15 @@ class EmbeddingConfigTest {
     private OllamaEmbeddingModel mockOllamaEmbeddingModel;
 
     @Test
-    void embeddingModel_ReturnsOllamaEmbeddingModel() {
+    void embeddingModel_CachesDisabled_ReturnsOllamaEmbeddingModel() throws Exception {
+        // Arrange
+        var properties = new EmbeddingCacheProperties();
+        properties.setEnabled(false);
+        properties.getQuery().setEnabled(false);
+
         // Act
-        EmbeddingModel result = config.embeddingModel(mockOllamaEmbeddingModel);
+        EmbeddingModel result = config.embeddingModel(mockOllamaEmbeddingModel, properties, "nomic-embed-text",
+                new SimpleMeterRegistry(), config.queryEmbeddingCache(properties));
 
         // Assert
         assertNotNull(result);
@@ -31,12 +46,57 @@ class EmbeddingConfigTest {
     }
 
     @Test
-    void embeddingModel_ReturnsSameInstance() {
+    void embeddingModel_CacheEnabled_WrapsOllamaInPersistentCache(@TempDir Path tempDir) throws Exception {
+        // Arrange
+        var properties = new EmbeddingCacheProperties();
+        properties.setDirectory(tempDir);
+        properties.getQuery().setEnabled(false);
+
+        // Act
+        EmbeddingModel result = config.embeddingModel(mockOllamaEmbeddingModel, properties, "nomic-embed-text:latest",
+                new SimpleMeterRegistry(), config.queryEmbeddingCache(properties));
+
+        // Assert - one store directory per model, with a file-system safe name
+        assertInstanceOf(CachingEmbeddingModel.class, result);
+        assertTrue(Files.isDirectory(tempDir.resolve("nomic-embed-text_latest")));
+        ((CachingEmbeddingModel) result).close();
+    }
+
+    @Test
+    void embeddingModel_QueryCacheEnabled_WrapsModelInQueryCache() throws Exception {
+        // Arrange
+        var properties = new EmbeddingCacheProperties();
+        properties.setEnabled(false);
+        Cache<String, float[]> queryCache = config.queryEmbeddingCache(properties);
+        when(mockOllamaEmbeddingModel.embed("What is RAG?")).thenReturn(new float[]{1f, 2f});
+
+        // Act
+        EmbeddingModel result = config.embeddingModel(mockOllamaEmbeddingModel, properties, "nomic-embed-text",
+                new SimpleMeterRegistry(), queryCache);
+        result.embed("What is RAG?");
+        result.embed("what is  rag? ");
+
+        // Assert - one embedding call, served again from the given cache
+        assertInstanceOf(QueryEmbeddingCache.class, result);
+        verify(mockOllamaEmbeddingModel, times(1)).embed("What is RAG?");
+        assertEquals(1, queryCache.stats().hitCount());
+    }
+
+    @Test
+    void embeddingModel_BothCachesEnabled_QuestionsSkipThePersistentCache(@TempDir Path tempDir) throws Exception {
+        // Arrange
+        var properties = new EmbeddingCacheProperties();
+        properties.setDirectory(tempDir);
+        when(mockOllamaEmbeddingModel.embed("What is RAG?")).thenReturn(new float[]{1f, 2f});
+
         // Act
-        EmbeddingModel result1 = config.embeddingModel(mockOllamaEmbeddingModel);
-        EmbeddingModel result2 = config.embeddingModel(mockOllamaEmbeddingModel);
+        EmbeddingModel result = config.embeddingModel(mockOllamaEmbeddingModel, properties, "nomic-embed-text",
+                new SimpleMeterRegistry(), config.queryEmbeddingCache(properties));
+        result.embed("What is RAG?");
 
-        // Assert - both should be the same mocked instance
-        assertSame(result1, result2);
+        // Assert - embedded by Ollama directly, nothing appended to the on-disk store
+        verify(mockOllamaEmbeddingModel, never()).call(any());
+        assertEquals(0, Files.size(tempDir.resolve("nomic-embed-text").resolve("index.bin")));
+        ((QueryEmbeddingCache) result).close();
     }
 }
@@ -0,0 +1,55 @@
+package com.ai.llamacpprag.config;
+
+import com.ai.llamacpprag.service.HnswVectorStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.embedding.EmbeddingModel;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link HnswVectorStoreConfig}.
+ */
+@ExtendWith(MockitoExtension.class)
+class HnswVectorStoreConfigTest {
+
+    private final HnswVectorStoreConfig config = new HnswVectorStoreConfig();
+
+    @Mock
+    private EmbeddingModel mockEmbeddingModel;
+
+    @Test
+    void vectorStore_OpensIndexInPerModelDirectory(@TempDir Path tempDir) throws Exception {
+        // Arrange
+        var properties = new HnswProperties();
+        properties.setDirectory(tempDir);
+
+        // Act
+        HnswVectorStore result = config.vectorStore(mockEmbeddingModel, properties, new IngestionProperties(),
+                "nomic-embed-text:latest", new SimpleMeterRegistry());
+
+        // Assert
+        assertTrue(Files.exists(tempDir.resolve("nomic-embed-text_latest").resolve("meta.bin")));
+        result.close();
+    }
+
+    @Test
+    void vectorStore_BulkLoadEnabled_Throws(@TempDir Path tempDir) {
+        // Arrange
+        var properties = new HnswProperties();
+        properties.setDirectory(tempDir);
+        var ingestionProperties = new IngestionProperties();
+        ingestionProperties.getBulkLoad().setEnabled(true);
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> config.vectorStore(mockEmbeddingModel, properties,
+                ingestionProperties, "nomic-embed-text", new SimpleMeterRegistry()));
+    }
+}
@@ -1,12 +1,24 @@
 package com.ai.llamacpprag.config;
 
+import com.ai.llamacpprag.service.HybridDocumentRetriever;
+import com.ai.llamacpprag.service.ParameterizedVectorRetriever;
+import com.ai.llamacpprag.service.PgFullTextRetriever;
+import com.ai.llamacpprag.service.PgQuantizedVectorRetriever;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.chat.client.advisor.api.Advisor;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+import org.springframework.ai.vectorstore.SearchRequest;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -29,6 +41,21 @@ class RagConfigTest {
     @Mock
     private ChatClient mockChatClient;
 
+    @Mock
+    private DocumentRetriever mockDocumentRetriever;
+
+    @Mock
+    private ObjectProvider<PgFullTextRetriever> mockFullTextProvider;
+
+    @Mock
+    private PgFullTextRetriever mockFullTextRetriever;
+
+    @Mock
+    private ObjectProvider<PgQuantizedVectorRetriever> mockQuantizedProvider;
+
+    @Mock
+    private PgQuantizedVectorRetriever mockQuantizedRetriever;
+
     @Test
     void chatClient_ReturnsChatClient() {
         // Arrange
@@ -36,7 +63,8 @@ class RagConfigTest {
         when(mockBuilder.build()).thenReturn(mockChatClient);
 
         // Act
-        ChatClient result = config.chatClient(mockBuilder, mockVectorStore);
+        ChatClient result = config.chatClient(mockBuilder, mockDocumentRetriever, new RetrievalProperties(),
+                new SimpleMeterRegistry());
 
         // Assert
         assertNotNull(result);
@@ -50,7 +78,7 @@ class RagConfigTest {
         when(mockBuilder.build()).thenReturn(mockChatClient);
 
         // Act
-        config.chatClient(mockBuilder, mockVectorStore);
+        config.chatClient(mockBuilder, mockDocumentRetriever, new RetrievalProperties(), new SimpleMeterRegistry());
 
         // Assert - verify advisors were configured
         verify(mockBuilder).defaultAdvisors(any(Advisor[].class));
@@ -58,15 +86,70 @@ class RagConfigTest {
     }
 
     @Test
-    void chatClient_UsesVectorStore() {
+    void documentRetriever_WithFullTextSearch_ReturnsHybridRetriever() {
         // Arrange
-        when(mockBuilder.defaultAdvisors(any(Advisor[].class))).thenReturn(mockBuilder);
-        when(mockBuilder.build()).thenReturn(mockChatClient);
+        when(mockFullTextProvider.getIfAvailable()).thenReturn(mockFullTextRetriever);
 
         // Act
-        ChatClient result = config.chatClient(mockBuilder, mockVectorStore);
+        DocumentRetriever result = config.documentRetriever(mockVectorStore, new RetrievalProperties(),
+                mockFullTextProvider, mockQuantizedProvider, new SimpleMeterRegistry());
 
         // Assert
-        assertNotNull(result);
+        assertInstanceOf(HybridDocumentRetriever.class, result);
+        ((HybridDocumentRetriever) result).close();
+    }
+
+    @Test
+    void documentRetriever_WithoutFullTextSearch_ReturnsVectorRetriever() {
+        // Arrange - e.g. the embedded HNSW store, which has no full-text retriever
+        when(mockFullTextProvider.getIfAvailable()).thenReturn(null);
+
+        // Act
+        DocumentRetriever result = config.documentRetriever(mockVectorStore, new RetrievalProperties(),
+                mockFullTextProvider, mockQuantizedProvider, new SimpleMeterRegistry());
+
+        // Assert
+        assertInstanceOf(ParameterizedVectorRetriever.class, result);
+    }
+
+    @Test
+    void documentRetriever_HybridDisabled_ReturnsVectorRetriever() {
+        // Arrange
+        var properties = new RetrievalProperties();
+        properties.getHybrid().setEnabled(false);
+
+        // Act
+        DocumentRetriever result = config.documentRetriever(mockVectorStore, properties,
+                mockFullTextProvider, mockQuantizedProvider, new SimpleMeterRegistry());
+
+        // Assert
+        assertInstanceOf(ParameterizedVectorRetriever.class, result);
+        verifyNoInteractions(mockFullTextProvider);
+        verifyNoInteractions(mockQuantizedProvider);
+    }
+
+    @Test
+    void documentRetriever_Quantized_SearchesQuantizedIndexOnceReady() {
+        // Arrange
+        var properties = new RetrievalProperties();
+        properties.getHybrid().setEnabled(false);
+        properties.getQuantization().setMode(RetrievalProperties.QuantizationMode.BINARY);
+        var query = new Query("reset");
+        var quantizedMatch = new Document("quantized");
+        var vectorMatch = new Document("vector");
+        when(mockQuantizedProvider.getIfAvailable()).thenReturn(mockQuantizedRetriever);
+        when(mockQuantizedRetriever.orElse(any())).thenCallRealMethod();
+        when(mockQuantizedRetriever.isReady()).thenReturn(false, true);
+        when(mockQuantizedRetriever.retrieve(query)).thenReturn(List.of(quantizedMatch));
+        when(mockVectorStore.similaritySearch(any(SearchRequest.class)))
+                .thenReturn(List.of(vectorMatch));
+
+        // Act
+        DocumentRetriever result = config.documentRetriever(mockVectorStore, properties,
+                mockFullTextProvider, mockQuantizedProvider, new SimpleMeterRegistry());
+
+        // Assert - the vector store until the quantized index exists, then the index
+        assertEquals(List.of(vectorMatch), result.retrieve(query));
+        assertEquals(List.of(quantizedMatch), result.retrieve(query));
     }
 }
@@ -7,6 +7,7 @@ import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.web.util.ContentCachingResponseWrapper;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
@@ -168,4 +169,46 @@ class RequestResponseLoggingFilterTest {
 
         assertEquals("pong", res.getContentAsString());
     }
+
+    @Test
+    void doFilterInternal_PassesMultipartRequestsThroughUnwrapped() throws Exception {
+        MockHttpServletRequest req = new MockHttpServletRequest("POST", "/api/documents");
+        req.setContentType("multipart/form-data; boundary=xyz");
+        req.setContent("--xyz--\r\n".getBytes());
+
+        MockHttpServletResponse res = new MockHttpServletResponse();
+        FilterChain chain = mock(FilterChain.class);
+
+        doAnswer(invocation -> {
+            assertSame(req, invocation.getArguments()[0]);
+            assertSame(res, invocation.getArguments()[1]);
+            res.getWriter().write("streamed");
+            return null;
+        }).when(chain).doFilter(any(), any());
+
+        filter.doFilter(req, res, chain);
+
+        assertEquals("streamed", res.getContentAsString());
+    }
+
+    @Test
+    void doFilterInternal_PassesEventStreamsThroughUnwrapped() throws Exception {
+        MockHttpServletRequest req = new MockHttpServletRequest("GET", "/api/chat/stream");
+        req.setQueryString("q=hello");
+        req.addHeader("Accept", "text/event-stream");
+
+        MockHttpServletResponse res = new MockHttpServletResponse();
+        FilterChain chain = mock(FilterChain.class);
+
+        doAnswer(invocation -> {
+            // The response must reach the client as it is written, not once the chain returns
+            assertSame(res, invocation.getArguments()[1]);
+            res.getWriter().write("event:token\ndata:{\"text\":\"Hel\"}\n\n");
+            return null;
+        }).when(chain).doFilter(any(), any());
+
+        filter.doFilter(req, res, chain);
+
+        assertEquals("event:token\ndata:{\"text\":\"Hel\"}\n\n", res.getContentAsString());
+    }
 }
@@ -0,0 +1,101 @@
+package com.ai.llamacpprag.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.embedding.Embedding;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link CachingEmbeddingModel}.
+ */
+@ExtendWith(MockitoExtension.class)
+class CachingEmbeddingModelTest {
+
+    @Mock
+    private EmbeddingModel delegate;
+
+    @Test
+    void repeatedText_IsEmbeddedOnce(@TempDir Path tempDir) throws IOException {
+        when(delegate.call(any(EmbeddingRequest.class))).thenAnswer(inv -> respond(inv.getArgument(0)));
+
+        try (var model = newModel(tempDir)) {
+            // Duplicates inside one request are sent once as well
+            var first = model.call(new EmbeddingRequest(List.of("boilerplate", "intro", "boilerplate"), null));
+            var second = model.call(new EmbeddingRequest(List.of("intro", "boilerplate"), null));
+
+            assertArrayEquals(vectorOf("boilerplate"), first.getResults().get(0).getOutput());
+            assertArrayEquals(vectorOf("boilerplate"), first.getResults().get(2).getOutput());
+            assertArrayEquals(vectorOf("intro"), second.getResults().get(0).getOutput());
+            assertEquals(1, second.getResults().get(1).getIndex());
+        }
+
+        verify(delegate, times(1)).call(argThat(r -> r.getInstructions().equals(List.of("boilerplate", "intro"))));
+        verifyNoMoreInteractions(delegate);
+    }
+
+    @Test
+    void cachedVectors_SurviveRestart(@TempDir Path tempDir) throws IOException {
+        when(delegate.call(any(EmbeddingRequest.class))).thenAnswer(inv -> respond(inv.getArgument(0)));
+        try (var model = newModel(tempDir)) {
+            model.embed("persisted chunk");
+        }
+
+        try (var model = newModel(tempDir)) {
+            assertArrayEquals(vectorOf("persisted chunk"), model.embed("persisted chunk"));
+            model.embed("new chunk");
+        }
+
+        verify(delegate, times(1)).call(argThat(r -> r.getInstructions().equals(List.of("persisted chunk"))));
+        verify(delegate, times(1)).call(argThat(r -> r.getInstructions().equals(List.of("new chunk"))));
+    }
+
+    @Test
+    void returnedVectors_CannotAlterTheCache(@TempDir Path tempDir) throws IOException {
+        when(delegate.call(any(EmbeddingRequest.class))).thenAnswer(inv -> respond(inv.getArgument(0)));
+
+        try (var model = newModel(tempDir)) {
+            model.embed("text")[0] = 42f;
+
+            assertArrayEquals(vectorOf("text"), model.embed("text"));
+        }
+    }
+
+    @Test
+    void key_DependsOnModelAndText() {
+        assertEquals(CachingEmbeddingModel.key("m1", "a"), CachingEmbeddingModel.key("m1", "a"));
+        assertNotEquals(CachingEmbeddingModel.key("m1", "a"), CachingEmbeddingModel.key("m2", "a"));
+        assertNotEquals(CachingEmbeddingModel.key("m1", "a"), CachingEmbeddingModel.key("m1", "b"));
+    }
+
+    private CachingEmbeddingModel newModel(Path dir) throws IOException {
+        return new CachingEmbeddingModel(delegate, "test-model", new EmbeddingDiskStore(dir), 100,
+                new SimpleMeterRegistry());
+    }
+
+    private static EmbeddingResponse respond(EmbeddingRequest request) {
+        List<Embedding> embeddings = new ArrayList<>();
+        for (int i = 0; i < request.getInstructions().size(); i++) {
+            embeddings.add(new Embedding(vectorOf(request.getInstructions().get(i)), i));
+        }
+        return new EmbeddingResponse(embeddings);
+    }
+
+    private static float[] vectorOf(String text) {
+        return new float[]{text.length(), text.hashCode() % 100, 1f};
+    }
+}
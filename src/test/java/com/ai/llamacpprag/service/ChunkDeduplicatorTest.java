@@ -0,0 +1,104 @@
+package com.ai.llamacpprag.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ChunkDeduplicator}.
+ */
+class ChunkDeduplicatorTest {
+
+    private static final String PARAGRAPH = "Retrieval augmented generation combines a language model with a search index. "
+            + "The application splits documents into chunks, embeds every chunk and stores the vectors in a database. "
+            + "At question time the question is embedded as well, the closest chunks are retrieved and added to the prompt, "
+            + "so the model can answer from the documents instead of from memory alone. Chunk size matters: small chunks "
+            + "are precise but lose context, large chunks keep context but dilute the similarity score and waste prompt "
+            + "tokens. Overlap between chunks helps when an answer spans a boundary. Metadata such as the source file and "
+            + "page number lets the answer cite where the information came from.";
+
+    private static final String OTHER = "PDF parsing is slow because every page has to be decoded, fonts resolved and "
+            + "text positions sorted into reading order before any text can be extracted. Scanned documents contain "
+            + "images only and need optical character recognition, which this application does not perform.";
+
+    @Test
+    void filter_DropsNearDuplicateFromOtherSourceAndRecordsIt() {
+        var dedup = new ChunkDeduplicator(0.9);
+        var canonical = chunk("a", "/data/v1.txt", PARAGRAPH);
+
+        assertEquals(List.of(canonical), dedup.filter(List.of(canonical)));
+        // A later version of the document with one word changed
+        assertTrue(dedup.filter(List.of(chunk("b", "/data/v2.txt", PARAGRAPH.replace("precise", "accurate")))).isEmpty());
+
+        var updated = dedup.updatedCanonicals();
+        assertEquals(1, updated.size());
+        assertEquals("a", updated.get(0).getId());
+        assertEquals(List.of("/data/v2.txt"), updated.get(0).getMetadata().get(ChunkDeduplicator.DUPLICATE_SOURCES));
+        assertEquals("/data/v1.txt", updated.get(0).getMetadata().get("source"));
+    }
+
+    @Test
+    void filter_UndroppableDuplicateIsKept() {
+        var dedup = new ChunkDeduplicator(0.9);
+        dedup.filter(List.of(chunk("a", "/data/v1.txt", PARAGRAPH)));
+
+        var upload = chunk("b", "upload:v2.txt", PARAGRAPH);
+
+        assertEquals(List.of(upload), dedup.filter(List.of(upload), false));
+        assertTrue(dedup.duplicateSources().isEmpty());
+    }
+
+    @Test
+    void duplicateSources_GroupsDroppedSourcesByCanonicalSource() {
+        var dedup = new ChunkDeduplicator(0.9);
+        dedup.filter(List.of(chunk("a", "/data/v1.txt", PARAGRAPH), chunk("b", "/data/v1.txt", OTHER)));
+
+        dedup.filter(List.of(chunk("c", "/data/v2.txt", PARAGRAPH)));
+        dedup.filter(List.of(chunk("d", "/data/v3.txt", OTHER)));
+
+        assertEquals(Map.of("/data/v1.txt", Set.of("/data/v2.txt", "/data/v3.txt")), dedup.duplicateSources());
+    }
+
+    @Test
+    void filter_KeepsDistinctChunks() {
+        var dedup = new ChunkDeduplicator(0.9);
+
+        var kept = dedup.filter(List.of(chunk("a", "/data/a.txt", PARAGRAPH), chunk("b", "/data/b.txt", OTHER)));
+
+        assertEquals(2, kept.size());
+        assertTrue(dedup.updatedCanonicals().isEmpty());
+    }
+
+    @Test
+    void filter_RepeatWithinSameSourceIsDroppedWithoutTouchingCanonical() {
+        var dedup = new ChunkDeduplicator(0.9);
+
+        var kept = dedup.filter(List.of(chunk("a", "/data/a.txt", PARAGRAPH), chunk("b", "/data/a.txt", PARAGRAPH)));
+
+        assertEquals(1, kept.size());
+        assertTrue(dedup.updatedCanonicals().isEmpty());
+    }
+
+    @Test
+    void simHash_IgnoresCaseAndWhitespace() {
+        assertEquals(ChunkDeduplicator.simHash(PARAGRAPH),
+                ChunkDeduplicator.simHash(PARAGRAPH.toUpperCase().replace(" ", "  \n")));
+        assertTrue(Long.bitCount(ChunkDeduplicator.simHash(PARAGRAPH) ^ ChunkDeduplicator.simHash(OTHER)) > 6);
+    }
+
+    @Test
+    void threshold_MapsToHammingDistance() {
+        assertEquals(0, new ChunkDeduplicator(1.0).maxDistance());
+        assertEquals(3, new ChunkDeduplicator(0.95).maxDistance());
+        assertEquals(6, new ChunkDeduplicator(0.9).maxDistance());
+    }
+
+    private static Document chunk(String id, String source, String text) {
+        return Document.builder().id(id).text(text).metadata(Map.of("source", source)).build();
+    }
+}
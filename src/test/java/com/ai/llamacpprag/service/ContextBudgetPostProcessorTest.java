@@ -0,0 +1,102 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.RetrievalProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.tokenizer.JTokkitTokenCountEstimator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link ContextBudgetPostProcessor}.
+ */
+class ContextBudgetPostProcessorTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    private final RetrievalProperties.Context settings = new RetrievalProperties.Context();
+
+    @Test
+    void process_KeepsShortDistinctChunksAsTheyAre() {
+        var chunks = List.of(
+                doc("a", "Hold the reset button for ten seconds to restore the router.", 0.9),
+                doc("b", "Firmware updates are downloaded automatically every night.", 0.8));
+
+        List<Document> result = processor().process(new Query("How do I reset the router?"), chunks);
+
+        assertEquals(chunks, result);
+        assertEquals(0.0, registry.get("rag.context.tokens.saved").summary().totalAmount());
+    }
+
+    @Test
+    void process_DropsChunksRedundantWithAPickedOne() {
+        var chunks = List.of(
+                doc("a", "Hold the reset button for ten seconds to restore the router settings.", 0.9),
+                doc("b", "Hold the reset button for ten seconds to restore the router defaults.", 0.85),
+                doc("c", "Firmware updates are downloaded automatically every night.", 0.5));
+
+        List<Document> result = processor().process(new Query("How do I reset the router?"), chunks);
+
+        assertEquals(List.of("a", "c"), result.stream().map(Document::getId).toList());
+        assertEquals(1.0, registry.get("rag.context.chunks.dropped").tag("reason", "redundant").counter().count());
+        assertTrue(registry.get("rag.context.tokens.saved").summary().totalAmount() > 0);
+    }
+
+    @Test
+    void process_TrimsLongChunkToSentencesAboutTheQuestion() {
+        settings.setMaxChunkTokens(40);
+        var text = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            text.append("The warranty card lists the retail store and purchase date number ").append(i).append(". ");
+        }
+        text.append("To reset the router, hold the reset button for ten seconds. ");
+        text.append("The packaging can be recycled with cardboard.");
+
+        List<Document> result = processor().process(new Query("How do I reset the router?"),
+                List.of(doc("a", text.toString(), 0.9)));
+
+        String trimmed = result.get(0).getText();
+        assertTrue(trimmed.contains("To reset the router, hold the reset button for ten seconds."), trimmed);
+        assertTrue(trimmed.contains("…"), trimmed);
+        assertTrue(trimmed.length() < text.length() / 2, trimmed);
+        assertEquals("a", result.get(0).getId());
+    }
+
+    @Test
+    void process_StopsAtTheTokenBudget() {
+        settings.setMaxTokens(20);
+        settings.setMaxChunkTokens(20);
+        var chunks = List.of(
+                doc("a", "Hold the reset button for ten seconds to restore the factory settings of the router.", 0.9),
+                doc("b", "Firmware updates are downloaded automatically every night between two and four.", 0.8),
+                doc("c", "The guest network has its own password printed below the main barcode label.", 0.7));
+
+        List<Document> result = processor().process(new Query("How do I reset the router?"), chunks);
+
+        assertEquals(List.of("a"), result.stream().map(Document::getId).toList());
+        assertEquals(2.0, registry.get("rag.context.chunks.dropped").tag("reason", "budget").counter().count());
+    }
+
+    @Test
+    void jaccard_MeasuresSharedWords() {
+        var a = ContextBudgetPostProcessor.terms("Reset the router button");
+        var b = ContextBudgetPostProcessor.terms("reset button, router LED");
+
+        assertEquals(Set.of("reset", "router", "button"), a);
+        assertEquals(0.75, ContextBudgetPostProcessor.jaccard(a, b));
+    }
+
+    private ContextBudgetPostProcessor processor() {
+        return new ContextBudgetPostProcessor(settings, new JTokkitTokenCountEstimator(), registry);
+    }
+
+    private static Document doc(String id, String text, double score) {
+        return Document.builder().id(id).text(text).metadata(Map.of()).score(score).build();
+    }
+}
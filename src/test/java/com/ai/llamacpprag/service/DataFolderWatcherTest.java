@@ -0,0 +1,112 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.IngestionProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link DataFolderWatcher}.
+ */
+@ExtendWith(MockitoExtension.class)
+class DataFolderWatcherTest {
+
+    @Mock
+    private DocumentIngestionService ingestionService;
+
+    private DataFolderWatcher watcher;
+
+    @AfterEach
+    void tearDown() {
+        if (watcher != null) {
+            watcher.stop();
+        }
+    }
+
+    @Test
+    void start_DisabledDoesNotWatch(@TempDir Path tempDir) {
+        watcher = new DataFolderWatcher(ingestionService, properties(tempDir, false));
+
+        watcher.start();
+
+        assertFalse(watcher.isRunning());
+    }
+
+    @Test
+    void burstOfWritesToOneFile_IsIngestedOnce(@TempDir Path tempDir) throws Exception {
+        when(ingestionService.ingestPaths(anyCollection()))
+                .thenReturn(new DocumentIngestionService.IngestResult(1, 1, List.of()));
+        watcher = new DataFolderWatcher(ingestionService, properties(tempDir, true));
+        watcher.start();
+        assertTrue(watcher.isRunning());
+
+        Path file = tempDir.resolve("notes.txt");
+        for (int i = 0; i < 5; i++) {
+            Files.writeString(file, "Revision " + i + " of a file that is written several times in a row.");
+        }
+
+        verify(ingestionService, timeout(5_000)).ingestPaths(argThat(paths -> paths.equals(List.of(file))));
+        Thread.sleep(500);
+        verify(ingestionService, times(1)).ingestPaths(anyCollection());
+        verify(ingestionService, never()).ingestLocalFolder(any(Path.class));
+    }
+
+    @Test
+    void newSubfolderAndDeletedFile_AreHandedToIngestion(@TempDir Path tempDir) throws Exception {
+        Path old = Files.writeString(tempDir.resolve("old.md"), "# Old");
+        when(ingestionService.ingestPaths(anyCollection()))
+                .thenReturn(new DocumentIngestionService.IngestResult(0, 0, List.of()));
+        watcher = new DataFolderWatcher(ingestionService, properties(tempDir, true));
+        watcher.start();
+
+        Files.delete(old);
+        Path nested = Files.createDirectories(tempDir.resolve("nested"));
+
+        verify(ingestionService, timeout(5_000)).ingestPaths(argThat(paths -> paths.contains(old) && paths.contains(nested)));
+
+        // Files in the new folder are watched too
+        Path inner = Files.writeString(nested.resolve("inner.txt"), "Text dropped into a folder created after start.");
+        verify(ingestionService, timeout(5_000)).ingestPaths(argThat(paths -> paths.contains(inner)));
+    }
+
+    @Test
+    void ingestionFailure_RetriesSamePathsAndKeepsWatching(@TempDir Path tempDir) throws Exception {
+        when(ingestionService.ingestPaths(anyCollection()))
+                .thenThrow(new IllegalStateException("Connection to localhost:5432 refused"))
+                .thenReturn(new DocumentIngestionService.IngestResult(1, 1, List.of()));
+        watcher = new DataFolderWatcher(ingestionService, properties(tempDir, true));
+        watcher.start();
+
+        // Written while the database is down, then never touched again: the retry picks it up
+        Path first = Files.writeString(tempDir.resolve("first.txt"), "Written while the database is down.");
+        verify(ingestionService, timeout(5_000).times(2)).ingestPaths(argThat(paths -> paths.contains(first)));
+
+        Path second = Files.writeString(tempDir.resolve("second.txt"), "Written once the database is back.");
+        verify(ingestionService, timeout(5_000)).ingestPaths(argThat(paths -> paths.contains(second)));
+        verify(ingestionService, times(2)).ingestPaths(argThat(paths -> paths.contains(first)));
+        assertTrue(watcher.isRunning());
+    }
+
+    private static IngestionProperties properties(Path folder, boolean enabled) {
+        var properties = new IngestionProperties();
+        properties.setFolder(folder);
+        properties.getWatch().setEnabled(enabled);
+        properties.getWatch().setDebounce(Duration.ofMillis(200));
+        properties.getWatch().setMaxDelay(Duration.ofSeconds(5));
+        return properties;
+    }
+}
@@ -1,5 +1,7 @@
 package com.ai.llamacpprag.service;
 
+import com.ai.llamacpprag.config.IngestionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.pdmodel.PDPage;
 import org.apache.pdfbox.pdmodel.PDPageContentStream;
@@ -9,19 +11,35 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.document.Document;
 import org.springframework.ai.embedding.EmbeddingModel;
 import org.springframework.ai.vectorstore.VectorStore;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.util.unit.DataSize;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
 import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -33,11 +51,25 @@ class DocumentIngestionServiceTest {
     @Mock
     private EmbeddingModel embeddingModel;
 
+    @Mock
+    private IngestionManifest manifest;
+
+    @Mock
+    private PgVectorBulkLoader bulkLoader;
+
+    @Mock
+    private ObjectProvider<PgVectorBulkLoader> bulkLoaderProvider;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     private DocumentIngestionService service;
 
     @BeforeEach
     void setUp() {
-        service = new DocumentIngestionService(vectorStore, embeddingModel);
+        when(bulkLoaderProvider.getIfAvailable()).thenReturn(bulkLoader);
+        service = new DocumentIngestionService(vectorStore, embeddingModel, manifest, bulkLoaderProvider,
+                new IngestionProperties(), new SimpleMeterRegistry(), eventPublisher);
     }
 
     @Test
@@ -58,27 +90,418 @@ class DocumentIngestionServiceTest {
         assertEquals(0, result.documents());
         assertEquals(0, result.chunks());
         assertTrue(result.warnings().isEmpty());
+        // Nothing stored or deleted: cached answers stay valid
+        verifyNoInteractions(eventPublisher);
     }
 
     @Test
     void ingestLocalFolder_TextAndMarkdown(@TempDir Path tempDir) throws IOException {
-        Files.writeString(tempDir.resolve("test.txt"), "Hello World");
-        Files.writeString(tempDir.resolve("README.md"), "# Title\n\nContent");
+        Files.writeString(tempDir.resolve("test.txt"), "Hello World, this text file is long enough to become a chunk.");
+        Files.writeString(tempDir.resolve("README.md"), "# Title\n\nContent of a markdown file that also becomes a chunk.");
         Files.writeString(tempDir.resolve("ignore.me"), "Ignored");
 
         var result = service.ingestLocalFolder(tempDir);
 
         assertEquals(2, result.documents());
-        // Simple splitter will likely produce 1 chunk per small doc
+        assertEquals(2, result.chunks());
+        // Chunks of both files share one embedding batch
         // Mock VectorStore does nothing by default, which is fine
-        verify(vectorStore, times(2)).add(anyList());
+        verify(vectorStore, times(1)).add(argThat(chunks -> chunks.size() == 2));
+        assertTrue(result.warnings().isEmpty());
+        verify(eventPublisher).publishEvent(new CorpusChangedEvent(2, 0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ingestLocalFolder_ManyFilesThroughNarrowPipeline(@TempDir Path tempDir) throws IOException {
+        // Queues smaller than the file count force every stage to block on back-pressure
+        var properties = new IngestionProperties();
+        properties.getPipeline().setQueueCapacity(1);
+        properties.getPipeline().setParseParallelism(3);
+        properties.getPipeline().setSplitParallelism(1);
+        properties.getPipeline().setStoreParallelism(2);
+        service = new DocumentIngestionService(vectorStore, embeddingModel, manifest, bulkLoaderProvider, properties,
+                new SimpleMeterRegistry(), eventPublisher);
+
+        Path nested = Files.createDirectories(tempDir.resolve("nested"));
+        for (int i = 0; i < 25; i++) {
+            Files.writeString((i % 2 == 0 ? tempDir : nested).resolve("doc" + i + ".txt"), "Document number " + i + " with enough body text to pass the minimum embed length.");
+        }
+
+        var result = service.ingestLocalFolder(tempDir);
+
+        assertEquals(25, result.documents());
+        assertEquals(25, result.chunks());
+        ArgumentCaptor<List<Document>> batches = ArgumentCaptor.forClass(List.class);
+        verify(vectorStore, atLeastOnce()).add(batches.capture());
+        assertEquals(25, batches.getAllValues().stream().mapToInt(List::size).sum());
+        assertTrue(result.warnings().isEmpty());
+    }
+
+    @Test
+    void ingestLocalFolder_ReportsProgress(@TempDir Path tempDir) throws IOException {
+        for (int i = 0; i < 3; i++) {
+            Files.writeString(tempDir.resolve("doc" + i + ".txt"), "Document number " + i + " with enough body text to pass the minimum embed length.");
+        }
+        var progress = new IngestionProgress();
+
+        service.ingestLocalFolder(tempDir, progress);
+
+        assertTrue(progress.isDiscoveryComplete());
+        assertEquals(3, progress.filesDiscovered());
+        assertEquals(3, progress.filesProcessed());
+        assertEquals(3, progress.pages());
+        assertEquals(3, progress.chunks());
+        assertEquals(3, progress.embeddings());
+        assertEquals(0L, progress.etaSeconds());
+    }
+
+    @Test
+    void ingestLocalFolder_CancelledRunStopsWithoutStoring(@TempDir Path tempDir) throws IOException {
+        Files.writeString(tempDir.resolve("doc.txt"), "Document with enough body text to pass the minimum embed length.");
+        var progress = new IngestionProgress();
+        progress.cancel();
+
+        assertThrows(InterruptedIOException.class, () -> service.ingestLocalFolder(tempDir, progress));
+
+        verify(vectorStore, never()).add(anyList());
+        verify(manifest, never()).record(any());
+        // Clear the flag set by the cancelled run so it does not leak into other tests
+        Thread.interrupted();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ingestLocalFolder_DedupStoresOneCopyOfIdenticalChunks(@TempDir Path tempDir) throws IOException {
+        var properties = new IngestionProperties();
+        properties.getDedup().setEnabled(true);
+        service = new DocumentIngestionService(vectorStore, embeddingModel, manifest, bulkLoaderProvider, properties,
+                new SimpleMeterRegistry(), eventPublisher);
+        String text = "The same disclaimer paragraph is copied into every version of the handbook we ingest.";
+        Path v1 = Files.writeString(tempDir.resolve("handbook-v1.txt"), text);
+        Path v2 = Files.writeString(tempDir.resolve("handbook-v2.txt"), text);
+
+        var result = service.ingestLocalFolder(tempDir);
+
+        assertEquals(2, result.documents());
+        assertEquals(1, result.chunks());
+        ArgumentCaptor<List<Document>> added = ArgumentCaptor.forClass(List.class);
+        verify(vectorStore, times(2)).add(added.capture());
+        // First the canonical chunk, then the same chunk again with the other source recorded
+        Document stored = added.getAllValues().get(0).get(0);
+        Document updated = added.getAllValues().get(1).get(0);
+        assertEquals(stored.getId(), updated.getId());
+        var sources = List.of(IngestionManifest.sourceOf(v1), IngestionManifest.sourceOf(v2));
+        var duplicateSources = (List<String>) updated.getMetadata().get("duplicateSources");
+        assertEquals(1, duplicateSources.size());
+        assertNotEquals(updated.getMetadata().get("source"), duplicateSources.get(0));
+        assertTrue(sources.contains(duplicateSources.get(0)));
+        // Both files are recorded with one chunk index each, so stale-chunk cleanup still covers them
+        verify(manifest, times(2)).record(argThat(e -> e.chunkCount() == 1));
+        // The dropped file is re-ingested once the canonical one changes
+        verify(manifest).recordDuplicates(updated.getMetadata().get("source").toString(),
+                Set.copyOf(duplicateSources));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ingestLocalFolder_StreamsLargeTextFiles(@TempDir Path tempDir) throws IOException {
+        // Every file counts as large, so the streaming splitter is used
+        var properties = new IngestionProperties();
+        properties.getStreaming().setThreshold(DataSize.ofBytes(1));
+        service = new DocumentIngestionService(vectorStore, embeddingModel, manifest, bulkLoaderProvider, properties,
+                new SimpleMeterRegistry(), eventPublisher);
+        var text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("Log line ").append(i).append(" reports that the nightly export finished without errors.\n");
+        }
+        Path file = Files.writeString(tempDir.resolve("export.txt"), text);
+        String source = IngestionManifest.sourceOf(file);
+
+        var result = service.ingestLocalFolder(tempDir);
+
+        assertEquals(1, result.documents());
+        assertTrue(result.chunks() > 1);
+        ArgumentCaptor<List<Document>> added = ArgumentCaptor.forClass(List.class);
+        verify(vectorStore, atLeastOnce()).add(added.capture());
+        List<Document> stored = added.getAllValues().stream().flatMap(List::stream).toList();
+        assertEquals(result.chunks(), stored.size());
+        for (int i = 0; i < stored.size(); i++) {
+            assertEquals(IngestionManifest.chunkId(source, i), stored.get(i).getId());
+            assertEquals("txt", stored.get(i).getMetadata().get("fileType"));
+        }
+        verify(manifest).record(argThat(e -> e.source().equals(source) && e.chunkCount() == result.chunks()));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ingestLocalFolder_BulkLoadEmbedsAndCopiesInsteadOfVectorStore(@TempDir Path tempDir) throws IOException {
+        var properties = new IngestionProperties();
+        properties.getBulkLoad().setEnabled(true);
+        service = new DocumentIngestionService(vectorStore, embeddingModel, manifest, bulkLoaderProvider, properties,
+                new SimpleMeterRegistry(), eventPublisher);
+        var session = mock(PgVectorBulkLoader.Session.class);
+        when(bulkLoader.begin(properties.getBulkLoad())).thenReturn(session);
+        when(embeddingModel.embed(anyList())).thenAnswer(invocation -> ((List<String>) invocation.getArgument(0))
+                .stream().map(text -> new float[]{1f, 2f, 3f}).toList());
+        Files.writeString(tempDir.resolve("a.txt"), "Bulk loaded documents skip the vector store inserts entirely.");
+
+        var result = service.ingestLocalFolder(tempDir);
+
+        assertEquals(1, result.chunks());
+        ArgumentCaptor<List<Document>> chunks = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<float[]>> embeddings = ArgumentCaptor.forClass(List.class);
+        verify(session).add(chunks.capture(), embeddings.capture());
+        assertEquals(1, chunks.getValue().size());
+        assertEquals(1, embeddings.getValue().size());
+        verify(session).close();
+        verify(vectorStore, never()).add(anyList());
+    }
+
+    @Test
+    void ingestLocalFolder_MergesLeftoverStagedRowsBeforeWritingWithoutBulkLoad(@TempDir Path tempDir) throws IOException {
+        Files.writeString(tempDir.resolve("a.txt"), "Written straight to the vector store after a crashed bulk load.");
+
+        service.ingestLocalFolder(tempDir);
+
+        // Older staged rows must not land on top of this run's rows later
+        var order = inOrder(bulkLoader, vectorStore);
+        order.verify(bulkLoader).mergeLeftovers();
+        order.verify(vectorStore).add(anyList());
+        verify(bulkLoader, never()).begin(any());
+    }
+
+    @Test
+    void ingestLocalFolder_WithoutPgvectorWritesThroughVectorStore(@TempDir Path tempDir) throws IOException {
+        // E.g. spring.ai.vectorstore.type=hnsw: no bulk loader and no Postgres to merge staged rows from
+        var properties = new IngestionProperties();
+        properties.getBulkLoad().setEnabled(true);
+        when(bulkLoaderProvider.getIfAvailable()).thenReturn(null);
+        service = new DocumentIngestionService(vectorStore, embeddingModel, manifest, bulkLoaderProvider, properties,
+                new SimpleMeterRegistry(), eventPublisher);
+        Files.writeString(tempDir.resolve("a.txt"), "Ingested into the embedded HNSW store without any database.");
+
+        var result = service.ingestLocalFolder(tempDir);
+
+        assertEquals(1, result.chunks());
         assertTrue(result.warnings().isEmpty());
+        verify(vectorStore).add(anyList());
+        verifyNoInteractions(bulkLoader);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ingestUploads_IngestsSupportedFilesAndReportsEach() throws IOException {
+        var uploads = new ArrayDeque<>(List.of(
+                upload("../notes.txt", "Uploaded notes are streamed into the same pipeline as local files."),
+                upload("tool.exe", "MZ binary")));
+        List<DocumentIngestionService.FileResult> results = Collections.synchronizedList(new ArrayList<>());
+
+        var result = service.ingestUploads(uploads::poll, results::add);
+
+        assertEquals(1, result.documents());
+        assertEquals(1, result.chunks());
+        ArgumentCaptor<List<Document>> added = ArgumentCaptor.forClass(List.class);
+        verify(vectorStore).add(added.capture());
+        assertEquals("upload:notes.txt", added.getValue().get(0).getMetadata().get("source"));
+        assertEquals(IngestionManifest.chunkId("upload:notes.txt", 0), added.getValue().get(0).getId());
+        verify(manifest).record(argThat(e -> e.source().equals("upload:notes.txt") && e.chunkCount() == 1));
+
+        assertEquals(2, results.size());
+        assertTrue(results.contains(new DocumentIngestionService.FileResult(
+                "upload:notes.txt", DocumentIngestionService.FileStatus.INGESTED, 1, null)));
+        assertTrue(results.stream().anyMatch(r -> r.source().equals("upload:tool.exe")
+                && r.status() == DocumentIngestionService.FileStatus.REJECTED));
+    }
+
+    @Test
+    void ingestUploads_SkipsUnchangedReupload(@TempDir Path tempDir) throws IOException {
+        String text = "The same handbook uploaded twice is only embedded once.";
+        String hash = IngestionManifest.contentHash(Files.writeString(tempDir.resolve("copy.txt"), text));
+        when(manifest.find("upload:handbook.txt")).thenReturn(Optional.of(
+                new IngestionManifest.Entry("upload:handbook.txt", text.length(), 0L, hash, 1)));
+        var uploads = new ArrayDeque<>(List.of(upload("handbook.txt", text)));
+        List<DocumentIngestionService.FileResult> results = new ArrayList<>();
+
+        var result = service.ingestUploads(uploads::poll, results::add);
+
+        assertEquals(1, result.skipped());
+        assertEquals(DocumentIngestionService.FileStatus.UNCHANGED, results.get(0).status());
+        verify(vectorStore, never()).add(anyList());
+    }
+
+    @Test
+    void ingestUploads_RejectsFilesOverTheSizeLimit() throws IOException {
+        var properties = new IngestionProperties();
+        properties.getUpload().setMaxFileSize(DataSize.ofBytes(10));
+        service = new DocumentIngestionService(vectorStore, embeddingModel, manifest, bulkLoaderProvider, properties,
+                new SimpleMeterRegistry(), eventPublisher);
+        var uploads = new ArrayDeque<>(List.of(upload("big.txt", "This upload is longer than ten bytes.")));
+        List<DocumentIngestionService.FileResult> results = new ArrayList<>();
+
+        var result = service.ingestUploads(uploads::poll, results::add);
+
+        assertEquals(0, result.documents());
+        assertEquals(DocumentIngestionService.FileStatus.REJECTED, results.get(0).status());
+        verify(vectorStore, never()).add(anyList());
+    }
+
+    @Test
+    void uploadName_StripsClientDirectoriesAndUnsafeCharacters() {
+        assertEquals("report.pdf", DocumentIngestionService.uploadName("C:\\Users\\me\\report.pdf"));
+        assertEquals("notes.txt", DocumentIngestionService.uploadName("../../notes.txt"));
+        assertEquals("a_b.md", DocumentIngestionService.uploadName("a*b.md"));
+        assertEquals("", DocumentIngestionService.uploadName(null));
+    }
+
+    @Test
+    void ingestLocalFolder_SkipsFilesUnchangedSinceLastRun(@TempDir Path tempDir) throws IOException {
+        Path file = Files.writeString(tempDir.resolve("same.txt"), "Unchanged content");
+        String source = IngestionManifest.sourceOf(file);
+        when(manifest.entriesUnder(tempDir)).thenReturn(Map.of(source, new IngestionManifest.Entry(
+                source, Files.size(file), Files.getLastModifiedTime(file).toMillis(), "irrelevant", 1)));
+
+        var result = service.ingestLocalFolder(tempDir);
+
+        assertEquals(0, result.documents());
+        assertEquals(1, result.skipped());
+        verify(vectorStore, never()).add(anyList());
+        verify(manifest, never()).record(any());
+    }
+
+    @Test
+    void ingestLocalFolder_TouchedButIdenticalFileOnlyRefreshesManifest(@TempDir Path tempDir) throws IOException {
+        Path file = Files.writeString(tempDir.resolve("touched.txt"), "Same bytes, new mtime");
+        String source = IngestionManifest.sourceOf(file);
+        String hash = IngestionManifest.contentHash(file);
+        when(manifest.entriesUnder(tempDir)).thenReturn(Map.of(source, new IngestionManifest.Entry(
+                source, Files.size(file), 0L, hash, 3)));
+
+        var result = service.ingestLocalFolder(tempDir);
+
+        assertEquals(1, result.skipped());
+        verify(vectorStore, never()).add(anyList());
+        var recorded = ArgumentCaptor.forClass(IngestionManifest.Entry.class);
+        verify(manifest).record(recorded.capture());
+        assertEquals(3, recorded.getValue().chunkCount());
+        assertEquals(Files.getLastModifiedTime(file).toMillis(), recorded.getValue().modifiedMillis());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ingestLocalFolder_ChangedFileReplacesChunksAndDropsStaleTail(@TempDir Path tempDir) throws IOException {
+        Path file = Files.writeString(tempDir.resolve("changed.txt"), "New, much shorter content that is still long enough to be embedded as a chunk.");
+        String source = IngestionManifest.sourceOf(file);
+        when(manifest.entriesUnder(tempDir)).thenReturn(Map.of(source, new IngestionManifest.Entry(
+                source, 1L, 0L, "old-hash", 4)));
+
+        var result = service.ingestLocalFolder(tempDir);
+
+        assertEquals(1, result.documents());
+        ArgumentCaptor<List<Document>> added = ArgumentCaptor.forClass(List.class);
+        verify(vectorStore).add(added.capture());
+        assertEquals(IngestionManifest.chunkId(source, 0), added.getValue().get(0).getId());
+        assertEquals(0, added.getValue().get(0).getMetadata().get("chunkIndex"));
+        // Previous version had 4 chunks, new one has 1: chunks 1..3 must go
+        verify(vectorStore).delete(IngestionManifest.chunkIds(source, 1, 4));
+        verify(manifest).record(argThat(e -> e.source().equals(source) && e.chunkCount() == 1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ingestLocalFolder_ChunkDroppedAsDuplicateDeletesItsOldRow(@TempDir Path tempDir) throws IOException {
+        var properties = new IngestionProperties();
+        properties.getDedup().setEnabled(true);
+        service = new DocumentIngestionService(vectorStore, embeddingModel, manifest, bulkLoaderProvider, properties,
+                new SimpleMeterRegistry(), eventPublisher);
+        // Both files were ingested before; one was edited into a copy of the other
+        String text = "The same disclaimer paragraph is copied into every version of the handbook we ingest.";
+        String a = IngestionManifest.sourceOf(Files.writeString(tempDir.resolve("handbook-a.txt"), text));
+        String b = IngestionManifest.sourceOf(Files.writeString(tempDir.resolve("handbook-b.txt"), text));
+        when(manifest.entriesUnder(tempDir)).thenReturn(Map.of(
+                a, new IngestionManifest.Entry(a, 1L, 0L, "old-hash-a", 1),
+                b, new IngestionManifest.Entry(b, 1L, 0L, "old-hash-b", 1)));
+
+        service.ingestLocalFolder(tempDir);
+
+        // Whichever file lost its chunk to the other must not keep its old version at chunk 0
+        ArgumentCaptor<List<String>> deleted = ArgumentCaptor.forClass(List.class);
+        verify(vectorStore).delete(deleted.capture());
+        assertTrue(deleted.getValue().equals(List.of(IngestionManifest.chunkId(a, 0)))
+                || deleted.getValue().equals(List.of(IngestionManifest.chunkId(b, 0))));
+    }
+
+    @Test
+    void ingestLocalFolder_ChangedCanonicalFileReingestsItsDuplicates(@TempDir Path tempDir) throws IOException {
+        Path canonical = Files.writeString(tempDir.resolve("canonical.txt"), "The disclaimer was rewritten, so the copy no longer duplicates it.");
+        Path copy = Files.writeString(tempDir.resolve("copy.txt"), "The disclaimer paragraph that both files used to share word for word.");
+        String canonicalSource = IngestionManifest.sourceOf(canonical);
+        String copySource = IngestionManifest.sourceOf(copy);
+        var copyEntry = new IngestionManifest.Entry(copySource, Files.size(copy),
+                Files.getLastModifiedTime(copy).toMillis(), IngestionManifest.contentHash(copy), 1);
+        when(manifest.entriesUnder(tempDir)).thenReturn(Map.of(
+                canonicalSource, new IngestionManifest.Entry(canonicalSource, 1L, 0L, "old-hash", 1),
+                copySource, copyEntry));
+        when(manifest.dependentsOf(anyCollection())).thenReturn(Set.of(copySource));
+        when(manifest.entriesAt(copy)).thenReturn(Map.of(copySource, copyEntry));
+
+        var result = service.ingestLocalFolder(tempDir);
+
+        // The copy is unchanged, yet read again since its chunk only lived on as the canonical's
+        assertEquals(2, result.documents());
+        verify(manifest).dependentsOf(Set.of(canonicalSource));
+        verify(manifest).removeDuplicates(copySource);
+        verify(vectorStore).add(argThat(chunks -> chunks.stream()
+                .anyMatch(chunk -> copySource.equals(chunk.getMetadata().get("source")))));
+    }
+
+    @Test
+    void ingestLocalFolder_RemovedFileDeletesItsChunks(@TempDir Path tempDir) throws IOException {
+        String source = IngestionManifest.sourceOf(tempDir.resolve("gone.txt"));
+        when(manifest.entriesUnder(tempDir)).thenReturn(Map.of(source, new IngestionManifest.Entry(
+                source, 10L, 0L, "hash", 2)));
+
+        var result = service.ingestLocalFolder(tempDir);
+
+        assertEquals(1, result.removed());
+        verify(vectorStore).delete(IngestionManifest.chunkIds(source, 0, 2));
+        verify(manifest).remove(source);
+    }
+
+    @Test
+    void ingestPaths_IngestsOnlyTheGivenFiles(@TempDir Path tempDir) throws IOException {
+        Path changed = Files.writeString(tempDir.resolve("changed.txt"), "Only this file changed and has enough text to be embedded.");
+        Files.writeString(tempDir.resolve("other.txt"), "This file was not reported by the watcher and must be left alone.");
+
+        var result = service.ingestPaths(List.of(changed));
+
+        assertEquals(1, result.documents());
+        assertEquals(1, result.chunks());
+        verify(vectorStore).add(argThat(chunks -> chunks.size() == 1
+                && chunks.get(0).getMetadata().get("source").equals(IngestionManifest.sourceOf(changed))));
+        verify(manifest).entriesAt(changed);
+        verify(manifest, never()).entriesUnder(any());
+    }
+
+    @Test
+    void ingestPaths_DeletedFileRemovesItsChunks(@TempDir Path tempDir) throws IOException {
+        Path gone = tempDir.resolve("gone.txt");
+        String source = IngestionManifest.sourceOf(gone);
+        when(manifest.entriesAt(gone)).thenReturn(Map.of(source, new IngestionManifest.Entry(
+                source, 10L, 0L, "hash", 3)));
+
+        var result = service.ingestPaths(List.of(gone));
+
+        assertEquals(1, result.removed());
+        verify(vectorStore).delete(IngestionManifest.chunkIds(source, 0, 3));
+        verify(manifest).remove(source);
+        verify(vectorStore, never()).add(anyList());
     }
 
     @Test
     void ingestLocalFolder_PdfProcessing(@TempDir Path tempDir) throws IOException {
         Path pdfPath = tempDir.resolve("test.pdf");
-        createTestPdf(pdfPath, "PDF Content Test");
+        createTestPdf(pdfPath, "PDF Content Test with enough words on the page to form a chunk.");
 
         var result = service.ingestLocalFolder(tempDir);
 
@@ -150,7 +573,7 @@ class DocumentIngestionServiceTest {
 
     @Test
     void ingestLocalFolder_VectorStoreThrowsException(@TempDir Path tempDir) throws IOException {
-        Files.writeString(tempDir.resolve("test.txt"), "Some valid content here");
+        Files.writeString(tempDir.resolve("test.txt"), "Some valid content here, long enough to be sent for embedding.");
 
         // Simulate VectorStore throwing an exception
         doThrow(new RuntimeException("Vector store error")).when(vectorStore).add(anyList());
@@ -174,4 +597,9 @@ class DocumentIngestionServiceTest {
         assertEquals(warnings, result.warnings());
         assertEquals(2, result.warnings().size());
     }
+
+    private static DocumentIngestionService.Upload upload(String filename, String content) {
+        return new DocumentIngestionService.Upload(filename,
+                new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)));
+    }
 }
@@ -0,0 +1,169 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.IngestionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.tokenizer.TokenCountEstimator;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link EmbeddingBatcher}.
+ */
+class EmbeddingBatcherTest {
+
+    private final List<List<Document>> written = Collections.synchronizedList(new ArrayList<>());
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final TokenCountEstimator estimator = mock(TokenCountEstimator.class);
+
+    private final IngestionProperties.Batch settings = new IngestionProperties.Batch();
+
+    @BeforeEach
+    void setUp() {
+        when(estimator.estimate(anyString())).thenReturn(10);
+        settings.setMaxChunks(4);
+        settings.setMaxTokens(1_000);
+        settings.setMaxWait(Duration.ofMinutes(5));
+    }
+
+    @Test
+    void add_FlushesWhenChunkLimitReached() {
+        try (var batcher = new EmbeddingBatcher(written::add, settings, estimator, meterRegistry)) {
+            var first = batcher.add(chunks(3));
+            assertTrue(written.isEmpty());
+            assertFalse(first.isDone());
+
+            var second = batcher.add(chunks(3));
+
+            // 6 chunks across two files -> one full batch of 4, 2 still pending
+            assertEquals(1, written.size());
+            assertEquals(4, written.get(0).size());
+            assertTrue(first.isDone());
+            assertFalse(second.isDone());
+        }
+        assertEquals(2, written.size());
+        assertEquals(2, written.get(1).size());
+        assertEquals(2, meterRegistry.get("rag.ingest.embedding.batch.chunks").summary().count());
+        assertEquals(6, meterRegistry.get("rag.ingest.embedding.chunks").counter().count());
+    }
+
+    @Test
+    void add_FlushesWhenTokenLimitReached() {
+        settings.setMaxChunks(100);
+        settings.setMaxTokens(25);
+
+        try (var batcher = new EmbeddingBatcher(written::add, settings, estimator, meterRegistry)) {
+            batcher.add(chunks(5));
+
+            // 10 tokens each, 25 max -> batches of 2
+            assertEquals(2, written.size());
+            assertTrue(written.stream().allMatch(b -> b.size() == 2));
+        }
+        assertEquals(1, written.get(2).size());
+        assertEquals(2, meterRegistry.get("rag.ingest.embedding.batches").tag("trigger", "tokens").counter().count());
+    }
+
+    @Test
+    void add_FlushesAfterMaxWait() throws Exception {
+        settings.setMaxChunks(100);
+        settings.setMaxWait(Duration.ofMillis(20));
+
+        try (var batcher = new EmbeddingBatcher(written::add, settings, estimator, meterRegistry)) {
+            var future = batcher.add(chunks(1));
+
+            future.get(5, TimeUnit.SECONDS);
+            assertEquals(1, written.size());
+        }
+    }
+
+    @Test
+    void add_FailedBatchFailsEveryFileInIt() {
+        settings.setMaxChunks(2);
+        var batcher = new EmbeddingBatcher(batch -> {
+            throw new IllegalStateException("ollama down");
+        }, settings, estimator, meterRegistry);
+
+        var first = batcher.add(chunks(1));
+        var second = batcher.add(chunks(1));
+        batcher.close();
+
+        var e = assertThrows(ExecutionException.class, first::get);
+        assertEquals("ollama down", e.getCause().getMessage());
+        assertTrue(second.isCompletedExceptionally());
+    }
+
+    @Test
+    void abort_WaitsForRunningTimedFlushAndKeepsLaterBatchesFromSink() throws Exception {
+        settings.setMaxChunks(100);
+        settings.setMaxWait(Duration.ofMillis(20));
+        var inSink = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var batcher = new EmbeddingBatcher(batch -> {
+            inSink.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                // abort interrupts the ticker: keep blocking like a sink that ignores interrupts
+                awaitUninterruptibly(release);
+            }
+            written.add(batch);
+        }, settings, estimator, meterRegistry);
+
+        batcher.add(chunks(1));
+        assertTrue(inSink.await(5, TimeUnit.SECONDS));
+
+        var aborted = CompletableFuture.runAsync(batcher::abort);
+        Thread.sleep(100);
+        assertFalse(aborted.isDone());
+
+        release.countDown();
+        aborted.get(5, TimeUnit.SECONDS);
+        assertEquals(1, written.size());
+
+        var late = batcher.add(chunks(200));
+        assertThrows(CancellationException.class, () -> late.get(5, TimeUnit.SECONDS));
+        batcher.flush();
+        assertEquals(1, written.size());
+    }
+
+    @Test
+    void add_EmptyListCompletesImmediately() {
+        try (var batcher = new EmbeddingBatcher(written::add, settings, estimator, meterRegistry)) {
+            assertTrue(batcher.add(List.of()).isDone());
+        }
+        assertTrue(written.isEmpty());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException ignored) {
+                // keep waiting
+            }
+        }
+    }
+
+    private static List<Document> chunks(int count) {
+        return IntStream.range(0, count).mapToObj(i -> new Document("chunk " + i)).toList();
+    }
+}
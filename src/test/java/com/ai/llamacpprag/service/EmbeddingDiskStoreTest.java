@@ -0,0 +1,105 @@
+package com.ai.llamacpprag.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link EmbeddingDiskStore}.
+ */
+class EmbeddingDiskStoreTest {
+
+    @Test
+    void put_ThenGet_ReturnsVector(@TempDir Path tempDir) throws IOException {
+        try (var store = new EmbeddingDiskStore(tempDir)) {
+            assertTrue(store.put(key(1), new float[]{0.5f, -1f, 2f}));
+
+            assertArrayEquals(new float[]{0.5f, -1f, 2f}, store.get(key(1)));
+            assertNull(store.get(key(2)));
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    void reopen_KeepsEveryVectorAcrossSegments(@TempDir Path tempDir) throws IOException {
+        // Four records per segment, so 10 vectors span three mapped segments
+        try (var store = new EmbeddingDiskStore(tempDir, 4)) {
+            for (int i = 0; i < 10; i++) {
+                store.put(key(i), new float[]{i, i * 2f});
+            }
+        }
+
+        try (var store = new EmbeddingDiskStore(tempDir, 4)) {
+            assertEquals(10, store.size());
+            for (int i = 0; i < 10; i++) {
+                assertArrayEquals(new float[]{i, i * 2f}, store.get(key(i)));
+            }
+            store.put(key(10), new float[]{10f, 20f});
+            assertArrayEquals(new float[]{10f, 20f}, store.get(key(10)));
+        }
+    }
+
+    @Test
+    void reopen_DropsPartiallyWrittenIndexEntry(@TempDir Path tempDir) throws IOException {
+        try (var store = new EmbeddingDiskStore(tempDir)) {
+            store.put(key(1), new float[]{1f});
+            store.put(key(2), new float[]{2f});
+        }
+        // Simulate a crash in the middle of writing the second key
+        try (var index = FileChannel.open(tempDir.resolve("index.bin"), StandardOpenOption.WRITE)) {
+            index.truncate(index.size() - 5);
+        }
+
+        try (var store = new EmbeddingDiskStore(tempDir)) {
+            assertEquals(1, store.size());
+            assertArrayEquals(new float[]{1f}, store.get(key(1)));
+            assertNull(store.get(key(2)));
+        }
+    }
+
+    @Test
+    void put_RejectsOtherDimensionsAndIgnoresDuplicates(@TempDir Path tempDir) throws IOException {
+        try (var store = new EmbeddingDiskStore(tempDir)) {
+            assertTrue(store.put(key(1), new float[]{1f, 2f}));
+
+            assertFalse(store.put(key(2), new float[]{1f, 2f, 3f}));
+            assertTrue(store.put(key(1), new float[]{9f, 9f}));
+            assertArrayEquals(new float[]{1f, 2f}, store.get(key(1)));
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    void putAll_StoresBatchAcrossSegmentsAndSkipsKnownKeys(@TempDir Path tempDir) throws IOException {
+        try (var store = new EmbeddingDiskStore(tempDir, 2)) {
+            store.put(key(0), new float[]{0f});
+
+            int rejected = store.putAll(List.of(key(0), key(1), key(2), key(1), key(3), key(4)),
+                    List.of(new float[]{9f}, new float[]{1f}, new float[]{2f}, new float[]{9f},
+                            new float[]{3f, 3f}, new float[]{4f}));
+
+            assertEquals(1, rejected);
+            assertEquals(4, store.size());
+        }
+
+        try (var store = new EmbeddingDiskStore(tempDir, 2)) {
+            assertEquals(4, store.size());
+            assertArrayEquals(new float[]{0f}, store.get(key(0)));
+            assertArrayEquals(new float[]{1f}, store.get(key(1)));
+            assertArrayEquals(new float[]{2f}, store.get(key(2)));
+            assertNull(store.get(key(3)));
+            assertArrayEquals(new float[]{4f}, store.get(key(4)));
+        }
+    }
+
+    private static byte[] key(int n) {
+        return CachingEmbeddingModel.key("model", "text " + n).array();
+    }
+}
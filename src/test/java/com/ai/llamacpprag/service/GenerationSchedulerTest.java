@@ -0,0 +1,172 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.GenerationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link GenerationScheduler}.
+ */
+@ExtendWith(MockitoExtension.class)
+class GenerationSchedulerTest {
+
+    @Mock
+    private ChatModel chatModel;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ChatResponse response = new ChatResponse(List.of());
+
+    @Test
+    void call_QueuesRequestsBeyondTheSlotsUntilOneFrees() throws Exception {
+        var scheduler = scheduler(1, 4, Duration.ofSeconds(10));
+        var generating = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(chatModel.call(any(Prompt.class))).thenAnswer(invocation -> {
+            generating.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return response;
+        }).thenReturn(response);
+
+        var first = CompletableFuture.supplyAsync(() -> scheduler.call(new Prompt("first")));
+        generating.await(10, TimeUnit.SECONDS);
+        var second = CompletableFuture.supplyAsync(() -> scheduler.call(new Prompt("second")));
+        while (scheduler.queued() == 0) {
+            Thread.sleep(1);
+        }
+        assertEquals(1.0, meterRegistry.get("rag.generation.queue.depth").gauge().value());
+        assertEquals(1.0, meterRegistry.get("rag.generation.active").gauge().value());
+        verify(chatModel, times(1)).call(any(Prompt.class));
+
+        release.countDown();
+
+        assertSame(response, first.get(10, TimeUnit.SECONDS));
+        assertSame(response, second.get(10, TimeUnit.SECONDS));
+        assertEquals(0.0, meterRegistry.get("rag.generation.queue.depth").gauge().value());
+        assertEquals(0.0, meterRegistry.get("rag.generation.active").gauge().value());
+        assertEquals(2, meterRegistry.get("rag.generation.wait").timer().count());
+        assertEquals(2, meterRegistry.get("rag.generation.duration").timer().count());
+    }
+
+    @Test
+    void call_QueueFull_RejectsAtOnceWithRetryAfter() throws Exception {
+        var scheduler = scheduler(1, 0, Duration.ofSeconds(10));
+        var generating = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(chatModel.call(any(Prompt.class))).thenAnswer(invocation -> {
+            generating.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return response;
+        });
+        var first = CompletableFuture.supplyAsync(() -> scheduler.call(new Prompt("first")));
+        generating.await(10, TimeUnit.SECONDS);
+
+        var rejected = assertThrows(GenerationRejectedException.class, () -> scheduler.call(new Prompt("second")));
+
+        // No generation timed yet: the configured default
+        assertEquals(Duration.ofSeconds(5), rejected.getRetryAfter());
+        assertEquals(1.0, meterRegistry.get("rag.generation.rejected").tag("reason", "queue-full").counter().count());
+        release.countDown();
+        assertSame(response, first.get(10, TimeUnit.SECONDS));
+        verify(chatModel, times(1)).call(any(Prompt.class));
+    }
+
+    @Test
+    void call_NoSlotWithinQueueTimeout_Rejects() throws Exception {
+        var scheduler = scheduler(1, 4, Duration.ofMillis(50));
+        var generating = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(chatModel.call(any(Prompt.class))).thenAnswer(invocation -> {
+            generating.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return response;
+        });
+        var first = CompletableFuture.supplyAsync(() -> scheduler.call(new Prompt("first")));
+        generating.await(10, TimeUnit.SECONDS);
+
+        assertThrows(GenerationRejectedException.class, () -> scheduler.call(new Prompt("second")));
+
+        assertEquals(1.0, meterRegistry.get("rag.generation.rejected").tag("reason", "timeout").counter().count());
+        assertEquals(0, scheduler.queued());
+        release.countDown();
+        first.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void call_FailedGeneration_ReleasesSlot() {
+        var scheduler = scheduler(1, 0, Duration.ofSeconds(10));
+        when(chatModel.call(any(Prompt.class))).thenThrow(new IllegalStateException("llama.cpp down"))
+                .thenReturn(response);
+
+        assertThrows(IllegalStateException.class, () -> scheduler.call(new Prompt("first")));
+
+        assertSame(response, scheduler.call(new Prompt("second")));
+    }
+
+    @Test
+    void stream_HoldsSlotUntilStreamEnds() {
+        var scheduler = scheduler(1, 0, Duration.ofSeconds(10));
+        Sinks.Many<ChatResponse> tokens = Sinks.many().unicast().onBackpressureBuffer();
+        when(chatModel.stream(any(Prompt.class))).thenReturn(tokens.asFlux());
+
+        var subscription = scheduler.stream(new Prompt("first")).subscribe();
+        assertEquals(1.0, meterRegistry.get("rag.generation.active").gauge().value());
+        assertThrows(GenerationRejectedException.class,
+                () -> scheduler.stream(new Prompt("second")).blockLast());
+
+        tokens.tryEmitNext(response);
+        tokens.tryEmitComplete();
+        assertTrue(subscription.isDisposed());
+        assertEquals(0.0, meterRegistry.get("rag.generation.active").gauge().value());
+
+        // A cancelled stream frees its slot as well
+        when(chatModel.stream(any(Prompt.class))).thenReturn(Flux.never());
+        scheduler.stream(new Prompt("third")).subscribe().dispose();
+        assertEquals(0.0, meterRegistry.get("rag.generation.active").gauge().value());
+    }
+
+    @Test
+    void retryAfter_ScalesMeanGenerationTimeWithQueueAhead() {
+        var scheduler = scheduler(2, 8, Duration.ofSeconds(10));
+        meterRegistry.get("rag.generation.duration").timer().record(Duration.ofSeconds(3));
+
+        assertEquals(Duration.ofSeconds(3), scheduler.retryAfter(0));
+        assertEquals(Duration.ofSeconds(6), scheduler.retryAfter(2));
+        assertEquals(Duration.ofSeconds(15), scheduler.retryAfter(8));
+    }
+
+    @Test
+    void constructor_RejectsZeroSlots() {
+        var properties = new GenerationProperties();
+        properties.setMaxConcurrent(0);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new GenerationScheduler(chatModel, properties, meterRegistry));
+    }
+
+    private GenerationScheduler scheduler(int maxConcurrent, int maxQueue, Duration queueTimeout) {
+        var properties = new GenerationProperties();
+        properties.setMaxConcurrent(maxConcurrent);
+        properties.setMaxQueue(maxQueue);
+        properties.setQueueTimeout(queueTimeout);
+        return new GenerationScheduler(chatModel, properties, meterRegistry);
+    }
+}
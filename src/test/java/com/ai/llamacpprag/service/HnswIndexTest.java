@@ -0,0 +1,143 @@
+package com.ai.llamacpprag.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link HnswIndex}.
+ */
+class HnswIndexTest {
+
+    @Test
+    void search_FindsNearlyAllExactNeighbours(@TempDir Path tempDir) throws IOException {
+        float[][] vectors = randomVectors(2_000, 16, 1);
+        try (var index = new HnswIndex(tempDir, 16, 100, 256)) {
+            for (int i = 0; i < vectors.length; i++) {
+                assertEquals(i, index.add(vectors[i], i));
+            }
+
+            int found = 0;
+            for (float[] query : randomVectors(50, 16, 2)) {
+                Set<Integer> exact = exactNeighbours(vectors, query, 10);
+                for (HnswIndex.Match match : index.search(query, 10, 64, node -> true)) {
+                    if (exact.contains(match.node()))
+                        found++;
+                }
+            }
+            assertTrue(found >= 0.95 * 50 * 10, "recall too low: " + found + "/500");
+        }
+    }
+
+    @Test
+    void search_ReturnsCosineSimilarityMostSimilarFirst(@TempDir Path tempDir) throws IOException {
+        try (var index = new HnswIndex(tempDir, 4, 16)) {
+            index.add(new float[]{1f, 0f}, 10);
+            index.add(new float[]{0f, 2f}, 20);
+            index.add(new float[]{3f, 3f}, 30);
+
+            List<HnswIndex.Match> matches = index.search(new float[]{5f, 0f}, 2, 16, node -> true);
+
+            assertEquals(List.of(0, 2), matches.stream().map(HnswIndex.Match::node).toList());
+            assertEquals(1f, matches.get(0).similarity(), 1e-6);
+            assertEquals((float) Math.sqrt(0.5), matches.get(1).similarity(), 1e-6);
+            assertEquals(30, index.payload(2));
+        }
+    }
+
+    @Test
+    void search_SkipsDeletedAndFilteredNodes(@TempDir Path tempDir) throws IOException {
+        float[][] vectors = randomVectors(500, 8, 3);
+        try (var index = new HnswIndex(tempDir, 8, 50)) {
+            for (float[] vector : vectors) {
+                index.add(vector, 0);
+            }
+            index.delete(7);
+
+            assertNotEquals(7, index.search(vectors[7], 1, 16, node -> true).get(0).node());
+            assertTrue(index.isDeleted(7));
+            assertEquals(499, index.liveSize());
+            // Only 5 nodes pass: the candidate list widens until all are found
+            List<HnswIndex.Match> rare = index.search(vectors[0], 5, 16, node -> node % 100 == 1);
+            assertEquals(Set.of(1, 101, 201, 301, 401),
+                    rare.stream().map(HnswIndex.Match::node).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    void reopen_KeepsGraphAndBuildSettings(@TempDir Path tempDir) throws IOException {
+        float[][] vectors = randomVectors(300, 8, 4);
+        try (var index = new HnswIndex(tempDir, 8, 50, 64)) {
+            for (int i = 0; i < vectors.length; i++) {
+                index.add(vectors[i], i * 100L);
+            }
+            index.delete(3);
+        }
+
+        // Different M on reopen: the index keeps the one it was built with
+        try (var index = new HnswIndex(tempDir, 32, 50, 64)) {
+            assertEquals(300, index.size());
+            assertTrue(index.isDeleted(3));
+            assertEquals(4200, index.payload(42));
+            assertEquals(42, index.search(vectors[42], 1, 16, node -> true).get(0).node());
+            assertEquals(300, index.add(vectors[0], 1));
+        }
+    }
+
+    @Test
+    void open_RejectsOtherFiles(@TempDir Path tempDir) throws IOException {
+        Files.write(tempDir.resolve("meta.bin"), new byte[64]);
+
+        assertThrows(IOException.class, () -> new HnswIndex(tempDir, 16, 100));
+    }
+
+    @Test
+    void add_RejectsOtherDimensions(@TempDir Path tempDir) throws IOException {
+        try (var index = new HnswIndex(tempDir, 16, 100)) {
+            index.add(new float[]{1f, 2f}, 0);
+
+            assertThrows(IllegalArgumentException.class, () -> index.add(new float[]{1f}, 0));
+            assertThrows(IllegalArgumentException.class, () -> index.search(new float[]{1f}, 1, 16, node -> true));
+        }
+    }
+
+    private static float[][] randomVectors(int count, int dimensions, long seed) {
+        var random = new Random(seed);
+        float[][] vectors = new float[count][dimensions];
+        for (float[] vector : vectors) {
+            for (int i = 0; i < dimensions; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+        }
+        return vectors;
+    }
+
+    private static Set<Integer> exactNeighbours(float[][] vectors, float[] query, int k) {
+        return IntStream.range(0, vectors.length).boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> cosine(vectors[i], query)).reversed())
+                .limit(k)
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0, normA = 0, normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
@@ -0,0 +1,141 @@
+package com.ai.llamacpprag.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link HnswVectorStore}.
+ */
+@ExtendWith(MockitoExtension.class)
+class HnswVectorStoreTest {
+
+    private static final Map<String, float[]> VECTORS = Map.of(
+            "cats purr", new float[]{1f, 0f, 0f},
+            "dogs bark", new float[]{0.8f, 0.6f, 0f},
+            "cars honk", new float[]{0f, 0f, 1f},
+            "kittens", new float[]{1f, 0.1f, 0f});
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    @Test
+    void similaritySearch_ReturnsMostSimilarDocumentsWithScores(@TempDir Path tempDir) throws IOException {
+        stubEmbeddings();
+        try (var store = store(tempDir)) {
+            store.add(documents());
+
+            List<Document> results = store.similaritySearch(SearchRequest.builder().query("kittens").topK(2).build());
+
+            assertEquals(List.of("cats purr", "dogs bark"), results.stream().map(Document::getText).toList());
+            Document best = results.get(0);
+            assertEquals("a", best.getId());
+            assertEquals("a.txt", best.getMetadata().get("source"));
+            assertEquals(0.995, best.getScore(), 1e-3);
+            assertEquals(1 - best.getScore(), ((Number) best.getMetadata().get("distance")).doubleValue(), 1e-6);
+        }
+    }
+
+    @Test
+    void similaritySearch_AppliesThresholdAndFilter(@TempDir Path tempDir) throws IOException {
+        stubEmbeddings();
+        try (var store = store(tempDir)) {
+            store.add(documents());
+
+            var aboveThreshold = store.similaritySearch(SearchRequest.builder()
+                    .query("kittens").topK(3).similarityThreshold(0.8).build());
+            var filtered = store.similaritySearch(SearchRequest.builder()
+                    .query("kittens").topK(3).filterExpression("source == 'b.txt'").build());
+
+            assertEquals(List.of("a", "b"), aboveThreshold.stream().map(Document::getId).toList());
+            assertEquals(List.of("b", "c"), filtered.stream().map(Document::getId).toList());
+        }
+    }
+
+    @Test
+    void add_ReplacesDocumentsWithTheSameId(@TempDir Path tempDir) throws IOException {
+        stubEmbeddings();
+        try (var store = store(tempDir)) {
+            store.add(documents());
+            store.add(List.of(new Document("c", "kittens", Map.of("source", "c.txt"))));
+
+            var results = store.similaritySearch(SearchRequest.builder().query("kittens").topK(5).build());
+
+            assertEquals(List.of("c", "a", "b"), results.stream().map(Document::getId).toList());
+            assertEquals("kittens", results.get(0).getText());
+            assertEquals("c.txt", results.get(0).getMetadata().get("source"));
+        }
+    }
+
+    @Test
+    void delete_RemovesDocumentsByIdAndByFilter(@TempDir Path tempDir) throws IOException {
+        stubEmbeddings();
+        try (var store = store(tempDir)) {
+            store.add(documents());
+
+            store.delete(List.of("a", "unknown"));
+            store.delete(new FilterExpressionBuilder().eq("source", "b.txt").build());
+
+            var results = store.similaritySearch(SearchRequest.builder().query("kittens").topK(3).build());
+            assertTrue(results.isEmpty());
+        }
+    }
+
+    @Test
+    void reopen_KeepsDocumentsAndDropsRecordsWithoutNode(@TempDir Path tempDir) throws IOException {
+        stubEmbeddings();
+        try (var store = store(tempDir)) {
+            store.add(documents());
+        }
+        // Simulate a crash between appending a document and adding its node
+        Files.write(tempDir.resolve("documents.bin"), new byte[]{0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+
+        try (var store = store(tempDir)) {
+            store.delete(List.of("b"));
+            store.add(List.of(new Document("d", "kittens", Map.of())));
+
+            var results = store.similaritySearch(SearchRequest.builder().query("kittens").topK(3).build());
+
+            assertEquals(List.of("d", "a", "c"), results.stream().map(Document::getId).toList());
+            assertEquals("kittens", results.get(0).getText());
+            assertEquals("a.txt", results.get(1).getMetadata().get("source"));
+        }
+    }
+
+    private HnswVectorStore store(Path directory) throws IOException {
+        return new HnswVectorStore(directory, embeddingModel, 16, 100, 64, new SimpleMeterRegistry());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubEmbeddings() {
+        when(embeddingModel.embed(anyList())).thenAnswer(invocation ->
+                ((List<String>) invocation.getArgument(0)).stream().map(VECTORS::get).toList());
+        when(embeddingModel.embed(anyString())).thenAnswer(invocation -> VECTORS.get(invocation.getArgument(0)));
+    }
+
+    private static List<Document> documents() {
+        return List.of(
+                new Document("a", "cats purr", Map.of("source", "a.txt")),
+                new Document("b", "dogs bark", Map.of("source", "b.txt")),
+                new Document("c", "cars honk", Map.of("source", "b.txt")));
+    }
+}
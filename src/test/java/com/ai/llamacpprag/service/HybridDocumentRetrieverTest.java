@@ -0,0 +1,88 @@
+package com.ai.llamacpprag.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.rag.retrieval.search.DocumentRetriever;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link HybridDocumentRetriever}.
+ */
+@ExtendWith(MockitoExtension.class)
+class HybridDocumentRetrieverTest {
+
+    @Mock
+    private DocumentRetriever vectorRetriever;
+
+    @Mock
+    private DocumentRetriever lexicalRetriever;
+
+    @Test
+    void fuse_RanksDocumentsFoundByBothSearchesFirst() {
+        var vector = List.of(doc("a"), doc("b"), doc("c"));
+        var lexical = List.of(doc("d"), doc("c"));
+
+        List<Document> fused = HybridDocumentRetriever.fuse(List.of(vector, lexical), 60, 3);
+
+        // c: 1/63 + 1/62; a: 1/61; d: 1/61 (tie, vector ranking first)
+        assertEquals(List.of("c", "a", "d"), fused.stream().map(Document::getId).toList());
+        assertEquals(1.0 / 63 + 1.0 / 62, fused.get(0).getScore(), 1e-12);
+    }
+
+    @Test
+    void retrieve_FusesBothSearchesAndTimesEachLeg() {
+        var query = new Query("error E-1042");
+        when(vectorRetriever.retrieve(query)).thenReturn(List.of(doc("a"), doc("b")));
+        when(lexicalRetriever.retrieve(query)).thenReturn(List.of(doc("b"), doc("e")));
+        var registry = new SimpleMeterRegistry();
+
+        try (var retriever = new HybridDocumentRetriever(vectorRetriever, lexicalRetriever, 2, 60, registry)) {
+            List<Document> result = retriever.retrieve(query);
+
+            assertEquals(List.of("b", "a"), result.stream().map(Document::getId).toList());
+            assertEquals("text of b", result.get(0).getText());
+        }
+        assertEquals(1, registry.get("rag.retrieval.search").tag("leg", "vector").timer().count());
+        assertEquals(1, registry.get("rag.retrieval.search").tag("leg", "lexical").timer().count());
+    }
+
+    @Test
+    void retrieve_LexicalFailure_ReturnsVectorMatches() {
+        var query = new Query("question");
+        when(vectorRetriever.retrieve(query)).thenReturn(List.of(doc("a"), doc("b")));
+        when(lexicalRetriever.retrieve(query)).thenThrow(new IllegalStateException("database down"));
+
+        try (var retriever = new HybridDocumentRetriever(vectorRetriever, lexicalRetriever, 3, 60,
+                new SimpleMeterRegistry())) {
+            assertEquals(List.of("a", "b"), retriever.retrieve(query).stream().map(Document::getId).toList());
+        }
+    }
+
+    @Test
+    void retrieve_RequestTopKOverridesDefault() {
+        var query = Query.builder().text("question")
+                .context(Map.of(RetrievalParams.CONTEXT_KEY, new RetrievalParams(1, null, null, null, null, null)))
+                .build();
+        when(vectorRetriever.retrieve(query)).thenReturn(List.of(doc("a"), doc("b")));
+        when(lexicalRetriever.retrieve(query)).thenReturn(List.of(doc("c")));
+
+        try (var retriever = new HybridDocumentRetriever(vectorRetriever, lexicalRetriever, 3, 60,
+                new SimpleMeterRegistry())) {
+            assertEquals(List.of("a"), retriever.retrieve(query).stream().map(Document::getId).toList());
+        }
+    }
+
+    private static Document doc(String id) {
+        return new Document(id, "text of " + id, Map.of());
+    }
+}
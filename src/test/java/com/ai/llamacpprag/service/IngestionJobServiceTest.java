@@ -0,0 +1,177 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.IngestionProperties;
+import com.ai.llamacpprag.service.IngestionJobService.JobSnapshot;
+import com.ai.llamacpprag.service.IngestionJobService.JobStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link IngestionJobService}.
+ */
+@ExtendWith(MockitoExtension.class)
+class IngestionJobServiceTest {
+
+    private static final Path FOLDER = Path.of("./data");
+
+    @Mock
+    private DocumentIngestionService ingestionService;
+
+    private IngestionJobService jobs;
+
+    @AfterEach
+    void tearDown() {
+        if (jobs != null) {
+            jobs.shutdown();
+        }
+    }
+
+    @Test
+    void submit_RunsJobInBackgroundAndReportsResult() throws Exception {
+        var result = new DocumentIngestionService.IngestResult(2, 4, List.of());
+        when(ingestionService.ingestLocalFolder(eq(FOLDER), any(IngestionProgress.class))).thenReturn(result);
+        jobs = newService(1, 10);
+
+        var submitted = jobs.submit(FOLDER);
+        var finished = awaitStatus(submitted.id(), JobStatus.SUCCEEDED);
+
+        assertEquals(result, finished.result());
+        assertNotNull(finished.startedAt());
+        assertNotNull(finished.finishedAt());
+        assertNull(finished.error());
+    }
+
+    @Test
+    void submit_FailingIngestionEndsFailed() throws Exception {
+        when(ingestionService.ingestLocalFolder(eq(FOLDER), any(IngestionProgress.class)))
+                .thenThrow(new IOException("disk gone"));
+        jobs = newService(1, 10);
+
+        var finished = awaitStatus(jobs.submit(FOLDER).id(), JobStatus.FAILED);
+
+        assertEquals("disk gone", finished.error());
+        assertNull(finished.result());
+    }
+
+    @Test
+    void maxConcurrent_QueuesFurtherJobs() throws Exception {
+        var release = new CountDownLatch(1);
+        when(ingestionService.ingestLocalFolder(eq(FOLDER), any(IngestionProgress.class))).thenAnswer(inv -> {
+            release.await();
+            return new DocumentIngestionService.IngestResult(0, 0, List.of());
+        });
+        jobs = newService(1, 10);
+
+        var first = jobs.submit(FOLDER);
+        awaitStatus(first.id(), JobStatus.RUNNING);
+        var second = jobs.submit(FOLDER);
+        Thread.sleep(100);
+
+        assertEquals(JobStatus.QUEUED, jobs.find(second.id()).orElseThrow().status());
+
+        release.countDown();
+        awaitStatus(first.id(), JobStatus.SUCCEEDED);
+        awaitStatus(second.id(), JobStatus.SUCCEEDED);
+    }
+
+    @Test
+    void cancel_RunningJobEndsCancelled() throws Exception {
+        var started = new CountDownLatch(1);
+        when(ingestionService.ingestLocalFolder(eq(FOLDER), any(IngestionProgress.class))).thenAnswer(inv -> {
+            started.countDown();
+            try {
+                new CountDownLatch(1).await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException("Ingestion interrupted");
+            }
+            return null;
+        });
+        jobs = newService(1, 10);
+
+        var job = jobs.submit(FOLDER);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        jobs.cancel(job.id());
+
+        var finished = awaitStatus(job.id(), JobStatus.CANCELLED);
+        assertNull(finished.error());
+    }
+
+    @Test
+    void cancel_QueuedJobIsCancelledAtOnce() throws Exception {
+        var release = new CountDownLatch(1);
+        when(ingestionService.ingestLocalFolder(eq(FOLDER), any(IngestionProgress.class))).thenAnswer(inv -> {
+            release.await();
+            return new DocumentIngestionService.IngestResult(0, 0, List.of());
+        });
+        jobs = newService(1, 10);
+
+        var first = jobs.submit(FOLDER);
+        awaitStatus(first.id(), JobStatus.RUNNING);
+        var second = jobs.submit(FOLDER);
+
+        assertEquals(JobStatus.CANCELLED, jobs.cancel(second.id()).orElseThrow().status());
+
+        release.countDown();
+        awaitStatus(first.id(), JobStatus.SUCCEEDED);
+        assertEquals(JobStatus.CANCELLED, jobs.find(second.id()).orElseThrow().status());
+    }
+
+    @Test
+    void history_EvictsOldestFinishedJobs() throws Exception {
+        when(ingestionService.ingestLocalFolder(eq(FOLDER), any(IngestionProgress.class)))
+                .thenReturn(new DocumentIngestionService.IngestResult(0, 0, List.of()));
+        jobs = newService(1, 2);
+
+        var first = jobs.submit(FOLDER);
+        awaitStatus(first.id(), JobStatus.SUCCEEDED);
+        var second = jobs.submit(FOLDER);
+        awaitStatus(second.id(), JobStatus.SUCCEEDED);
+        var third = jobs.submit(FOLDER);
+        awaitStatus(third.id(), JobStatus.SUCCEEDED);
+
+        assertTrue(jobs.find(first.id()).isEmpty());
+        assertTrue(jobs.find(second.id()).isPresent());
+        assertTrue(jobs.find(third.id()).isPresent());
+    }
+
+    @Test
+    void unknownJob_IsEmpty() {
+        jobs = newService(1, 10);
+
+        assertTrue(jobs.find("missing").isEmpty());
+        assertTrue(jobs.cancel("missing").isEmpty());
+    }
+
+    private IngestionJobService newService(int maxConcurrent, int historySize) {
+        var properties = new IngestionProperties();
+        properties.getJobs().setMaxConcurrent(maxConcurrent);
+        properties.getJobs().setHistorySize(historySize);
+        return new IngestionJobService(ingestionService, properties);
+    }
+
+    private JobSnapshot awaitStatus(String id, JobStatus status) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        JobSnapshot snapshot = jobs.find(id).orElseThrow();
+        while (snapshot.status() != status && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            snapshot = jobs.find(id).orElseThrow();
+        }
+        assertEquals(status, snapshot.status());
+        return snapshot;
+    }
+}
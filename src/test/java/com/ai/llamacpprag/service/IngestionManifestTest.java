@@ -0,0 +1,104 @@
+package com.ai.llamacpprag.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit tests for {@link IngestionManifest}.
+ */
+@ExtendWith(MockitoExtension.class)
+class IngestionManifestTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private IngestionManifest manifest;
+
+    @Test
+    void record_UpsertsBySource() {
+        manifest.record(new IngestionManifest.Entry("/data/a.txt", 12L, 34L, "abc", 5));
+
+        verify(jdbcTemplate).update(contains("ON CONFLICT (source) DO UPDATE"),
+                eq("/data/a.txt"), eq(12L), eq(34L), eq("abc"), eq(5));
+    }
+
+    @Test
+    void remove_DeletesBySource() {
+        manifest.remove("/data/a.txt");
+
+        verify(jdbcTemplate).update(contains("DELETE FROM ingest_manifest"), eq("/data/a.txt"));
+    }
+
+    @Test
+    void dependentsOf_CollectsDuplicatesOfEveryCanonicalSource() {
+        when(jdbcTemplate.queryForList(contains("FROM ingest_duplicate"), eq(String.class), eq("/data/a.txt")))
+                .thenReturn(List.of("/data/copy-a.txt"));
+        when(jdbcTemplate.queryForList(contains("FROM ingest_duplicate"), eq(String.class), eq("/data/b.txt")))
+                .thenReturn(List.of("/data/copy-a.txt", "/data/copy-b.txt"));
+
+        assertEquals(Set.of("/data/copy-a.txt", "/data/copy-b.txt"),
+                manifest.dependentsOf(List.of("/data/a.txt", "/data/b.txt")));
+    }
+
+    @Test
+    void removeDuplicates_DeletesBySource() {
+        manifest.removeDuplicates("/data/a.txt");
+
+        verify(jdbcTemplate).update(contains("DELETE FROM ingest_duplicate"), eq("/data/a.txt"));
+    }
+
+    @Test
+    void chunkId_IsStableUuidPerSourceAndIndex() {
+        String id = IngestionManifest.chunkId("/data/a.txt", 0);
+
+        assertEquals(id, IngestionManifest.chunkId("/data/a.txt", 0));
+        assertNotEquals(id, IngestionManifest.chunkId("/data/a.txt", 1));
+        assertNotEquals(id, IngestionManifest.chunkId("/data/b.txt", 0));
+        assertDoesNotThrow(() -> UUID.fromString(id));
+    }
+
+    @Test
+    void chunkIds_CoversHalfOpenRange() {
+        var ids = IngestionManifest.chunkIds("/data/a.txt", 2, 5);
+
+        assertEquals(3, ids.size());
+        assertEquals(IngestionManifest.chunkId("/data/a.txt", 2), ids.get(0));
+        assertTrue(IngestionManifest.chunkIds("/data/a.txt", 5, 2).isEmpty());
+    }
+
+    @Test
+    void contentHash_ChangesOnlyWithContent(@TempDir Path tempDir) throws IOException {
+        Path a = Files.writeString(tempDir.resolve("a.txt"), "same");
+        Path b = Files.writeString(tempDir.resolve("b.txt"), "same");
+        Path c = Files.writeString(tempDir.resolve("c.txt"), "different");
+
+        assertEquals(IngestionManifest.contentHash(a), IngestionManifest.contentHash(b));
+        assertNotEquals(IngestionManifest.contentHash(a), IngestionManifest.contentHash(c));
+        assertEquals(64, IngestionManifest.contentHash(a).length());
+    }
+
+    @Test
+    void sourceOf_NormalizesPath(@TempDir Path tempDir) {
+        assertEquals(IngestionManifest.sourceOf(tempDir.resolve("x.txt")),
+                IngestionManifest.sourceOf(tempDir.resolve("sub/../x.txt")));
+    }
+}
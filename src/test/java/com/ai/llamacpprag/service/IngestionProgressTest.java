@@ -0,0 +1,46 @@
+package com.ai.llamacpprag.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link IngestionProgress}.
+ */
+class IngestionProgressTest {
+
+    @Test
+    void etaSeconds_UnknownUntilDiscoveryCompletesAndAFileFinishes() {
+        var progress = new IngestionProgress();
+        progress.fileDiscovered();
+        progress.fileDiscovered();
+
+        assertNull(progress.etaSeconds());
+
+        progress.discoveryComplete();
+        assertNull(progress.etaSeconds());
+
+        progress.fileProcessed();
+        assertNotNull(progress.etaSeconds());
+        assertTrue(progress.etaSeconds() >= 0);
+
+        progress.fileProcessed();
+        assertEquals(0L, progress.etaSeconds());
+    }
+
+    @Test
+    void counters_AccumulateAndCancelIsSticky() {
+        var progress = new IngestionProgress();
+
+        progress.pagesRead(3);
+        progress.chunksCreated(7);
+        progress.chunksEmbedded(5);
+        progress.cancel();
+
+        assertEquals(3, progress.pages());
+        assertEquals(7, progress.chunks());
+        assertEquals(5, progress.embeddings());
+        assertTrue(progress.embeddingsPerSecond() >= 0);
+        assertTrue(progress.isCancelled());
+    }
+}
@@ -0,0 +1,248 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.GenerationProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import reactor.core.publisher.Flux;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link LoadBalancedChatModel}.
+ */
+@ExtendWith(MockitoExtension.class)
+class LoadBalancedChatModelTest {
+
+    private static final String A = "http://llama-a:8080";
+
+    private static final String B = "http://llama-b:8080";
+
+    @Mock
+    private ChatModel modelA;
+
+    @Mock
+    private ChatModel modelB;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    /**
+     * Health endpoints currently failing their probe.
+     */
+    private final Set<URI> down = ConcurrentHashMap.newKeySet();
+
+    private final GenerationProperties.Pool settings = new GenerationProperties.Pool();
+
+    private LoadBalancedChatModel pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null)
+            pool.close();
+    }
+
+    @Test
+    void call_GoesToServerWithFewestOutstandingRequests() throws Exception {
+        settings.setAffinityPrefixChars(0);
+        pool = pool();
+        var generating = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(modelA.call(any(Prompt.class))).thenAnswer(invocation -> {
+            generating.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        });
+        var slow = CompletableFuture.runAsync(() -> pool.call(new Prompt("first")));
+        generating.await(10, TimeUnit.SECONDS);
+
+        pool.call(new Prompt("second"));
+        pool.call(new Prompt("third"));
+
+        verify(modelA, times(1)).call(any(Prompt.class));
+        verify(modelB, times(2)).call(any(Prompt.class));
+        assertEquals(1.0, outstanding(A));
+        release.countDown();
+        slow.get(10, TimeUnit.SECONDS);
+        assertEquals(0.0, outstanding(A));
+        assertEquals(3, meterRegistry.get("rag.chat.backend.requests").tag("outcome", "success").timers()
+                .stream().mapToLong(timer -> timer.count()).sum());
+    }
+
+    @Test
+    void call_EqualLoad_ServersTakeTurns() {
+        settings.setAffinityPrefixChars(0);
+        pool = pool();
+
+        for (int i = 0; i < 4; i++) {
+            pool.call(new Prompt("question " + i));
+        }
+
+        verify(modelA, times(2)).call(any(Prompt.class));
+        verify(modelB, times(2)).call(any(Prompt.class));
+    }
+
+    @Test
+    void call_SamePromptPrefix_StaysOnOneServer() {
+        settings.setAffinityPrefixChars(30);
+        pool = pool();
+
+        for (int i = 0; i < 4; i++) {
+            pool.call(new Prompt("Answer from the context: manual, page 3. Question " + i));
+        }
+
+        int onA = mockingDetails(modelA).getInvocations().size();
+        int onB = mockingDetails(modelB).getInvocations().size();
+        assertEquals(4, onA + onB);
+        assertTrue(onA == 0 || onB == 0, "prefix split over both servers");
+        assertEquals(4.0, meterRegistry.get("rag.chat.backend.affinity").tag("result", "kept").counter().count());
+    }
+
+    @Test
+    void call_AffineServerTooBusy_MovesToLeastLoaded() throws Exception {
+        settings.setMaxImbalance(0);
+        pool = pool();
+        var prompt = new Prompt("Answer from the context: manual, page 3.");
+        pool.call(prompt);
+        boolean affineIsA = !mockingDetails(modelA).getInvocations().isEmpty();
+        ChatModel affine = affineIsA ? modelA : modelB;
+        ChatModel other = affineIsA ? modelB : modelA;
+        clearInvocations(modelA, modelB);
+
+        var generating = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(affine.call(any(Prompt.class))).thenAnswer(invocation -> {
+            generating.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return null;
+        });
+        var slow = CompletableFuture.runAsync(() -> pool.call(prompt));
+        generating.await(10, TimeUnit.SECONDS);
+
+        pool.call(prompt);
+
+        verify(affine, times(1)).call(any(Prompt.class));
+        verify(other, times(1)).call(any(Prompt.class));
+        assertEquals(1.0, meterRegistry.get("rag.chat.backend.affinity").tag("result", "moved").counter().count());
+        release.countDown();
+        slow.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void call_FailingServer_EjectedUntilHealthProbeSucceeds() {
+        settings.setAffinityPrefixChars(0);
+        settings.setFailureThreshold(2);
+        pool = pool();
+        when(modelA.call(any(Prompt.class))).thenThrow(new IllegalStateException("connection refused"));
+
+        for (int i = 0; i < 5; i++) {
+            try {
+                pool.call(new Prompt("question " + i));
+            } catch (IllegalStateException e) {
+                // a's requests fail until it is ejected
+            }
+        }
+
+        verify(modelA, times(2)).call(any(Prompt.class));
+        verify(modelB, times(3)).call(any(Prompt.class));
+        assertEquals(0.0, healthy(A));
+        assertEquals(1.0, meterRegistry.get("rag.chat.backend.ejections").tag("backend", A).counter().count());
+        assertEquals(2, meterRegistry.get("rag.chat.backend.requests").tag("backend", A).tag("outcome", "error")
+                .timer().count());
+
+        pool.checkHealth();
+
+        assertEquals(1.0, healthy(A));
+    }
+
+    @Test
+    void checkHealth_FailedProbes_EjectServer() {
+        settings.setAffinityPrefixChars(0);
+        settings.setFailureThreshold(2);
+        pool = pool();
+        down.add(URI.create(A + "/health"));
+
+        pool.checkHealth();
+        assertEquals(1.0, healthy(A));
+        pool.checkHealth();
+        assertEquals(0.0, healthy(A));
+        assertEquals(1.0, healthy(B));
+
+        pool.call(new Prompt("first"));
+        pool.call(new Prompt("second"));
+        verifyNoInteractions(modelA);
+        verify(modelB, times(2)).call(any(Prompt.class));
+    }
+
+    @Test
+    void call_EveryServerEjected_StillSends() {
+        settings.setFailureThreshold(1);
+        pool = pool();
+        down.add(URI.create(A + "/health"));
+        down.add(URI.create(B + "/health"));
+        pool.checkHealth();
+
+        pool.call(new Prompt("question"));
+
+        assertEquals(1, mockingDetails(modelA).getInvocations().size() + mockingDetails(modelB).getInvocations().size());
+    }
+
+    @Test
+    void stream_OutstandingUntilStreamEnds() {
+        settings.setAffinityPrefixChars(0);
+        pool = pool();
+        var response = new ChatResponse(List.of());
+        when(modelA.stream(any(Prompt.class))).thenReturn(Flux.just(response));
+        when(modelB.stream(any(Prompt.class))).thenReturn(Flux.error(new IllegalStateException("llama.cpp down")));
+
+        assertEquals(List.of(response), pool.stream(new Prompt("first")).collectList().block());
+        assertThrows(IllegalStateException.class, () -> pool.stream(new Prompt("second")).blockLast());
+
+        assertEquals(0.0, outstanding(A));
+        assertEquals(0.0, outstanding(B));
+        assertEquals(1, meterRegistry.get("rag.chat.backend.requests").tag("backend", A).tag("outcome", "success")
+                .timer().count());
+        assertEquals(1, meterRegistry.get("rag.chat.backend.requests").tag("backend", B).tag("outcome", "error")
+                .timer().count());
+    }
+
+    @Test
+    void constructor_NoServers_Throws() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new LoadBalancedChatModel(Map.of(), settings, uri -> true, meterRegistry));
+    }
+
+    private LoadBalancedChatModel pool() {
+        settings.setHealthInterval(Duration.ofHours(1));
+        Map<String, ChatModel> models = new LinkedHashMap<>();
+        models.put(A, modelA);
+        models.put(B, modelB);
+        return new LoadBalancedChatModel(models, settings, uri -> !down.contains(uri), meterRegistry);
+    }
+
+    private double outstanding(String backend) {
+        return meterRegistry.get("rag.chat.backend.outstanding").tag("backend", backend).gauge().value();
+    }
+
+    private double healthy(String backend) {
+        return meterRegistry.get("rag.chat.backend.healthy").tag("backend", backend).gauge().value();
+    }
+}
@@ -0,0 +1,53 @@
+package com.ai.llamacpprag.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.vectorstore.SearchRequest;
+import org.springframework.ai.vectorstore.VectorStore;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link ParameterizedVectorRetriever}.
+ */
+@ExtendWith(MockitoExtension.class)
+class ParameterizedVectorRetrieverTest {
+
+    @Mock
+    private VectorStore vectorStore;
+
+    @Test
+    void retrieve_WithoutParams_UsesDefaults() {
+        var request = ArgumentCaptor.forClass(SearchRequest.class);
+        when(vectorStore.similaritySearch(request.capture())).thenReturn(List.of());
+
+        new ParameterizedVectorRetriever(vectorStore, 3, 0.5, 0).retrieve(new Query("question"));
+
+        assertEquals("question", request.getValue().getQuery());
+        assertEquals(3, request.getValue().getTopK());
+        assertEquals(0.5, request.getValue().getSimilarityThreshold());
+        assertFalse(request.getValue().hasFilterExpression());
+    }
+
+    @Test
+    void retrieve_AppliesRequestParamsAndFetchesAtLeastTheCandidates() {
+        var request = ArgumentCaptor.forClass(SearchRequest.class);
+        when(vectorStore.similaritySearch(request.capture())).thenReturn(List.of());
+        var params = new RetrievalParams(5, 0.7, "manual.pdf", null, null, null);
+
+        new ParameterizedVectorRetriever(vectorStore, 3, 0.5, 10).retrieve(Query.builder().text("question")
+                .context(Map.of(RetrievalParams.CONTEXT_KEY, params)).build());
+
+        assertEquals(10, request.getValue().getTopK());
+        assertEquals(0.7, request.getValue().getSimilarityThreshold());
+        assertEquals(params.filterExpression(), request.getValue().getFilterExpression());
+    }
+}
@@ -0,0 +1,92 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.IngestionProperties;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.font.Standard14Fonts;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.ai.document.Document;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PdfPageReader}.
+ */
+class PdfPageReaderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @EnumSource(IngestionProperties.MemoryMode.class)
+    void read_EmitsOneDocumentPerNonBlankPage(IngestionProperties.MemoryMode mode) throws IOException {
+        Path pdf = tempDir.resolve("manual.pdf");
+        createPdf(pdf, "First page text", null, "Third page text");
+        var settings = new IngestionProperties.Pdf();
+        settings.setMemoryMode(mode);
+        settings.setTempDir(tempDir);
+
+        List<Document> pages = new ArrayList<>();
+        int emitted = new PdfPageReader(settings).read(pdf, "/data/manual.pdf", pages::add);
+
+        assertEquals(2, emitted);
+        assertEquals(2, pages.size());
+        assertTrue(pages.get(0).getText().contains("First page text"));
+        assertFalse(pages.get(0).getText().contains("Third page text"));
+        assertEquals(1, pages.get(0).getMetadata().get("page"));
+        assertTrue(pages.get(1).getText().contains("Third page text"));
+        assertEquals(3, pages.get(1).getMetadata().get("page"));
+        assertEquals("/data/manual.pdf", pages.get(1).getMetadata().get("source"));
+        assertEquals("pdf", pages.get(1).getMetadata().get("fileType"));
+    }
+
+    @Test
+    void read_BlankPdfEmitsNothing() throws IOException {
+        Path pdf = tempDir.resolve("blank.pdf");
+        createPdf(pdf, (String) null);
+
+        List<Document> pages = new ArrayList<>();
+        int emitted = new PdfPageReader(new IngestionProperties.Pdf()).read(pdf, "blank", pages::add);
+
+        assertEquals(0, emitted);
+        assertTrue(pages.isEmpty());
+    }
+
+    @Test
+    void read_CorruptPdfThrows() throws IOException {
+        Path pdf = Files.writeString(tempDir.resolve("fake.pdf"), "Not a PDF");
+
+        assertThrows(IOException.class,
+                () -> new PdfPageReader(new IngestionProperties.Pdf()).read(pdf, "fake", page -> {
+                }));
+    }
+
+    private static void createPdf(Path path, String... pageTexts) throws IOException {
+        try (PDDocument doc = new PDDocument()) {
+            for (String text : pageTexts) {
+                PDPage page = new PDPage();
+                doc.addPage(page);
+                if (text == null) continue;
+                try (PDPageContentStream contents = new PDPageContentStream(doc, page)) {
+                    contents.beginText();
+                    contents.setFont(new PDType1Font(Standard14Fonts.FontName.HELVETICA), 12);
+                    contents.newLineAtOffset(100, 700);
+                    contents.showText(text);
+                    contents.endText();
+                }
+            }
+            doc.save(path.toFile());
+        }
+    }
+}
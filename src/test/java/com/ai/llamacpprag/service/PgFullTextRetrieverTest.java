@@ -0,0 +1,96 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.RetrievalProperties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.rag.Query;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link PgFullTextRetriever}.
+ */
+@ExtendWith(MockitoExtension.class)
+class PgFullTextRetrieverTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void retrieve_RunsOrQueryAndMapsRows() throws Exception {
+        var retriever = new PgFullTextRetriever(jdbcTemplate, "public", "vector_store", new RetrievalProperties());
+        var sql = ArgumentCaptor.forClass(String.class);
+        var mapper = ArgumentCaptor.forClass(RowMapper.class);
+        when(jdbcTemplate.query(sql.capture(), mapper.capture(), eq("error E-1042"), eq(10))).thenReturn(List.of());
+
+        retriever.retrieve(new Query("error E-1042"));
+
+        assertTrue(sql.getValue().contains("FROM public.vector_store"));
+        assertTrue(sql.getValue().contains("replace(plainto_tsquery('english', ?)::text, '&', '|')::tsquery"));
+        assertTrue(sql.getValue().contains("WHERE to_tsvector('english', content) @@ query"));
+
+        when(resultSet.getString("id")).thenReturn("4f0c5c52-7f0e-4c55-9d4c-1b2a3c4d5e6f");
+        when(resultSet.getString("content")).thenReturn("E-1042: fan failure");
+        when(resultSet.getString("metadata")).thenReturn("{\"source\":\"manual.pdf\"}");
+        when(resultSet.getDouble("rank")).thenReturn(0.25);
+        Document document = (Document) mapper.getValue().mapRow(resultSet, 0);
+        assertEquals("E-1042: fan failure", document.getText());
+        assertEquals("manual.pdf", document.getMetadata().get("source"));
+        assertEquals(0.25, document.getScore());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void retrieve_WithFilter_BindsJsonPathAndRequestTopK() {
+        var retriever = new PgFullTextRetriever(jdbcTemplate, "public", "vector_store", new RetrievalProperties());
+        var params = new RetrievalParams(25, null, "manual.pdf", null, null, null);
+        var sql = ArgumentCaptor.forClass(String.class);
+        var jsonPath = ArgumentCaptor.forClass(String.class);
+        when(jdbcTemplate.query(sql.capture(), any(RowMapper.class), eq("reset"), jsonPath.capture(), eq(25)))
+                .thenReturn(List.of());
+
+        retriever.retrieve(Query.builder().text("reset").context(Map.of(RetrievalParams.CONTEXT_KEY, params)).build());
+
+        assertTrue(sql.getValue().contains("AND metadata::jsonb @@ ?::jsonpath"));
+        // Same JSON path the pgvector store matches its filtered searches with
+        assertEquals("$.source == \"manual.pdf\"", jsonPath.getValue());
+    }
+
+    @Test
+    void afterSingletonsInstantiated_CreatesMatchingGinIndexAndToleratesFailure() {
+        var retriever = new PgFullTextRetriever(jdbcTemplate, "public", "vector_store", new RetrievalProperties());
+        doThrow(new DataAccessResourceFailureException("down")).when(jdbcTemplate).execute(any(String.class));
+
+        assertDoesNotThrow(retriever::afterSingletonsInstantiated);
+        verify(jdbcTemplate).execute(contains(
+                "CREATE INDEX IF NOT EXISTS vector_store_content_fts ON public.vector_store USING gin (to_tsvector('english', content))"));
+    }
+
+    @Test
+    void constructor_RejectsUnsafeTextSearchConfig() {
+        var properties = new RetrievalProperties();
+        properties.getHybrid().setTextSearchConfig("english'); DROP TABLE vector_store; --");
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new PgFullTextRetriever(jdbcTemplate, "public", "vector_store", properties));
+    }
+}
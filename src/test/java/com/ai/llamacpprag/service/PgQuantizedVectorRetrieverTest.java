@@ -0,0 +1,163 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.RetrievalProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.rag.Query;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link PgQuantizedVectorRetriever}.
+ */
+@ExtendWith(MockitoExtension.class)
+class PgQuantizedVectorRetrieverTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private Statement statement;
+
+    @Mock
+    private PreparedStatement preparedStatement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void afterSingletonsInstantiated_Binary_CreatesBitIndexAndIndexSizeGauges() {
+        var retriever = retriever(RetrievalProperties.QuantizationMode.BINARY);
+        when(jdbcTemplate.queryForObject(contains("atttypmod"), eq(Integer.class), eq("public.vector_store")))
+                .thenReturn(768);
+        when(jdbcTemplate.queryForList(contains("pg_indexes"), eq(String.class), eq("public"), eq("vector_store")))
+                .thenReturn(List.of("spring_ai_vector_index", "vector_store_embedding_binary_idx"));
+        when(jdbcTemplate.queryForObject(contains("pg_relation_size"), eq(Long.class), anyString()))
+                .thenReturn(4_000_000L);
+
+        retriever.afterSingletonsInstantiated();
+
+        assertTrue(retriever.isReady());
+        verify(jdbcTemplate).execute("CREATE INDEX IF NOT EXISTS vector_store_embedding_binary_idx"
+                + " ON public.vector_store USING hnsw ((binary_quantize(embedding)::bit(768)) bit_hamming_ops)");
+        assertEquals(4_000_000.0, meterRegistry.get("rag.retrieval.index.size")
+                .tag("index", "vector_store_embedding_binary_idx").gauge().value());
+        assertEquals(2, meterRegistry.find("rag.retrieval.index.size").gauges().size());
+    }
+
+    @Test
+    void afterSingletonsInstantiated_ToleratesFailureAndStaysUnready() {
+        var retriever = retriever(RetrievalProperties.QuantizationMode.HALFVEC);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString())).thenReturn(768);
+        doThrow(new DataAccessResourceFailureException("type \"halfvec\" does not exist"))
+                .when(jdbcTemplate).execute(any(String.class));
+
+        assertDoesNotThrow(retriever::afterSingletonsInstantiated);
+        verify(jdbcTemplate).execute(contains("USING hnsw (((embedding)::halfvec(768)) halfvec_cosine_ops)"));
+        assertFalse(retriever.isReady());
+        assertThrows(IllegalStateException.class, () -> retriever.retrieve(new Query("reset")));
+    }
+
+    @Test
+    void afterSingletonsInstantiated_ModeNone_DoesNothing() {
+        var retriever = retriever(RetrievalProperties.QuantizationMode.NONE);
+
+        retriever.afterSingletonsInstantiated();
+
+        assertFalse(retriever.isReady());
+        verifyNoInteractions(jdbcTemplate);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void retrieve_OversamplesFirstPassAndRescoresAtFullPrecision() throws Exception {
+        var retriever = readyRetriever(RetrievalProperties.QuantizationMode.BINARY);
+        var params = new RetrievalParams(5, 0.6, "manual.pdf", null, null, null);
+        var sql = ArgumentCaptor.forClass(String.class);
+        when(embeddingModel.embed("reset")).thenReturn(new float[]{0.5f, -1f});
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(invocation ->
+                ((ConnectionCallback<List<Document>>) invocation.getArgument(0)).doInConnection(connection));
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.prepareStatement(sql.capture())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getString("id")).thenReturn("4f0c5c52-7f0e-4c55-9d4c-1b2a3c4d5e6f");
+        when(resultSet.getString("content")).thenReturn("Hold reset for 10 seconds");
+        when(resultSet.getString("metadata")).thenReturn("{\"source\":\"manual.pdf\"}");
+        when(resultSet.getDouble("distance")).thenReturn(0.25);
+
+        List<Document> documents = retriever.retrieve(
+                Query.builder().text("reset").context(Map.of(RetrievalParams.CONTEXT_KEY, params)).build());
+
+        // Candidates by Hamming distance of the bit vectors, best by exact cosine distance
+        assertTrue(sql.getValue().contains("ORDER BY binary_quantize(embedding)::bit(2) <~> binary_quantize(?::vector)::bit(2)"));
+        assertTrue(sql.getValue().contains("WHERE metadata::jsonb @@ ?::jsonpath"));
+        assertTrue(sql.getValue().contains("embedding <=> ?::vector AS distance"));
+        verify(statement).execute("SET LOCAL hnsw.ef_search = 40");
+        verify(preparedStatement).setObject(1, "[0.5,-1.0]");
+        verify(preparedStatement).setObject(2, "$.source == \"manual.pdf\"");
+        verify(preparedStatement).setObject(3, "[0.5,-1.0]");
+        verify(preparedStatement).setObject(4, 20);
+        verify(preparedStatement).setObject(5, 1 - 0.6);
+        verify(preparedStatement).setObject(6, 5);
+        verify(connection).commit();
+        verify(connection).setAutoCommit(true);
+
+        assertEquals(1, documents.size());
+        assertEquals("Hold reset for 10 seconds", documents.get(0).getText());
+        assertEquals("manual.pdf", documents.get(0).getMetadata().get("source"));
+        assertEquals(0.75, documents.get(0).getScore());
+    }
+
+    @Test
+    void toVectorLiteral_FormatsPgvectorText() {
+        assertEquals("[1.0,-0.25,3.5E-4]", PgQuantizedVectorRetriever.toVectorLiteral(new float[]{1f, -0.25f, 3.5e-4f}));
+        assertEquals("[]", PgQuantizedVectorRetriever.toVectorLiteral(new float[0]));
+    }
+
+    private PgQuantizedVectorRetriever retriever(RetrievalProperties.QuantizationMode mode) {
+        var properties = new RetrievalProperties();
+        properties.getHybrid().setEnabled(false);
+        properties.getQuantization().setMode(mode);
+        return new PgQuantizedVectorRetriever(jdbcTemplate, "public", "vector_store", embeddingModel, properties,
+                meterRegistry);
+    }
+
+    private PgQuantizedVectorRetriever readyRetriever(RetrievalProperties.QuantizationMode mode) {
+        var retriever = retriever(mode);
+        when(jdbcTemplate.queryForObject(anyString(), eq(Integer.class), anyString())).thenReturn(2);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class), any(), any())).thenReturn(List.of());
+        retriever.afterSingletonsInstantiated();
+        return retriever;
+    }
+}
@@ -0,0 +1,219 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.IngestionProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.ai.document.Document;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link PgVectorBulkLoader}.
+ */
+@ExtendWith(MockitoExtension.class)
+class PgVectorBulkLoaderTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PGConnection pgConnection;
+
+    @Mock
+    private CopyManager copyManager;
+
+    @Mock
+    private CopyIn copyIn;
+
+    private PgVectorBulkLoader loader;
+
+    @BeforeEach
+    void setUp() {
+        loader = new PgVectorBulkLoader(jdbcTemplate, "public", "vector_store", new SimpleMeterRegistry());
+    }
+
+    @Test
+    void writeCopyData_EncodesBinaryCopyRows() throws IOException {
+        UUID id = UUID.randomUUID();
+        var chunk = Document.builder().id(id.toString()).text("héllo").metadata(Map.of("source", "a.txt")).build();
+        var bytes = new ByteArrayOutputStream();
+
+        PgVectorBulkLoader.writeCopyData(new DataOutputStream(bytes), List.of(chunk), List.of(new float[]{0.5f, -1f}));
+
+        ByteBuffer data = ByteBuffer.wrap(bytes.toByteArray());
+        byte[] signature = new byte[11];
+        data.get(signature);
+        assertArrayEquals(new byte[]{'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0}, signature);
+        assertEquals(0, data.getInt());
+        assertEquals(0, data.getInt());
+
+        assertEquals(4, data.getShort());
+        assertEquals(16, data.getInt());
+        assertEquals(id, new UUID(data.getLong(), data.getLong()));
+        byte[] content = new byte[data.getInt()];
+        data.get(content);
+        assertEquals("héllo", new String(content, StandardCharsets.UTF_8));
+        byte[] metadata = new byte[data.getInt()];
+        data.get(metadata);
+        assertTrue(new String(metadata, StandardCharsets.UTF_8).contains("\"source\":\"a.txt\""));
+        assertEquals(2 * Short.BYTES + 2 * Float.BYTES, data.getInt());
+        assertEquals(2, data.getShort());
+        assertEquals(0, data.getShort());
+        assertEquals(0.5f, data.getFloat());
+        assertEquals(-1f, data.getFloat());
+
+        assertEquals(-1, data.getShort());
+        assertFalse(data.hasRemaining());
+    }
+
+    @Test
+    void writeCopyData_RejectsMismatchedEmbeddings() {
+        var chunk = Document.builder().id(UUID.randomUUID().toString()).text("text").build();
+
+        assertThrows(IllegalArgumentException.class, () -> PgVectorBulkLoader.writeCopyData(
+                new DataOutputStream(new ByteArrayOutputStream()), List.of(chunk), List.of()));
+    }
+
+    @Test
+    void session_StagesRowsAndMergesThemOnClose() throws Exception {
+        stubCopy(1L);
+        when(jdbcTemplate.queryForObject(contains("count(*)"), eq(Long.class))).thenReturn(1L);
+        when(jdbcTemplate.update(contains("ON CONFLICT (id) DO UPDATE"))).thenReturn(1);
+
+        try (var session = loader.begin(new IngestionProperties.BulkLoad())) {
+            session.add(List.of(chunk()), List.of(new float[]{1f}));
+        }
+
+        verify(jdbcTemplate).execute(contains("CREATE UNLOGGED TABLE IF NOT EXISTS public.vector_store_staging"));
+        verify(copyManager).copyIn(startsWith("COPY public.vector_store_staging (id, content, metadata, embedding)"));
+        verify(copyIn).writeToCopy(any(byte[].class), anyInt(), anyInt());
+        verify(connection).commit();
+        verify(jdbcTemplate).update(contains("DELETE FROM public.vector_store_staging"));
+        // Index is kept unless the rebuild threshold is set
+        verify(jdbcTemplate, never()).execute(startsWith("DROP INDEX"));
+    }
+
+    @Test
+    void session_WithoutStagingReplacesRowsInTheVectorTable() throws Exception {
+        stubCopy(1L);
+        var delete = mock(PreparedStatement.class);
+        when(connection.prepareStatement(contains("DELETE FROM public.vector_store WHERE id = ANY"))).thenReturn(delete);
+        when(connection.createArrayOf(eq("uuid"), any())).thenReturn(mock(Array.class));
+        var settings = new IngestionProperties.BulkLoad();
+        settings.setStaging(false);
+
+        try (var session = loader.begin(settings)) {
+            session.add(List.of(chunk()), List.of(new float[]{1f}));
+        }
+
+        verify(delete).executeUpdate();
+        verify(copyManager).copyIn(startsWith("COPY public.vector_store (id, content, metadata, embedding)"));
+        verify(connection).commit();
+        verify(jdbcTemplate, never()).update(contains("ON CONFLICT"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void session_RebuildsHnswIndexAroundLargeMerges() {
+        when(jdbcTemplate.queryForObject(contains("count(*)"), eq(Long.class))).thenReturn(500L);
+        when(jdbcTemplate.query(contains("pg_indexes"), any(RowMapper.class),
+                eq("public"), eq("vector_store")))
+                .thenReturn(List.<Object>of(new String[]{"spring_ai_vector_index",
+                        "CREATE INDEX spring_ai_vector_index ON public.vector_store USING hnsw (embedding vector_cosine_ops)"}));
+        var settings = new IngestionProperties.BulkLoad();
+        settings.setRebuildIndexMinRows(100);
+
+        loader.begin(settings).close();
+
+        var order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute("DROP INDEX IF EXISTS public.spring_ai_vector_index");
+        order.verify(jdbcTemplate).update(contains("ON CONFLICT (id) DO UPDATE"));
+        order.verify(jdbcTemplate).execute(startsWith("CREATE INDEX spring_ai_vector_index"));
+    }
+
+    @Test
+    void mergeLeftovers_MergesRowsStagedByAnEarlierRun() {
+        when(jdbcTemplate.queryForObject(contains("to_regclass"), eq(Boolean.class), eq("public.vector_store_staging")))
+                .thenReturn(true);
+        when(jdbcTemplate.queryForObject(contains("count(*)"), eq(Long.class))).thenReturn(3L);
+        when(jdbcTemplate.update(contains("ON CONFLICT (id) DO UPDATE"))).thenReturn(3);
+
+        assertEquals(3, loader.mergeLeftovers());
+        // Later runs of this process find nothing left: no further queries
+        assertEquals(0, loader.mergeLeftovers());
+        verify(jdbcTemplate, times(1)).queryForObject(contains("to_regclass"), eq(Boolean.class), any());
+    }
+
+    @Test
+    void mergeLeftovers_ChecksAgainAfterARunFailedToMerge() throws Exception {
+        when(jdbcTemplate.queryForObject(contains("to_regclass"), eq(Boolean.class), eq("public.vector_store_staging")))
+                .thenReturn(false);
+        loader.mergeLeftovers();
+        stubCopy(1L);
+        when(jdbcTemplate.queryForObject(contains("count(*)"), eq(Long.class))).thenReturn(1L);
+        when(jdbcTemplate.update(contains("ON CONFLICT (id) DO UPDATE")))
+                .thenThrow(new IllegalStateException("connection reset"))
+                .thenReturn(1);
+
+        var session = loader.begin(new IngestionProperties.BulkLoad());
+        session.add(List.of(chunk()), List.of(new float[]{1f}));
+        assertThrows(IllegalStateException.class, session::close);
+
+        assertEquals(1, loader.mergeLeftovers());
+    }
+
+    @Test
+    void mergeLeftovers_NoStagingTable_DoesNothing() {
+        when(jdbcTemplate.queryForObject(contains("to_regclass"), eq(Boolean.class), eq("public.vector_store_staging")))
+                .thenReturn(false);
+
+        assertEquals(0, loader.mergeLeftovers());
+        verify(jdbcTemplate, never()).update(any(String.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubCopy(long rows) throws Exception {
+        when(jdbcTemplate.execute(any(ConnectionCallback.class)))
+                .thenAnswer(invocation -> ((ConnectionCallback<Long>) invocation.getArgument(0)).doInConnection(connection));
+        when(connection.getAutoCommit()).thenReturn(true);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        when(copyManager.copyIn(any(String.class))).thenReturn(copyIn);
+        when(copyIn.endCopy()).thenReturn(rows);
+    }
+
+    private static Document chunk() {
+        return Document.builder().id(UUID.randomUUID().toString()).text("chunk text").build();
+    }
+}
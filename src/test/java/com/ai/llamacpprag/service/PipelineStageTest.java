@@ -0,0 +1,105 @@
+package com.ai.llamacpprag.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * Unit tests for {@link PipelineStage}.
+ */
+class PipelineStageTest {
+
+    @Test
+    void finish_ProcessesEveryItemBeforeReturning() throws Exception {
+        var processed = new AtomicInteger();
+        var stage = new PipelineStage<Integer>("test", 2, 3);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            stage.start(executor, item -> processed.incrementAndGet(), (item, e) -> {
+            });
+            for (int i = 0; i < 100; i++) {
+                stage.put(i);
+            }
+            stage.finish();
+        }
+
+        assertEquals(100, processed.get());
+    }
+
+    @Test
+    void failingItem_IsReportedAndWorkerKeepsRunning() throws Exception {
+        List<Integer> failed = Collections.synchronizedList(new ArrayList<>());
+        var processed = new AtomicInteger();
+        var stage = new PipelineStage<Integer>("test", 4, 1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            stage.start(executor, item -> {
+                if (item % 2 == 0) throw new IllegalStateException("boom " + item);
+                processed.incrementAndGet();
+            }, (item, e) -> failed.add(item));
+            for (int i = 0; i < 10; i++) {
+                stage.put(i);
+            }
+            stage.finish();
+        }
+
+        assertEquals(5, processed.get());
+        assertEquals(List.of(0, 2, 4, 6, 8), failed.stream().sorted().toList());
+    }
+
+    @Test
+    void itemThrowingError_IsReportedAndWorkerKeepsRunning() throws Exception {
+        List<Integer> failed = Collections.synchronizedList(new ArrayList<>());
+        var processed = new AtomicInteger();
+        var stage = new PipelineStage<Integer>("test", 1, 1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            stage.start(executor, item -> {
+                // E.g. PDFBox recursing through a malformed page tree
+                if (item == 1) throw new StackOverflowError();
+                if (item == 2) throw new AssertionError("boom");
+                processed.incrementAndGet();
+            }, (item, e) -> failed.add(item));
+            for (int i = 0; i < 5; i++) {
+                stage.put(i);
+            }
+            stage.finish();
+        }
+
+        assertEquals(3, processed.get());
+        assertEquals(List.of(1, 2), failed.stream().sorted().toList());
+    }
+
+    @Test
+    void deadWorker_FailsPutAndFinishInsteadOfBlocking() {
+        var stage = new PipelineStage<Integer>("test", 1, 1);
+
+        try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            stage.start(executor, item -> {
+                throw new OutOfMemoryError("Java heap space");
+            }, (item, e) -> {
+            });
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> {
+                var stopped = assertThrows(IllegalStateException.class, () -> {
+                    for (int i = 0; i < 10; i++) {
+                        stage.put(i);
+                    }
+                });
+                assertInstanceOf(OutOfMemoryError.class, stopped.getCause());
+                var failed = assertThrows(ExecutionException.class, stage::finish);
+                assertInstanceOf(OutOfMemoryError.class, failed.getCause());
+            });
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.ai.llamacpprag.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.ai.embedding.EmbeddingRequest;
+import org.springframework.ai.embedding.EmbeddingResponse;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link QueryEmbeddingCache}.
+ */
+@ExtendWith(MockitoExtension.class)
+class QueryEmbeddingCacheTest {
+
+    @Mock
+    private EmbeddingModel delegate;
+
+    @Mock
+    private EmbeddingModel questionModel;
+
+    private Cache<String, float[]> cache;
+
+    private QueryEmbeddingCache model;
+
+    @BeforeEach
+    void setUp() {
+        cache = Caffeine.newBuilder().maximumSize(10).recordStats().build();
+        model = new QueryEmbeddingCache(delegate, questionModel, cache);
+    }
+
+    @Test
+    void embed_ServesCaseAndWhitespaceVariantsFromOneCall() {
+        when(questionModel.embed("How do I reset the router?")).thenReturn(new float[]{0.5f, 1f});
+
+        float[] first = model.embed("How do I reset the router?");
+        float[] second = model.embed("  how do I\treset   the ROUTER? ");
+
+        assertArrayEquals(new float[]{0.5f, 1f}, first);
+        assertArrayEquals(first, second);
+        // The question is embedded as asked, not its normalized key
+        verify(questionModel, times(1)).embed("How do I reset the router?");
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+        // Nor does it reach the persistent chunk cache
+        verifyNoInteractions(delegate);
+    }
+
+    @Test
+    void embed_ReturnsCopiesOfTheCachedVector() {
+        when(questionModel.embed("q")).thenReturn(new float[]{1f});
+
+        model.embed("q")[0] = 42f;
+
+        assertArrayEquals(new float[]{1f}, model.embed("q"));
+    }
+
+    @Test
+    void call_PassesBatchRequestsThrough() {
+        var request = new EmbeddingRequest(List.of("chunk one", "chunk two"), null);
+        var response = new EmbeddingResponse(List.of());
+        when(delegate.call(request)).thenReturn(response);
+        var document = new Document("chunk");
+        when(delegate.embed(document)).thenReturn(new float[]{2f});
+
+        assertSame(response, model.call(request));
+        assertArrayEquals(new float[]{2f}, model.embed(document));
+        assertEquals(0, cache.estimatedSize());
+        verifyNoInteractions(questionModel);
+    }
+
+    @Test
+    void normalize_TrimsLowerCasesAndCollapsesWhitespace() {
+        assertEquals("what is rag?", QueryEmbeddingCache.normalize("\n What  is\tRAG? "));
+    }
+}
@@ -1,20 +1,38 @@
 package com.ai.llamacpprag.service;
 
+import com.ai.llamacpprag.config.RetrievalProperties;
 import com.github.benmanes.caffeine.cache.Cache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.embedding.EmbeddingModel;
+import org.springframework.beans.factory.ObjectProvider;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class RagChatServiceTest {
 
+    private static final String DEFAULT_SCOPE = RetrievalParams.DEFAULTS.resolve(new RetrievalProperties()).scope();
+
     @Mock
     private ChatClient chatClient;
 
@@ -27,11 +45,25 @@ class RagChatServiceTest {
     @Mock
     private ChatClient.CallResponseSpec responseSpec;
 
+    @Mock
+    private ChatClient.StreamResponseSpec streamSpec;
+
+    @Mock
+    private EmbeddingModel embeddingModel;
+
+    @Mock
+    private ObjectProvider<SemanticAnswerCache> semanticProvider;
+
+    @Mock
+    private ObjectProvider<SingleFlight<String>> generationsProvider;
+
     private RagChatService service;
 
     @BeforeEach
     void setUp() {
-        service = new RagChatService(chatClient, cache);
+        // Semantic tier disabled unless a test enables it
+        service = new RagChatService(chatClient, cache, embeddingModel, semanticProvider, new RetrievalProperties(),
+                generationsProvider);
     }
 
     @Test
@@ -46,7 +78,7 @@ class RagChatServiceTest {
 
         assertEquals(expectedAnswer, answer);
         // Verify we looked in cache
-        verify(cache).getIfPresent(contains("what is rag"));
+        verify(cache).getIfPresent(RagChatService.cacheKey("what is rag?", DEFAULT_SCOPE));
         // Verify we DID NOT call chat client
         verifyNoInteractions(chatClient);
     }
@@ -62,6 +94,7 @@ class RagChatServiceTest {
         // Mock ChatClient chain
         when(chatClient.prompt()).thenReturn(requestSpec);
         when(requestSpec.user(anyString())).thenReturn(requestSpec);
+        when(requestSpec.advisors(any(Consumer.class))).thenReturn(requestSpec);
         when(requestSpec.call()).thenReturn(responseSpec);
         when(responseSpec.content()).thenReturn(expectedAnswer);
 
@@ -70,7 +103,7 @@ class RagChatServiceTest {
         assertEquals(expectedAnswer, answer);
 
         // Verify cache put
-        verify(cache).put(contains("what is rag"), eq(expectedAnswer));
+        verify(cache).put(RagChatService.cacheKey("what is rag?", DEFAULT_SCOPE), expectedAnswer);
     }
 
     @Test
@@ -82,6 +115,7 @@ class RagChatServiceTest {
 
         when(chatClient.prompt()).thenReturn(requestSpec);
         when(requestSpec.user(anyString())).thenReturn(requestSpec);
+        when(requestSpec.advisors(any(Consumer.class))).thenReturn(requestSpec);
         when(requestSpec.call()).thenReturn(responseSpec);
         when(responseSpec.content()).thenReturn(badAnswer);
 
@@ -100,6 +134,7 @@ class RagChatServiceTest {
 
         when(chatClient.prompt()).thenReturn(requestSpec);
         when(requestSpec.user(anyString())).thenReturn(requestSpec);
+        when(requestSpec.advisors(any(Consumer.class))).thenReturn(requestSpec);
         when(requestSpec.call()).thenReturn(responseSpec);
         when(responseSpec.content()).thenReturn("   ");
 
@@ -117,6 +152,7 @@ class RagChatServiceTest {
 
         when(chatClient.prompt()).thenReturn(requestSpec);
         when(requestSpec.user(anyString())).thenReturn(requestSpec);
+        when(requestSpec.advisors(any(Consumer.class))).thenReturn(requestSpec);
         when(requestSpec.call()).thenReturn(responseSpec);
         when(responseSpec.content()).thenReturn(null);
 
@@ -126,4 +162,199 @@ class RagChatServiceTest {
         // Should NOT cache null
         verify(cache, never()).put(anyString(), anyString());
     }
+
+    @Test
+    void ask_SemanticHit_ServesAnswerOfSimilarQuestion() {
+        var semantic = withSemanticCache();
+        semantic.put(new float[]{1f, 0f, 0f}, DEFAULT_SCOPE, "Use the reset link on the login page.");
+        when(cache.getIfPresent(anyString())).thenReturn(null);
+        when(embeddingModel.embed("how to reset password?")).thenReturn(new float[]{0.98f, 0.1f, 0f});
+
+        String answer = service.ask("how to reset password?");
+
+        assertEquals("Use the reset link on the login page.", answer);
+        verifyNoInteractions(chatClient);
+        assertEquals(1, semantic.stats().hitCount());
+    }
+
+    @Test
+    void ask_SemanticMiss_StoresAnswerInBothTiers() {
+        var semantic = withSemanticCache();
+        when(cache.getIfPresent(anyString())).thenReturn(null);
+        when(embeddingModel.embed("What is RAG?")).thenReturn(new float[]{0f, 1f, 0f});
+        mockAnswer("Retrieval Augmented Generation");
+
+        service.ask("What is RAG?");
+
+        verify(cache).put(RagChatService.cacheKey("What is RAG?", DEFAULT_SCOPE), "Retrieval Augmented Generation");
+        assertEquals("Retrieval Augmented Generation", semantic.get(new float[]{0f, 1f, 0.05f}, DEFAULT_SCOPE));
+    }
+
+    @Test
+    void ask_EmbeddingFails_StillAnswers() {
+        withSemanticCache();
+        when(cache.getIfPresent(anyString())).thenReturn(null);
+        when(embeddingModel.embed(anyString())).thenThrow(new IllegalStateException("ollama down"));
+        mockAnswer("Retrieval Augmented Generation");
+
+        assertEquals("Retrieval Augmented Generation", service.ask("What is RAG?"));
+    }
+
+    @Test
+    void ask_CorpusChangesDuringGeneration_AnswerNotCached() {
+        var semantic = withSemanticCache();
+        when(cache.getIfPresent(anyString())).thenReturn(null);
+        when(embeddingModel.embed(anyString())).thenReturn(new float[]{1f, 0f, 0f});
+        when(chatClient.prompt()).thenReturn(requestSpec);
+        when(requestSpec.user(anyString())).thenReturn(requestSpec);
+        when(requestSpec.advisors(any(Consumer.class))).thenReturn(requestSpec);
+        when(requestSpec.call()).thenReturn(responseSpec);
+        when(responseSpec.content()).thenAnswer(invocation -> {
+            service.onCorpusChanged(new CorpusChangedEvent(1, 0));
+            return "Answer from the old documents";
+        });
+
+        service.ask("What is RAG?");
+
+        verify(cache, never()).put(anyString(), anyString());
+        assertEquals(0, semantic.stats().size());
+    }
+
+    @Test
+    void onCorpusChanged_ClearsBothTiers() {
+        var semantic = withSemanticCache();
+        semantic.put(new float[]{1f, 0f, 0f}, DEFAULT_SCOPE, "answer");
+
+        service.onCorpusChanged(new CorpusChangedEvent(0, 1));
+
+        verify(cache).invalidateAll();
+        assertEquals(0, semantic.stats().size());
+        assertEquals(1, semantic.stats().invalidationCount());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void ask_PassesResolvedParamsToRetrieval() {
+        when(cache.getIfPresent(anyString())).thenReturn(null);
+        mockAnswer("From the manual");
+        var params = new RetrievalParams(5, null, "manual.pdf", null, 2, 4);
+
+        service.ask("How do I reset it?", params);
+
+        ArgumentCaptor<Consumer<ChatClient.AdvisorSpec>> advisors = ArgumentCaptor.forClass(Consumer.class);
+        verify(requestSpec).advisors(advisors.capture());
+        var spec = mock(ChatClient.AdvisorSpec.class);
+        advisors.getValue().accept(spec);
+        verify(spec).param(RetrievalParams.CONTEXT_KEY, new RetrievalParams(5, 0.50, "manual.pdf", null, 2, 4));
+    }
+
+    @Test
+    void ask_IdenticalQuestionsInFlight_ShareOneGeneration() throws Exception {
+        var meterRegistry = new SimpleMeterRegistry();
+        var generations = new SingleFlight<String>("rag.chat", Duration.ofSeconds(10), meterRegistry);
+        when(generationsProvider.getIfAvailable()).thenReturn(generations);
+        service = new RagChatService(chatClient, cache, embeddingModel, semanticProvider, new RetrievalProperties(),
+                generationsProvider);
+        when(cache.getIfPresent(anyString())).thenReturn(null);
+        var generating = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(chatClient.prompt()).thenReturn(requestSpec);
+        when(requestSpec.user(anyString())).thenReturn(requestSpec);
+        when(requestSpec.advisors(any(Consumer.class))).thenReturn(requestSpec);
+        when(requestSpec.call()).thenReturn(responseSpec);
+        when(responseSpec.content()).thenAnswer(invocation -> {
+            generating.countDown();
+            release.await(10, TimeUnit.SECONDS);
+            return "Retrieval Augmented Generation";
+        });
+
+        var first = CompletableFuture.supplyAsync(() -> service.ask("What is RAG?"));
+        generating.await(10, TimeUnit.SECONDS);
+        var second = new CompletableFuture<String>();
+        var follower = new Thread(() -> second.complete(service.ask("what is  RAG?")));
+        follower.start();
+        // The follower blocks in no other place than waiting for the first answer
+        while (follower.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertEquals("Retrieval Augmented Generation", first.get(10, TimeUnit.SECONDS));
+        assertEquals("Retrieval Augmented Generation", second.get(10, TimeUnit.SECONDS));
+        assertEquals(1.0, meterRegistry.get("rag.chat.coalesced").tag("result", "shared").counter().count());
+        assertEquals(0, generations.inFlight());
+        verify(responseSpec, times(1)).content();
+        verify(cache).put(RagChatService.cacheKey("What is RAG?", DEFAULT_SCOPE), "Retrieval Augmented Generation");
+    }
+
+    @Test
+    void askStream_CacheHit_ReplaysWholeAnswer() {
+        when(cache.getIfPresent(anyString())).thenReturn("Retrieval Augmented Generation");
+
+        List<String> tokens = service.askStream("What is RAG?", RetrievalParams.DEFAULTS).collectList().block();
+
+        assertEquals(List.of("Retrieval Augmented Generation"), tokens);
+        verifyNoInteractions(chatClient);
+    }
+
+    @Test
+    void askStream_CacheMiss_StreamsTokensAndCachesCompleteAnswer() {
+        var semantic = withSemanticCache();
+        when(cache.getIfPresent(anyString())).thenReturn(null);
+        when(embeddingModel.embed("What is RAG?")).thenReturn(new float[]{0f, 1f, 0f});
+        mockStream(Flux.just("Retrieval", " Augmented", " Generation"));
+
+        var stream = service.askStream("What is RAG?", RetrievalParams.DEFAULTS);
+        verify(cache, never()).put(anyString(), anyString());
+        List<String> tokens = stream.collectList().block();
+
+        assertEquals(List.of("Retrieval", " Augmented", " Generation"), tokens);
+        verify(cache).put(RagChatService.cacheKey("What is RAG?", DEFAULT_SCOPE), "Retrieval Augmented Generation");
+        assertEquals("Retrieval Augmented Generation", semantic.get(new float[]{0f, 1f, 0f}, DEFAULT_SCOPE));
+    }
+
+    @Test
+    void askStream_FailedStream_AnswerNotCached() {
+        when(cache.getIfPresent(anyString())).thenReturn(null);
+        mockStream(Flux.concat(Flux.just("Retrieval"), Flux.error(new IllegalStateException("llama.cpp down"))));
+
+        var stream = service.askStream("What is RAG?", RetrievalParams.DEFAULTS);
+
+        assertThrows(IllegalStateException.class, stream::blockLast);
+        verify(cache, never()).put(anyString(), anyString());
+    }
+
+    @Test
+    void cacheKey_DependsOnNormalizedQuestionAndParams() {
+        String key = RagChatService.cacheKey("What is RAG?", DEFAULT_SCOPE);
+
+        assertEquals(key, RagChatService.cacheKey("  what is\tRAG? ", DEFAULT_SCOPE));
+        assertNotEquals(key, RagChatService.cacheKey("What is RAG?",
+                new RetrievalParams(null, null, "manual.pdf", null, null, null).resolve(new RetrievalProperties()).scope()));
+        assertEquals(34, key.length());
+    }
+
+    private SemanticAnswerCache withSemanticCache() {
+        var semantic = new SemanticAnswerCache(0.9, 10, Duration.ofMinutes(5));
+        when(semanticProvider.getIfAvailable()).thenReturn(semantic);
+        service = new RagChatService(chatClient, cache, embeddingModel, semanticProvider, new RetrievalProperties(),
+                generationsProvider);
+        return semantic;
+    }
+
+    private void mockAnswer(String answer) {
+        when(chatClient.prompt()).thenReturn(requestSpec);
+        when(requestSpec.user(anyString())).thenReturn(requestSpec);
+        when(requestSpec.advisors(any(Consumer.class))).thenReturn(requestSpec);
+        when(requestSpec.call()).thenReturn(responseSpec);
+        when(responseSpec.content()).thenReturn(answer);
+    }
+
+    private void mockStream(Flux<String> tokens) {
+        when(chatClient.prompt()).thenReturn(requestSpec);
+        when(requestSpec.user(anyString())).thenReturn(requestSpec);
+        when(requestSpec.advisors(any(Consumer.class))).thenReturn(requestSpec);
+        when(requestSpec.stream()).thenReturn(streamSpec);
+        when(streamSpec.content()).thenReturn(tokens);
+    }
 }
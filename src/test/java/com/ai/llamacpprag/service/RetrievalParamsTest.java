@@ -0,0 +1,55 @@
+package com.ai.llamacpprag.service;
+
+import com.ai.llamacpprag.config.RetrievalProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.rag.Query;
+import org.springframework.ai.vectorstore.filter.FilterExpressionBuilder;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RetrievalParams}.
+ */
+class RetrievalParamsTest {
+
+    @Test
+    void filterExpression_CombinesGivenConditions() {
+        var params = new RetrievalParams(null, null, "manual.pdf", "pdf", 2, 4);
+        var b = new FilterExpressionBuilder();
+
+        var expected = b.and(b.and(b.and(b.eq("source", "manual.pdf"), b.eq("fileType", "pdf")),
+                b.gte("page", 2)), b.lte("page", 4)).build();
+        assertEquals(expected, params.filterExpression());
+        assertNull(RetrievalParams.DEFAULTS.filterExpression());
+    }
+
+    @Test
+    void resolve_FillsDefaultsAndCapsTopK() {
+        var properties = new RetrievalProperties();
+
+        assertEquals(new RetrievalParams(3, 0.50, null, null, null, null), RetrievalParams.DEFAULTS.resolve(properties));
+        assertEquals(20, new RetrievalParams(500, null, null, null, null, null).resolve(properties).topK());
+        // Spelling out the defaults gives the same cache scope as omitting them
+        assertEquals(RetrievalParams.DEFAULTS.resolve(properties).scope(),
+                new RetrievalParams(3, 0.5, " ", null, null, null).resolve(properties).scope());
+    }
+
+    @Test
+    void constructor_RejectsOutOfRangeValues() {
+        assertThrows(IllegalArgumentException.class, () -> new RetrievalParams(0, null, null, null, null, null));
+        assertThrows(IllegalArgumentException.class, () -> new RetrievalParams(null, 1.5, null, null, null, null));
+        assertThrows(IllegalArgumentException.class, () -> new RetrievalParams(null, null, null, null, 0, null));
+        assertThrows(IllegalArgumentException.class, () -> new RetrievalParams(null, null, null, null, 5, 3));
+    }
+
+    @Test
+    void of_ReadsParamsFromQueryContext() {
+        var params = new RetrievalParams(5, null, null, null, null, null);
+
+        assertEquals(params, RetrievalParams.of(Query.builder().text("q")
+                .context(Map.of(RetrievalParams.CONTEXT_KEY, params)).build()));
+        assertEquals(RetrievalParams.DEFAULTS, RetrievalParams.of(new Query("q")));
+    }
+}
@@ -0,0 +1,81 @@
+package com.ai.llamacpprag.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SemanticAnswerCache}.
+ */
+class SemanticAnswerCacheTest {
+
+    private static final String SCOPE = "k=3";
+
+    private final AtomicLong now = new AtomicLong();
+
+    private final SemanticAnswerCache cache = new SemanticAnswerCache(0.9, 3, Duration.ofSeconds(10), now::get);
+
+    @Test
+    void get_ServesMostSimilarQuestionAboveThreshold() {
+        cache.put(new float[]{1f, 0f, 0f, 0f, 0f}, SCOPE, "password");
+        cache.put(new float[]{0f, 1f, 0f, 0f, 0f}, SCOPE, "router");
+
+        // Length does not matter, only direction
+        assertEquals("router", cache.get(new float[]{0.2f, 4f, 0.1f, 0f, 0f}, SCOPE));
+        assertNull(cache.get(new float[]{1f, 1f, 0f, 0f, 0f}, SCOPE), "cosine 0.71 is below the threshold");
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+    }
+
+    @Test
+    void put_ReplacesOldestEntryWhenFull() {
+        cache.put(new float[]{1f, 0f, 0f}, SCOPE, "a");
+        cache.put(new float[]{0f, 1f, 0f}, SCOPE, "b");
+        cache.put(new float[]{0f, 0f, 1f}, SCOPE, "c");
+        cache.put(new float[]{1f, 1f, 0f}, SCOPE, "d");
+
+        assertNull(cache.get(new float[]{1f, 0f, 0f}, SCOPE));
+        assertEquals("d", cache.get(new float[]{1f, 1f, 0f}, SCOPE));
+        assertEquals(3, cache.stats().size());
+    }
+
+    @Test
+    void get_IgnoresExpiredEntries() {
+        cache.put(new float[]{1f, 0f}, SCOPE, "old");
+        now.set(Duration.ofSeconds(11).toNanos());
+
+        assertNull(cache.get(new float[]{1f, 0f}, SCOPE));
+    }
+
+    @Test
+    void clear_DropsEveryEntry() {
+        cache.put(new float[]{1f, 0f}, SCOPE, "answer");
+
+        cache.clear();
+
+        assertNull(cache.get(new float[]{1f, 0f}, SCOPE));
+        assertEquals(0, cache.stats().size());
+        assertEquals(1, cache.stats().invalidationCount());
+    }
+
+    @Test
+    void get_DifferentWidthOrZeroVector_Misses() {
+        cache.put(new float[]{1f, 0f}, SCOPE, "answer");
+
+        assertNull(cache.get(new float[]{1f, 0f, 0f}, SCOPE));
+        assertNull(cache.get(new float[]{0f, 0f}, SCOPE));
+    }
+
+    @Test
+    void get_OnlyMatchesEntriesOfTheSameScope() {
+        cache.put(new float[]{1f, 0f}, SCOPE, "any document");
+        cache.put(new float[]{1f, 0f}, "k=3|source=manual.pdf", "manual only");
+
+        assertEquals("manual only", cache.get(new float[]{1f, 0f}, "k=3|source=manual.pdf"));
+        assertEquals("any document", cache.get(new float[]{1f, 0f}, SCOPE));
+        assertNull(cache.get(new float[]{1f, 0f}, "k=5"));
+    }
+}
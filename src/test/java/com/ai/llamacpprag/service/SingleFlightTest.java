@@ -0,0 +1,133 @@
+package com.ai.llamacpprag.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link SingleFlight}.
+ */
+class SingleFlightTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void run_CallersOfSameKeyShareOneRun() throws Exception {
+        var flights = new SingleFlight<String>("test", Duration.ofSeconds(10), meterRegistry);
+        var runs = new AtomicInteger();
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+
+        var leader = CompletableFuture.supplyAsync(() -> flights.run("q", () -> {
+            runs.incrementAndGet();
+            started.countDown();
+            await(release);
+            return "answer";
+        }));
+        started.await(10, TimeUnit.SECONDS);
+        List<CompletableFuture<String>> followers = new ArrayList<>();
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            var follower = new CompletableFuture<String>();
+            var thread = new Thread(() -> follower.complete(flights.run("q", () -> {
+                runs.incrementAndGet();
+                return "own answer";
+            })));
+            followers.add(follower);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            while (thread.getState() != Thread.State.TIMED_WAITING) {
+                Thread.sleep(1);
+            }
+        }
+        assertEquals(1.0, meterRegistry.get("test.in-flight").gauge().value());
+        release.countDown();
+
+        assertEquals("answer", leader.get(10, TimeUnit.SECONDS));
+        for (var follower : followers) {
+            assertEquals("answer", follower.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(1, runs.get());
+        assertEquals(3.0, meterRegistry.get("test.coalesced").tag("result", "shared").counter().count());
+        assertEquals(0, flights.inFlight());
+    }
+
+    @Test
+    void run_DifferentKeysAndLaterCallsRunAgain() {
+        var flights = new SingleFlight<String>("test", Duration.ofSeconds(10), meterRegistry);
+        var runs = new AtomicInteger();
+
+        assertEquals("run 1", flights.run("a", () -> "run " + runs.incrementAndGet()));
+        assertEquals("run 2", flights.run("b", () -> "run " + runs.incrementAndGet()));
+        assertEquals("run 3", flights.run("a", () -> "run " + runs.incrementAndGet()));
+        assertEquals(0.0, meterRegistry.get("test.coalesced").tag("result", "shared").counter().count());
+    }
+
+    @Test
+    void run_FollowersReceiveTheLeadersException() throws Exception {
+        var flights = new SingleFlight<String>("test", Duration.ofSeconds(10), meterRegistry);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var leader = CompletableFuture.runAsync(() -> flights.run("q", () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("llama.cpp down");
+        }));
+        started.await(10, TimeUnit.SECONDS);
+        var failure = new CompletableFuture<RuntimeException>();
+        var follower = new Thread(() -> {
+            try {
+                flights.run("q", () -> "own answer");
+            } catch (RuntimeException e) {
+                failure.complete(e);
+            }
+        });
+        follower.start();
+        while (follower.getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+
+        assertEquals("llama.cpp down", failure.get(10, TimeUnit.SECONDS).getMessage());
+        assertThrows(Exception.class, () -> leader.get(10, TimeUnit.SECONDS));
+        assertEquals(0, flights.inFlight());
+    }
+
+    @Test
+    void run_FollowerStopsWaitingAfterTimeoutAndRunsItself() throws Exception {
+        var flights = new SingleFlight<String>("test", Duration.ofMillis(50), meterRegistry);
+        var started = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var leader = CompletableFuture.supplyAsync(() -> flights.run("q", () -> {
+            started.countDown();
+            await(release);
+            return "slow answer";
+        }));
+        started.await(10, TimeUnit.SECONDS);
+
+        assertEquals("own answer", flights.run("q", () -> "own answer"));
+        assertEquals(1.0, meterRegistry.get("test.coalesced").tag("result", "timeout").counter().count());
+
+        release.countDown();
+        assertEquals("slow answer", leader.get(10, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
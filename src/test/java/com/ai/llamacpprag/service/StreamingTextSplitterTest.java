@@ -0,0 +1,99 @@
+package com.ai.llamacpprag.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link StreamingTextSplitter}.
+ */
+class StreamingTextSplitterTest {
+
+    private static final List<Character> MARKS = List.of('.', '\n', '?', '!');
+
+    private final StreamingTextSplitter splitter = new StreamingTextSplitter(350, 200, 50, true, MARKS);
+
+    @Test
+    void split_MatchesTokenTextSplitterWithSameSettings() throws IOException {
+        String text = corpus(120);
+        var reference = new TokenTextSplitter(350, 200, 50, 10_000, true, MARKS);
+        List<String> expected = reference.apply(List.of(new Document(text))).stream().map(Document::getText).toList();
+
+        List<String> chunks = new ArrayList<>();
+        int count = splitter.split(new StringReader(text), chunks::add);
+
+        assertEquals(expected, chunks);
+        assertEquals(chunks.size(), count);
+        assertTrue(count > 5);
+    }
+
+    @Test
+    void split_DoesNotDependOnHowTheReaderDeliversText() throws IOException {
+        String text = corpus(40);
+        List<String> whole = new ArrayList<>();
+        List<String> trickled = new ArrayList<>();
+
+        splitter.split(new StringReader(text), whole::add);
+        splitter.split(new OneCharReader(text), trickled::add);
+
+        assertEquals(whole, trickled);
+    }
+
+    @Test
+    void split_ChunksEndOnPunctuationAndDropShortTails() throws IOException {
+        List<String> chunks = new ArrayList<>();
+
+        splitter.split(new StringReader(corpus(30) + "\n\nok"), chunks::add);
+
+        for (String chunk : chunks) {
+            char last = chunk.charAt(chunk.length() - 1);
+            assertTrue(MARKS.contains(last), "Chunk should end on punctuation: " + chunk);
+        }
+        assertFalse(chunks.get(chunks.size() - 1).endsWith("ok"));
+    }
+
+    @Test
+    void split_BlankTextHasNoChunks() throws IOException {
+        assertEquals(0, splitter.split(new StringReader("  \n\n  "), chunk -> fail("No chunk expected")));
+    }
+
+    private static String corpus(int sentences) {
+        var text = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            text.append("Sentence number ").append(i)
+                    .append(" explains how the ingestion pipeline reads, splits and embeds documents");
+            text.append(i % 7 == 6 ? "?\n" : ". ");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reader returning one character per call, like a slow network stream.
+     */
+    private static final class OneCharReader extends Reader {
+
+        private final StringReader delegate;
+
+        private OneCharReader(String text) {
+            this.delegate = new StringReader(text);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return delegate.read(buffer, offset, Math.min(1, length));
+        }
+
+        @Override
+        public void close() {
+            delegate.close();
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.ai.llamacpprag.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.document.Document;
+import org.springframework.ai.transformer.splitter.TokenTextSplitter;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link TokenChunker}.
+ */
+class TokenChunkerTest {
+
+    private static final List<Character> MARKS = List.of('.', '\n', '?', '!');
+
+    @Test
+    void split_MatchesTokenTextSplitterWithSameSettings() {
+        String text = corpus(120);
+
+        assertEquals(reference(350, 200, 50, 10_000, true, text),
+                new TokenChunker(350, 200, 50, 10_000, true, MARKS).split(text));
+    }
+
+    @Test
+    void split_MatchesTokenTextSplitterWithoutSeparators() {
+        String text = corpus(60).replace("?\n", "?" + System.lineSeparator());
+
+        assertEquals(reference(120, 100, 20, 10_000, false, text),
+                new TokenChunker(120, 100, 20, 10_000, false, MARKS).split(text));
+    }
+
+    @Test
+    void split_MatchesTokenTextSplitterOnMultiByteText() {
+        var text = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            text.append("Größenänderung 日本語のテキスト ").append(i).append(" café ☕ 🚀 naïve résumé");
+            text.append(i % 5 == 4 ? "!\n" : " ");
+        }
+
+        assertEquals(reference(64, 40, 10, 10_000, true, text.toString()),
+                new TokenChunker(64, 40, 10, 10_000, true, MARKS).split(text.toString()));
+    }
+
+    @Test
+    void split_RestBecomesOneChunkPastTheChunkLimit() {
+        String text = corpus(60);
+
+        List<String> chunks = new TokenChunker(100, 50, 10, 3, true, MARKS).split(text);
+
+        assertEquals(reference(100, 50, 10, 3, true, text), chunks);
+        assertEquals(4, chunks.size());
+        assertTrue(chunks.get(3).endsWith("Sentence number 59 explains how the ingestion pipeline reads, splits and embeds documents."),
+                "Last chunk should hold the rest of the text");
+    }
+
+    @Test
+    void split_BlankTextHasNoChunks() {
+        var chunker = new TokenChunker(350, 200, 50, 10_000, true, MARKS);
+
+        assertTrue(chunker.split("  \n\n  ").isEmpty());
+        assertTrue(chunker.split("").isEmpty());
+    }
+
+    @Test
+    void apply_CopiesSourceMetadataToEveryChunk() {
+        var chunker = new TokenChunker(100, 50, 10, 10_000, true, MARKS);
+        var document = new Document(corpus(30), Map.of("source", "a.txt", "page", 3));
+
+        List<Document> chunks = chunker.apply(List.of(document));
+
+        assertTrue(chunks.size() > 1);
+        for (Document chunk : chunks) {
+            assertEquals("a.txt", chunk.getMetadata().get("source"));
+            assertEquals(3, chunk.getMetadata().get("page"));
+        }
+    }
+
+    @Test
+    void cutAtPunctuation_OnlyCutsPastMinimumSize() {
+        var chunker = new TokenChunker(100, 10, 5, 10_000, true, MARKS);
+
+        assertEquals(25, chunker.cutAtPunctuation("Short. A longer sentence. tail", 0, 30));
+        assertEquals(9, chunker.cutAtPunctuation("Hi. there", 0, 9));
+    }
+
+    private static List<String> reference(int chunkSize, int minChunkSizeChars, int minChunkLengthToEmbed,
+                                          int maxNumChunks, boolean keepSeparator, String text) {
+        var splitter = new TokenTextSplitter(chunkSize, minChunkSizeChars, minChunkLengthToEmbed, maxNumChunks,
+                keepSeparator, MARKS);
+        return splitter.apply(List.of(new Document(text))).stream().map(Document::getText).toList();
+    }
+
+    private static String corpus(int sentences) {
+        var text = new StringBuilder();
+        for (int i = 0; i < sentences; i++) {
+            text.append("Sentence number ").append(i)
+                    .append(" explains how the ingestion pipeline reads, splits and embeds documents");
+            text.append(i % 7 == 6 ? "?\n" : ". ");
+        }
+        return text.toString();
+    }
+}
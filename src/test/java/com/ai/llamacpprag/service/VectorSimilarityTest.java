@@ -0,0 +1,161 @@
+package com.ai.llamacpprag.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link VectorSimilarity} and its SIMD and scalar kernels.
+ */
+class VectorSimilarityTest {
+
+    /**
+     * Lengths around every vector width, plus nomic-embed-text's 768.
+     */
+    private static final int[] LENGTHS = {1, 3, 7, 8, 9, 15, 16, 17, 31, 33, 63, 65, 100, 768};
+
+    private static final List<SimilarityKernel> KERNELS = List.of(new ScalarSimilarityKernel(),
+            new SimdSimilarityKernel());
+
+    private final Random random = new Random(7);
+
+    @Test
+    void floatKernels_MatchDoublePrecisionReference() {
+        for (SimilarityKernel kernel : KERNELS) {
+            for (int length : LENGTHS) {
+                float[] a = randomFloats(length);
+                float[] matrix = randomFloats(length + 5);
+                float[] b = new float[length];
+                System.arraycopy(matrix, 5, b, 0, length);
+                String name = kernel.getClass().getSimpleName() + " length " + length;
+
+                double dot = 0, normA = 0, normB = 0, distance = 0;
+                for (int i = 0; i < length; i++) {
+                    dot += (double) a[i] * b[i];
+                    normA += (double) a[i] * a[i];
+                    normB += (double) b[i] * b[i];
+                    distance += ((double) a[i] - b[i]) * ((double) a[i] - b[i]);
+                }
+
+                assertEquals(dot, kernel.dot(a, matrix, 5), 1e-4 * length, name);
+                assertEquals(dot / Math.sqrt(normA * normB), kernel.cosine(a, b), 1e-5, name);
+                assertEquals(distance, kernel.squareDistance(a, b), 1e-4 * length, name);
+            }
+        }
+    }
+
+    @Test
+    void byteKernels_MatchIntegerReference() {
+        for (SimilarityKernel kernel : KERNELS) {
+            for (int length : LENGTHS) {
+                byte[] a = randomBytes(length);
+                byte[] matrix = randomBytes(length + 3);
+                byte[] b = new byte[length];
+                System.arraycopy(matrix, 3, b, 0, length);
+                String name = kernel.getClass().getSimpleName() + " length " + length;
+
+                int dot = 0;
+                long normA = 0, normB = 0;
+                long distance = 0;
+                for (int i = 0; i < length; i++) {
+                    dot += a[i] * b[i];
+                    normA += a[i] * a[i];
+                    normB += b[i] * b[i];
+                    distance += (a[i] - b[i]) * (a[i] - b[i]);
+                }
+
+                assertEquals(dot, kernel.dot(a, matrix, 3), name);
+                assertEquals(dot / Math.sqrt((double) normA * normB), kernel.cosine(a, b), 1e-5, name);
+                assertEquals(distance, kernel.squareDistance(a, b), name);
+            }
+        }
+    }
+
+    @Test
+    void byteSquareDistance_DoesNotOverflowOnLongVectors() {
+        // 40,000 × 255² exceeds Integer.MAX_VALUE
+        byte[] a = new byte[40_000];
+        byte[] b = new byte[40_000];
+        Arrays.fill(a, (byte) 127);
+        Arrays.fill(b, (byte) -128);
+
+        for (SimilarityKernel kernel : KERNELS) {
+            assertEquals(40_000L * 255 * 255, kernel.squareDistance(a, b), kernel.getClass().getSimpleName());
+        }
+        assertEquals((float) Math.sqrt(40_000.0 * 255 * 255), VectorSimilarity.l2(a, b), 1f);
+    }
+
+    @Test
+    void dot_ReadsLittleEndianFloatsFromMemory() {
+        float[] a = randomFloats(37);
+        var buffer = ByteBuffer.allocate(8 + a.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        float expected = 0;
+        for (int i = 0; i < a.length; i++) {
+            float value = i - 18;
+            buffer.putFloat(8 + i * Float.BYTES, value);
+            expected += a[i] * value;
+        }
+        MemorySegment memory = MemorySegment.ofBuffer(buffer);
+
+        for (SimilarityKernel kernel : KERNELS) {
+            assertEquals(expected, kernel.dot(a, memory, 8), 1e-3, kernel.getClass().getSimpleName());
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> VectorSimilarity.dot(a, memory, 12));
+    }
+
+    @Test
+    void dot_ScoresOneVectorAgainstEveryRow() {
+        float[] query = {1f, 2f, 3f};
+        float[] matrix = {1f, 0f, 0f, 0f, 1f, 1f, 2f, 2f, 2f, 9f, 9f, 9f};
+        float[] scores = new float[4];
+
+        VectorSimilarity.dot(query, matrix, 3, scores);
+
+        assertArrayEquals(new float[]{1f, 5f, 12f, 0f}, scores);
+
+        int[] byteScores = new int[2];
+        VectorSimilarity.dot(new byte[]{1, -2}, new byte[]{3, 4, -5, -6}, 2, byteScores);
+        assertArrayEquals(new int[]{-5, 7}, byteScores);
+    }
+
+    @Test
+    void cosineAndL2_KnownValues() {
+        assertEquals((float) Math.sqrt(0.5), VectorSimilarity.cosine(new float[]{1f, 0f}, new float[]{1f, 1f}), 1e-6);
+        assertEquals(0f, VectorSimilarity.cosine(new float[]{0f, 0f}, new float[]{1f, 1f}));
+        assertEquals(5f, VectorSimilarity.l2(new float[]{0f, 0f}, new float[]{3f, 4f}), 1e-6);
+        assertEquals(-1f, VectorSimilarity.cosine(new byte[]{2, -4}, new byte[]{-1, 2}), 1e-6);
+        assertEquals(5f, VectorSimilarity.l2(new byte[]{1, 1}, new byte[]{4, 5}), 1e-6);
+    }
+
+    @Test
+    void rejectsMismatchedSizes() {
+        assertThrows(IllegalArgumentException.class, () -> VectorSimilarity.dot(new float[2], new float[3]));
+        assertThrows(IllegalArgumentException.class, () -> VectorSimilarity.cosine(new byte[2], new byte[3]));
+        assertThrows(IndexOutOfBoundsException.class, () -> VectorSimilarity.dot(new float[2], new float[3], 2));
+        assertThrows(IllegalArgumentException.class,
+                () -> VectorSimilarity.dot(new float[2], new float[4], 3, new float[3]));
+        assertThrows(IllegalArgumentException.class,
+                () -> VectorSimilarity.dot(new float[2], new float[6], 3, new float[2]));
+    }
+
+    private float[] randomFloats(int length) {
+        float[] vector = new float[length];
+        for (int i = 0; i < length; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] vector = new byte[length];
+        random.nextBytes(vector);
+        return vector;
+    }
+}
@@ -1,5 +1,6 @@
 package com.ai.llamacpprag.web;
 
+import com.ai.llamacpprag.service.SemanticAnswerCache;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import org.junit.jupiter.api.BeforeEach;
@@ -7,7 +8,9 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
 
+import java.time.Duration;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -20,11 +23,17 @@ class CacheControllerTest {
     @Mock
     private Cache<String, String> cache;
 
+    @Mock
+    private Cache<String, float[]> queryEmbeddingCache;
+
+    @Mock
+    private ObjectProvider<SemanticAnswerCache> semanticAnswerCache;
+
     private CacheController controller;
 
     @BeforeEach
     void setUp() {
-        controller = new CacheController(cache);
+        controller = new CacheController(cache, queryEmbeddingCache, semanticAnswerCache);
     }
 
     @Test
@@ -50,4 +59,44 @@ class CacheControllerTest {
         assertEquals(0.66, result.get("hitRate"));
         assertEquals(100L, result.get("estimatedSize"));
     }
+
+    @Test
+    void queryEmbeddingStats_ReportsQueryEmbeddingCache() {
+        CacheStats stats = mock(CacheStats.class);
+        when(stats.hitCount()).thenReturn(7L);
+        when(stats.missCount()).thenReturn(3L);
+        when(stats.hitRate()).thenReturn(0.7);
+        when(queryEmbeddingCache.stats()).thenReturn(stats);
+        when(queryEmbeddingCache.estimatedSize()).thenReturn(3L);
+
+        Map<String, Object> result = controller.queryEmbeddingStats();
+
+        assertEquals(7L, result.get("hitCount"));
+        assertEquals(3L, result.get("missCount"));
+        assertEquals(0.7, result.get("hitRate"));
+        assertEquals(3L, result.get("estimatedSize"));
+    }
+
+    @Test
+    void semanticStats_ReportsSemanticHitsSeparately() {
+        var semantic = new SemanticAnswerCache(0.9, 10, Duration.ofMinutes(5));
+        semantic.put(new float[]{1f, 0f}, "k=3", "answer");
+        semantic.get(new float[]{1f, 0.1f}, "k=3"); // hit
+        semantic.get(new float[]{0f, 1f}, "k=3");   // miss
+        when(semanticAnswerCache.getIfAvailable()).thenReturn(semantic);
+        controller = new CacheController(cache, queryEmbeddingCache, semanticAnswerCache);
+
+        Map<String, Object> result = controller.semanticStats();
+
+        assertEquals(true, result.get("enabled"));
+        assertEquals(1L, result.get("hitCount"));
+        assertEquals(1L, result.get("missCount"));
+        assertEquals(0.5, result.get("hitRate"));
+        assertEquals(1L, result.get("estimatedSize"));
+    }
+
+    @Test
+    void semanticStats_Disabled() {
+        assertEquals(Map.of("enabled", false), controller.semanticStats());
+    }
 }
@@ -0,0 +1,36 @@
+package com.ai.llamacpprag.web;
+
+import com.ai.llamacpprag.service.GenerationRejectedException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Unit tests for {@link GenerationRejectedHandler}.
+ */
+class GenerationRejectedHandlerTest {
+
+    private final GenerationRejectedHandler handler = new GenerationRejectedHandler();
+
+    @Test
+    void generationRejected_TooManyRequestsWithRetryAfter() {
+        var response = handler.generationRejected(
+                new GenerationRejectedException("All 4 generation slots busy", Duration.ofSeconds(30)));
+
+        assertEquals(429, response.getStatusCode().value());
+        assertEquals("30", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(Map.of("error", "All 4 generation slots busy", "retryAfterSeconds", 30L), response.getBody());
+    }
+
+    @Test
+    void generationRejected_SubSecondEstimate_RetryAfterOneSecond() {
+        var response = handler.generationRejected(
+                new GenerationRejectedException("busy", Duration.ofMillis(200)));
+
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+}
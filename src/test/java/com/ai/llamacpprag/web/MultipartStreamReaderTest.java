@@ -0,0 +1,107 @@
+package com.ai.llamacpprag.web;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link MultipartStreamReader}.
+ */
+class MultipartStreamReaderTest {
+
+    private static final String BOUNDARY = "----FormBoundary7MA4YWxkTrZu0gW";
+
+    @Test
+    void next_ReadsFieldsAndFilesInOrder() throws IOException {
+        byte[] file = new byte[300_000];
+        new Random(7).nextBytes(file);
+        var reader = new MultipartStreamReader(new ByteArrayInputStream(body(file)), BOUNDARY);
+
+        var field = reader.next();
+        assertEquals("note", field.name());
+        assertNull(field.filename());
+        assertEquals("hello", new String(field.content().readAllBytes(), StandardCharsets.UTF_8));
+
+        var pdf = reader.next();
+        assertEquals("files", pdf.name());
+        assertEquals("dir/ré sumé.pdf", pdf.filename());
+        assertEquals("application/pdf", pdf.contentType());
+        assertArrayEquals(file, pdf.content().readAllBytes());
+
+        var text = reader.next();
+        assertEquals("b.txt", text.filename());
+        assertEquals("line one\r\nline two", new String(text.content().readAllBytes(), StandardCharsets.UTF_8));
+
+        assertNull(reader.next());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void next_SkipsUnreadContentAndHandlesTinyReads() throws IOException {
+        byte[] file = ("almost a delimiter: \r\n--" + BOUNDARY.substring(1) + " but not quite").getBytes(StandardCharsets.UTF_8);
+        var reader = new MultipartStreamReader(new TrickleInputStream(body(file)), BOUNDARY);
+
+        reader.next();
+        assertArrayEquals(file, reader.next().content().readAllBytes());
+        var text = reader.next();
+        assertEquals("b.txt", text.filename());
+        assertNull(reader.next());
+    }
+
+    @Test
+    void next_FailsOnTruncatedBody() {
+        byte[] body = ("--" + BOUNDARY + "\r\nContent-Disposition: form-data; name=\"f\"; filename=\"a.txt\"\r\n\r\ncut off")
+                .getBytes(StandardCharsets.UTF_8);
+        var reader = new MultipartStreamReader(new ByteArrayInputStream(body), BOUNDARY);
+
+        assertThrows(IOException.class, () -> reader.next().content().readAllBytes());
+    }
+
+    @Test
+    void boundaryOf_ParsesQuotedAndPlainBoundaries() {
+        assertEquals("abc", MultipartStreamReader.boundaryOf("multipart/form-data; boundary=abc"));
+        assertEquals("a b", MultipartStreamReader.boundaryOf("multipart/form-data; charset=UTF-8; boundary=\"a b\""));
+        assertNull(MultipartStreamReader.boundaryOf("multipart/form-data"));
+        assertNull(MultipartStreamReader.boundaryOf("application/json"));
+        assertNull(MultipartStreamReader.boundaryOf(null));
+    }
+
+    private static byte[] body(byte[] file) throws IOException {
+        var body = new ByteArrayOutputStream();
+        body.write(("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"note\"\r\n\r\n"
+                + "hello\r\n"
+                + "--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"dir/ré sumé.pdf\"\r\n"
+                + "Content-Type: application/pdf\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+        body.write(file);
+        body.write(("\r\n--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"b.txt\"\r\n\r\n"
+                + "line one\r\nline two\r\n"
+                + "--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.UTF_8));
+        return body.toByteArray();
+    }
+
+    /**
+     * Returns at most three bytes per read, like a slow upload.
+     */
+    private static final class TrickleInputStream extends FilterInputStream {
+
+        private TrickleInputStream(byte[] content) {
+            super(new ByteArrayInputStream(content));
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(3, length));
+        }
+    }
+}
@@ -1,24 +1,48 @@
 package com.ai.llamacpprag.web;
 
+import com.ai.llamacpprag.config.IngestionProperties;
 import com.ai.llamacpprag.service.DocumentIngestionService;
+import com.ai.llamacpprag.service.GenerationRejectedException;
+import com.ai.llamacpprag.service.IngestionJobService;
 import com.ai.llamacpprag.service.RagChatService;
+import com.ai.llamacpprag.service.RetrievalParams;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import reactor.core.publisher.Flux;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
 @ExtendWith(MockitoExtension.class)
 class RagControllerTest {
 
+    @Mock
+    private IngestionJobService ingestionJobs;
+
+    private final IngestionProperties ingestionProperties = new IngestionProperties();
+
     @Mock
     private DocumentIngestionService ingestionService;
 
@@ -29,19 +53,111 @@ class RagControllerTest {
 
     @BeforeEach
     void setUp() {
-        controller = new RagController(ingestionService, chatService);
+        controller = new RagController(ingestionJobs, ingestionProperties, ingestionService, chatService);
     }
 
     @Test
-    void ingest_Success() throws Exception {
-        var result = new DocumentIngestionService.IngestResult(5, 10, List.of("warning1"));
+    void ingest_ReturnsAcceptedWithJobLocation() {
+        var job = snapshot("job-1", IngestionJobService.JobStatus.QUEUED);
 
-        when(ingestionService.ingestLocalFolder(any(Path.class))).thenReturn(result);
+        when(ingestionJobs.submit(Path.of("./data"))).thenReturn(job);
 
         ResponseEntity<?> response = controller.ingest();
 
+        assertEquals(202, response.getStatusCode().value());
+        assertEquals("/api/ingest/job-1", response.getHeaders().getLocation().toString());
+        assertEquals(job, response.getBody());
+    }
+
+    @Test
+    void ingestStatus_KnownJob() {
+        var job = snapshot("job-1", IngestionJobService.JobStatus.RUNNING);
+
+        when(ingestionJobs.find("job-1")).thenReturn(Optional.of(job));
+
+        ResponseEntity<?> response = controller.ingestStatus("job-1");
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(job, response.getBody());
+    }
+
+    @Test
+    void ingestStatus_UnknownJob() {
+        when(ingestionJobs.find("missing")).thenReturn(Optional.empty());
+
+        ResponseEntity<?> response = controller.ingestStatus("missing");
+
+        assertEquals(404, response.getStatusCode().value());
+    }
+
+    @Test
+    void cancelIngest_KnownJob() {
+        var job = snapshot("job-1", IngestionJobService.JobStatus.CANCELLED);
+
+        when(ingestionJobs.cancel("job-1")).thenReturn(Optional.of(job));
+
+        ResponseEntity<?> response = controller.cancelIngest("job-1");
+
         assertEquals(200, response.getStatusCode().value());
-        assertEquals(result, response.getBody());
+        assertEquals(job, response.getBody());
+    }
+
+    @Test
+    void cancelIngest_UnknownJob() {
+        when(ingestionJobs.cancel("missing")).thenReturn(Optional.empty());
+
+        ResponseEntity<?> response = controller.cancelIngest("missing");
+
+        assertEquals(404, response.getStatusCode().value());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void uploadDocuments_StreamsOneLinePerFileThenTotals() throws Exception {
+        var request = new MockHttpServletRequest("POST", "/api/documents");
+        request.setContentType("multipart/form-data; boundary=xyz");
+        request.setContent(("--xyz\r\n"
+                + "Content-Disposition: form-data; name=\"comment\"\r\n\r\nignored\r\n"
+                + "--xyz\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"a.txt\"\r\n\r\nalpha\r\n"
+                + "--xyz\r\n"
+                + "Content-Disposition: form-data; name=\"files\"; filename=\"b.md\"\r\n\r\nbeta\r\n"
+                + "--xyz--\r\n").getBytes(StandardCharsets.UTF_8));
+        List<String> received = new ArrayList<>();
+        when(ingestionService.ingestUploads(any(), any())).thenAnswer(invocation -> {
+            DocumentIngestionService.UploadSource uploads = invocation.getArgument(0);
+            Consumer<DocumentIngestionService.FileResult> results = invocation.getArgument(1);
+            for (var upload = uploads.next(); upload != null; upload = uploads.next()) {
+                received.add(upload.filename() + "=" + new String(upload.content().readAllBytes(), StandardCharsets.UTF_8));
+                results.accept(new DocumentIngestionService.FileResult("upload:" + upload.filename(),
+                        DocumentIngestionService.FileStatus.INGESTED, 1, null));
+            }
+            return new DocumentIngestionService.IngestResult(2, 2, List.of());
+        });
+
+        ResponseEntity<StreamingResponseBody> response = controller.uploadDocuments(request);
+        var out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        assertEquals(List.of("a.txt=alpha", "b.md=beta"), received);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[0].contains("\"source\":\"upload:a.txt\"") && lines[0].contains("\"INGESTED\""));
+        assertTrue(lines[1].contains("upload:b.md"));
+        assertTrue(lines[2].contains("\"documents\":2"));
+    }
+
+    @Test
+    void uploadDocuments_RejectsRequestWithoutBoundary() {
+        var request = new MockHttpServletRequest("POST", "/api/documents");
+        request.setContentType("multipart/form-data");
+
+        ResponseEntity<StreamingResponseBody> response = controller.uploadDocuments(request);
+
+        assertEquals(400, response.getStatusCode().value());
+        verifyNoInteractions(ingestionService);
     }
 
     @Test
@@ -49,13 +165,82 @@ class RagControllerTest {
         String query = "Hello";
         String answer = "World";
 
-        when(chatService.ask(query)).thenReturn(answer);
+        when(chatService.ask(query, RetrievalParams.DEFAULTS)).thenReturn(answer);
 
-        ResponseEntity<?> response = controller.chat(query);
+        ResponseEntity<?> response = controller.chat(query, null, null, null, null, null, null);
 
         assertEquals(200, response.getStatusCode().value());
         RagController.ChatResponse body = (RagController.ChatResponse) response.getBody();
         assertEquals(query, body.question());
         assertEquals(answer, body.answer());
     }
+
+    @Test
+    void chat_PassesRetrievalParams() {
+        when(chatService.ask("Reset?", new RetrievalParams(5, 0.7, "manual.pdf", "pdf", 2, 4))).thenReturn("Hold the button");
+
+        ResponseEntity<?> response = controller.chat("Reset?", 5, 0.7, "manual.pdf", "pdf", 2, 4);
+
+        assertEquals("Hold the button", ((RagController.ChatResponse) response.getBody()).answer());
+    }
+
+    @Test
+    void chat_InvalidPageRange_BadRequest() {
+        ResponseEntity<?> response = controller.chat("Reset?", null, null, null, null, 4, 2);
+
+        assertEquals(400, response.getStatusCode().value());
+        verifyNoInteractions(chatService);
+    }
+
+    @Test
+    void chatStream_SendsTokenEventsThenWholeAnswer() {
+        when(chatService.askStream("Hello", RetrievalParams.DEFAULTS)).thenReturn(Flux.just("Wor", "ld"));
+
+        var response = controller.chatStream("Hello", null, null, null, null, null, null);
+        List<ServerSentEvent<Object>> events = response.getBody().collectList().block();
+
+        assertEquals(200, response.getStatusCode().value());
+        assertEquals(List.of("token", "token", "done"), events.stream().map(ServerSentEvent::event).toList());
+        assertEquals(new RagController.ChatToken("Wor"), events.get(0).data());
+        assertEquals(new RagController.ChatToken("ld"), events.get(1).data());
+        assertEquals(new RagController.ChatResponse("Hello", "World"), events.get(2).data());
+    }
+
+    @Test
+    void chatStream_GenerationFails_SendsErrorEvent() {
+        when(chatService.askStream("Hello", RetrievalParams.DEFAULTS))
+                .thenReturn(Flux.concat(Flux.just("Wor"), Flux.error(new IllegalStateException("llama.cpp down"))));
+
+        List<ServerSentEvent<Object>> events = controller.chatStream("Hello", null, null, null, null, null, null)
+                .getBody().collectList().block();
+
+        assertEquals(List.of("token", "error"), events.stream().map(ServerSentEvent::event).toList());
+        assertEquals(Map.of("error", "llama.cpp down"), events.get(1).data());
+    }
+
+    @Test
+    void chatStream_NoGenerationSlot_SendsErrorEventWithRetryAfter() {
+        when(chatService.askStream("Hello", RetrievalParams.DEFAULTS))
+                .thenReturn(Flux.error(new GenerationRejectedException("slots busy", Duration.ofSeconds(12))));
+
+        List<ServerSentEvent<Object>> events = controller.chatStream("Hello", null, null, null, null, null, null)
+                .getBody().collectList().block();
+
+        assertEquals(List.of("error"), events.stream().map(ServerSentEvent::event).toList());
+        assertEquals(Map.of("error", "slots busy", "retryAfterSeconds", 12L), events.get(0).data());
+    }
+
+    @Test
+    void chatStream_InvalidPageRange_BadRequest() {
+        var response = controller.chatStream("Reset?", null, null, null, null, 4, 2);
+
+        assertEquals(400, response.getStatusCode().value());
+        assertEquals("error", response.getBody().blockFirst().event());
+        verifyNoInteractions(chatService);
+    }
+
+    private static IngestionJobService.JobSnapshot snapshot(String id, IngestionJobService.JobStatus status) {
+        return new IngestionJobService.JobSnapshot(id, status, "./data", Instant.now(), null, null,
+                0, 0, 0, 0, 0, 0, null, null, null);
+    }
 }